@@ -0,0 +1,41 @@
+#!/bin/sh
+# Run an off-device benchmark of the plugin sources on a desktop JVM.
+# Usage: bench/run.sh GeoJsonIngestionBench | RectIndexBench
+# Needs a JDK 8+ and Maven, which fetches the jars of the old and new code paths once.
+set -e
+
+BENCH=${1:?"usage: $0 <bench class>"}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+REPO=${M2_REPO:-$HOME/.m2/repository}
+OUT=${TMPDIR:-/tmp}/cordova-plugin-mapbox-bench
+
+ARTIFACTS="
+org.json:json:20180813
+com.google.code.gson:gson:2.8.5
+com.mapbox.mapboxsdk:mapbox-sdk-geojson:4.9.0
+com.cocoahero.android:geojson:1.0.1
+"
+
+CLASSPATH=""
+for artifact in $ARTIFACTS; do
+    group=$(echo "$artifact" | cut -d: -f1 | tr . /)
+    name=$(echo "$artifact" | cut -d: -f2)
+    version=$(echo "$artifact" | cut -d: -f3)
+    jar="$REPO/$group/$name/$version/$name-$version.jar"
+    if [ ! -f "$jar" ]; then
+        mvn -B -q dependency:get -Dartifact="$artifact" -Dtransitive=false
+    fi
+    CLASSPATH="$CLASSPATH:$jar"
+done
+
+# Only the plugin classes without an Android View dependency are compiled
+SOURCES="
+$ROOT/src/android/GeoJsonReader.java
+$ROOT/src/android/RectIndex.java
+"
+
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -nowarn -d "$OUT" -cp "$CLASSPATH" \
+    $(find "$ROOT/bench/shims" "$ROOT/bench/src" -name '*.java') $SOURCES
+java -Xms1g -Xmx1g -cp "$OUT$CLASSPATH" "com.dagatsoin.plugins.mapbox.$BENCH"
@@ -0,0 +1,43 @@
+package android.graphics;
+
+/**
+ * JVM stand-in of the Android class, same fields, contains and equals.
+ */
+public class RectF {
+    public float left;
+    public float top;
+    public float right;
+    public float bottom;
+
+    public RectF() {
+    }
+
+    public RectF(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public boolean contains(float x, float y) {
+        return left < right && top < bottom
+                && x >= left && x < right && y >= top && y < bottom;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final RectF r = (RectF) o;
+        return left == r.left && top == r.top && right == r.right && bottom == r.bottom;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(left);
+        result = 31 * result + Float.floatToIntBits(top);
+        result = 31 * result + Float.floatToIntBits(right);
+        result = 31 * result + Float.floatToIntBits(bottom);
+        return result;
+    }
+}
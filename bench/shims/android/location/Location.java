@@ -0,0 +1,37 @@
+package android.location;
+
+/**
+ * JVM stand-in, only needed to load the cocoahero GeoJSON classes of the old ingestion path.
+ */
+public class Location {
+    private double mLatitude;
+    private double mLongitude;
+    private double mAltitude;
+
+    public Location(String provider) {
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public void setLatitude(double latitude) {
+        mLatitude = latitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public void setLongitude(double longitude) {
+        mLongitude = longitude;
+    }
+
+    public double getAltitude() {
+        return mAltitude;
+    }
+
+    public void setAltitude(double altitude) {
+        mAltitude = altitude;
+    }
+}
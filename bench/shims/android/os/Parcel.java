@@ -0,0 +1,34 @@
+package android.os;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JVM stand-in, only needed to load the cocoahero GeoJSON classes of the old ingestion path.
+ * The benchmark never parcels anything.
+ */
+public final class Parcel {
+    public String readString() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeString(String value) {
+        throw new UnsupportedOperationException();
+    }
+
+    public double[] createDoubleArray() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void writeDoubleArray(double[] value) {
+        throw new UnsupportedOperationException();
+    }
+
+    public <T> ArrayList<T> createTypedArrayList(Parcelable.Creator<T> creator) {
+        throw new UnsupportedOperationException();
+    }
+
+    public <T extends Parcelable> void writeTypedList(List<T> value) {
+        throw new UnsupportedOperationException();
+    }
+}
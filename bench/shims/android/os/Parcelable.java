@@ -0,0 +1,16 @@
+package android.os;
+
+/**
+ * JVM stand-in, only needed to load the cocoahero GeoJSON classes of the old ingestion path.
+ */
+public interface Parcelable {
+    int describeContents();
+
+    void writeToParcel(Parcel dest, int flags);
+
+    interface Creator<T> {
+        T createFromParcel(Parcel source);
+
+        T[] newArray(int size);
+    }
+}
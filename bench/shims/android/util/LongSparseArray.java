@@ -0,0 +1,54 @@
+package android.util;
+
+import java.util.Arrays;
+
+/**
+ * JVM stand-in of the Android class: values in an array sorted by key, found by binary search.
+ */
+public class LongSparseArray<E> {
+    private long[] mKeys = new long[10];
+    private Object[] mValues = new Object[10];
+    private int mSize = 0;
+
+    @SuppressWarnings("unchecked")
+    public E get(long key) {
+        final int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+        return i < 0 ? null : (E) mValues[i];
+    }
+
+    public void put(long key, E value) {
+        int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+        if (i >= 0) {
+            mValues[i] = value;
+            return;
+        }
+        i = ~i;
+        if (mSize == mKeys.length) {
+            mKeys = Arrays.copyOf(mKeys, mSize * 2);
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+        }
+        System.arraycopy(mKeys, i, mKeys, i + 1, mSize - i);
+        System.arraycopy(mValues, i, mValues, i + 1, mSize - i);
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+    }
+
+    public void remove(long key) {
+        final int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+        if (i < 0) return;
+        System.arraycopy(mKeys, i + 1, mKeys, i, mSize - i - 1);
+        System.arraycopy(mValues, i + 1, mValues, i, mSize - i - 1);
+        mSize--;
+        mValues[mSize] = null;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        Arrays.fill(mValues, 0, mSize, null);
+        mSize = 0;
+    }
+}
@@ -0,0 +1,119 @@
+package com.dagatsoin.plugins.mapbox;
+
+import com.cocoahero.android.geojson.GeoJSON;
+import com.cocoahero.android.geojson.GeoJSONObject;
+import com.mapbox.geojson.FeatureCollection;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compare the ADD_SOURCE ingestion paths on point FeatureCollections of 1k, 10k and 100k features.
+ *
+ * - old: Cordova parses the arguments into org.json, the data is parsed again by cocoahero GeoJSON
+ *   for validation, then serialised and parsed a third time by FeatureCollection.fromJson.
+ * - new: GeoJsonReader.readAddSourceArgs reads the raw argument string once.
+ *
+ * Prints the median time and the median bytes allocated by the ingesting thread.
+ */
+public class GeoJsonIngestionBench {
+    private static final int[] SIZES = {1000, 10000, 100000};
+    // Same number of warmup features at each size, so the small inputs are also measured JIT-compiled
+    private static final int WARMUP_FEATURES = 500000;
+    private static final int RUNS = 11;
+
+    private interface Path {
+        int ingest(String rawArgs) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Path oldPath = GeoJsonIngestionBench::ingestOld;
+        final Path newPath = GeoJsonIngestionBench::ingestNew;
+
+        System.out.printf("%-9s %-4s %12s %14s%n", "features", "path", "median ms", "median MB");
+        for (int size : SIZES) {
+            final String rawArgs = generateArgs(size, new Random(size));
+            check(size, oldPath.ingest(rawArgs));
+            check(size, newPath.ingest(rawArgs));
+            measure(size, "old", oldPath, rawArgs);
+            measure(size, "new", newPath, rawArgs);
+        }
+    }
+
+    /**
+     * The ADD_SOURCE path before the streaming reader.
+     */
+    private static int ingestOld(String rawArgs) throws JSONException {
+        final JSONArray args = new JSONArray(rawArgs);
+        final JSONObject source = args.getJSONObject(1);
+        final JSONObject sourceData = source.getJSONObject("data");
+        final GeoJSONObject geoJSON = GeoJSON.parse(source.getJSONObject("data"));
+        if (!geoJSON.getType().equals("FeatureCollection")) throw new JSONException("not a FeatureCollection");
+        final JSONArray features = sourceData.getJSONArray("features");
+        if (features.length() > 0) {
+            final String type = features.getJSONObject(0).getJSONObject("geometry").getString("type");
+            if (!type.equals("Point")) throw new JSONException("Only support Feature of type Point");
+        }
+        final FeatureCollection featureCollection = FeatureCollection.fromJson(sourceData.toString());
+        return featureCollection.features().size();
+    }
+
+    private static int ingestNew(String rawArgs) throws JSONException {
+        final GeoJsonReader.Source source = GeoJsonReader.readAddSourceArgs("ADD_SOURCE", rawArgs);
+        return source.featureCollection.features().size();
+    }
+
+    private static void measure(int size, String name, Path path, String rawArgs) throws Exception {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < Math.max(WARMUP_FEATURES / size, 3); i++) path.ingest(rawArgs);
+
+        final long[] nanos = new long[RUNS];
+        final long[] bytes = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            System.gc();
+            final long startBytes = threads.getThreadAllocatedBytes(threadId);
+            final long start = System.nanoTime();
+            check(size, path.ingest(rawArgs));
+            nanos[i] = System.nanoTime() - start;
+            bytes[i] = threads.getThreadAllocatedBytes(threadId) - startBytes;
+        }
+        System.out.printf("%-9d %-4s %12.1f %14.1f%n", size, name, median(nanos) / 1e6, median(bytes) / 1e6);
+    }
+
+    private static void check(int size, int count) {
+        if (count != size) throw new IllegalStateException(count + " features read instead of " + size);
+    }
+
+    private static long median(long[] values) {
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    /**
+     * The arguments of ADD_SOURCE as the WebView sends them: points with a few properties each.
+     */
+    private static String generateArgs(int size, Random random) {
+        final StringBuilder builder = new StringBuilder(size * 160);
+        builder.append("[\"points\",{\"type\":\"geojson\",\"cluster\":true,\"data\":{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) builder.append(',');
+            builder.append("{\"type\":\"Feature\",\"id\":\"").append(i)
+                    .append("\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                    .append(random.nextDouble() * 360 - 180).append(',')
+                    .append(random.nextDouble() * 170 - 85)
+                    .append("]},\"properties\":{\"name\":\"point ").append(i)
+                    .append("\",\"rank\":").append(random.nextInt(100))
+                    .append(",\"visited\":").append(random.nextBoolean())
+                    .append("}}");
+        }
+        builder.append("]}}]");
+        return builder.toString();
+    }
+}
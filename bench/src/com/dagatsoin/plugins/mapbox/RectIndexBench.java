@@ -0,0 +1,137 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.graphics.RectF;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Compare the touch hit-testing of the HTML elements with 10, 100 and 1,000 rects.
+ *
+ * - linear: the scan done on each touch before the index: every rect of the HashMap is moved
+ *   by the scroll, tested, then moved back.
+ * - grid: RectIndex.contains with the touch in content coordinates.
+ *
+ * The rects are 40 to 300px wide elements of a 1080 x 6000px page, the touches are spread over
+ * a 1080 x 1920px viewport at a random scroll. Prints the median time and bytes allocated per touch.
+ */
+public class RectIndexBench {
+    private static final int[] SIZES = {10, 100, 1000};
+    private static final float PAGE_WIDTH = 1080;
+    private static final float PAGE_HEIGHT = 6000;
+    private static final float VIEWPORT_HEIGHT = 1920;
+    private static final int TOUCHES = 4096;
+    private static final int WARMUP_TOUCHES = 2000000;
+    private static final int RUNS = 11;
+
+    private interface Path {
+        /**
+         * @return the number of touches on an HTML element
+         */
+        int hitTest(float[] touches, int[] scrolls);
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%-6s %-7s %12s %14s %6s%n", "rects", "path", "ns/touch", "bytes/touch", "hits");
+        for (int size : SIZES) {
+            final Random random = new Random(size);
+            final HashMap<String, RectF> nodes = new HashMap<>();
+            final RectIndex index = new RectIndex();
+            for (int i = 0; i < size; i++) {
+                final float width = 40 + random.nextFloat() * 260;
+                final float height = 40 + random.nextFloat() * 260;
+                final float left = random.nextFloat() * (PAGE_WIDTH - width);
+                final float top = random.nextFloat() * (PAGE_HEIGHT - height);
+                nodes.put("node" + i, new RectF(left, top, left + width, top + height));
+                index.put("node" + i, left, top, left + width, top + height);
+            }
+
+            final float[] touches = new float[TOUCHES * 2];
+            final int[] scrolls = new int[TOUCHES];
+            for (int i = 0; i < TOUCHES; i++) {
+                touches[i * 2] = random.nextFloat() * PAGE_WIDTH;
+                touches[i * 2 + 1] = random.nextFloat() * VIEWPORT_HEIGHT;
+                scrolls[i] = random.nextInt((int) (PAGE_HEIGHT - VIEWPORT_HEIGHT));
+            }
+
+            final Path linear = (t, s) -> scanLinear(nodes, t, s);
+            final Path grid = (t, s) -> scanGrid(index, t, s);
+            final int hits = linear.hitTest(touches, scrolls);
+            if (grid.hitTest(touches, scrolls) != hits) throw new IllegalStateException("the paths disagree");
+            measure(size, "linear", linear, touches, scrolls, hits);
+            measure(size, "grid", grid, touches, scrolls, hits);
+        }
+    }
+
+    /**
+     * The hit-testing of FrontLayerLayout.onInterceptTouchEvent before RectIndex.
+     */
+    private static int scanLinear(HashMap<String, RectF> nodes, float[] touches, int[] scrolls) {
+        int hits = 0;
+        for (int i = 0; i < scrolls.length; i++) {
+            final float x = touches[i * 2];
+            final float y = touches[i * 2 + 1];
+            final int scrollX = 0;
+            final int scrollY = scrolls[i];
+            boolean contains = true;
+            Set<Map.Entry<String, RectF>> elements = nodes.entrySet();
+            Iterator<Map.Entry<String, RectF>> iterator = elements.iterator();
+            Map.Entry<String, RectF> entry;
+            RectF rect;
+
+            while (iterator.hasNext() && contains) {
+                entry = iterator.next();
+                rect = entry.getValue();
+                rect.left -= scrollX;
+                rect.right -= scrollX;
+                rect.top -= scrollY;
+                rect.bottom -= scrollY;
+                if (entry.getValue().contains(x, y)) {
+                    contains = false;
+                }
+                rect.left += scrollX;
+                rect.right += scrollX;
+                rect.top += scrollY;
+                rect.bottom += scrollY;
+            }
+            if (!contains) hits++;
+        }
+        return hits;
+    }
+
+    private static int scanGrid(RectIndex index, float[] touches, int[] scrolls) {
+        int hits = 0;
+        for (int i = 0; i < scrolls.length; i++) {
+            if (index.contains(touches[i * 2], touches[i * 2 + 1] + scrolls[i])) hits++;
+        }
+        return hits;
+    }
+
+    private static void measure(int size, String name, Path path, float[] touches, int[] scrolls, int hits) {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_TOUCHES / TOUCHES; i++) path.hitTest(touches, scrolls);
+
+        final double[] nanos = new double[RUNS];
+        final double[] bytes = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            final long startBytes = threads.getThreadAllocatedBytes(threadId);
+            final long start = System.nanoTime();
+            if (path.hitTest(touches, scrolls) != hits) throw new IllegalStateException("the hits changed");
+            nanos[i] = (double) (System.nanoTime() - start) / TOUCHES;
+            bytes[i] = (double) (threads.getThreadAllocatedBytes(threadId) - startBytes) / TOUCHES;
+        }
+        System.out.printf("%-6d %-7s %12.1f %14.1f %6d%n", size, name, median(nanos), median(bytes), hits);
+    }
+
+    private static double median(double[] values) {
+        final double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,83 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+import android.util.LruCache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Decoded style images, shared by all the maps and kept across style reloads.
+ *
+ * The style copies the pixels of an added image, so a cached bitmap can be added again
+ * as is. Keys describe the source and the final size: a path with its modification date,
+ * or a hash of the inline data, plus the requested size, the screen density and the pixel format.
+ * The least recently used bitmaps are evicted once their total byte size reaches 1/16 of the heap.
+ */
+class BitmapCache {
+    private static final LruCache<String, Bitmap> mCache = new LruCache<String, Bitmap>((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16)) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getByteCount();
+        }
+    };
+
+    @Nullable
+    static Bitmap get(String key) {
+        return mCache.get(key);
+    }
+
+    static void put(String key, Bitmap bitmap) {
+        mCache.put(key, bitmap);
+    }
+
+    static void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * @param source path of the file or asset, or the inline data
+     * @param version the modification date of a file, 0 otherwise
+     * @param isOpaque decoded without alpha channel
+     */
+    static String keyOf(String kind, String source, long version, int width, int height, float density, boolean isOpaque) {
+        final String id = "path".equals(kind) ? source : hash(source);
+        return kind + ':' + id + '#' + version + '@' + width + 'x' + height + '*' + density + (isOpaque ? "/565" : "");
+    }
+
+    /**
+     * @return {hits, misses, evictions, bytes, maxBytes}
+     */
+    static JSONObject getStats() throws JSONException {
+        return new JSONObject()
+                .put("hits", mCache.hitCount())
+                .put("misses", mCache.missCount())
+                .put("evictions", mCache.evictionCount())
+                .put("bytes", mCache.size())
+                .put("maxBytes", mCache.maxSize());
+    }
+
+    static String hash(String data) {
+        return hash(data.getBytes(Charset.forName("UTF-8")));
+    }
+
+    static String hash(byte[] data) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(data);
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available on Android
+            return data.length + "-" + Arrays.hashCode(data);
+        }
+    }
+}
@@ -3,18 +3,18 @@ package com.dagatsoin.plugins.mapbox;
 import android.app.Activity;
 import android.content.res.Resources;
 import android.graphics.PointF;
+import android.os.Build;
+import android.os.Debug;
 import android.support.annotation.Nullable;
+import android.view.Choreographer;
 import android.view.View;
 import android.view.ViewTreeObserver;
 
-import com.cocoahero.android.geojson.GeoJSON;
-import com.cocoahero.android.geojson.GeoJSONObject;
 import com.mapbox.geojson.Feature;
 import com.mapbox.geojson.FeatureCollection;
 import com.mapbox.mapboxsdk.Mapbox;
 import com.mapbox.mapboxsdk.geometry.LatLng;
 import com.mapbox.mapboxsdk.geometry.LatLngBounds;
-import com.mapbox.mapboxsdk.style.expressions.Expression;
 
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaArgs;
@@ -29,12 +29,21 @@ import org.json.JSONStringer;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static com.dagatsoin.plugins.mapbox.Command.Threading.BACKGROUND;
+import static com.dagatsoin.plugins.mapbox.Command.Threading.NONE;
+import static com.dagatsoin.plugins.mapbox.Command.Threading.UI;
 
 public class CDVMapbox extends CordovaPlugin implements ViewTreeObserver.OnScrollChangedListener {
     private static final String ADD_IMAGE = "ADD_IMAGE";
+    private static final String ADD_IMAGES = "ADD_IMAGES";
     private static final String ADD_LAYER = "ADD_LAYER";
     private static final String ADD_MAP_CLICK_CALLBACK = "ADD_MAP_CLICK_CALLBACK";
     private static final String ADD_SOURCE = "ADD_SOURCE";
+    private static final String ADD_SPRITE_ATLAS = "ADD_SPRITE_ATLAS";
     private static final String ADD_ON_MOVE_LISTENER = "ADD_ON_MOVE_LISTENER";
     private static final String ADD_ON_FLING_LISTENER = "ADD_ON_FLING_LISTENER";
     private static final String ADD_ON_ROTATE_LISTENER = "ADD_ON_ROTATE_LISTENER";
@@ -54,39 +63,67 @@ public class CDVMapbox extends CordovaPlugin implements ViewTreeObserver.OnScrol
     private static final String DELETE_OFFLINE_REGION = "DELETE_OFFLINE_REGION";
     private static final String DESTROY = "DESTROY";
     private static final String DOWNLOAD_REGION = "DOWNLOAD_REGION";
+    private static final String EXECUTE_BATCH = "EXECUTE_BATCH";
     private static final String FLY_TO = "FLY_TO";
     private static final String GET_BOUNDS = "GET_BOUNDS";
     private static final String GET_CAMERA_POSITION = "GET_CAMERA_POSITION";
     private static final String GET_CENTER = "GET_CENTER";
+    private static final String GET_CLUSTER_EXPANSION_ZOOM = "GET_CLUSTER_EXPANSION_ZOOM";
+    private static final String GET_CLUSTER_LEAVES = "GET_CLUSTER_LEAVES";
+    private static final String GET_CLUSTERS_IN_BOUNDS = "GET_CLUSTERS_IN_BOUNDS";
+    private static final String GET_METRICS = "GET_METRICS";
     private static final String GET_OFFLINE_REGION_LIST = "GET_OFFLINE_REGION_LIST";
     private static final String GET_PITCH = "GET_PITCH";
     private static final String GET_ZOOM = "GET_ZOOM";
     private static final String HIDE = "HIDE";
     private static final String PAUSE_DOWNLOAD = "PAUSE_DOWNLOAD";
+    private static final String PROJECT_MANY = "PROJECT_MANY";
+    private static final String QUERY_SOURCE_FEATURES = "QUERY_SOURCE_FEATURES";
     private static final String RESUME_DOWNLOAD = "RESUME_DOWNLOAD";
     private static final String REMOVE_IMAGE = "REMOVE_IMAGE";
     private static final String REMOVE_SOURCE = "REMOVE_SOURCE";
     private static final String REMOVE_LAYER = "REMOVE_LAYER";
+    private static final String REMOVE_FEATURES = "REMOVE_FEATURES";
+    private static final String REMOVE_HTML_RECTS = "REMOVE_HTML_RECTS";
     private static final String RESIZE = "RESIZE";
     private static final String SCROLL_MAP = "SCROLL_MAP";
+    private static final String SELECT_FEATURES = "SELECT_FEATURES";
     private static final String SET_CENTER = "SET_CENTER";
     private static final String SET_CLICKABLE = "SET_CLICKABLE";
     private static final String SET_CONTAINER = "SET_CONTAINER";
     private static final String SET_DEBUG = "SET_DEBUG";
     private static final String SET_GEO_JSON = "SET_GEO_JSON";
+    private static final String SET_INTERACTIVE_LAYERS = "SET_INTERACTIVE_LAYERS";
+    private static final String SET_LAYER_PROPERTIES = "SET_LAYER_PROPERTIES";
     private static final String SET_LAYOUT_PROPERTY = "SET_LAYOUT_PROPERTY";
     private static final String SET_PITCH = "SET_PITCH";
+    private static final String SET_SELECTION_STYLE = "SET_SELECTION_STYLE";
     private static final String SET_ZOOM = "SET_ZOOM";
     private static final String SHOW = "SHOW";
     private static final String DESELECT = "DESELECT";
+    private static final String UNPROJECT_MANY = "UNPROJECT_MANY";
+    private static final String UNWATCH_PROJECTION = "UNWATCH_PROJECTION";
+    private static final String UPSERT_FEATURES = "UPSERT_FEATURES";
+    private static final String UPSERT_HTML_RECTS = "UPSERT_HTML_RECTS";
     private static final String ZOOM_TO = "ZOOM_TO";
 
     private static final String MAPBOX_ACCESSTOKEN_RESOURCE_KEY = "mapbox_accesstoken";
     private CordovaWebView _webView;
     private Activity activity;
-    @Nullable MapLayout mapLayout;
+    // The displayed maps, by map id. Looked up by the dispatcher from the Cordova threads.
+    private final ConcurrentHashMap<String, MapLayout> mapLayouts = new ConcurrentHashMap<>();
 
     PluginLayout pluginLayout;
+    private GeoJsonLoader geoJsonLoader;
+    private ImageLoader imageLoader;
+    private CommandDispatcher dispatcher;
+
+    // Scroll changes are applied once per frame, whatever the number of notifications.
+    private boolean isScrollSyncScheduled = false;
+    private final Choreographer.FrameCallback scrollSync = frameTimeNanos -> {
+        isScrollSyncScheduled = false;
+        syncScroll();
+    };
 
     /**
      * Handler listening to scroll changes.
@@ -94,6 +131,14 @@ public class CDVMapbox extends CordovaPlugin implements ViewTreeObserver.OnScrol
      */
     @Override
     public void onScrollChanged() {
+        if (pluginLayout == null || isScrollSyncScheduled) {
+            return;
+        }
+        isScrollSyncScheduled = true;
+        Choreographer.getInstance().postFrameCallback(scrollSync);
+    }
+
+    private void syncScroll() {
         if (pluginLayout == null) {
             return;
         }
@@ -101,11 +146,29 @@ public class CDVMapbox extends CordovaPlugin implements ViewTreeObserver.OnScrol
         int scrollY = _webView.getView().getScrollY();
 
         pluginLayout.scrollTo(scrollX, scrollY);
-        if(mapLayout != null) {
+        for (MapLayout mapLayout : mapLayouts.values()) {
             mapLayout.onScroll(scrollX, scrollY);
         }
     }
 
+    /**
+     * @return null if the map is not displayed
+     */
+    @Nullable
+    MapLayout getMapLayout(String mapId) {
+        return mapLayouts.get(mapId);
+    }
+
+    /**
+     * The layout of a map passed to a command. Commands needing the map only receive displayed maps.
+     */
+    private MapLayout getMapLayout(MapController mapCtrl) {
+        for (MapLayout mapLayout : mapLayouts.values()) {
+            if (mapLayout.getMapCtrl() == mapCtrl) return mapLayout;
+        }
+        throw new IllegalStateException("The map is not displayed");
+    }
+
     @Override
     public void initialize(CordovaInterface cordova, final CordovaWebView webView) {
         super.initialize(cordova, webView);
@@ -123,6 +186,12 @@ public class CDVMapbox extends CordovaPlugin implements ViewTreeObserver.OnScrol
          */
         pluginLayout = new PluginLayout(_webView.getView(), activity);
 
+        geoJsonLoader = new GeoJsonLoader(activity);
+        imageLoader = new ImageLoader(activity);
+
+        dispatcher = new CommandDispatcher(this, activity, cordova.getThreadPool());
+        registerCommands();
+
         try {
             int mapboxAccesstokenResourceId = cordova.getActivity().getResources().getIdentifier(MAPBOX_ACCESSTOKEN_RESOURCE_KEY, "string", cordova.getActivity().getPackageName());
             final String _accessToken = cordova.getActivity().getString(mapboxAccesstokenResourceId);
@@ -134,921 +203,716 @@ public class CDVMapbox extends CordovaPlugin implements ViewTreeObserver.OnScrol
         }
     }
 
-    public boolean execute(final String action, final CordovaArgs args, final CallbackContext callbackContext) {
-        try {
-            if (SHOW.equals(action)) {
-                if (mapLayout != null) {
-                    if (mapLayout.getMapCtrl().getMapView().getVisibility() == View.GONE) {
-                        activity.runOnUiThread(() -> {
-                            mapLayout.getMapCtrl().getMapView().setVisibility(View.VISIBLE);
-                            callbackContext.success();
-                        });
-                    } else {
-                        callbackContext.error("Map is already displayed");
-                    }
-                } else {
-                    activity.runOnUiThread(() -> {
-                        mapLayout = new MapLayout(args, this, activity, callbackContext);
-                        /* If it is the first map, we set the general layout.
-                         * Arrange the layers. The final order is:
-                         * - root (Application View)
-                         *   - pluginLayout
-                         *     - frontLayout
-                         *       - webView
-                         *     - scrollView
-                         *       - scrollFrameLayout
-                         *         - map
-                         *         - background
-                         */
-
-                        pluginLayout.buildViewHierarchy(mapLayout.getViewGroup());
-                        mapLayout.setContainer(args, callbackContext);
-
-                        // Wait for the map to be ready then callback JS
-                        mapLayout.getMapCtrl().mapReady = callbackContext::success;
-                    });
-                }
-                return true;
-            } else if (DOWNLOAD_REGION.equals(action)) {
-                cordova.getThreadPool().execute(() -> {
-                    try {
-                        if (args.isNull(0)) {
-                            throw new JSONException(action + " needs options object type of {\n" +
-                                    "                            regionName: string // must be unique.\n" +
-                                    "                            styleUrl?: string // only when the map is not display yet or the style is different from the current one.\n" +
-                                    "                            bounds: {sw: [number, number], ne: [number, number]}\n" +
-                                    "                            minZoom: number\n" +
-                                    "                            maxZoom: number\n" +
-                                    "                        },");
-                        }
-                        final JSONObject options = args.getJSONObject(0);
-                        @Nullable final String styleUrl = options.has("styleUrl") ? options.getString("styleUrl") : null;
-                        final OfflineController offlineController = getOfflineController(mapLayout, styleUrl, activity);
-                        final String regionName = options.getString("regionName");
-
-                        final JSONObject jsonBounds = options.getJSONObject("bounds");
-                        final JSONArray NE = jsonBounds.getJSONArray("ne");
-                        final JSONArray SW = jsonBounds.getJSONArray("sw");
-                        final LatLngBounds latLngBounds = new LatLngBounds.Builder()
-                                .include(new LatLng(NE.getDouble(0), NE.getDouble(1)))
-                                .include(new LatLng(SW.getDouble(0), SW.getDouble(1)))
-                                .build();
-                        final int minZoom = options.getInt("minZoom");
-                        final int maxZoom = options.getInt("maxZoom");
-
-                        Runnable progressCallback = () -> {
-                            final OfflineController.OfflineRegionState dlState = offlineController.getOfflineRegionDownloadState(regionName);
-                            if (dlState != null) {
-                                PluginResult result = new PluginResult(PluginResult.Status.OK, toJSONRegionState(dlState));
-                                result.setKeepCallback(true);
-                                callbackContext.sendPluginResult(result);
-                            }
-                        };
-
-
-                        try {
-                            ArrayList<OfflineController.OfflineRegionState> states = offlineController.getOfflineRegionStates();
-                            boolean isAlreadyDownloaded = false;
-                            for (OfflineController.OfflineRegionState state: states) {
-                                if (state.regionName.equals("regionName")) {
-                                    isAlreadyDownloaded = true;
-                                }
-                            }
-                            if (!isAlreadyDownloaded) {
-                                offlineController.downloadRegion(regionName, latLngBounds, minZoom, maxZoom, progressCallback);
-                            } else {
-                                callbackContext.error(new JSONObject("{error: 'MAP_EXISTS'}"));
-                            }
-                        } catch (JSONException e) {
-                            e.printStackTrace();
-                        }
-
+    @Override
+    public boolean execute(final String action, final String rawArgs, final CallbackContext callbackContext) throws JSONException {
+        return dispatcher.dispatch(action, rawArgs, callbackContext);
+    }
 
-                    } catch (JSONException e) {
-                        e.printStackTrace();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
-            } else if (PAUSE_DOWNLOAD.equals(action)) {
-                cordova.getThreadPool().execute(() -> {
-                    JSONObject options = null;
-                    try {
-                        options = args.getJSONObject(0);
-                    } catch (JSONException e) {
-                        e.printStackTrace();
-                    }
-                    try {
-                        if (options != null) {
-                            @Nullable final String regionName = options.has("regionName") ? options.getString("regionName") : null;
-                            @Nullable final String styleUrl = options.has("styleUrl") ? options.getString("styleUrl") : null;
-                            OfflineController offlineController = getOfflineController(mapLayout, styleUrl, activity);
-                            offlineController.pauseDownload(regionName);
-                            callbackContext.success();
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
-            } else if (RESUME_DOWNLOAD.equals(action)) {
-                cordova.getThreadPool().execute(() -> {
-                    JSONObject options = null;
+    private void registerCommands() {
+        // Map life cycle
+        dispatcher.register(SHOW, UI, false, this::show);
+        dispatcher.register(HIDE, UI, true, (args, callbackContext, mapCtrl) -> {
+            mapCtrl.getMapView().setVisibility(View.GONE);
+            mapCtrl.deselectFeatures(null);
+            pauseDownload(mapCtrl);
+            callbackContext.success();
+        });
+        // The map view is recycled in the MapViewPool, a next SHOW with the same style reuses it.
+        dispatcher.register(DESTROY, UI, true, (args, callbackContext, mapCtrl) -> {
+            pauseDownload(mapCtrl);
+            final MapLayout mapLayout = getMapLayout(mapCtrl);
+            mapLayouts.remove(mapLayout.mapId);
+            mapLayout.destroy();
+            callbackContext.success();
+        });
+        dispatcher.register(RESIZE, UI, true, (args, callbackContext, mapCtrl) -> getMapLayout(mapCtrl).setContainer(args, callbackContext));
+        dispatcher.register(SET_CONTAINER, UI, true, (args, callbackContext, mapCtrl) -> getMapLayout(mapCtrl).setContainer(args, callbackContext));
+        dispatcher.register(UPSERT_HTML_RECTS, UI, true, (args, callbackContext, mapCtrl) -> {
+            getMapLayout(mapCtrl).upsertHTMLRects(args.getJSONArray(0), args.getJSONArray(1));
+            callbackContext.success();
+        });
+        dispatcher.register(REMOVE_HTML_RECTS, UI, true, (args, callbackContext, mapCtrl) -> {
+            getMapLayout(mapCtrl).removeHTMLRects(args.getJSONArray(0));
+            callbackContext.success();
+        });
+        dispatcher.register(SET_CLICKABLE, UI, true, (args, callbackContext, mapCtrl) -> {
+            pluginLayout.setClickable(args.getBoolean(0));
+            callbackContext.success();
+        });
+        dispatcher.register(SET_DEBUG, UI, true, (args, callbackContext, mapCtrl) -> {
+            pluginLayout.setDebug(args.getInt(0) != 0);
+            callbackContext.success();
+        });
+        dispatcher.register(EXECUTE_BATCH, UI, false, this::executeBatch);
+        // On the UI thread, like the event streams it reads.
+        dispatcher.register(GET_METRICS, UI, false, this::getMetrics);
+
+        // Offline regions. They do not need a displayed map, the addressed map gives the default style.
+        dispatcher.register(DOWNLOAD_REGION, BACKGROUND, false, this::downloadRegion);
+        dispatcher.register(PAUSE_DOWNLOAD, BACKGROUND, false, (args, callbackContext, mapCtrl) -> {
+            final JSONObject options = args.getJSONObject(0);
+            @Nullable final String regionName = options.has("regionName") ? options.getString("regionName") : null;
+            @Nullable final String styleUrl = options.has("styleUrl") ? options.getString("styleUrl") : null;
+            getOfflineController(mapCtrl, styleUrl, activity).pauseDownload(regionName);
+            callbackContext.success();
+        });
+        dispatcher.register(RESUME_DOWNLOAD, BACKGROUND, false, (args, callbackContext, mapCtrl) -> {
+            final JSONObject options = args.getJSONObject(0);
+            @Nullable final String regionName = options.has("regionName") ? options.getString("regionName") : null;
+            @Nullable final String styleUrl = options.has("styleUrl") ? options.getString("styleUrl") : null;
+            getOfflineController(mapCtrl, styleUrl, activity).resumeDownload(regionName);
+            callbackContext.success();
+        });
+        dispatcher.register(GET_OFFLINE_REGION_LIST, BACKGROUND, false, (args, callbackContext, mapCtrl) -> {
+            @Nullable final String styleUrl = args.optString(0).equals("") ? null : args.optString(0);
+            final OfflineController offlineController = getOfflineController(mapCtrl, styleUrl, activity);
+            final ArrayList<OfflineController.OfflineRegionState> states = offlineController.getOfflineRegionStates();
+            final ArrayList<JSONObject> res = new ArrayList<>();
+            for (OfflineController.OfflineRegionState state: states) {
+                res.add(toJSONRegionState(state));
+            }
+            callbackContext.success(new JSONArray(res));
+        });
+        dispatcher.register(DELETE_OFFLINE_REGION, BACKGROUND, false, (args, callbackContext, mapCtrl) -> {
+            final JSONObject options = args.getJSONObject(0);
+            @Nullable final String regionName = options.has("regionName") ? options.getString("regionName") : null;
+            @Nullable final String styleUrl = options.has("styleUrl") ? options.getString("styleUrl") : null;
+            final OfflineController offlineController = getOfflineController(mapCtrl, styleUrl, activity);
+            offlineController.removeOfflineRegion(
+                    regionName,
+                    () -> callbackContext.success(1),
+                    () -> callbackContext.success(0)
+            );
+        });
+
+        // Camera
+        dispatcher.register(GET_ZOOM, UI, true, (args, callbackContext, mapCtrl) -> callbackContext.success(String.valueOf(mapCtrl.getZoom())));
+        dispatcher.register(SET_ZOOM, UI, true, (args, callbackContext, mapCtrl) -> {
+            if (args.isNull(0)) {
+                throw new JSONException(SET_ZOOM + " needs a zoom level");
+            }
+            mapCtrl.setZoom(args.getDouble(0));
+            callbackContext.success();
+        });
+        // todo allow AnimationOptions
+        dispatcher.register(ZOOM_TO, UI, true, (args, callbackContext, mapCtrl) -> {
+            if (args.isNull(0)) {
+                throw new JSONException(ZOOM_TO + " needs a zoom level");
+            }
+            mapCtrl.zoomTo(args.getDouble(0));
+            callbackContext.success();
+        });
+        dispatcher.register(GET_CENTER, UI, true, (args, callbackContext, mapCtrl) -> {
+            final LatLng latLng = mapCtrl.getCenter();
+            callbackContext.success(new JSONObject()
+                    .put("lat", latLng.getLatitude())
+                    .put("lng", latLng.getLongitude()));
+        });
+        dispatcher.register(SET_CENTER, UI, true, (args, callbackContext, mapCtrl) -> {
+            if (args.isNull(0)) {
+                throw new JSONException(SET_CENTER + " need a [long, lat] coordinates");
+            }
+            final JSONArray center = args.getJSONArray(0);
+            mapCtrl.setCenter(center.getDouble(0), center.getDouble(1));
+            callbackContext.success();
+        });
+        dispatcher.register(SCROLL_MAP, UI, true, (args, callbackContext, mapCtrl) -> {
+            if (args.isNull(0)) {
+                throw new JSONException(SCROLL_MAP + " need a [x, y] screen coordinates");
+            }
+            final JSONArray delta = args.getJSONArray(0);
+            mapCtrl.scrollMap(delta.getLong(0), delta.getLong(1));
+            callbackContext.success();
+        });
+        dispatcher.register(SET_PITCH, UI, true, (args, callbackContext, mapCtrl) -> {
+            if (args.isNull(0)) {
+                throw new JSONException(SET_PITCH + " need a pitch value");
+            }
+            mapCtrl.setTilt(args.getDouble(0));
+            callbackContext.success();
+        });
+        dispatcher.register(GET_PITCH, UI, true, (args, callbackContext, mapCtrl) -> callbackContext.success(String.valueOf(mapCtrl.getTilt())));
+        dispatcher.register(FLY_TO, UI, true, (args, callbackContext, mapCtrl) -> {
+            final JSONObject cameraPosition = args.isNull(0) ? null : args.getJSONObject(0);
+            if (cameraPosition == null) {
+                callbackContext.error("Need a camera position");
+            } else {
+                mapCtrl.flyTo(cameraPosition);
+                callbackContext.success("Animation started.");
+            }
+        });
+        dispatcher.register(GET_BOUNDS, UI, true, (args, callbackContext, mapCtrl) -> {
+            final LatLngBounds latLngBounds = mapCtrl.getBounds();
+            final JSONArray sw = new JSONArray()
+                    .put(latLngBounds.getSouthWest().getLongitude())
+                    .put(latLngBounds.getSouthWest().getLatitude());
+            final JSONArray ne = new JSONArray()
+                    .put(latLngBounds.getNorthEast().getLongitude())
+                    .put(latLngBounds.getNorthEast().getLatitude());
+            callbackContext.success(new JSONObject()
+                    .put("sw", sw)
+                    .put("ne", ne));
+        });
+        dispatcher.register(GET_CAMERA_POSITION, UI, true, (args, callbackContext, mapCtrl) -> callbackContext.sendPluginResult(new JsonPluginResult(mapCtrl.writeCameraPosition())));
+        dispatcher.register(CONVERT_COORDINATES, UI, true, (args, callbackContext, mapCtrl) -> {
+            final JSONObject coords = args.getJSONObject(0);
+            final PointF point = mapCtrl.convertCoordinates(new LatLng(
+                    coords.getDouble("lat"),
+                    coords.getDouble("lng")
+            ));
+            callbackContext.success(new JSONObject("{\"x\": " + point.x + ", \"y\": " + point.y + "}"));
+        });
+        dispatcher.register(CONVERT_POINT, UI, true, (args, callbackContext, mapCtrl) -> {
+            final JSONObject point = args.getJSONObject(0);
+            final LatLng latLng = mapCtrl.convertPoint(new PointF(
+                    (float) point.getDouble("x"),
+                    (float) point.getDouble("y")
+            ));
+            callbackContext.success(new JSONObject("{\"lat\": " + latLng.getLatitude() + ", \"lng\": " + latLng.getLongitude() + "}"));
+        });
+        dispatcher.register(PROJECT_MANY, UI, true, (args, callbackContext, mapCtrl) -> projectMany(PROJECT_MANY, false, args, callbackContext, mapCtrl));
+        dispatcher.register(UNPROJECT_MANY, UI, true, (args, callbackContext, mapCtrl) -> projectMany(UNPROJECT_MANY, true, args, callbackContext, mapCtrl));
+        dispatcher.register(UNWATCH_PROJECTION, UI, true, (args, callbackContext, mapCtrl) -> {
+            if (mapCtrl.unwatchProjection(args.getInt(0))) {
+                callbackContext.success();
+            } else {
+                callbackContext.error(new JSONObject("{error: 'UNKNOWN_WATCH_ID'}"));
+            }
+        });
+
+        // Sources. GeoJSON payloads can be huge: they are read straight from the raw arguments,
+        // without building a JSONArray first, and the loader does the parsing off the UI thread.
+        dispatcher.registerRaw(ADD_SOURCE, NONE, true, (rawArgs, callbackContext, mapCtrl) -> geoJsonLoader.addSource(mapCtrl, ADD_SOURCE, rawArgs, callbackContext));
+        dispatcher.registerRaw(SET_GEO_JSON, NONE, true, (rawArgs, callbackContext, mapCtrl) -> geoJsonLoader.setGeoJson(mapCtrl, SET_GEO_JSON, rawArgs, callbackContext));
+        dispatcher.registerRaw(UPSERT_FEATURES, NONE, true, (rawArgs, callbackContext, mapCtrl) -> geoJsonLoader.upsertFeatures(mapCtrl, UPSERT_FEATURES, rawArgs, callbackContext));
+        dispatcher.registerRaw(REMOVE_FEATURES, NONE, true, (rawArgs, callbackContext, mapCtrl) -> geoJsonLoader.removeFeatures(mapCtrl, REMOVE_FEATURES, rawArgs, callbackContext));
+        dispatcher.register(REMOVE_SOURCE, UI, true, (args, callbackContext, mapCtrl) -> {
+            if (args.isNull(0))
+                throw new JSONException(REMOVE_SOURCE + " no id provided");
+
+            callbackContext.success(new JSONObject()
+                    .put("success", mapCtrl.removeSource(args.getString(0))));
+        });
+
+        // Clusters, answered by the cluster index of the source off the UI thread.
+        dispatcher.register(GET_CLUSTER_LEAVES, BACKGROUND, true, (args, callbackContext, mapCtrl) -> {
+            final Supercluster index = getClusterIndex(GET_CLUSTER_LEAVES, args, mapCtrl);
+            try {
+                final List<Feature> leaves = index.getLeaves(
+                        args.getInt(1),
+                        args.isNull(2) ? 10 : args.getInt(2),
+                        args.isNull(3) ? 0 : args.getInt(3));
+                callbackContext.sendPluginResult(new JsonPluginResult(FeatureCollection.fromFeatures(leaves).toJson()));
+            } catch (IllegalArgumentException e) {
+                callbackContext.error(new JSONObject("{error: 'UNKNOWN_CLUSTER_ID'}"));
+            }
+        });
+        dispatcher.register(GET_CLUSTER_EXPANSION_ZOOM, BACKGROUND, true, (args, callbackContext, mapCtrl) -> {
+            final Supercluster index = getClusterIndex(GET_CLUSTER_EXPANSION_ZOOM, args, mapCtrl);
+            try {
+                callbackContext.success(index.getClusterExpansionZoom(args.getInt(1)));
+            } catch (IllegalArgumentException e) {
+                callbackContext.error(new JSONObject("{error: 'UNKNOWN_CLUSTER_ID'}"));
+            }
+        });
+        dispatcher.register(GET_CLUSTERS_IN_BOUNDS, BACKGROUND, true, (args, callbackContext, mapCtrl) -> {
+            final Supercluster index = getClusterIndex(GET_CLUSTERS_IN_BOUNDS, args, mapCtrl);
+            final JSONObject bounds = args.getJSONObject(1);
+            final JSONArray sw = bounds.getJSONArray("sw");
+            final JSONArray ne = bounds.getJSONArray("ne");
+            final List<Feature> clusters = index.getClusters(sw.getDouble(0), sw.getDouble(1), ne.getDouble(0), ne.getDouble(1), args.getDouble(2));
+            callbackContext.sendPluginResult(new JsonPluginResult(FeatureCollection.fromFeatures(clusters).toJson()));
+        });
+
+        // Spatial queries, answered by the R-tree of the source off the UI thread.
+        dispatcher.register(QUERY_SOURCE_FEATURES, BACKGROUND, true, this::querySourceFeatures);
+
+        // Style
+        dispatcher.register(ADD_LAYER, UI, true, this::addLayer);
+        dispatcher.register(REMOVE_LAYER, UI, true, (args, callbackContext, mapCtrl) -> {
+            if (args.isNull(0))
+                throw new JSONException(REMOVE_LAYER + " no id provided");
+
+            callbackContext.success(new JSONObject()
+                    .put("success", mapCtrl.removeLayer(args.getString(0))));
+        });
+        dispatcher.register(SET_LAYOUT_PROPERTY, UI, true, this::setLayoutProperty);
+        dispatcher.register(SET_LAYER_PROPERTIES, UI, true, (args, callbackContext, mapCtrl) -> {
+            final JSONObject layers = args.optJSONObject(0);
+            if (layers == null)
+                throw new JSONException(SET_LAYER_PROPERTIES + " no layers provided");
+
+            callbackContext.success(new JSONObject()
+                    .put("missingLayerIds", new JSONArray(mapCtrl.setLayerProperties(layers))));
+        });
+        // Images are decoded by the loader, off the UI thread.
+        dispatcher.register(ADD_IMAGE, NONE, true, this::addImage);
+        dispatcher.register(ADD_IMAGES, NONE, true, this::addImages);
+        dispatcher.register(ADD_SPRITE_ATLAS, NONE, true, this::addSpriteAtlas);
+        dispatcher.register(REMOVE_IMAGE, UI, true, (args, callbackContext, mapCtrl) -> {
+            if (args.isNull(0))
+                throw new JSONException(REMOVE_IMAGE + " no id provided");
+
+            mapCtrl.removeImage(args.getString(0));
+            callbackContext.success();
+        });
+
+        // Selection
+        dispatcher.register(ADD_MAP_CLICK_CALLBACK, UI, true, (args, callbackContext, mapCtrl) -> {
+            // A single native callback sends the clicks to the latest JS callback.
+            final MapLayout mapLayout = getMapLayout(mapCtrl);
+            final boolean hasNativeCallback = mapLayout.mMarkerCallbackContext != null;
+            mapLayout.mMarkerCallbackContext = callbackContext;
+            if (hasNativeCallback) return;
+            mapCtrl.addMapClickCallback(() -> {
+                if (mapLayout.mMarkerCallbackContext != null) {
                     try {
-                        options = args.getJSONObject(0);
+                        JSONObject json = new JSONObject(mapCtrl.getSelecteFeatureCollection());
+                        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, json);
+                        pluginResult.setKeepCallback(true);
+                        mapLayout.mMarkerCallbackContext.sendPluginResult(pluginResult);
                     } catch (JSONException e) {
                         e.printStackTrace();
+                        callbackContext.error("action " + e.getMessage());
                     }
-                    if (options != null) {
-                        try {
-                            @Nullable final String regionName = options.has("regionName") ? options.getString("regionName") : null;
-                            @Nullable final String styleUrl = options.has("styleUrl") ? options.getString("styleUrl") : null;
-                            OfflineController offlineController = getOfflineController(mapLayout, styleUrl, activity);
-                            offlineController.resumeDownload(regionName);
-                        } catch (Exception e) {
-                            e.printStackTrace();
-                        }
-                    }
-                    callbackContext.success();
-                });
-            } else if (GET_OFFLINE_REGION_LIST.equals(action)) {
-                cordova.getThreadPool().execute(() -> {
-                    try {
-                        @Nullable final String styleUrl = args.optString(0).equals("") ? null : args.optString(0);
-                        final OfflineController offlineController = getOfflineController(mapLayout, styleUrl, activity);
-                        final ArrayList<OfflineController.OfflineRegionState> states = offlineController.getOfflineRegionStates();
-                        final ArrayList<JSONObject> res = new ArrayList<>();
-                        for (OfflineController.OfflineRegionState state: states) {
-                            res.add(toJSONRegionState(state));
-                        }
-                        callbackContext.success(new JSONArray(res));
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+                }
+            });
+        });
+        dispatcher.register(SET_INTERACTIVE_LAYERS, UI, true, (args, callbackContext, mapCtrl) -> {
+            mapCtrl.setInteractiveLayers(
+                    args.isNull(0) ? null : args.getJSONArray(0),
+                    args.isNull(1) ? 0 : (float) args.getDouble(1));
+            callbackContext.success();
+        });
+        // Selected features by id, highlighted by the selection styles of the layers.
+        dispatcher.register(SELECT_FEATURES, UI, true, (args, callbackContext, mapCtrl) -> {
+            mapCtrl.selectFeatures(toStringList(args.getJSONArray(0)), args.optBoolean(1));
+            callbackContext.success(new JSONArray(mapCtrl.getSelectedFeatureIds()));
+        });
+        dispatcher.register(DESELECT, UI, true, (args, callbackContext, mapCtrl) -> {
+            mapCtrl.deselectFeatures(args.isNull(0) ? null : toStringList(args.getJSONArray(0)));
+            callbackContext.success(new JSONArray(mapCtrl.getSelectedFeatureIds()));
+        });
+        dispatcher.register(SET_SELECTION_STYLE, UI, true, (args, callbackContext, mapCtrl) -> {
+            mapCtrl.setSelectionStyle(args.getString(0), args.isNull(1) ? null : args.getJSONObject(1));
+            callbackContext.success();
+        });
+
+        // Map events. The callbacks are kept alive.
+        // Camera and frame events can be coalesced, their first argument is {coalesce?: 'frame' | number}.
+        dispatcher.register(ADD_ON_WILL_START_LOADING_MAP_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnWillStartLoadingMapListener(keepCallback(callbackContext)));
+        dispatcher.register(ADD_ON_WILL_START_RENDERING_MAP_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnWillStartRenderingMapListener(keepCallback(callbackContext)));
+        dispatcher.register(ADD_ON_CAMERA_WILL_CHANGE_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnCameraWillChangeListener(keepCallback(callbackContext)));
+        dispatcher.register(ADD_ON_CAMERA_DID_CHANGE_LISTENER, UI, true, (args, callbackContext, mapCtrl) ->
+                mapCtrl.addOnCameraDidChangeListener(new EventStream(ADD_ON_CAMERA_DID_CHANGE_LISTENER, args.optJSONObject(0), callbackContext, mapCtrl::writeCameraPosition)));
+        dispatcher.register(ADD_ON_DID_FINISH_LOADING_STYLE_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnDidFinishLoadingStyleListener(keepCallback(callbackContext)));
+        dispatcher.register(ADD_ON_SOURCE_CHANGED_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnSourceChangedListener(keepCallback(callbackContext)));
+        dispatcher.register(ADD_ON_WILL_START_RENDERING_FRAME_LISTENER, UI, true, (args, callbackContext, mapCtrl) ->
+                mapCtrl.addOnWillStartRenderingFrameListener(new EventStream(ADD_ON_WILL_START_RENDERING_FRAME_LISTENER, args.optJSONObject(0), callbackContext, mapCtrl::writeCameraPosition)));
+        dispatcher.register(ADD_ON_DID_FINISH_RENDERING_FRAME_LISTENER, UI, true, (args, callbackContext, mapCtrl) ->
+                mapCtrl.addOnDidFinishRenderingFrameListener(new EventStream(ADD_ON_DID_FINISH_RENDERING_FRAME_LISTENER, args.optJSONObject(0), callbackContext, mapCtrl::writeCameraPosition)));
+        dispatcher.register(ADD_ON_DID_FINISH_LOADING_MAP_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnDidFinishLoadingMapListener(keepCallback(callbackContext)));
+        dispatcher.register(ADD_ON_DID_FINISH_RENDERING_MAP_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnDidFinishRenderingMapListener(fully -> sendKeepCallback(callbackContext, fully ? "{\"fully\":true}" : "{\"fully\":false}")));
+        dispatcher.register(ADD_ON_MOVE_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnMoveListener(keepCallback(callbackContext)));
+        dispatcher.register(ADD_ON_FLING_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnFlingListener(keepCallback(callbackContext)));
+        dispatcher.register(ADD_ON_ROTATE_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnRotateListener(keepCallback(callbackContext)));
+        dispatcher.register(ADD_ON_SCALE_LISTENER, UI, true, (args, callbackContext, mapCtrl) -> mapCtrl.addOnScaleListener(keepCallback(callbackContext)));
+    }
 
-                });
-            } else if (DELETE_OFFLINE_REGION.equals(action)) {
-                cordova.getThreadPool().execute(() -> {
-                    final JSONObject options;
-                    try {
-                        options = args.getJSONObject(0);
-                        @Nullable final String regionName = options.has("regionName") ? options.getString("regionName") : null;
-                        @Nullable final String styleUrl = options.has("styleUrl") ? options.getString("styleUrl") : null;
-                        final OfflineController offlineController = getOfflineController(mapLayout, styleUrl, activity);
-                        offlineController.removeOfflineRegion(
-                                regionName,
-                                () -> callbackContext.success(1),
-                                () -> callbackContext.success(0)
-                        );
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-                });
+    private void getMetrics(final CordovaArgs args, final CallbackContext callbackContext, @Nullable MapController mapCtrl) throws JSONException {
+        final JSONArray maps = new JSONArray();
+        final JSONArray events = new JSONArray();
+        @Nullable JSONObject spatialIndexes = null;
+        for (MapLayout mapLayout : mapLayouts.values()) {
+            maps.put(mapLayout.mapId);
+            for (EventStream eventStream : mapLayout.getMapCtrl().getEventStreams()) {
+                events.put(eventStream.getStats());
+            }
+            // Summed over the maps
+            final JSONObject stats = mapLayout.getMapCtrl().getSpatialIndexStats();
+            if (spatialIndexes == null) {
+                spatialIndexes = stats;
             } else {
+                spatialIndexes.put("sources", spatialIndexes.getInt("sources") + stats.getInt("sources"));
+                spatialIndexes.put("items", spatialIndexes.getInt("items") + stats.getInt("items"));
+                spatialIndexes.put("bytes", spatialIndexes.getLong("bytes") + stats.getLong("bytes"));
+            }
+        }
+        callbackContext.success(new JSONObject()
+                .put("commands", dispatcher.getMetrics(args.optBoolean(0)))
+                .put("maps", maps)
+                .put("events", events)
+                .put("spatialIndexes", spatialIndexes != null ? spatialIndexes : JSONObject.NULL)
+                .put("mapViewPool", MapViewPool.getStats())
+                .put("images", BitmapCache.getStats())
+                .put("svgCache", imageLoader.getSvgCacheStats())
+                .put("expressions", ExpressionCache.getStats())
+                .put("runtime", getRuntimeMetrics()));
+    }
+
+    /**
+     * @return {gcCount, gcTimeMs, heapUsedBytes}, the GC counters are cumulative since the start of the process,
+     * -1 before Android M or when the runtime does not report them
+     */
+    private static JSONObject getRuntimeMetrics() throws JSONException {
+        final Runtime runtime = Runtime.getRuntime();
+        long gcCount = -1;
+        long gcTimeMs = -1;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            gcCount = readRuntimeStat("art.gc.gc-count");
+            gcTimeMs = readRuntimeStat("art.gc.gc-time");
+        }
+        return new JSONObject()
+                .put("gcCount", gcCount)
+                .put("gcTimeMs", gcTimeMs)
+                .put("heapUsedBytes", runtime.totalMemory() - runtime.freeMemory());
+    }
 
+    /**
+     * @return the value of the stat, -1 if it is unknown or not a number
+     */
+    private static long readRuntimeStat(String name) {
+        final String value = Debug.getRuntimeStat(name);
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-                // need a map for all following actions
-                if (mapLayout == null || !mapLayout.getMapCtrl().isReady) {
-                    callbackContext.error(new JSONObject("{error: 'MAP_IS_NOT_READY'}"));
-                    return true;
-                }
+    /**
+     * args: [values, {watchId?, coalesce?}?]
+     * With a watchId the points are converted again after each camera change, at most once per frame
+     * unless coalesce says otherwise, until UNWATCH_PROJECTION.
+     */
+    private void projectMany(String action, boolean isUnproject, CordovaArgs args, CallbackContext callbackContext, MapController mapCtrl) throws JSONException {
+        final PointProjection projection = new PointProjection(isUnproject, PointProjection.readValues(action, args.getJSONArray(0)));
+        final JSONObject options = args.optJSONObject(1);
+        if (options == null || options.isNull("watchId")) {
+            callbackContext.sendPluginResult(new JsonPluginResult(projection.write(mapCtrl.getProjection())));
+            return;
+        }
 
-                final MapController mapCtrl = mapLayout.getMapCtrl();
-                @Nullable final String styleUrl = args.optString(0).equals("") ? null : args.optString(0);
-                final OfflineController offlineController = getOfflineController(mapLayout, styleUrl, activity);
-                Runnable callback = () -> mapLayout.setContainer(args, callbackContext);
-                switch (action) {
-                    case HIDE:
-                        activity.runOnUiThread(() -> {
-                            mapLayout.getMapCtrl().getMapView().setVisibility(View.GONE);
-                            mapLayout.getMapCtrl().deselectFeature();
-                            if (offlineController.isDownloading())
-                                offlineController.pauseDownload("");
-                            callbackContext.success();
-                        });
-                        break;
-                    case DESTROY:
-                        activity.runOnUiThread(() -> {
-                            if (offlineController.isDownloading())
-                                offlineController.pauseDownload("");
-                            mapLayout = null;
-                            pluginLayout.detachViewGroup();
-                        });
-                        break;
-                    case RESIZE:
-                        activity.runOnUiThread(callback);
-                        break;
-                    case GET_ZOOM:
-                        activity.runOnUiThread(() -> {
-                            callbackContext.success(String.valueOf(mapCtrl.getZoom()));
-                        });
-                        break;
-                    case SET_ZOOM:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                if (args.isNull(0)) {
-                                    throw new JSONException(action + "needs a zoom level");
-                                }
-                                double zoom = args.getDouble(0);
-                                mapCtrl.setZoom(zoom);
-                                callbackContext.success();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error(e.getMessage());
-                            }
-                        });
-                        break;
-                    case ZOOM_TO:  // todo allow AnimationOptions
-                        activity.runOnUiThread(() -> {
-                            try {
-                                if (args.isNull(0)) {
-                                    throw new JSONException(action + "needs a zoom level");
-                                }
-                                double zoom = args.getDouble(0);
-                                mapCtrl.zoomTo(zoom);
-                                callbackContext.success();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case GET_CENTER:
-                        activity.runOnUiThread(() -> {
-                            LatLng latLng = mapCtrl.getCenter();
-                            JSONObject json;
-                            try {
-                                json = new JSONObject()
-                                        .put("lat", latLng.getLatitude())
-                                        .put("lng", latLng.getLongitude());
-                                callbackContext.success(json);
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case SET_CENTER:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                if (args.isNull(0)) {
-                                    throw new JSONException(action + "need a [long, lat] coordinates");
-                                }
-                                JSONArray center = args.getJSONArray(0);
-                                mapCtrl.setCenter(center.getDouble(0), center.getDouble(1));
-                                callbackContext.success();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case SCROLL_MAP:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                if (args.isNull(0)) {
-                                    throw new JSONException(action + "need a [x, y] screen coordinates");
-                                }
-                                JSONArray delta = args.getJSONArray(0);
-                                mapCtrl.scrollMap(delta.getLong(0), delta.getLong(1));
-                                callbackContext.success();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case SET_PITCH:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                if (args.isNull(0)) {
-                                    throw new JSONException(action + " need a pitch value");
-                                }
-                                mapCtrl.setTilt(args.getDouble(0));
-                                callbackContext.success();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case GET_PITCH:
-                        activity.runOnUiThread(() -> {
-                            callbackContext.success(String.valueOf(mapCtrl.getTilt()));
-                        });
-                        break;
-                    case FLY_TO:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                JSONObject cameraPosition = args.isNull(0) ? null : args.getJSONObject(0);
-                                if (cameraPosition == null)
-                                    callbackContext.error("Need a camera position");
-                                else {
-                                    mapCtrl.flyTo(cameraPosition);
-                                    callbackContext.success("Animation started.");
-                                }
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case ADD_MAP_CLICK_CALLBACK:
-                        activity.runOnUiThread(() -> {
-                            mapLayout.mMarkerCallbackContext = callbackContext;
-                            mapCtrl.addMapClickCallback(() -> {
-                                if (mapLayout.mMarkerCallbackContext != null) {
-                                    try {
-                                        JSONObject json = new JSONObject(mapCtrl.getSelecteFeatureCollection());
-                                        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, json);
-                                        pluginResult.setKeepCallback(true);
-                                        mapLayout.mMarkerCallbackContext.sendPluginResult(pluginResult);
-                                    } catch (JSONException e) {
-                                        e.printStackTrace();
-                                        callbackContext.error("action " + e.getMessage());
-                                    }
-                                }
-                            });
-                        });
-                        break;
-                    case ADD_SOURCE:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                final String sourceId = args.getString(0);
-                                if (sourceId.isEmpty())
-                                    throw new JSONException(action + " need a source ID");
-                                if (args.isNull(1))
-                                    throw new JSONException(action + " no source provided");
-                                if (!args.getJSONObject(1).getString("type").equals("geojson"))
-                                    throw new JSONException(action + " only handle GeoJSON");
-
-
-                                final JSONObject source = args.getJSONObject(1);
-                                final JSONObject sourceData = source.getJSONObject("data");
-
-                                // We can pass a empty source
-                                if (sourceData != null && sourceData.length() > 0) {
-
-                                    // Validate GeoJSON data.
-                                    final GeoJSONObject geoJSON = GeoJSON.parse(source.getJSONObject("data"));
-
-                                    // This plugin has limited GeoJSON types. It supports:
-                                    // - FeatureCollection of point feature
-                                    // - Single point feature
-                                    final String sourceType = geoJSON.getType();
-                                    final boolean isFeatureCollection = sourceType.equals("FeatureCollection");
-                                    final boolean isFeature = sourceType.equals("Feature");
-
-                                    if (!isFeature && !isFeatureCollection) {
-                                        throw new JSONException("Only support Feature or FeatureCollection source type");
-                                    }
-
-                                    if (isFeatureCollection) {
-                                        final JSONArray features = sourceData.getJSONArray("features");
-                                        final boolean isClusterEnabled = !source.isNull("cluster") && source.getBoolean("cluster");
-                                        final int clusterMaxZoom = source.isNull("clusterMaxZoom") ? 14 : source.getInt("clusterMaxZoom");
-                                        final int clusterRadius = source.isNull("clusterRadius") ? 50 : source.getInt("clusterRadius");
-                                        if (features.length() > 0) {
-                                            final String type = features
-                                                    .getJSONObject(0)
-                                                    .getJSONObject("geometry")
-                                                    .getString("type");
-                                            if (!type.equals("Point")) {
-                                                throw new JSONException("Only support Feature of type Point");
-                                            }
-                                        }
-                                        final FeatureCollection featureCollection = FeatureCollection.fromJson(sourceData.toString());
-                                        mapCtrl.addFeatureCollection(sourceId, featureCollection, isClusterEnabled, clusterMaxZoom, clusterRadius);
-                                    } else {
-                                        final String type = sourceData
-                                                .getJSONObject("geometry")
-                                                .getString("type");
-                                        if (!type.equals("Point")) {
-                                            throw new JSONException("Only support Feature of type Point");
-                                        }
-                                        final Feature feature = Feature.fromJson(sourceData.toString());
-                                        mapCtrl.addFeature(sourceId, feature);
-                                        callbackContext.success();
-                                    }
-                                } else {
-                                    mapCtrl.addGeoJsonSource(sourceId);
-                                    callbackContext.success();
-                                }
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case SET_GEO_JSON:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                final String sourceId = args.getString(0);
-                                if (sourceId.isEmpty())
-                                    throw new JSONException(action + " need a source ID");
-                                if (args.isNull(1))
-                                    throw new JSONException(action + " no geojson data provided");
-
-                                // Validate GeoJSON data.
-                                final GeoJSONObject geoJSON = GeoJSON.parse(args.getJSONObject(1));
-
-                                // This plugin has limited GeoJSON types. It supports:
-                                // - FeatureCollection of point feature
-                                // - Single point feature
-                                final JSONObject sourceData = args.getJSONObject(1);
-                                final String sourceType = geoJSON.getType();
-                                final boolean isFeatureCollection = sourceType.equals("FeatureCollection");
-                                final boolean isFeature = sourceType.equals("Feature");
-
-                                if (!isFeature && !isFeatureCollection) {
-                                    throw new JSONException("Only support Feature or FeatureCollection source type");
-                                }
-
-                                if (isFeatureCollection) {
-                                    final JSONArray features = sourceData.getJSONArray("features");
-                                    if (features.length() > 0) {
-                                        final String type = features
-                                                .getJSONObject(0)
-                                                .getJSONObject("geometry")
-                                                .getString("type");
-                                        if (!type.equals("Point")) {
-                                            throw new JSONException("Only support Feature of type Point");
-                                        }
-                                    }
-                                    final FeatureCollection featureCollection = FeatureCollection.fromJson(sourceData.toString());
-                                    mapCtrl.setSourceGeoJsonData(sourceId, featureCollection);
-                                } else {
-                                    final String type = sourceData
-                                            .getJSONObject("geometry")
-                                            .getString("type");
-                                    if (!type.equals("Point")) {
-                                        throw new JSONException("Only support Feature of type Point");
-                                    }
-                                    final Feature feature = Feature.fromJson(sourceData.toString());
-                                    mapCtrl.setSourceGeoJsonData(sourceId, feature);
-                                }
-                                callbackContext.success();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case REMOVE_SOURCE:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                if (args.isNull(0))
-                                    throw new JSONException(action + " no id provided");
-
-                                final JSONObject result = new JSONObject()
-                                        .put("success", mapCtrl.removeSource(args.getString(0)));
-                                callbackContext.success(result);
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case ADD_LAYER:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                final JSONObject jsonLayer = args.getJSONObject(0);
-
-                                String layerType = jsonLayer.getString("type");
-                                if (!layerType.equals("symbol") && !layerType.equals("circle"))
-                                    throw new JSONException(action + " only symbol layer and circle are currently supported");
-
-                                if (!jsonLayer.has("source"))
-                                    throw new JSONException(action + " no source provided");
-
-                                final String layerId = jsonLayer.getString("id");
-                                final Integer minZoom = jsonLayer.optInt("minzoom", 0);
-                                final Integer maxZoom = jsonLayer.optInt("maxzoom", 24);
-                                final Expression filter = jsonLayer.has("filter")
-                                        ? Expression.Converter.convert(jsonLayer.getJSONArray("filter").toString())
-                                        : null;
-                                final boolean isRefSource = !jsonLayer.optString("source", "").isEmpty();
-                                if (isRefSource) {
-                                    String beforeId = null;
-                                    if (args.getString(1) != null && !args.getString(1).equals("null")) {
-                                        beforeId = args.getString(1);
-                                    }
-                                    final String sourceId = jsonLayer.getString("source");
-                                    if (layerType.equals("symbol")) {
-                                        mapCtrl.addSymbolLayer(
-                                                layerId,
-                                                sourceId,
-                                                minZoom,
-                                                maxZoom,
-                                                filter,
-                                                beforeId
-                                        );
-                                    }
-                                    else mapCtrl.addCircleLayer(
-                                            layerId,
-                                            sourceId,
-                                            minZoom,
-                                            maxZoom,
-                                            filter,
-                                            beforeId
-                                    );
-                                }
-
-                                if (jsonLayer.has("layout")) {
-                                    final JSONObject layout = jsonLayer.getJSONObject("layout");
-                                    Iterator<String> keys = layout.keys();
-                                    while (keys.hasNext()) {
-                                        String name = keys.next();
-                                        switch (name) {
-                                            case "icon-image":
-                                                final String imageId = layout.getString(name);
-                                                mapCtrl.setLayoutPropertyIconImage(layerId, imageId);
-                                                break;
-                                            case "icon-offset":
-                                                final JSONArray jsonOffsetArray = layout.getJSONArray(name);
-                                                final Float[] offset = {(float) jsonOffsetArray.getDouble(0), (float) jsonOffsetArray.getDouble(1)};
-                                                mapCtrl.setLayoutPropertyOffset(layerId, offset);
-                                                break;
-                                            case "icon-size":
-                                                final String iconSize = layout.getString(name);
-                                                mapCtrl.setLayoutPropertySize(layerId, iconSize);
-                                                break;
-                                            case "icon-allow-overlap":
-                                                final boolean isOverlap = layout.getBoolean(name);
-                                                mapCtrl.setLayoutPropertyIconOverlap(layerId, isOverlap);
-                                                break;
-                                            case "text-field":
-                                                final String fieldId = layout.getString(name);
-                                                mapCtrl.setLayoutPropertyTextField(layerId, fieldId);
-                                                break;
-                                            case "text-size":
-                                                final String textSize = layout.getString(name);
-                                                mapCtrl.setLayoutPropertyTextSize(layerId, textSize);
-                                                break;
-                                            case "text-font":
-                                                final String textFont = layout.getString(name);
-                                                mapCtrl.setLayoutPropertyTextFont(layerId, textFont);
-                                        }
-                                    }
-                                }
-
-                                if (jsonLayer.has("paint")) {
-                                    final JSONObject paintField = jsonLayer.getJSONObject("paint");
-                                    Iterator<String> keys = paintField.keys();
-                                    while (keys.hasNext()) {
-                                        String name = keys.next();
-                                        switch (name) {
-                                            case "circle-color":
-                                                mapCtrl.setPaintPropertyCircleColor(layerId, paintField.getString(name));
-                                                break;
-                                            case "circle-radius":
-                                                mapCtrl.setPaintPropertyCircleRadius(layerId, paintField.getString(name));
-                                                break;
-                                            case "text-color":
-                                                mapCtrl.setPaintPropertyTextColor(layerId, paintField.getString(name));
-                                                break;
-                                            case "text-halo-blur":
-                                                mapCtrl.setPaintPropertyTextHaloBlur(layerId, paintField.getString(name));
-                                                break;
-                                            case "text-halo-color":
-                                                mapCtrl.setPaintPropertyTextHaloColor(layerId, paintField.getString(name));
-                                                break;
-                                            case "text-halo-width":
-                                                mapCtrl.setPaintPropertyTextHaloWidth(layerId, paintField.getString(name));
-                                                break;
-                                        }
-                                    }
-                                }
-                                callbackContext.success();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case REMOVE_LAYER:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                if (args.isNull(0))
-                                    throw new JSONException(action + " no id provided");
-
-                                final JSONObject result = new JSONObject()
-                                        .put("success", mapCtrl.removeLayer(args.getString(0)));
-                                callbackContext.success(result);
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case SET_LAYOUT_PROPERTY:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                final String layerId = args.optString(0);
-                                if (layerId.isEmpty())
-                                    throw new JSONException(action + " no layerId provided");
-
-                                final JSONObject property = args.optJSONObject(1);
-
-                                if (property == null) {
-                                    throw new JSONException(action + " no property provided");
-                                }
-                                if (property.optString("icon-image") != null) {
-                                    final String imageId = property.getString("icon-image");
-                                    mapCtrl.setLayoutPropertyIconImage(layerId, imageId);
-                                }
-                                if (property.optString("icon-offset") != null) {
-                                    final JSONArray jsonOffsetArray = property.getJSONArray("icon-offset");
-                                    final Float[] offset = {(float) jsonOffsetArray.getDouble(0), (float) jsonOffsetArray.getDouble(1)};
-                                    mapCtrl.setLayoutPropertyOffset(layerId, offset);
-                                }
-                                if (property.optString("icon-size") != null) {
-                                    final String size = property.getString("icon-size");
-                                    mapCtrl.setLayoutPropertySize(layerId, size);
-                                }
-                                if (property.optString("icon-allow-overlap") != null) {
-                                    final boolean isOverlap = property.getBoolean("icon-allow-overlap");
-                                    mapCtrl.setLayoutPropertyIconOverlap(layerId, isOverlap);
-                                }
-                                if (property.optString("text-field") != null) {
-                                    final String fieldId = property.getString("text-field");
-                                    mapCtrl.setLayoutPropertyTextField(layerId, fieldId);
-                                }
-                                if (property.optString("text-size") != null) {
-                                    final String textSize = property.getString("text-size");
-                                    mapCtrl.setLayoutPropertyTextSize(layerId, textSize);
-                                }
-                                if (property.optString("text-font") != null) {
-                                    final String textFont = property.getString("text-font");
-                                    mapCtrl.setLayoutPropertyTextFont(layerId, textFont);
-                                }
-
-                                callbackContext.success();
-                            } catch(JSONException e){
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case ADD_IMAGE:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                final String imageId = args.getString(0);
-                                final JSONObject jsonImage = args.getJSONObject(1);
-
-                                if (jsonImage.isNull("width"))
-                                    throw new JSONException(action + " no width found");
-
-                                if (jsonImage.isNull("height"))
-                                    throw new JSONException(action + " no height found");
-
-                                if (jsonImage.isNull("path"))
-                                    throw new JSONException(action + " no path found. Cordova Mapbox Plugin support only local path file. Note that should be a path (\"/foo/bar\"), not an uri (\"file:///foo/bar\")");
-
-                                mapCtrl.addImage(imageId, jsonImage);
-                                callbackContext.success();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case REMOVE_IMAGE:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                if (args.isNull(0))
-                                    throw new JSONException(action + " no id provided");
-
-                                mapCtrl.removeImage(args.getString(0));
-                                callbackContext.success();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case DESELECT:
-                        activity.runOnUiThread(() -> {
-                            mapCtrl.deselectFeature();
-                            callbackContext.success();
-                        });
-                    case SET_CLICKABLE:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                pluginLayout.setClickable(args.getBoolean(0));
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case SET_DEBUG:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                pluginLayout.setDebug(args.getInt(0) != 0);
-                                callbackContext.success();
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case CONVERT_COORDINATES:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                JSONObject coords = args.getJSONObject(0);
-                                PointF point = mapCtrl.convertCoordinates(new LatLng(
-                                        coords.getDouble("lat"),
-                                        coords.getDouble("lng")
-                                ));
-                                callbackContext.success(new JSONObject("{\"x\": " + point.x + ", \"y\": " + point.y + "}"));
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case CONVERT_POINT:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                JSONObject point = args.getJSONObject(0);
-                                LatLng latLng = mapCtrl.convertPoint(new PointF(
-                                        (float) point.getDouble("x"),
-                                        (float) point.getDouble("y")
-                                ));
-                                callbackContext.success(new JSONObject("{\"lat\": " + latLng.getLatitude() + ", \"lng\": " + latLng.getLongitude() + "}"));
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error("action " + e.getMessage());
-                            }
-                        });
-                        break;
-                    case ADD_ON_WILL_START_LOADING_MAP_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnWillStartLoadingMapListener(cameraPosition -> {
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, cameraPosition);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-                        }));
-                        break;
-                    case ADD_ON_WILL_START_RENDERING_MAP_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnWillStartRenderingMapListener(cameraPosition -> {
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, cameraPosition);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-                        }));
-                        break;
-                    case ADD_ON_CAMERA_WILL_CHANGE_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnCameraWillChangeListener(cameraPosition -> {
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, cameraPosition);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-                        }));
-                        break;
-                    case ADD_ON_CAMERA_DID_CHANGE_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnCameraDidChangeListener(cameraPosition -> {
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, cameraPosition);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-                        }));
-                        break;
-                    case ADD_ON_DID_FINISH_LOADING_STYLE_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnDidFinishLoadingStyleListener(cameraPosition -> {
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, cameraPosition);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-                        }));
-                        break;
-                    case ADD_ON_SOURCE_CHANGED_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnSourceChangedListener(cameraPosition -> {
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, cameraPosition);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-                        }));
-                        break;
-                    case ADD_ON_WILL_START_RENDERING_FRAME_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnWillStartRenderingFrameListener(cameraPosition -> {
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, cameraPosition);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-                        }));
-                        break;
-                    case ADD_ON_DID_FINISH_RENDERING_FRAME_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnDidFinishRenderingFrameListener(cameraPosition -> {
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, cameraPosition);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-                        }));
-                        break;
-                    case ADD_ON_DID_FINISH_LOADING_MAP_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnDidFinishLoadingMapListener(cameraPosition -> {
-                            PluginResult result = new PluginResult(PluginResult.Status.OK, cameraPosition);
-                            result.setKeepCallback(true);
-                            callbackContext.sendPluginResult(result);
-                        }));
-                        break;
-                    case ADD_ON_DID_FINISH_RENDERING_MAP_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnDidFinishRenderingMapListener(fully -> {
-                            try {
-                                JSONObject json = new JSONObject();
-                                json.put("fully", fully);
-                                PluginResult result = new PluginResult(PluginResult.Status.OK, json);
-                                result.setKeepCallback(true);
-                                callbackContext.sendPluginResult(result);
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                            }
-                        }));
-                        break;
-                    case SET_CONTAINER:
-                        activity.runOnUiThread(callback);
-                        break;
-                    case GET_BOUNDS:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                final LatLngBounds latLngBounds = mapCtrl.getBounds();
-                                final JSONArray sw = new JSONArray();
-                                final JSONArray ne = new JSONArray();
-                                try {
-                                    sw.put(latLngBounds.getSouthWest().getLongitude());
-                                    sw.put(latLngBounds.getSouthWest().getLatitude());
-                                    ne.put(latLngBounds.getNorthEast().getLongitude());
-                                    ne.put(latLngBounds.getNorthEast().getLatitude());
-                                } catch (JSONException e) {
-                                    e.printStackTrace();
-                                }
-                                final JSONObject result = new JSONObject();
-                                result.put("sw", sw);
-                                result.put("ne", ne);
-                                callbackContext.success(result);
-                            } catch (JSONException e) {
-                                e.printStackTrace();
-                                callbackContext.error(e.getMessage());
-                            }
-                        });
-                        break;
-                    case GET_CAMERA_POSITION:
-                        activity.runOnUiThread(() -> {
-                            try {
-                                callbackContext.success(mapCtrl.getJSONCameraGeoPosition());
-                            } catch (JSONException e) {
-                                callbackContext.error(e.getMessage());
-                                e.printStackTrace();
-                            }
-                        });
-                        break;
-
-                    case ADD_ON_MOVE_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnMoveListener(payload -> {
-                            try {
-                                PluginResult result = new PluginResult(PluginResult.Status.OK, payload.toJSON());
-                                result.setKeepCallback(true);
-                                callbackContext.sendPluginResult(result);
-                            } catch (JSONException e) {
-                                callbackContext.error(e.getMessage());
-                                e.printStackTrace();
-                            }
-                        }));
-                    case ADD_ON_FLING_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnFlingListener(payload -> {
-                            try {
-                                PluginResult result = new PluginResult(PluginResult.Status.OK, payload.toJSON());
-                                result.setKeepCallback(true);
-                                callbackContext.sendPluginResult(result);
-                            } catch (JSONException e) {
-                                callbackContext.error(e.getMessage());
-                                e.printStackTrace();
-                            }
-                        }));
-                    case ADD_ON_ROTATE_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnRotateListener(payload -> {
-                            try {
-                                PluginResult result = new PluginResult(PluginResult.Status.OK, payload.toJSON());
-                                result.setKeepCallback(true);
-                                callbackContext.sendPluginResult(result);
-                            } catch (JSONException e) {
-                                callbackContext.error(e.getMessage());
-                                e.printStackTrace();
-                            }
-                        }));
-                    case ADD_ON_SCALE_LISTENER:
-                        activity.runOnUiThread(() -> mapCtrl.addOnScaleListener(payload -> {
-                            try {
-                                PluginResult result = new PluginResult(PluginResult.Status.OK, payload.toJSON());
-                                result.setKeepCallback(true);
-                                callbackContext.sendPluginResult(result);
-                            } catch (JSONException e) {
-                                callbackContext.error(e.getMessage());
-                                e.printStackTrace();
-                            }
-                        }));
-                    default:
-                        return false;
-                }
+        if (!options.has("coalesce")) options.put("coalesce", "frame");
+        final EventStream eventStream = new EventStream(action, options, callbackContext, () -> projection.write(mapCtrl.getProjection()));
+        sendKeepCallback(callbackContext, projection.write(mapCtrl.getProjection()));
+        mapCtrl.watchProjection(options.getInt("watchId"), eventStream);
+    }
+
+    /**
+     * args: [{id?, ...options}], the map id is the default one when omitted.
+     */
+    private void show(final CordovaArgs args, final CallbackContext callbackContext, @Nullable MapController mapCtrl) throws JSONException {
+        final JSONObject options = args.getJSONObject(0);
+        final String mapId = options.isNull("id") ? CommandDispatcher.DEFAULT_MAP_ID : options.getString("id");
+        @Nullable MapLayout mapLayout = mapLayouts.get(mapId);
+        if (mapLayout != null) {
+            if (mapLayout.getMapCtrl().getMapView().getVisibility() == View.GONE) {
+                mapLayout.getMapCtrl().getMapView().setVisibility(View.VISIBLE);
+                callbackContext.success();
+            } else {
+                callbackContext.error("Map is already displayed");
+            }
+            return;
+        }
+
+        mapLayout = new MapLayout(mapId, args, this, activity);
+        mapLayouts.put(mapId, mapLayout);
+        /* If it is the first map, we set the general layout.
+         * Arrange the layers. The final order is:
+         * - root (Application View)
+         *   - pluginLayout
+         *     - frontLayout
+         *       - webView
+         *     - scrollView
+         *       - scrollFrameLayout
+         *         - map
+         *         - background
+         */
+
+        pluginLayout.buildViewHierarchy(mapId, mapLayout.getViewGroup());
+        mapLayout.setContainer(args, callbackContext);
+
+        // Wait for the map to be ready then callback JS. A recycled map can already be.
+        if (mapLayout.getMapCtrl().isReady) {
+            callbackContext.success();
+        } else {
+            mapLayout.getMapCtrl().mapReady = callbackContext::success;
+        }
+    }
+
+    private void downloadRegion(final CordovaArgs args, final CallbackContext callbackContext, @Nullable MapController mapCtrl) throws Exception {
+        if (args.isNull(0)) {
+            throw new JSONException(DOWNLOAD_REGION + " needs options object type of {\n" +
+                    "                            regionName: string // must be unique.\n" +
+                    "                            styleUrl?: string // only when the map is not display yet or the style is different from the current one.\n" +
+                    "                            bounds: {sw: [number, number], ne: [number, number]}\n" +
+                    "                            minZoom: number\n" +
+                    "                            maxZoom: number\n" +
+                    "                        },");
+        }
+        final JSONObject options = args.getJSONObject(0);
+        @Nullable final String styleUrl = options.has("styleUrl") ? options.getString("styleUrl") : null;
+        final OfflineController offlineController = getOfflineController(mapCtrl, styleUrl, activity);
+        final String regionName = options.getString("regionName");
+
+        final JSONObject jsonBounds = options.getJSONObject("bounds");
+        final JSONArray NE = jsonBounds.getJSONArray("ne");
+        final JSONArray SW = jsonBounds.getJSONArray("sw");
+        final LatLngBounds latLngBounds = new LatLngBounds.Builder()
+                .include(new LatLng(NE.getDouble(0), NE.getDouble(1)))
+                .include(new LatLng(SW.getDouble(0), SW.getDouble(1)))
+                .build();
+        final int minZoom = options.getInt("minZoom");
+        final int maxZoom = options.getInt("maxZoom");
+
+        Runnable progressCallback = () -> {
+            final OfflineController.OfflineRegionState dlState = offlineController.getOfflineRegionDownloadState(regionName);
+            if (dlState != null) {
+                PluginResult result = new PluginResult(PluginResult.Status.OK, toJSONRegionState(dlState));
+                result.setKeepCallback(true);
+                callbackContext.sendPluginResult(result);
+            }
+        };
+
+        ArrayList<OfflineController.OfflineRegionState> states = offlineController.getOfflineRegionStates();
+        boolean isAlreadyDownloaded = false;
+        for (OfflineController.OfflineRegionState state: states) {
+            if (state.regionName.equals("regionName")) {
+                isAlreadyDownloaded = true;
             }
-        } catch (Throwable t) {
-            t.printStackTrace();
-            callbackContext.error(t.getMessage());
         }
-        return true;
+        if (!isAlreadyDownloaded) {
+            offlineController.downloadRegion(regionName, latLngBounds, minZoom, maxZoom, progressCallback);
+        } else {
+            callbackContext.error(new JSONObject("{error: 'MAP_EXISTS'}"));
+        }
+    }
+
+    private void addLayer(final CordovaArgs args, final CallbackContext callbackContext, final MapController mapCtrl) throws JSONException {
+        final JSONObject jsonLayer = args.getJSONObject(0);
+
+        final String layerType = jsonLayer.getString("type");
+        final boolean isBackground = layerType.equals("background");
+        if (!isBackground && !jsonLayer.has("source"))
+            throw new JSONException(ADD_LAYER + " no source provided");
+
+        final String layerId = jsonLayer.getString("id");
+        final JSONObject properties = LayerProperties.merge(
+                jsonLayer.optJSONObject("layout"),
+                jsonLayer.optJSONObject("paint"));
+        final boolean isRefSource = isBackground || !jsonLayer.optString("source", "").isEmpty();
+        if (!isRefSource) {
+            // No source to create the layer, only update an existing one
+            mapCtrl.setLayerProperties(new JSONObject().put(layerId, properties));
+            callbackContext.success();
+            return;
+        }
+
+        String beforeId = null;
+        if (args.getString(1) != null && !args.getString(1).equals("null")) {
+            beforeId = args.getString(1);
+        }
+        mapCtrl.addLayer(
+                layerType,
+                layerId,
+                isBackground ? null : jsonLayer.getString("source"),
+                getSourceLayer(jsonLayer),
+                (float) jsonLayer.optDouble("minzoom", 0),
+                (float) jsonLayer.optDouble("maxzoom", 24),
+                jsonLayer.has("filter") ? ExpressionCache.get(jsonLayer.getJSONArray("filter").toString()) : null,
+                LayerProperties.read(properties),
+                beforeId
+        );
+        callbackContext.success();
+    }
+
+    /**
+     * args: [sourceId, {bounds?: {sw, ne}, center?: [lng, lat], radius?, limit?, offset?, idsOnly?}]
+     * Either bounds, or a center and a radius in meters.
+     * Result: {total, features: FeatureCollection} or {total, ids} with idsOnly.
+     */
+    private void querySourceFeatures(final CordovaArgs args, final CallbackContext callbackContext, MapController mapCtrl) throws JSONException, InterruptedException, ExecutionException {
+        final String sourceId = args.getString(0);
+        final JSONObject query = args.getJSONObject(1);
+        final SpatialIndex spatialIndex = mapCtrl.getSpatialIndex(sourceId);
+        if (spatialIndex == null)
+            throw new JSONException(QUERY_SOURCE_FEATURES + " no spatial index for the source " + sourceId);
+
+        final int limit = query.optInt("limit", 100);
+        final int offset = query.optInt("offset", 0);
+        final SpatialIndex.Page page;
+        if (query.has("bounds")) {
+            final JSONArray sw = query.getJSONObject("bounds").getJSONArray("sw");
+            final JSONArray ne = query.getJSONObject("bounds").getJSONArray("ne");
+            page = spatialIndex.get().queryBounds(sw.getDouble(0), sw.getDouble(1), ne.getDouble(0), ne.getDouble(1), limit, offset);
+        } else if (query.has("center") && query.has("radius")) {
+            final JSONArray center = query.getJSONArray("center");
+            page = spatialIndex.get().queryRadius(center.getDouble(0), center.getDouble(1), query.getDouble("radius"), limit, offset);
+        } else {
+            throw new JSONException(QUERY_SOURCE_FEATURES + " needs bounds or a center and a radius");
+        }
+
+        if (query.optBoolean("idsOnly")) {
+            final JSONArray ids = new JSONArray();
+            for (Feature feature : page.features) {
+                ids.put(feature.id() != null ? feature.id() : JSONObject.NULL);
+            }
+            callbackContext.success(new JSONObject()
+                    .put("total", page.total)
+                    .put("ids", ids));
+        } else {
+            callbackContext.sendPluginResult(new JsonPluginResult(
+                    "{\"total\":" + page.total + ",\"features\":" + FeatureCollection.fromFeatures(page.features).toJson() + "}"));
+        }
+    }
+
+    private static ArrayList<String> toStringList(JSONArray array) throws JSONException {
+        final ArrayList<String> strings = new ArrayList<>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+            strings.add(array.getString(i));
+        }
+        return strings;
+    }
+
+    /**
+     * Wait for the cluster index of the source given as first argument.
+     */
+    private static Supercluster getClusterIndex(String action, CordovaArgs args, MapController mapCtrl) throws JSONException, InterruptedException, ExecutionException {
+        final String sourceId = args.getString(0);
+        final ClusterIndex clusterIndex = mapCtrl.getClusterIndex(sourceId);
+        if (clusterIndex == null)
+            throw new JSONException(action + " unknown clustered source " + sourceId);
+        return clusterIndex.get();
+    }
+
+    /**
+     * The spec names it source-layer, the typings sourcelayer.
+     */
+    @Nullable
+    private static String getSourceLayer(JSONObject jsonLayer) throws JSONException {
+        if (jsonLayer.has("source-layer")) return jsonLayer.getString("source-layer");
+        if (jsonLayer.has("sourcelayer")) return jsonLayer.getString("sourcelayer");
+        return null;
+    }
+
+    private void setLayoutProperty(final CordovaArgs args, final CallbackContext callbackContext, final MapController mapCtrl) throws JSONException {
+        final String layerId = args.optString(0);
+        if (layerId.isEmpty())
+            throw new JSONException(SET_LAYOUT_PROPERTY + " no layerId provided");
+
+        final JSONObject property = args.optJSONObject(1);
+
+        if (property == null) {
+            throw new JSONException(SET_LAYOUT_PROPERTY + " no property provided");
+        }
+        mapCtrl.setLayerProperties(new JSONObject().put(layerId, property));
+
+        callbackContext.success();
+    }
+
+    private void addImage(final CordovaArgs args, final CallbackContext callbackContext, final MapController mapCtrl) throws JSONException {
+        final String imageId = args.getString(0);
+        final JSONObject jsonImage = args.getJSONObject(1);
+        checkImage(ADD_IMAGE, jsonImage);
+
+        imageLoader.addImage(mapCtrl, imageId, jsonImage, callbackContext);
+    }
+
+    /**
+     * args: [{[imageId]: image}]
+     */
+    private void addImages(final CordovaArgs args, final CallbackContext callbackContext, final MapController mapCtrl) throws JSONException {
+        final JSONObject jsonImages = args.getJSONObject(0);
+        final Iterator<String> imageIds = jsonImages.keys();
+        while (imageIds.hasNext()) {
+            checkImage(ADD_IMAGES, jsonImages.getJSONObject(imageIds.next()));
+        }
+
+        imageLoader.addImages(mapCtrl, jsonImages, callbackContext);
+    }
+
+    /**
+     * args: [atlasId, {[imageId]: image}]
+     */
+    private void addSpriteAtlas(final CordovaArgs args, final CallbackContext callbackContext, final MapController mapCtrl) throws JSONException {
+        final String atlasId = args.getString(0);
+        final JSONObject jsonImages = args.getJSONObject(1);
+        final Iterator<String> imageIds = jsonImages.keys();
+        while (imageIds.hasNext()) {
+            checkImage(ADD_SPRITE_ATLAS, jsonImages.getJSONObject(imageIds.next()));
+        }
+
+        imageLoader.addSpriteAtlas(mapCtrl, atlasId, jsonImages, callbackContext);
+    }
+
+    private static void checkImage(String action, JSONObject jsonImage) throws JSONException {
+        if (jsonImage.isNull("width"))
+            throw new JSONException(action + " no width found");
+
+        if (jsonImage.isNull("height"))
+            throw new JSONException(action + " no height found");
+
+        if (jsonImage.isNull("path"))
+            throw new JSONException(action + " no path found. Cordova Mapbox Plugin support only local path file. Note that should be a path (\"/foo/bar\"), not an uri (\"file:///foo/bar\")");
+    }
+
+    /**
+     * Run an ordered list of commands from a single UI thread task.
+     * UI thread commands run inline from here, so the style
+     * changes of a batch are never rendered half applied.
+     * Commands which hand over to another thread (sources, images, offline) answer later,
+     * the next commands wait for their answer, see CommandBatch.
+     * @param args [[{action: string, args?: any[]}]]
+     * @param callbackContext receives an array of {ok: boolean, result: any}, one per command
+     */
+    private void executeBatch(final CordovaArgs args, final CallbackContext callbackContext, @Nullable MapController mapCtrl) throws JSONException {
+        final JSONArray commands = args.getJSONArray(0);
+        new CommandBatch(commands.length(), callbackContext, _webView, (index, subCallbackContext) -> {
+            final JSONObject command = commands.optJSONObject(index);
+            final String subAction = command != null ? command.optString("action") : "";
+            final JSONArray subArgs = command != null && command.optJSONArray("args") != null
+                    ? command.getJSONArray("args")
+                    : new JSONArray();
+
+            if (!isBatchable(CommandDispatcher.getCommandAction(subAction))) {
+                subCallbackContext.error(subAction + " can not be batched");
+            } else if (!dispatcher.dispatch(subAction, subArgs, subCallbackContext)) {
+                subCallbackContext.error(subAction + " unknown action");
+            }
+        }).start();
+    }
+
+    /**
+     * Commands keeping their callback alive, or managing the map life cycle, are not allowed in a batch.
+     */
+    private static boolean isBatchable(String action) {
+        return !action.isEmpty()
+                && !action.startsWith("ADD_ON_")
+                && !ADD_MAP_CLICK_CALLBACK.equals(action)
+                && !DOWNLOAD_REGION.equals(action)
+                && !EXECUTE_BATCH.equals(action)
+                && !SHOW.equals(action);
+    }
+
+    /**
+     * Pause the running download of the map style, without creating its OfflineController.
+     */
+    private static void pauseDownload(MapController mapCtrl) {
+        @Nullable final OfflineController offlineController = mapCtrl.peekOfflineController();
+        if (offlineController != null && offlineController.isDownloading())
+            offlineController.pauseDownload("");
+    }
+
+    private static void sendKeepCallback(CallbackContext callbackContext, String json) {
+        PluginResult result = new JsonPluginResult(json);
+        result.setKeepCallback(true);
+        callbackContext.sendPluginResult(result);
+    }
+
+    private static RunnableWithArg<String> keepCallback(final CallbackContext callbackContext) {
+        return json -> sendKeepCallback(callbackContext, json);
     }
 
     static private JSONObject toJSONRegionState(OfflineController.OfflineRegionState state) {
@@ -1068,33 +932,36 @@ public class CDVMapbox extends CordovaPlugin implements ViewTreeObserver.OnScrol
         return progressMsg;
     }
 
-    static private OfflineController getOfflineController(@Nullable MapLayout mapLayout, @Nullable String styleUrl, Activity activity) throws Exception {
-        if (mapLayout == null) {
+    static private OfflineController getOfflineController(@Nullable MapController mapCtrl, @Nullable String styleUrl, Activity activity) throws Exception {
+        if (mapCtrl == null) {
             if (styleUrl == null || styleUrl.isEmpty()) {
                 throw new Exception("When the Map is not displayed, you need to provide a style url");
             }
             return OfflineControllerPool.get(styleUrl) != null ? OfflineControllerPool.get(styleUrl) : OfflineControllerPool.create(activity, styleUrl);
         } else {
-            return mapLayout.getMapCtrl().getOfflineController();
+            return mapCtrl.getOfflineController();
         }
     }
 
     public void onPause(boolean multitasking) {
-        if (mapLayout != null) {
+        for (MapLayout mapLayout : mapLayouts.values()) {
             mapLayout.getMapCtrl().getMapView().onStop();
         }
     }
 
     public void onResume(boolean multitasking) {
-        if (mapLayout != null) {
+        for (MapLayout mapLayout : mapLayouts.values()) {
             mapLayout.onResume();
         }
     }
 
     public void onDestroy() {
-        if (mapLayout != null) {
+        for (MapLayout mapLayout : mapLayouts.values()) {
             mapLayout.getMapCtrl().getMapView().onDestroy();
         }
+        MapViewPool.onDestroy();
         OfflineControllerPool.onDestroy();
+        geoJsonLoader.onDestroy();
+        imageLoader.onDestroy();
     }
 }
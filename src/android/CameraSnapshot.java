@@ -0,0 +1,99 @@
+package com.dagatsoin.plugins.mapbox;
+
+import com.mapbox.mapboxsdk.camera.CameraPosition;
+import com.mapbox.mapboxsdk.geometry.LatLng;
+import com.mapbox.mapboxsdk.geometry.LatLngBounds;
+import com.mapbox.mapboxsdk.maps.MapboxMap;
+
+/**
+ * Camera state of a map, filled in place and written as JSON by hand.
+ *
+ * Camera and gesture listeners fire on every frame while the map moves. Instead of
+ * a JSONObject, boxed doubles and JSONArrays per event, the state is copied into
+ * primitive fields and written into a reused buffer: the only allocation left
+ * on the plugin side is the final message string.
+ *
+ * Not thread safe, must be used from the UI thread.
+ */
+class CameraSnapshot {
+    double zoom;
+    double latitude;
+    double longitude;
+    double altitude;
+    double tilt;
+    double bearing;
+
+    double west;
+    double south;
+    double east;
+    double north;
+
+    private final StringBuilder mBuffer = new StringBuilder(160);
+
+    void fillCamera(MapboxMap map) {
+        final CameraPosition position = map.getCameraPosition();
+        final LatLng target = position.target;
+        zoom = position.zoom;
+        latitude = target != null ? target.getLatitude() : 0;
+        longitude = target != null ? target.getLongitude() : 0;
+        altitude = target != null ? target.getAltitude() : 0;
+        tilt = position.tilt;
+        bearing = position.bearing;
+    }
+
+    void fillBounds(MapboxMap map) {
+        final LatLngBounds bounds = map.getProjection().getVisibleRegion().latLngBounds;
+        west = bounds.getLonWest();
+        south = bounds.getLatSouth();
+        east = bounds.getLonEast();
+        north = bounds.getLatNorth();
+    }
+
+    /**
+     * @return {zoom, lat, long, alt, tilt, bearing}
+     */
+    String writeCamera() {
+        mBuffer.setLength(0);
+        mBuffer.append("{\"zoom\":");
+        appendNumber(zoom);
+        mBuffer.append(",\"lat\":");
+        appendNumber(latitude);
+        mBuffer.append(",\"long\":");
+        appendNumber(longitude);
+        mBuffer.append(",\"alt\":");
+        appendNumber(altitude);
+        mBuffer.append(",\"tilt\":");
+        appendNumber(tilt);
+        mBuffer.append(",\"bearing\":");
+        appendNumber(bearing);
+        mBuffer.append('}');
+        return mBuffer.toString();
+    }
+
+    /**
+     * @param type a MapEventType name, written as is
+     * @return {type, latLngBounds: {sw: [lng, lat], ne: [lng, lat]}}
+     */
+    String writeEvent(String type) {
+        mBuffer.setLength(0);
+        mBuffer.append("{\"type\":\"").append(type).append("\",\"latLngBounds\":{\"sw\":[");
+        appendNumber(west);
+        mBuffer.append(',');
+        appendNumber(south);
+        mBuffer.append("],\"ne\":[");
+        appendNumber(east);
+        mBuffer.append(',');
+        appendNumber(north);
+        mBuffer.append("]}}");
+        return mBuffer.toString();
+    }
+
+    private void appendNumber(double value) {
+        // JSON has no NaN nor Infinity
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            mBuffer.append("null");
+        } else {
+            mBuffer.append(value);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.dagatsoin.plugins.mapbox;
+
+import com.mapbox.geojson.Feature;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The Supercluster of a clustered GeoJSON source, kept in sync with the source data.
+ *
+ * Updates of the source are built on a background thread shared by all the sources,
+ * so the UI thread never clusters. Updates are coalesced: at most one build is queued per source,
+ * and it indexes the latest data when it starts, so updates arriving every frame never queue
+ * a build each. Queries wait for the latest build, the builds being much shorter than a round trip
+ * to the JS side. When an update only changes the features and not the position of their points,
+ * the cluster tree of the previous build is reused as is.
+ */
+class ClusterIndex {
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "MapboxClusterIndex");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int mMaxZoom;
+    private final int mRadius;
+    private volatile Future<Supercluster> mIndex;
+    // Latest data not yet taken by a build, non null while a build is queued.
+    private final AtomicReference<List<Feature>> mPendingFeatures = new AtomicReference<>();
+    // Last built index, only used from the executor thread.
+    private Supercluster mLastIndex;
+
+    ClusterIndex(int maxZoom, int radius) {
+        mMaxZoom = maxZoom;
+        mRadius = radius;
+    }
+
+    /**
+     * @param features the new data of the source, must not be mutated afterward
+     */
+    void update(final List<Feature> features) {
+        // The queued build has not started yet, it will take these features
+        if (mPendingFeatures.getAndSet(features) != null) return;
+        mIndex = sExecutor.submit(() -> {
+            final List<Feature> latest = mPendingFeatures.getAndSet(null);
+            final Supercluster reused = mLastIndex != null ? mLastIndex.withFeatures(latest) : null;
+            mLastIndex = reused != null ? reused : Supercluster.build(latest, mMaxZoom, mRadius);
+            return mLastIndex;
+        });
+    }
+
+    /**
+     * Wait for the latest update to be indexed.
+     */
+    Supercluster get() throws InterruptedException, ExecutionException {
+        return mIndex.get();
+    }
+}
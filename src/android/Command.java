@@ -0,0 +1,94 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.support.annotation.Nullable;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaArgs;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A plugin command: its handler and what it needs to run.
+ *
+ * Commands are registered once in the CommandDispatcher. The handler receives
+ * the MapController already resolved, so it does not repeat the map lookup.
+ * Each command also keeps its dispatch latency statistics.
+ */
+class Command {
+    enum Threading {
+        /** Run on the UI thread. Required by anything touching the map or the views. */
+        UI,
+        /** Run on the Cordova thread pool, for blocking work like the offline regions. */
+        BACKGROUND,
+        /** Run on the calling thread. The handler does not touch the views or manages its own threading. */
+        NONE
+    }
+
+    interface Handler {
+        /**
+         * @param mapCtrl the controller of the addressed map. If the command does not need a map,
+         *                null when the map is not displayed and it may not be ready.
+         */
+        void execute(CordovaArgs args, CallbackContext callbackContext, @Nullable MapController mapCtrl) throws Exception;
+    }
+
+    /**
+     * Handler receiving the arguments as sent by the WebView, before any JSON parsing.
+     */
+    interface RawHandler {
+        void execute(String rawArgs, CallbackContext callbackContext, @Nullable MapController mapCtrl) throws Exception;
+    }
+
+    final String action;
+    final Threading threading;
+    final boolean needsMap;
+    @Nullable final Handler handler;
+    @Nullable final RawHandler rawHandler;
+
+    private long mCount = 0;
+    private long mTotalNanos = 0;
+    private long mMaxNanos = 0;
+
+    Command(String action, Threading threading, boolean needsMap, Handler handler) {
+        this.action = action;
+        this.threading = threading;
+        this.needsMap = needsMap;
+        this.handler = handler;
+        this.rawHandler = null;
+    }
+
+    Command(String action, Threading threading, boolean needsMap, RawHandler rawHandler) {
+        this.action = action;
+        this.threading = threading;
+        this.needsMap = needsMap;
+        this.handler = null;
+        this.rawHandler = rawHandler;
+    }
+
+    /**
+     * @param nanos time between the reception of the command and its first answer,
+     *              or the return of its handler for a command keeping its callback for later events
+     */
+    synchronized void recordLatency(long nanos) {
+        mCount++;
+        mTotalNanos += nanos;
+        if (nanos > mMaxNanos) mMaxNanos = nanos;
+    }
+
+    synchronized boolean hasStats() {
+        return mCount > 0;
+    }
+
+    synchronized JSONObject getStats() throws JSONException {
+        return new JSONObject()
+                .put("count", mCount)
+                .put("meanMs", mCount > 0 ? mTotalNanos / (double) mCount / 1e6 : 0)
+                .put("maxMs", mMaxNanos / 1e6);
+    }
+
+    synchronized void resetStats() {
+        mCount = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+    }
+}
@@ -0,0 +1,170 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Run the sub-commands of an EXECUTE_BATCH call in order and collect their results.
+ *
+ * Each sub-command receives its own CallbackContext which records its first result
+ * instead of sending it to the WebView. The sub-commands answering inline run one after
+ * the other in the same UI thread task. A sub-command answering later, like the ones
+ * parsing GeoJSON or decoding images on another thread, holds back the next ones: they
+ * resume in a single UI thread task once it answered, so they always see its result
+ * applied. A sub-command which does not answer within TIMEOUT_MS fails the batch.
+ *
+ * Once every sub-command has answered, the batch callback receives a single array
+ * of {ok, result} in the order of the commands.
+ */
+class CommandBatch {
+    static final long TIMEOUT_MS = 30000;
+
+    interface Runner {
+        /**
+         * Run a sub-command. Called on the UI thread.
+         */
+        void run(int index, CallbackContext subCallbackContext) throws JSONException;
+    }
+
+    private final CallbackContext mCallbackContext;
+    private final CordovaWebView mWebView;
+    private final Runner mRunner;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Object[] mResults;
+    private final boolean[] mIsOk;
+    private final boolean[] mIsAnswered;
+    // Sub-command whose answer holds back the next ones, -1 if none
+    private int mWaitingIndex = -1;
+    private boolean mIsFailed = false;
+
+    CommandBatch(int size, CallbackContext callbackContext, CordovaWebView webView, Runner runner) {
+        mCallbackContext = callbackContext;
+        mWebView = webView;
+        mRunner = runner;
+        mResults = new Object[size];
+        mIsOk = new boolean[size];
+        mIsAnswered = new boolean[size];
+    }
+
+    /**
+     * Run the sub-commands. Must be called on the UI thread.
+     */
+    void start() {
+        runFrom(0);
+    }
+
+    private void runFrom(int index) {
+        for (int i = index; i < mResults.length; i++) {
+            final CallbackContext subCallbackContext = new SubCommandCallbackContext(mCallbackContext.getCallbackId() + ":" + i, mWebView, i);
+            try {
+                mRunner.run(i, subCallbackContext);
+            } catch (JSONException e) {
+                e.printStackTrace();
+                subCallbackContext.error("action " + e.getMessage());
+            }
+            synchronized (this) {
+                if (mIsFailed) return;
+                if (!mIsAnswered[i]) {
+                    mWaitingIndex = i;
+                    mHandler.postDelayed(mTimeout, TIMEOUT_MS);
+                    return;
+                }
+            }
+        }
+        send();
+    }
+
+    private final Runnable mTimeout = new Runnable() {
+        @Override
+        public void run() {
+            final int index;
+            synchronized (CommandBatch.this) {
+                if (mWaitingIndex < 0) return;
+                index = mWaitingIndex;
+                mWaitingIndex = -1;
+                mIsFailed = true;
+            }
+            try {
+                mCallbackContext.error(new JSONObject()
+                        .put("error", "TIMEOUT")
+                        .put("index", index));
+            } catch (JSONException e) {
+                e.printStackTrace();
+                mCallbackContext.error(e.getMessage());
+            }
+        }
+    };
+
+    private void onResult(final int index, PluginResult result) {
+        final int status = result.getStatus();
+        synchronized (this) {
+            if (mIsFailed) return;
+            mIsOk[index] = status == PluginResult.Status.OK.ordinal() || status == PluginResult.Status.NO_RESULT.ordinal();
+            mResults[index] = status == PluginResult.Status.NO_RESULT.ordinal() ? JSONObject.NULL : decode(result);
+            mIsAnswered[index] = true;
+            if (mWaitingIndex != index) return;
+            mWaitingIndex = -1;
+        }
+        mHandler.removeCallbacks(mTimeout);
+        // Answers may come from a worker thread, resume in a task of its own
+        mHandler.post(() -> runFrom(index + 1));
+    }
+
+    private void send() {
+        final JSONArray results = new JSONArray();
+        try {
+            for (int i = 0; i < mResults.length; i++) {
+                results.put(new JSONObject()
+                        .put("ok", mIsOk[i])
+                        .put("result", mResults[i]));
+            }
+            mCallbackContext.success(results);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            mCallbackContext.error(e.getMessage());
+        }
+    }
+
+    private static Object decode(PluginResult result) {
+        if (result.getMessageType() == PluginResult.MESSAGE_TYPE_STRING) {
+            return result.getStrMessage();
+        }
+        try {
+            return new JSONTokener(result.getMessage()).nextValue();
+        } catch (JSONException e) {
+            return result.getMessage();
+        }
+    }
+
+    private class SubCommandCallbackContext extends CallbackContext {
+        private final int mIndex;
+        private boolean mIsAnswered = false;
+
+        SubCommandCallbackContext(String callbackId, CordovaWebView webView, int index) {
+            super(callbackId, webView);
+            mIndex = index;
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            synchronized (this) {
+                if (mIsAnswered) return;
+                mIsAnswered = true;
+            }
+            onResult(mIndex, pluginResult);
+        }
+
+        @Override
+        public synchronized boolean isFinished() {
+            return mIsAnswered;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaArgs;
+import org.apache.cordova.CordovaWebView;
+import org.apache.cordova.PluginResult;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Route the plugin actions to their registered Command.
+ *
+ * The dispatcher does the work common to all commands: the map lookup and ready check,
+ * the thread switch, the error reporting and the latency statistics.
+ * A command already on its thread runs inline, otherwise a single task is posted.
+ *
+ * The latency of a command runs until its first answer, so the commands handing over to
+ * another thread are measured up to their result. A command keeping its callback for later
+ * events is measured up to the return of its handler, its events are not part of it.
+ *
+ * An action addresses a map by its id with the ACTION@mapId form, the default map without it.
+ */
+class CommandDispatcher {
+    static final String DEFAULT_MAP_ID = "default";
+    private static final char MAP_ID_SEPARATOR = '@';
+
+    private final CDVMapbox mPlugin;
+    private final Activity mActivity;
+    private final ExecutorService mThreadPool;
+    private final HashMap<String, Command> mCommands = new HashMap<>();
+
+    CommandDispatcher(CDVMapbox plugin, Activity activity, ExecutorService threadPool) {
+        mPlugin = plugin;
+        mActivity = activity;
+        mThreadPool = threadPool;
+    }
+
+    void register(String action, Command.Threading threading, boolean needsMap, Command.Handler handler) {
+        mCommands.put(action, new Command(action, threading, needsMap, handler));
+    }
+
+    void registerRaw(String action, Command.Threading threading, boolean needsMap, Command.RawHandler rawHandler) {
+        mCommands.put(action, new Command(action, threading, needsMap, rawHandler));
+    }
+
+    /**
+     * Dispatch a command received from Cordova.
+     * @return false if the action is unknown
+     */
+    boolean dispatch(String action, String rawArgs, CallbackContext callbackContext) throws JSONException {
+        final Command command = mCommands.get(getCommandAction(action));
+        if (command == null) return false;
+
+        final long startNanos = System.nanoTime();
+        if (command.rawHandler != null) {
+            dispatch(command, getMapId(action), rawArgs, null, callbackContext, startNanos);
+        } else {
+            dispatch(command, getMapId(action), null, new CordovaArgs(new JSONArray(rawArgs)), callbackContext, startNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Dispatch a command whose arguments are already parsed, like the entries of a batch.
+     * @return false if the action is unknown
+     */
+    boolean dispatch(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        final Command command = mCommands.get(getCommandAction(action));
+        if (command == null) return false;
+
+        final long startNanos = System.nanoTime();
+        if (command.rawHandler != null) {
+            dispatch(command, getMapId(action), args.toString(), null, callbackContext, startNanos);
+        } else {
+            dispatch(command, getMapId(action), null, new CordovaArgs(args), callbackContext, startNanos);
+        }
+        return true;
+    }
+
+    /**
+     * @return the action without its map id
+     */
+    static String getCommandAction(String action) {
+        final int separator = action.indexOf(MAP_ID_SEPARATOR);
+        return separator < 0 ? action : action.substring(0, separator);
+    }
+
+    private static String getMapId(String action) {
+        final int separator = action.indexOf(MAP_ID_SEPARATOR);
+        return separator < 0 ? DEFAULT_MAP_ID : action.substring(separator + 1);
+    }
+
+    /**
+     * @param reset clear the statistics once read
+     * @return the latency statistics of every command called at least once, by action
+     */
+    JSONObject getMetrics(boolean reset) throws JSONException {
+        final JSONObject metrics = new JSONObject();
+        for (Command command : mCommands.values()) {
+            if (!command.hasStats()) continue;
+            metrics.put(command.action, command.getStats());
+            if (reset) command.resetStats();
+        }
+        return metrics;
+    }
+
+    private void dispatch(Command command, String mapId, @Nullable String rawArgs, @Nullable CordovaArgs args, CallbackContext jsCallbackContext, long startNanos) throws JSONException {
+        @Nullable final MapLayout mapLayout = mPlugin.getMapLayout(mapId);
+        @Nullable final MapController mapCtrl = mapLayout != null ? mapLayout.getMapCtrl() : null;
+        if (command.needsMap && (mapCtrl == null || !mapCtrl.isReady)) {
+            jsCallbackContext.error(new JSONObject("{error: 'MAP_IS_NOT_READY'}"));
+            return;
+        }
+
+        final TimedCallbackContext callbackContext = new TimedCallbackContext(jsCallbackContext, mPlugin.webView, command, startNanos);
+
+        switch (command.threading) {
+            case UI:
+                if (Looper.myLooper() == Looper.getMainLooper()) {
+                    run(command, rawArgs, args, callbackContext, mapCtrl);
+                } else {
+                    mActivity.runOnUiThread(new Invocation(command, rawArgs, args, callbackContext, mapCtrl));
+                }
+                break;
+            case BACKGROUND:
+                mThreadPool.execute(new Invocation(command, rawArgs, args, callbackContext, mapCtrl));
+                break;
+            case NONE:
+                run(command, rawArgs, args, callbackContext, mapCtrl);
+                break;
+        }
+    }
+
+    private static void run(Command command, @Nullable String rawArgs, @Nullable CordovaArgs args, TimedCallbackContext callbackContext, @Nullable MapController mapCtrl) {
+        try {
+            if (command.rawHandler != null) {
+                command.rawHandler.execute(rawArgs, callbackContext, mapCtrl);
+            } else if (command.handler != null) {
+                command.handler.execute(args, callbackContext, mapCtrl);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+            callbackContext.error("action " + e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            callbackContext.error(e.getMessage());
+        } finally {
+            callbackContext.onHandlerReturn();
+        }
+    }
+
+    /**
+     * Record the latency of a command when it first answers, then forward the results to the WebView.
+     */
+    private static class TimedCallbackContext extends CallbackContext {
+        private final CallbackContext mCallbackContext;
+        private final Command mCommand;
+        private final long mStartNanos;
+        private long mReturnNanos = 0;
+        private boolean mIsRecorded = false;
+
+        TimedCallbackContext(CallbackContext callbackContext, CordovaWebView webView, Command command, long startNanos) {
+            super(callbackContext.getCallbackId(), webView);
+            mCallbackContext = callbackContext;
+            mCommand = command;
+            mStartNanos = startNanos;
+        }
+
+        synchronized void onHandlerReturn() {
+            mReturnNanos = System.nanoTime();
+        }
+
+        @Override
+        public void sendPluginResult(PluginResult pluginResult) {
+            synchronized (this) {
+                if (!mIsRecorded) {
+                    mIsRecorded = true;
+                    // An event of a listener registered earlier: the command ended with its handler
+                    final long endNanos = pluginResult.getKeepCallback() && mReturnNanos != 0 ? mReturnNanos : System.nanoTime();
+                    mCommand.recordLatency(endNanos - mStartNanos);
+                }
+            }
+            mCallbackContext.sendPluginResult(pluginResult);
+        }
+
+        @Override
+        public boolean isFinished() {
+            return mCallbackContext.isFinished();
+        }
+    }
+
+    private static class Invocation implements Runnable {
+        private final Command command;
+        @Nullable private final String rawArgs;
+        @Nullable private final CordovaArgs args;
+        private final TimedCallbackContext callbackContext;
+        @Nullable private final MapController mapCtrl;
+
+        Invocation(Command command, @Nullable String rawArgs, @Nullable CordovaArgs args, TimedCallbackContext callbackContext, @Nullable MapController mapCtrl) {
+            this.command = command;
+            this.rawArgs = rawArgs;
+            this.args = args;
+            this.callbackContext = callbackContext;
+            this.mapCtrl = mapCtrl;
+        }
+
+        @Override
+        public void run() {
+            CommandDispatcher.run(command, rawArgs, args, callbackContext, mapCtrl);
+        }
+    }
+}
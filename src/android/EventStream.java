@@ -0,0 +1,123 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.os.SystemClock;
+import android.support.annotation.Nullable;
+import android.view.Choreographer;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A map event subscription which can coalesce its events.
+ *
+ * Camera and rendering events can fire several times per frame during a gesture.
+ * A coalesced stream sends at most one message per vsync, or per interval, and
+ * the payload is only built when the message is sent: intermediate states are
+ * never serialized, the WebView always receives the latest one.
+ *
+ * Must be used from the UI thread.
+ */
+class EventStream implements Choreographer.FrameCallback {
+    interface PayloadWriter {
+        /**
+         * @return the payload as JSON text
+         */
+        String write();
+    }
+
+    /** Send every event as it comes. */
+    private static final long IMMEDIATE = -1;
+    /** Send at most once per vsync. */
+    private static final long FRAME = 0;
+
+    private final String mAction;
+    private final CallbackContext mCallbackContext;
+    private final PayloadWriter mPayloadWriter;
+    private final long mIntervalMs;
+
+    private boolean mIsScheduled = false;
+    private boolean mIsClosed = false;
+    private long mLastDeliveryMs = 0;
+    private long mEventCount = 0;
+    private long mDeliveredCount = 0;
+
+    /**
+     * @param options {coalesce?: 'frame' | number}, the number is a minimal interval in milliseconds
+     */
+    EventStream(String action, @Nullable JSONObject options, CallbackContext callbackContext, PayloadWriter payloadWriter) throws JSONException {
+        mAction = action;
+        mCallbackContext = callbackContext;
+        mPayloadWriter = payloadWriter;
+        mIntervalMs = readCoalesce(action, options);
+    }
+
+    void onEvent() {
+        if (mIsClosed) return;
+        mEventCount++;
+        if (mIntervalMs == IMMEDIATE) {
+            deliver();
+            return;
+        }
+        if (mIsScheduled) return;
+
+        mIsScheduled = true;
+        final long delayMs = mLastDeliveryMs + mIntervalMs - SystemClock.uptimeMillis();
+        if (delayMs > 0) {
+            Choreographer.getInstance().postFrameCallbackDelayed(this, delayMs);
+        } else {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mIsScheduled = false;
+        deliver();
+    }
+
+    /**
+     * Stop the stream: the pending message is dropped and the JS callback is released.
+     */
+    void close() {
+        if (mIsClosed) return;
+        mIsClosed = true;
+        if (mIsScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mIsScheduled = false;
+        }
+        mCallbackContext.sendPluginResult(new PluginResult(PluginResult.Status.NO_RESULT));
+    }
+
+    /**
+     * @return {action, coalesce, events, delivered, dropped}
+     */
+    JSONObject getStats() throws JSONException {
+        return new JSONObject()
+                .put("action", mAction)
+                .put("coalesce", mIntervalMs == IMMEDIATE ? JSONObject.NULL : mIntervalMs == FRAME ? "frame" : mIntervalMs)
+                .put("events", mEventCount)
+                .put("delivered", mDeliveredCount)
+                .put("dropped", mEventCount - mDeliveredCount);
+    }
+
+    private void deliver() {
+        mLastDeliveryMs = SystemClock.uptimeMillis();
+        final PluginResult result = new JsonPluginResult(mPayloadWriter.write());
+        result.setKeepCallback(true);
+        mCallbackContext.sendPluginResult(result);
+        mDeliveredCount++;
+    }
+
+    private static long readCoalesce(String action, @Nullable JSONObject options) throws JSONException {
+        if (options == null || options.isNull("coalesce")) return IMMEDIATE;
+
+        final Object coalesce = options.get("coalesce");
+        if ("frame".equals(coalesce)) return FRAME;
+        if (coalesce instanceof Number && ((Number) coalesce).longValue() >= 0) {
+            return ((Number) coalesce).longValue();
+        }
+        throw new JSONException(action + " coalesce must be 'frame' or a positive number of milliseconds");
+    }
+}
@@ -0,0 +1,53 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.util.LruCache;
+
+import com.mapbox.mapboxsdk.style.expressions.Expression;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Compiled style expressions by JSON text, shared by all the maps.
+ *
+ * Layer properties and filters are sent again with the same expressions on each theme
+ * or selection change. An Expression is immutable, so the parsed instance is reused
+ * instead of converting the JSON text again. The least recently used entries are evicted.
+ */
+class ExpressionCache {
+    private static final int MAX_SIZE = 256;
+
+    private static final LruCache<String, Expression> mCache = new LruCache<>(MAX_SIZE);
+
+    /**
+     * @param json the expression as a JSON array
+     */
+    static Expression get(String json) throws JSONException {
+        Expression expression = mCache.get(json);
+        if (expression != null) return expression;
+        try {
+            expression = Expression.Converter.convert(json);
+        } catch (RuntimeException e) {
+            throw new JSONException("invalid expression " + json + ": " + e.getMessage());
+        }
+        if (expression == null) {
+            throw new JSONException("invalid expression " + json);
+        }
+        mCache.put(json, expression);
+        return expression;
+    }
+
+    /**
+     * @return {hits, misses, evictions, size, hitRate}
+     */
+    static JSONObject getStats() throws JSONException {
+        final int hits = mCache.hitCount();
+        final int lookups = hits + mCache.missCount();
+        return new JSONObject()
+                .put("hits", hits)
+                .put("misses", mCache.missCount())
+                .put("evictions", mCache.evictionCount())
+                .put("size", mCache.size())
+                .put("hitRate", lookups == 0 ? 0 : (double) hits / lookups);
+    }
+}
@@ -0,0 +1,249 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.support.annotation.Nullable;
+
+import com.mapbox.mapboxsdk.maps.Style;
+import com.mapbox.mapboxsdk.style.layers.Layer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The selected features of a map, by feature id, and how the layers highlight them.
+ *
+ * The SDK has no feature state, so the selection is written in the layers instead of the data:
+ * each highlighted property of a layer is set to a data-driven expression which matches the id of
+ * the feature against the selected ids. Changing the selection only replaces these expressions,
+ * the sources are untouched. Only the data-driven paint properties can highlight the selection,
+ * so a selection change never lays out a layer again.
+ *
+ * A zoom curve must stay the top-level expression of a property: a value interpolated or stepped
+ * on zoom is hoisted above the match, which is then evaluated at each stop of the curve.
+ *
+ * Must be used from the UI thread.
+ */
+class FeatureSelection {
+    private final LinkedHashSet<String> mIds = new LinkedHashSet<>();
+    // Highlight of each layer: {[property]: {selected, unselected}}, by layer id
+    private final HashMap<String, JSONObject> mStyles = new HashMap<>();
+
+    Set<String> getIds() {
+        return mIds;
+    }
+
+    boolean isSelected(String id) {
+        return mIds.contains(id);
+    }
+
+    /**
+     * @param isAdditive keep the current selection, otherwise replace it
+     * @return false if the selection did not change
+     */
+    boolean select(Collection<String> ids, boolean isAdditive) {
+        if (isAdditive) return mIds.addAll(ids);
+        if (mIds.size() == ids.size() && mIds.containsAll(ids)) return false;
+        mIds.clear();
+        mIds.addAll(ids);
+        return true;
+    }
+
+    /**
+     * @return false if none of the features were selected
+     */
+    boolean deselect(Collection<String> ids) {
+        return mIds.removeAll(ids);
+    }
+
+    /**
+     * @return false if nothing was selected
+     */
+    boolean clear() {
+        if (mIds.isEmpty()) return false;
+        mIds.clear();
+        return true;
+    }
+
+    /**
+     * Forget the selection and the highlights, without touching the layers.
+     */
+    void reset() {
+        mIds.clear();
+        mStyles.clear();
+    }
+
+    /**
+     * Set how a layer highlights the selected features, then apply it.
+     * @param highlight {[property]: {selected, unselected}}, null to stop highlighting: the unselected values stay
+     * @throws JSONException if a property is not a data-driven paint property, or a value can not be matched
+     */
+    void setStyle(Style style, String layerId, @Nullable JSONObject highlight) throws JSONException {
+        if (highlight == null) {
+            final JSONObject previous = mStyles.remove(layerId);
+            if (previous != null) apply(style, layerId, previous, true);
+            return;
+        }
+        // Check the expressions before they are stored, they are only built once something is selected
+        final JSONArray someIds = new JSONArray().put("");
+        final Iterator<String> names = highlight.keys();
+        while (names.hasNext()) {
+            final String name = names.next();
+            if (!LayerProperties.isDataDrivenPaint(name)) {
+                throw new JSONException(name + " can not highlight the selection, only the data-driven paint properties can");
+            }
+            final JSONObject values = highlight.getJSONObject(name);
+            toExpression(someIds, values.get("selected"), values.get("unselected"));
+        }
+        mStyles.put(layerId, highlight);
+        apply(style, layerId, highlight, false);
+    }
+
+    /**
+     * Write the current selection in all the highlighting layers of the style.
+     * The layers missing from the style are skipped, they are updated when their style is set again.
+     */
+    void apply(Style style) throws JSONException {
+        for (Map.Entry<String, JSONObject> entry : mStyles.entrySet()) {
+            apply(style, entry.getKey(), entry.getValue(), false);
+        }
+    }
+
+    /**
+     * Write the current selection in a layer, if it highlights the selection.
+     * Called after the properties of the layer are set, which may have overwritten the highlight.
+     */
+    void apply(Style style, String layerId) throws JSONException {
+        final JSONObject highlight = mStyles.get(layerId);
+        if (highlight != null) apply(style, layerId, highlight, false);
+    }
+
+    private void apply(Style style, String layerId, JSONObject highlight, boolean isUnselected) throws JSONException {
+        final Layer layer = style.getLayer(layerId);
+        if (layer == null) return;
+
+        final JSONArray ids = new JSONArray();
+        if (!isUnselected) {
+            for (String id : mIds) ids.put(id);
+        }
+
+        final JSONObject properties = new JSONObject();
+        final Iterator<String> names = highlight.keys();
+        while (names.hasNext()) {
+            final String name = names.next();
+            final JSONObject values = highlight.getJSONObject(name);
+            final Object unselected = values.get("unselected");
+            properties.put(name, ids.length() == 0 ? unselected : toExpression(ids, values.get("selected"), unselected));
+        }
+        layer.setProperties(LayerProperties.read(properties));
+    }
+
+    /**
+     * @return the expression choosing between the two values by feature id, below the zoom curve of the values if any
+     * @throws JSONException if a zoom expression is not the top-level curve of its value, or the curves of the two values differ
+     */
+    private static Object toExpression(JSONArray ids, Object selected, Object unselected) throws JSONException {
+        final JSONArray curve = isZoomCurve(selected) ? (JSONArray) selected : isZoomCurve(unselected) ? (JSONArray) unselected : null;
+        if (curve == null) {
+            if (hasZoom(selected) || hasZoom(unselected)) {
+                throw new JSONException("a zoom expression must be the top-level interpolate or step of a selection style value");
+            }
+            return match(ids, selected, unselected);
+        }
+
+        final Object other = curve == selected ? unselected : selected;
+        final boolean isOtherCurve = isZoomCurve(other);
+        if (isOtherCurve && !isSameCurve(curve, (JSONArray) other)) {
+            throw new JSONException("the selected and unselected zoom curves must have the same interpolation and stops");
+        }
+        if (!isOtherCurve && hasZoom(other)) {
+            throw new JSONException("a zoom expression must be the top-level interpolate or step of a selection style value");
+        }
+
+        // Same curve, with each output chosen by feature id
+        final JSONArray hoisted = new JSONArray();
+        final int firstOutput = getFirstOutput(curve);
+        for (int i = 0; i < curve.length(); i++) {
+            if (!isOutput(i, firstOutput)) {
+                hoisted.put(curve.get(i));
+                continue;
+            }
+            final Object selectedOutput = selected == curve || isOtherCurve ? ((JSONArray) selected).get(i) : selected;
+            final Object unselectedOutput = unselected == curve || isOtherCurve ? ((JSONArray) unselected).get(i) : unselected;
+            hoisted.put(match(ids, selectedOutput, unselectedOutput));
+        }
+        return hoisted;
+    }
+
+    private static JSONArray match(JSONArray ids, Object selected, Object unselected) {
+        return new JSONArray()
+                .put("match")
+                .put(new JSONArray().put("to-string").put(new JSONArray().put("id")))
+                .put(ids)
+                .put(toOutput(selected))
+                .put(toOutput(unselected));
+    }
+
+    /**
+     * ["interpolate", interpolation, ["zoom"], stop, output, ...] or ["step", ["zoom"], output, stop, output, ...]
+     */
+    private static boolean isZoomCurve(Object value) {
+        if (!(value instanceof JSONArray)) return false;
+        final JSONArray array = (JSONArray) value;
+        final String operator = array.optString(0);
+        if (operator.equals("step")) return isZoom(array.opt(1));
+        return (operator.equals("interpolate") || operator.equals("interpolate-hcl") || operator.equals("interpolate-lab"))
+                && isZoom(array.opt(2));
+    }
+
+    private static int getFirstOutput(JSONArray curve) {
+        return curve.optString(0).equals("step") ? 2 : 4;
+    }
+
+    private static boolean isOutput(int index, int firstOutput) {
+        return index >= firstOutput && (index - firstOutput) % 2 == 0;
+    }
+
+    /**
+     * @return true if the curves only differ by their outputs
+     */
+    private static boolean isSameCurve(JSONArray a, JSONArray b) {
+        if (a.length() != b.length() || !a.optString(0).equals(b.optString(0))) return false;
+        final int firstOutput = getFirstOutput(a);
+        for (int i = 0; i < a.length(); i++) {
+            if (!isOutput(i, firstOutput) && !String.valueOf(a.opt(i)).equals(String.valueOf(b.opt(i)))) return false;
+        }
+        return true;
+    }
+
+    private static boolean isZoom(Object value) {
+        return value instanceof JSONArray && ((JSONArray) value).length() == 1 && "zoom".equals(((JSONArray) value).optString(0));
+    }
+
+    private static boolean hasZoom(Object value) {
+        if (!(value instanceof JSONArray)) return false;
+        if (isZoom(value)) return true;
+        final JSONArray array = (JSONArray) value;
+        for (int i = 0; i < array.length(); i++) {
+            if (hasZoom(array.opt(i))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Literal arrays must be quoted to be an output of an expression. An array of strings reads
+     * as an expression, so it must already be quoted.
+     */
+    private static Object toOutput(Object value) {
+        if (value instanceof JSONArray && !LayerProperties.isExpression(value)) {
+            return new JSONArray().put("literal").put(value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,89 @@
+package com.dagatsoin.plugins.mapbox;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The features of a GeoJSON source, indexed by feature id.
+ *
+ * It keeps the last full data set of the source so UPSERT_FEATURES and REMOVE_FEATURES
+ * can be applied without the JS side sending the whole collection again.
+ * The index is only built on the first delta, a source which is only ever
+ * replaced through SET_GEO_JSON costs a single reference.
+ * Features without id are kept but can not be addressed by the deltas.
+ *
+ * Not thread safe, must be used from the UI thread.
+ */
+class FeatureStore {
+    private static final String ANONYMOUS_KEY_PREFIX = "\u0000";
+
+    private List<Feature> mFeatures;
+    private LinkedHashMap<String, Feature> mIndex;
+    private int mAnonymousCount = 0;
+    private boolean mIsDirty = false;
+
+    FeatureStore() {
+        reset(Collections.emptyList());
+    }
+
+    /**
+     * Replace the whole content of the store.
+     * The given list is kept as is and must not be mutated afterward.
+     */
+    void reset(List<Feature> features) {
+        mFeatures = features;
+        mIndex = null;
+        mAnonymousCount = 0;
+        mIsDirty = false;
+    }
+
+    void upsert(List<Feature> features) {
+        final LinkedHashMap<String, Feature> index = getIndex();
+        for (Feature feature : features) {
+            // An existing id keeps its position, the rendering order is stable.
+            index.put(keyOf(feature), feature);
+        }
+        mIsDirty |= !features.isEmpty();
+    }
+
+    void remove(List<String> ids) {
+        final LinkedHashMap<String, Feature> index = getIndex();
+        for (String id : ids) {
+            mIsDirty |= index.remove(id) != null;
+        }
+    }
+
+    boolean isDirty() {
+        return mIsDirty;
+    }
+
+    /**
+     * Build the collection to upload to the source and mark the store as clean.
+     * The feature list is a fresh snapshot: later deltas never mutate a list already handed to the map.
+     */
+    FeatureCollection flush() {
+        mIsDirty = false;
+        return FeatureCollection.fromFeatures(new ArrayList<>(getIndex().values()));
+    }
+
+    private LinkedHashMap<String, Feature> getIndex() {
+        if (mIndex == null) {
+            mIndex = new LinkedHashMap<>(Math.max(16, (int) (mFeatures.size() / .75f) + 1));
+            for (Feature feature : mFeatures) {
+                mIndex.put(keyOf(feature), feature);
+            }
+            mFeatures = null;
+        }
+        return mIndex;
+    }
+
+    private String keyOf(Feature feature) {
+        final String id = feature.id();
+        return id != null ? id : ANONYMOUS_KEY_PREFIX + mAnonymousCount++;
+    }
+}
@@ -0,0 +1,207 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.app.Activity;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Run the GeoJSON ingestion of ADD_SOURCE, SET_GEO_JSON, UPSERT_FEATURES
+ * and REMOVE_FEATURES off the UI thread.
+ *
+ * Parsing, validation and Feature construction run on a dedicated single thread,
+ * so updates of a source are applied in the order they were sent.
+ * Only the final Style call is posted to the UI thread.
+ * A SET_GEO_JSON update which is still pending when a newer one arrives for the same
+ * source of the same map is cancelled: the JS callback receives a CANCELLED error.
+ * So is any update whose map has been destroyed, or recycled into the MapViewPool,
+ * before it reached the UI thread.
+ */
+class GeoJsonLoader {
+    private final Activity mActivity;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "MapboxGeoJsonLoader"));
+
+    // Last SET_GEO_JSON update submitted for each source id, by map. Guarded by itself.
+    private final HashMap<MapController, HashMap<String, Update>> mPendingUpdates = new HashMap<>();
+
+    GeoJsonLoader(Activity activity) {
+        mActivity = activity;
+    }
+
+    void addSource(final MapController mapCtrl, final String action, final String rawArgs, final CallbackContext callbackContext) {
+        final int generation = mapCtrl.getGeneration();
+        mExecutor.execute(() -> {
+            try {
+                final GeoJsonReader.Source source = GeoJsonReader.readAddSourceArgs(action, rawArgs);
+                mActivity.runOnUiThread(() -> {
+                    if (isStale(mapCtrl, generation, callbackContext)) return;
+                    if (source.featureCollection != null) {
+                        mapCtrl.addFeatureCollection(source.id, source.featureCollection, source.isClusterEnabled, source.clusterMaxZoom, source.clusterRadius, source.isSpatialIndexEnabled);
+                    } else if (source.feature != null) {
+                        mapCtrl.addFeature(source.id, source.feature, source.isSpatialIndexEnabled);
+                    } else {
+                        mapCtrl.addGeoJsonSource(source.id, source.isSpatialIndexEnabled);
+                    }
+                    callbackContext.success();
+                });
+            } catch (JSONException e) {
+                e.printStackTrace();
+                callbackContext.error("action " + e.getMessage());
+            }
+        });
+    }
+
+    void setGeoJson(final MapController mapCtrl, final String action, final String rawArgs, final CallbackContext callbackContext) throws JSONException {
+        final Update update = new Update(GeoJsonReader.readSourceId(action, rawArgs), mapCtrl, action, rawArgs, callbackContext);
+        synchronized (mPendingUpdates) {
+            HashMap<String, Update> mapUpdates = mPendingUpdates.get(mapCtrl);
+            if (mapUpdates == null) {
+                mapUpdates = new HashMap<>();
+                mPendingUpdates.put(mapCtrl, mapUpdates);
+            }
+            final Update staleUpdate = mapUpdates.put(update.sourceId, update);
+            if (staleUpdate != null) {
+                staleUpdate.cancel();
+            }
+        }
+        mExecutor.execute(update);
+    }
+
+    void upsertFeatures(final MapController mapCtrl, final String action, final String rawArgs, final CallbackContext callbackContext) {
+        final int generation = mapCtrl.getGeneration();
+        mExecutor.execute(() -> {
+            try {
+                final GeoJsonReader.Source source = GeoJsonReader.readUpsertFeaturesArgs(action, rawArgs);
+                mActivity.runOnUiThread(() -> {
+                    if (isStale(mapCtrl, generation, callbackContext)) return;
+                    if (mapCtrl.upsertFeatures(source.id, source.featureCollection.features())) {
+                        callbackContext.success();
+                    } else {
+                        callbackContext.error("action " + action + " unknown source " + source.id);
+                    }
+                });
+            } catch (JSONException e) {
+                e.printStackTrace();
+                callbackContext.error("action " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * The ids are tiny compared to features, but removals still go through the loader thread
+     * to keep their order with the upserts sent before them.
+     */
+    void removeFeatures(final MapController mapCtrl, final String action, final String rawArgs, final CallbackContext callbackContext) {
+        final int generation = mapCtrl.getGeneration();
+        mExecutor.execute(() -> {
+            try {
+                final GeoJsonReader.Source source = GeoJsonReader.readRemoveFeaturesArgs(action, rawArgs);
+                mActivity.runOnUiThread(() -> {
+                    if (isStale(mapCtrl, generation, callbackContext)) return;
+                    if (mapCtrl.removeFeatures(source.id, source.featureIds)) {
+                        callbackContext.success();
+                    } else {
+                        callbackContext.error("action " + action + " unknown source " + source.id);
+                    }
+                });
+            } catch (JSONException e) {
+                e.printStackTrace();
+                callbackContext.error("action " + e.getMessage());
+            }
+        });
+    }
+
+    void onDestroy() {
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Unregister an update which is about to deliver its result.
+     * @return false if the update has been cancelled meanwhile
+     */
+    private boolean release(Update update) {
+        synchronized (mPendingUpdates) {
+            if (update.isCancelled) return false;
+            final HashMap<String, Update> mapUpdates = mPendingUpdates.get(update.mapCtrl);
+            if (mapUpdates != null && mapUpdates.get(update.sourceId) == update) {
+                mapUpdates.remove(update.sourceId);
+                if (mapUpdates.isEmpty()) mPendingUpdates.remove(update.mapCtrl);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return true if the map has been recycled or destroyed since the work started, the callback is then cancelled
+     */
+    private static boolean isStale(MapController mapCtrl, int generation, CallbackContext callbackContext) {
+        if (mapCtrl.getGeneration() == generation) return false;
+        sendCancelled(callbackContext);
+        return true;
+    }
+
+    private static void sendCancelled(CallbackContext callbackContext) {
+        try {
+            callbackContext.error(new JSONObject("{error: 'CANCELLED'}"));
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private class Update implements Runnable {
+        final String sourceId;
+        final MapController mapCtrl;
+        private final int generation;
+        private final String action;
+        private final String rawArgs;
+        private final CallbackContext callbackContext;
+        private volatile boolean isCancelled = false;
+
+        Update(String sourceId, MapController mapCtrl, String action, String rawArgs, CallbackContext callbackContext) {
+            this.sourceId = sourceId;
+            this.mapCtrl = mapCtrl;
+            this.generation = mapCtrl.getGeneration();
+            this.action = action;
+            this.rawArgs = rawArgs;
+            this.callbackContext = callbackContext;
+        }
+
+        void cancel() {
+            isCancelled = true;
+            sendCancelled(callbackContext);
+        }
+
+        @Override
+        public void run() {
+            if (isCancelled) return;
+
+            final GeoJsonReader.Source source;
+            try {
+                source = GeoJsonReader.readSetGeoJsonArgs(action, rawArgs);
+            } catch (JSONException e) {
+                e.printStackTrace();
+                if (release(this)) {
+                    callbackContext.error("action " + e.getMessage());
+                }
+                return;
+            }
+
+            if (isCancelled) return;
+
+            mActivity.runOnUiThread(() -> {
+                if (!release(this) || isStale(mapCtrl, generation, callbackContext)) return;
+                if (source.featureCollection != null) {
+                    mapCtrl.setSourceGeoJsonData(source.id, source.featureCollection);
+                } else {
+                    mapCtrl.setSourceGeoJsonData(source.id, source.feature);
+                }
+                callbackContext.success();
+            });
+        }
+    }
+}
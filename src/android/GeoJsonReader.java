@@ -0,0 +1,511 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.support.annotation.Nullable;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Geometry;
+import com.mapbox.geojson.GeometryCollection;
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.MultiLineString;
+import com.mapbox.geojson.MultiPoint;
+import com.mapbox.geojson.MultiPolygon;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for the GeoJSON payloads of ADD_SOURCE, SET_GEO_JSON and UPSERT_FEATURES.
+ *
+ * Cordova gives the plugin the raw argument string before building any JSONArray.
+ * This reader walks that string once, validates each feature and geometry while reading it
+ * and builds the Mapbox Feature objects directly. All the GeoJSON geometry types are supported. There is no intermediate
+ * org.json tree and no re-serialisation of the payload. A feature must have the Feature type and a geometry.
+ */
+class GeoJsonReader {
+    // Depth of the coordinates of each geometry type, an empty list matches any depth.
+    private static final int ANY_DEPTH = -1;
+    private static final int POINT = 0;
+    private static final int LINE = 1;
+    private static final int POLYGON = 2;
+    private static final int MULTI_POLYGON = 3;
+
+    /**
+     * Result of the ingestion of a source payload.
+     * When both featureCollection and feature are null, the source has no data.
+     */
+    static class Source {
+        String id;
+        @Nullable FeatureCollection featureCollection;
+        @Nullable Feature feature;
+        @Nullable List<String> featureIds;
+        boolean isClusterEnabled = false;
+        int clusterMaxZoom = 14;
+        int clusterRadius = 50;
+        boolean isSpatialIndexEnabled = false;
+
+        boolean isEmpty() {
+            return featureCollection == null && feature == null;
+        }
+    }
+
+    private GeoJsonReader() {}
+
+    /**
+     * Read the arguments of ADD_SOURCE.
+     * @param action the command name, used in error messages
+     * @param rawArgs [sourceId, {type: "geojson", data, cluster?, clusterMaxZoom?, clusterRadius?, spatialIndex?}]
+     */
+    static Source readAddSourceArgs(String action, String rawArgs) throws JSONException {
+        final Source source = new Source();
+        try (JsonReader reader = new JsonReader(new StringReader(rawArgs))) {
+            reader.beginArray();
+            source.id = readSourceId(action, reader);
+            if (!reader.hasNext() || reader.peek() == JsonToken.NULL)
+                throw new JSONException(action + " no source provided");
+
+            String type = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "type":
+                        type = nextOptionalString(reader);
+                        break;
+                    case "data":
+                        readGeoJson(reader, source);
+                        break;
+                    case "cluster":
+                        source.isClusterEnabled = nextOptionalBoolean(reader, source.isClusterEnabled);
+                        break;
+                    case "clusterMaxZoom":
+                        source.clusterMaxZoom = nextOptionalInt(reader, source.clusterMaxZoom);
+                        break;
+                    case "clusterRadius":
+                        source.clusterRadius = nextOptionalInt(reader, source.clusterRadius);
+                        break;
+                    case "spatialIndex":
+                        source.isSpatialIndexEnabled = nextOptionalBoolean(reader, source.isSpatialIndexEnabled);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (!"geojson".equals(type))
+                throw new JSONException(action + " only handle GeoJSON");
+        } catch (IOException | IllegalStateException | NumberFormatException | JsonParseException e) {
+            throw new JSONException(action + " malformed GeoJSON: " + e.getMessage());
+        }
+        return source;
+    }
+
+    /**
+     * Read the arguments of SET_GEO_JSON.
+     * @param action the command name, used in error messages
+     * @param rawArgs [sourceId, Feature | FeatureCollection]
+     */
+    static Source readSetGeoJsonArgs(String action, String rawArgs) throws JSONException {
+        final Source source = new Source();
+        try (JsonReader reader = new JsonReader(new StringReader(rawArgs))) {
+            reader.beginArray();
+            source.id = readSourceId(action, reader);
+            if (!reader.hasNext() || reader.peek() == JsonToken.NULL)
+                throw new JSONException(action + " no geojson data provided");
+
+            readGeoJson(reader, source);
+        } catch (IOException | IllegalStateException | NumberFormatException | JsonParseException e) {
+            throw new JSONException(action + " malformed GeoJSON: " + e.getMessage());
+        }
+        if (source.isEmpty())
+            throw new JSONException("Only support Feature or FeatureCollection source type");
+        return source;
+    }
+
+    /**
+     * Read the arguments of UPSERT_FEATURES.
+     * The features are returned in the featureCollection of the result.
+     * @param action the command name, used in error messages
+     * @param rawArgs [sourceId, Feature[] | FeatureCollection | Feature]
+     */
+    static Source readUpsertFeaturesArgs(String action, String rawArgs) throws JSONException {
+        final Source source = new Source();
+        try (JsonReader reader = new JsonReader(new StringReader(rawArgs))) {
+            reader.beginArray();
+            source.id = readSourceId(action, reader);
+            if (!reader.hasNext() || reader.peek() == JsonToken.NULL)
+                throw new JSONException(action + " no features provided");
+
+            if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                source.featureCollection = FeatureCollection.fromFeatures(readFeatures(reader));
+            } else {
+                readGeoJson(reader, source);
+                if (source.feature != null) {
+                    final List<Feature> features = new ArrayList<>(1);
+                    features.add(source.feature);
+                    source.featureCollection = FeatureCollection.fromFeatures(features);
+                    source.feature = null;
+                }
+            }
+        } catch (IOException | IllegalStateException | NumberFormatException | JsonParseException e) {
+            throw new JSONException(action + " malformed GeoJSON: " + e.getMessage());
+        }
+        if (source.featureCollection == null)
+            throw new JSONException(action + " no features provided");
+        return source;
+    }
+
+    /**
+     * Read the arguments of REMOVE_FEATURES.
+     * The ids are returned in the featureIds of the result.
+     * @param action the command name, used in error messages
+     * @param rawArgs [sourceId, (string | number)[]]
+     */
+    static Source readRemoveFeaturesArgs(String action, String rawArgs) throws JSONException {
+        final Source source = new Source();
+        try (JsonReader reader = new JsonReader(new StringReader(rawArgs))) {
+            reader.beginArray();
+            source.id = readSourceId(action, reader);
+            if (!reader.hasNext() || reader.peek() == JsonToken.NULL)
+                throw new JSONException(action + " no feature ids provided");
+
+            source.featureIds = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                final String id = nextOptionalString(reader);
+                if (id != null) {
+                    source.featureIds.add(id);
+                }
+            }
+            reader.endArray();
+        } catch (IOException | IllegalStateException e) {
+            throw new JSONException(action + " malformed feature ids: " + e.getMessage());
+        }
+        return source;
+    }
+
+    /**
+     * Read only the source id, which is the first argument of the GeoJSON commands.
+     * @param action the command name, used in error messages
+     * @param rawArgs [sourceId, ...]
+     */
+    static String readSourceId(String action, String rawArgs) throws JSONException {
+        try (JsonReader reader = new JsonReader(new StringReader(rawArgs))) {
+            reader.beginArray();
+            return readSourceId(action, reader);
+        } catch (IOException | IllegalStateException e) {
+            throw new JSONException(action + " need a source ID");
+        }
+    }
+
+    private static String readSourceId(String action, JsonReader reader) throws IOException, JSONException {
+        final String sourceId = reader.hasNext() ? nextOptionalString(reader) : null;
+        if (sourceId == null || sourceId.isEmpty())
+            throw new JSONException(action + " need a source ID");
+        return sourceId;
+    }
+
+    /**
+     * Read a Feature or a FeatureCollection into the given source.
+     * Keys can come in any order, so the members of both types are collected
+     * and the type is resolved once the object is closed.
+     * An empty object or null leaves the source empty.
+     */
+    private static void readGeoJson(JsonReader reader, Source source) throws IOException, JSONException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return;
+        }
+
+        String type = null;
+        List<Feature> features = null;
+        Geometry geometry = null;
+        JsonObject properties = null;
+        String id = null;
+        boolean isEmpty = true;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            isEmpty = false;
+            switch (reader.nextName()) {
+                case "type":
+                    type = nextOptionalString(reader);
+                    break;
+                case "features":
+                    features = readFeatures(reader);
+                    break;
+                case "geometry":
+                    geometry = readGeometry(reader);
+                    break;
+                case "properties":
+                    properties = readProperties(reader);
+                    break;
+                case "id":
+                    id = nextOptionalString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // We can pass an empty source
+        if (isEmpty) return;
+
+        if ("FeatureCollection".equals(type)) {
+            source.featureCollection = FeatureCollection.fromFeatures(features != null ? features : new ArrayList<>());
+        } else if ("Feature".equals(type)) {
+            if (geometry == null) throw new JSONException("Feature need a geometry");
+            source.feature = Feature.fromGeometry(geometry, properties != null ? properties : new JsonObject(), id);
+        } else {
+            throw new JSONException("Only support Feature or FeatureCollection source type");
+        }
+    }
+
+    private static List<Feature> readFeatures(JsonReader reader) throws IOException, JSONException {
+        final List<Feature> features = new ArrayList<>();
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return features;
+        }
+        reader.beginArray();
+        for (int i = 0; reader.hasNext(); i++) {
+            features.add(readFeature(reader, i));
+        }
+        reader.endArray();
+        return features;
+    }
+
+    /**
+     * @param index position of the feature in its collection, used in error messages
+     * @throws JSONException if the object is not a Feature, or has no geometry
+     */
+    private static Feature readFeature(JsonReader reader, int index) throws IOException, JSONException {
+        String type = null;
+        Geometry geometry = null;
+        JsonObject properties = null;
+        String id = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    type = nextOptionalString(reader);
+                    break;
+                case "geometry":
+                    geometry = readGeometry(reader);
+                    break;
+                case "properties":
+                    properties = readProperties(reader);
+                    break;
+                case "id":
+                    id = nextOptionalString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (!"Feature".equals(type))
+            throw new JSONException("features[" + index + "] is not a Feature");
+        if (geometry == null)
+            throw new JSONException("features[" + index + "] need a geometry");
+        return Feature.fromGeometry(geometry, properties != null ? properties : new JsonObject(), id);
+    }
+
+    @Nullable
+    private static Geometry readGeometry(JsonReader reader) throws IOException, JSONException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        String type = null;
+        Object coordinates = null;
+        List<Geometry> geometries = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    type = nextOptionalString(reader);
+                    break;
+                case "coordinates":
+                    coordinates = readCoordinates(reader);
+                    break;
+                case "geometries":
+                    geometries = readGeometries(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (type == null)
+            throw new JSONException("Geometry without type");
+        if ("GeometryCollection".equals(type)) {
+            if (geometries == null)
+                throw new JSONException("GeometryCollection without geometries");
+            return GeometryCollection.fromGeometries(geometries);
+        }
+        if (coordinates == null)
+            throw new JSONException(type + " without coordinates");
+
+        // The nesting of the coordinates was checked while reading, only its depth is left to check.
+        switch (type) {
+            case "Point":
+                checkDepth(type, coordinates, POINT);
+                return (Point) coordinates;
+            case "MultiPoint":
+                checkDepth(type, coordinates, LINE);
+                return MultiPoint.fromLngLats(asList(coordinates));
+            case "LineString":
+                checkDepth(type, coordinates, LINE);
+                checkLine(asList(coordinates));
+                return LineString.fromLngLats(asList(coordinates));
+            case "MultiLineString":
+                checkDepth(type, coordinates, POLYGON);
+                for (List<Point> line : GeoJsonReader.<List<Point>>asList(coordinates)) checkLine(line);
+                return MultiLineString.fromLngLats(asList(coordinates));
+            case "Polygon":
+                checkDepth(type, coordinates, POLYGON);
+                checkPolygon(asList(coordinates));
+                return Polygon.fromLngLats(asList(coordinates));
+            case "MultiPolygon":
+                checkDepth(type, coordinates, MULTI_POLYGON);
+                for (List<List<Point>> polygon : GeoJsonReader.<List<List<Point>>>asList(coordinates)) checkPolygon(polygon);
+                return MultiPolygon.fromLngLats(asList(coordinates));
+            default:
+                throw new JSONException("Unknown geometry type " + type);
+        }
+    }
+
+    private static List<Geometry> readGeometries(JsonReader reader) throws IOException, JSONException {
+        final List<Geometry> geometries = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            final Geometry geometry = readGeometry(reader);
+            if (geometry != null) geometries.add(geometry);
+        }
+        reader.endArray();
+        return geometries;
+    }
+
+    /**
+     * Read a coordinates member.
+     * A position is returned as a Point, any deeper nesting as a List of the nested values.
+     * All the members of a list must have the same depth, which is checked as they are read.
+     */
+    private static Object readCoordinates(JsonReader reader) throws IOException, JSONException {
+        reader.beginArray();
+        if (reader.hasNext() && reader.peek() == JsonToken.NUMBER) {
+            final double longitude = reader.nextDouble();
+            final double latitude = reader.nextDouble();
+            final Point point = reader.hasNext() && reader.peek() == JsonToken.NUMBER
+                    ? Point.fromLngLat(longitude, latitude, reader.nextDouble())
+                    : Point.fromLngLat(longitude, latitude);
+            while (reader.hasNext()) {
+                reader.skipValue();
+            }
+            reader.endArray();
+            return point;
+        }
+
+        final List<Object> coordinates = new ArrayList<>();
+        int memberDepth = ANY_DEPTH;
+        while (reader.hasNext()) {
+            final Object member = readCoordinates(reader);
+            final int depth = depthOf(member);
+            if (memberDepth == ANY_DEPTH) {
+                memberDepth = depth;
+            } else if (depth != ANY_DEPTH && depth != memberDepth) {
+                throw new JSONException("Mixed nesting levels in coordinates");
+            }
+            coordinates.add(member);
+        }
+        reader.endArray();
+        return coordinates;
+    }
+
+    private static int depthOf(Object coordinates) {
+        if (coordinates instanceof Point) return POINT;
+        for (Object member : (List<?>) coordinates) {
+            final int depth = depthOf(member);
+            if (depth != ANY_DEPTH) return depth + 1;
+        }
+        return ANY_DEPTH;
+    }
+
+    private static void checkDepth(String type, Object coordinates, int expectedDepth) throws JSONException {
+        final int depth = depthOf(coordinates);
+        if (depth == expectedDepth || (depth == ANY_DEPTH && expectedDepth != POINT)) return;
+        throw new JSONException(type + " coordinates must be nested " + expectedDepth + " levels deep");
+    }
+
+    private static void checkLine(List<Point> line) throws JSONException {
+        if (!line.isEmpty() && line.size() < 2)
+            throw new JSONException("A LineString needs at least 2 positions");
+    }
+
+    private static void checkPolygon(List<List<Point>> rings) throws JSONException {
+        for (List<Point> ring : rings) {
+            if (ring.size() < 4)
+                throw new JSONException("A Polygon ring needs at least 4 positions");
+            final Point first = ring.get(0);
+            final Point last = ring.get(ring.size() - 1);
+            if (first.longitude() != last.longitude() || first.latitude() != last.latitude())
+                throw new JSONException("A Polygon ring must end with its first position");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> asList(Object coordinates) {
+        return (List<T>) coordinates;
+    }
+
+    @Nullable
+    @SuppressWarnings("deprecation")
+    private static JsonObject readProperties(JsonReader reader) {
+        final JsonElement properties = new JsonParser().parse(reader);
+        return properties.isJsonObject() ? properties.getAsJsonObject() : null;
+    }
+
+    @Nullable
+    private static String nextOptionalString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static boolean nextOptionalBoolean(JsonReader reader, boolean defaultValue) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return defaultValue;
+        }
+        return reader.nextBoolean();
+    }
+
+    private static int nextOptionalInt(JsonReader reader, int defaultValue) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return defaultValue;
+        }
+        return reader.nextInt();
+    }
+}
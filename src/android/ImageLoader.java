@@ -0,0 +1,415 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.app.Activity;
+import android.content.res.AssetManager;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.util.Base64;
+
+import com.caverock.androidsvg.SVG;
+import com.caverock.androidsvg.SVGParseException;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decode the images of ADD_IMAGE and ADD_IMAGES off the UI thread.
+ *
+ * File reading, base64 decoding and SVG rendering run on a small pool of worker threads,
+ * so the images of an ADD_IMAGES call are decoded in parallel. Decoded bitmaps go through
+ * the BitmapCache. Only the Style call is posted to the UI thread: once per image for
+ * ADD_IMAGE, once for the whole set for ADD_IMAGES. If the map has been destroyed, or recycled
+ * into the MapViewPool, meanwhile the images are dropped and the callback receives a CANCELLED error.
+ */
+class ImageLoader {
+    private static final int POOL_SIZE = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private final Activity mActivity;
+    private final SvgDiskCache mSvgDiskCache;
+    private final AtomicInteger mThreadCount = new AtomicInteger();
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(POOL_SIZE, r -> new Thread(r, "MapboxImageLoader-" + mThreadCount.incrementAndGet()));
+    // Atlases are built one at a time, their images are decoded by the pool
+    private final ExecutorService mAtlasExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "MapboxSpriteAtlas"));
+
+    ImageLoader(Activity activity) {
+        mActivity = activity;
+        mSvgDiskCache = new SvgDiskCache(new File(activity.getFilesDir(), "mapbox-svg-cache"));
+    }
+
+    /**
+     * @return the counters of the rasterized SVG disk cache
+     */
+    JSONObject getSvgCacheStats() throws JSONException {
+        return mSvgDiskCache.getStats();
+    }
+
+    void addImage(final MapController mapCtrl, final String imageId, final JSONObject jsonImage, final CallbackContext callbackContext) {
+        final int generation = mapCtrl.getGeneration();
+        mExecutor.execute(() -> {
+            try {
+                final Bitmap bitmap = decode(jsonImage);
+                mActivity.runOnUiThread(() -> {
+                    if (isStale(mapCtrl, generation, callbackContext)) return;
+                    mapCtrl.addImage(imageId, bitmap);
+                    callbackContext.success();
+                });
+            } catch (JSONException e) {
+                e.printStackTrace();
+                callbackContext.error("action " + e.getMessage());
+            } catch (Exception e) {
+                e.printStackTrace();
+                callbackContext.error(e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Decode all the images in parallel, then add them to the style in one UI thread task.
+     * The images which could not be decoded are skipped and their ids are sent back in the error.
+     * @param jsonImages image objects by image id
+     */
+    void addImages(final MapController mapCtrl, final JSONObject jsonImages, final CallbackContext callbackContext) throws JSONException {
+        final int count = jsonImages.length();
+        if (count == 0) {
+            callbackContext.success();
+            return;
+        }
+
+        final int generation = mapCtrl.getGeneration();
+        final HashMap<String, Bitmap> images = new HashMap<>();
+        final JSONArray failedIds = new JSONArray();
+        final AtomicInteger pendingCount = new AtomicInteger(count);
+        final Iterator<String> imageIds = jsonImages.keys();
+        while (imageIds.hasNext()) {
+            final String imageId = imageIds.next();
+            final JSONObject jsonImage = jsonImages.getJSONObject(imageId);
+            mExecutor.execute(() -> {
+                try {
+                    final Bitmap bitmap = decode(jsonImage);
+                    synchronized (images) {
+                        images.put(imageId, bitmap);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    synchronized (images) {
+                        failedIds.put(imageId);
+                    }
+                }
+                if (pendingCount.decrementAndGet() == 0) {
+                    mActivity.runOnUiThread(() -> {
+                        if (isStale(mapCtrl, generation, callbackContext)) return;
+                        if (!images.isEmpty()) mapCtrl.addImages(images);
+                        if (failedIds.length() == 0) {
+                            callbackContext.success();
+                        } else {
+                            try {
+                                callbackContext.error(new JSONObject().put("error", "IMAGES_NOT_DECODED").put("ids", failedIds));
+                            } catch (JSONException e) {
+                                e.printStackTrace();
+                                callbackContext.error(e.getMessage());
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    /**
+     * Add a set of images through a SpriteAtlas persisted under this atlas id.
+     * When the persisted atlas matches the sources, its pages are read instead of decoding the sources.
+     * Otherwise the sources are decoded in parallel and a new atlas is saved.
+     * The callback receives {pages, images, fromCache}.
+     * @param jsonImages image objects by image id
+     */
+    void addSpriteAtlas(final MapController mapCtrl, final String atlasId, final JSONObject jsonImages, final CallbackContext callbackContext) {
+        final int generation = mapCtrl.getGeneration();
+        mAtlasExecutor.execute(() -> {
+            try {
+                final SpriteAtlas atlas = new SpriteAtlas(new File(mActivity.getCacheDir(), "mapbox-sprite-atlas"), atlasId, getAtlasSignature(jsonImages));
+                HashMap<String, Bitmap> images = atlas.load(mActivity.getResources().getDisplayMetrics().densityDpi);
+                final boolean isFromCache = images != null;
+                int pageCount = -1;
+
+                if (images == null) {
+                    final ArrayList<String> imageIds = new ArrayList<>();
+                    final ArrayList<Callable<Bitmap>> decodes = new ArrayList<>();
+                    final Iterator<String> keys = jsonImages.keys();
+                    while (keys.hasNext()) {
+                        final String imageId = keys.next();
+                        final JSONObject jsonImage = jsonImages.getJSONObject(imageId);
+                        imageIds.add(imageId);
+                        decodes.add(() -> decode(jsonImage));
+                    }
+                    final List<Future<Bitmap>> results = mExecutor.invokeAll(decodes);
+                    images = new HashMap<>();
+                    for (int i = 0; i < imageIds.size(); i++) {
+                        try {
+                            images.put(imageIds.get(i), results.get(i).get());
+                        } catch (ExecutionException e) {
+                            throw new IOException(imageIds.get(i) + ": " + e.getCause().getMessage());
+                        }
+                    }
+                    pageCount = atlas.save(images);
+                }
+
+                final HashMap<String, Bitmap> atlasImages = images;
+                final JSONObject result = new JSONObject()
+                        .put("pages", pageCount)
+                        .put("images", images.size())
+                        .put("fromCache", isFromCache);
+                mActivity.runOnUiThread(() -> {
+                    if (isStale(mapCtrl, generation, callbackContext)) return;
+                    if (!atlasImages.isEmpty()) mapCtrl.addImages(atlasImages);
+                    callbackContext.success(result);
+                });
+            } catch (JSONException e) {
+                e.printStackTrace();
+                callbackContext.error("action " + e.getMessage());
+            } catch (Exception e) {
+                e.printStackTrace();
+                callbackContext.error(e.getMessage());
+            }
+        });
+    }
+
+    void onDestroy() {
+        mExecutor.shutdownNow();
+        mAtlasExecutor.shutdownNow();
+    }
+
+    /**
+     * @return true if the map has been recycled or destroyed since the images were requested, the callback is then cancelled
+     */
+    private static boolean isStale(MapController mapCtrl, int generation, CallbackContext callbackContext) {
+        if (mapCtrl.getGeneration() == generation) return false;
+        try {
+            callbackContext.error(new JSONObject("{error: 'CANCELLED'}"));
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return true;
+    }
+
+    /**
+     * @return a hash of the cache keys of all the images, which covers their sources, sizes and formats
+     */
+    private String getAtlasSignature(JSONObject jsonImages) throws JSONException {
+        final ArrayList<String> imageIds = new ArrayList<>();
+        final Iterator<String> keys = jsonImages.keys();
+        while (keys.hasNext()) imageIds.add(keys.next());
+        Collections.sort(imageIds);
+
+        final StringBuilder signature = new StringBuilder();
+        for (String imageId : imageIds) {
+            signature.append(imageId).append('=').append(getImageCacheKey(jsonImages.getJSONObject(imageId))).append('\n');
+        }
+        return BitmapCache.hash(signature.toString());
+    }
+
+    /**
+     * @return the decoded image, from the BitmapCache if it is there
+     */
+    private Bitmap decode(JSONObject jsonImage) throws JSONException, IOException, SVGParseException {
+        final String cacheKey = getImageCacheKey(jsonImage);
+        Bitmap bitmap = BitmapCache.get(cacheKey);
+        if (bitmap == null) {
+            bitmap = createImage(jsonImage);
+            if (bitmap == null) throw new JSONException("Image could not be decoded");
+            BitmapCache.put(cacheKey, bitmap);
+        }
+        return bitmap;
+    }
+
+    private final float retinaFactor = Resources.getSystem().getDisplayMetrics().density;
+
+    private int applyRetinaFactor(long d) {
+        return Math.round(d * retinaFactor);
+    }
+
+    /**
+     * @param imageObject The properties.image part of a JSON feature
+     * @return the key of the decoded image in the BitmapCache
+     */
+    private String getImageCacheKey(JSONObject imageObject) throws JSONException {
+        final int width = imageObject.optInt("width");
+        final int height = imageObject.optInt("height");
+        final boolean isOpaque = imageObject.optBoolean("opaque");
+        if (imageObject.has("path")) {
+            final String fileLocation = imageObject.getString("path");
+            // 0 for an asset, which can not change while the app runs
+            final long version = new File(mActivity.getFilesDir(), fileLocation).lastModified();
+            return BitmapCache.keyOf("path", fileLocation, version, width, height, retinaFactor, isOpaque);
+        } else if (imageObject.has("data")) {
+            return BitmapCache.keyOf("data", imageObject.getString("data"), 0, width, height, retinaFactor, isOpaque);
+        } else if (imageObject.has("svg")) {
+            return BitmapCache.keyOf("svg", imageObject.getString("svg"), 0, width, height, retinaFactor, isOpaque);
+        }
+        throw new JSONException("Not found image data");
+    }
+
+    /**
+     * Creates icon for symbol from url or local file
+     *
+     * Raster images with a width and a height are decoded straight at the target size:
+     * the bounds are probed first, then the decoder samples and scales the pixels,
+     * so the full resolution image is never allocated. An opaque image can be decoded
+     * in RGB_565, which halves its size.
+     *
+     * @param imageObject The properties.image part of a JSON feature
+     * @return an icon with a custom image
+     */
+    // Thanks @anothar
+    private Bitmap createImage(JSONObject imageObject) throws JSONException, IOException, SVGParseException {
+        final Resources res = mActivity.getApplicationContext().getResources();
+        final int width = imageObject.has("width") ? applyRetinaFactor(imageObject.getInt("width")) : 0;
+        final int height = imageObject.has("height") ? applyRetinaFactor(imageObject.getInt("height")) : 0;
+        final boolean isOpaque = imageObject.optBoolean("opaque");
+        Bitmap bitmap;
+
+        if (imageObject.has("path")) {
+            final String fileLocation = imageObject.getString("path");
+            final File iconFile = new File(mActivity.getFilesDir(), fileLocation);
+            final StreamOpener opener = iconFile.exists()
+                    ? () -> new FileInputStream(iconFile)
+                    : () -> openAsset(res.getAssets(), fileLocation);
+
+            if (fileLocation.endsWith(".svg")) {
+                try (InputStream stream = opener.open()) {
+                    bitmap = createSVG(readBytes(stream), width, height);
+                }
+            } else {
+                bitmap = decodeSampled(opener, width, height, isOpaque);
+            }
+        } else if (imageObject.has("data")) {
+            final byte[] decodedBytes = Base64.decode(imageObject.getString("data"), 0);
+            bitmap = decodeSampled(() -> new ByteArrayInputStream(decodedBytes), width, height, isOpaque);
+        } else if (imageObject.has("svg")) {
+            bitmap = createSVG(imageObject.getString("svg").getBytes(Charset.forName("UTF-8")), width, height);
+        } else {
+            throw new JSONException("Not found image data");
+        }
+
+        if (bitmap == null) {
+            throw new IOException("Image could not be decoded");
+        }
+        // The style reads the pixel ratio of the image from its density
+        bitmap.setDensity(res.getDisplayMetrics().densityDpi);
+
+        // The decoder stops at a rounding of the target size, and can not change the aspect ratio
+        if (width > 0 && height > 0 && (bitmap.getWidth() != width || bitmap.getHeight() != height)) {
+            final Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+            if (scaled != bitmap) bitmap.recycle();
+            bitmap = scaled;
+        }
+        return bitmap;
+    }
+
+    private interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    private static InputStream openAsset(AssetManager am, String fileLocation) throws IOException {
+        try {
+            return am.open(fileLocation);
+        } catch (IOException e) {
+            throw new IOException("File does not exists in assets folder or application folder: " + fileLocation);
+        }
+    }
+
+    /**
+     * @param width target width in pixels, 0 to keep the image size
+     * @param height target height in pixels, 0 to keep the image size
+     */
+    private static Bitmap decodeSampled(StreamOpener opener, int width, int height, boolean isOpaque) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        if (isOpaque) {
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+        }
+        if (width > 0 && height > 0) {
+            options.inJustDecodeBounds = true;
+            try (InputStream stream = opener.open()) {
+                BitmapFactory.decodeStream(stream, null, options);
+            }
+            options.inJustDecodeBounds = false;
+
+            if (options.outWidth > 0 && options.outHeight > 0) {
+                // Largest power of 2 keeping the image at least as big as the target
+                int sampleSize = 1;
+                while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+                    sampleSize *= 2;
+                }
+                options.inSampleSize = sampleSize;
+
+                // Then let the decoder scale the sampled pixels down to the target width
+                final int sampledWidth = options.outWidth / sampleSize;
+                if (sampledWidth > width) {
+                    options.inScaled = true;
+                    options.inDensity = sampledWidth;
+                    options.inTargetDensity = width;
+                }
+            }
+        }
+        try (InputStream stream = opener.open()) {
+            return BitmapFactory.decodeStream(stream, null, options);
+        }
+    }
+
+    /**
+     * Rasterize an SVG, or read it back from the disk cache.
+     * @param source the SVG document
+     */
+    private Bitmap createSVG(byte[] source, int width, int height) throws SVGParseException {
+        final String key = SvgDiskCache.keyOf(BitmapCache.hash(source), width, height, retinaFactor);
+        Bitmap bitmap = mSvgDiskCache.get(key);
+        if (bitmap == null) {
+            bitmap = createSVG(SVG.getFromInputStream(new ByteArrayInputStream(source)), width, height);
+            mSvgDiskCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private static byte[] readBytes(InputStream stream) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int count;
+        while ((count = stream.read(buffer)) != -1) {
+            bytes.write(buffer, 0, count);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Bitmap createSVG(SVG svg, int width, int height) {
+        if (width == 0)
+            width = applyRetinaFactor((int) Math.ceil(svg.getDocumentWidth()));
+        if (height == 0)
+            height = applyRetinaFactor((int) Math.ceil(svg.getDocumentHeight()));
+        Bitmap newBM = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        Canvas bmCanvas = new Canvas(newBM);
+        svg.renderToCanvas(bmCanvas);
+        return newBM;
+    }
+}
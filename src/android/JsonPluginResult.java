@@ -0,0 +1,31 @@
+package com.dagatsoin.plugins.mapbox;
+
+import org.apache.cordova.PluginResult;
+
+/**
+ * A successful PluginResult carrying JSON text which is already serialized.
+ *
+ * Cordova only needs the message type and the encoded message to build the JS call,
+ * so a payload written by hand does not have to go through a JSONObject.
+ */
+class JsonPluginResult extends PluginResult {
+    private final String mJson;
+
+    /**
+     * @param json a valid JSON object or array
+     */
+    JsonPluginResult(String json) {
+        super(Status.OK);
+        mJson = json;
+    }
+
+    @Override
+    public int getMessageType() {
+        return MESSAGE_TYPE_JSON;
+    }
+
+    @Override
+    public String getMessage() {
+        return mJson;
+    }
+}
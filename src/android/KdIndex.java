@@ -0,0 +1,197 @@
+package com.dagatsoin.plugins.mapbox;
+
+/**
+ * Static KD-tree of 2D points, in the layout of kdbush.
+ *
+ * The ids and the interleaved coordinates are sorted in place once, then range and
+ * radius queries walk the implicit tree with a small stack: no node objects and no
+ * allocation per query apart from the stack growth.
+ *
+ * Immutable once built, queries are thread safe.
+ */
+class KdIndex {
+    interface Visitor {
+        void visit(int id);
+    }
+
+    private final int mNodeSize;
+    private final int[] mIds;
+    private final double[] mCoords;
+
+    /**
+     * @param x x of the point of each id
+     * @param y y of the point of each id
+     * @param count number of points to index, the ids are 0 to count - 1
+     */
+    KdIndex(double[] x, double[] y, int count, int nodeSize) {
+        mNodeSize = nodeSize;
+        mIds = new int[count];
+        mCoords = new double[count * 2];
+        for (int i = 0; i < count; i++) {
+            mIds[i] = i;
+            mCoords[2 * i] = x[i];
+            mCoords[2 * i + 1] = y[i];
+        }
+        sort(0, count - 1, 0);
+    }
+
+    /**
+     * Visit the ids of the points inside the box, bounds included.
+     */
+    void range(double minX, double minY, double maxX, double maxY, Visitor visitor) {
+        int[] stack = new int[48];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = mIds.length - 1;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            final int axis = stack[--top];
+            final int right = stack[--top];
+            final int left = stack[--top];
+
+            if (right - left <= mNodeSize) {
+                for (int i = left; i <= right; i++) {
+                    final double x = mCoords[2 * i];
+                    final double y = mCoords[2 * i + 1];
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) visitor.visit(mIds[i]);
+                }
+                continue;
+            }
+
+            final int m = (left + right) >> 1;
+            final double x = mCoords[2 * m];
+            final double y = mCoords[2 * m + 1];
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY) visitor.visit(mIds[m]);
+
+            if (top + 6 > stack.length) stack = grow(stack);
+            if (axis == 0 ? minX <= x : minY <= y) {
+                stack[top++] = left;
+                stack[top++] = m - 1;
+                stack[top++] = 1 - axis;
+            }
+            if (axis == 0 ? maxX >= x : maxY >= y) {
+                stack[top++] = m + 1;
+                stack[top++] = right;
+                stack[top++] = 1 - axis;
+            }
+        }
+    }
+
+    /**
+     * Visit the ids of the points at a distance of at most r from (qx, qy).
+     */
+    void within(double qx, double qy, double r, Visitor visitor) {
+        final double r2 = r * r;
+        int[] stack = new int[48];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = mIds.length - 1;
+        stack[top++] = 0;
+
+        while (top > 0) {
+            final int axis = stack[--top];
+            final int right = stack[--top];
+            final int left = stack[--top];
+
+            if (right - left <= mNodeSize) {
+                for (int i = left; i <= right; i++) {
+                    if (squareDistance(mCoords[2 * i], mCoords[2 * i + 1], qx, qy) <= r2) visitor.visit(mIds[i]);
+                }
+                continue;
+            }
+
+            final int m = (left + right) >> 1;
+            final double x = mCoords[2 * m];
+            final double y = mCoords[2 * m + 1];
+            if (squareDistance(x, y, qx, qy) <= r2) visitor.visit(mIds[m]);
+
+            if (top + 6 > stack.length) stack = grow(stack);
+            if (axis == 0 ? qx - r <= x : qy - r <= y) {
+                stack[top++] = left;
+                stack[top++] = m - 1;
+                stack[top++] = 1 - axis;
+            }
+            if (axis == 0 ? qx + r >= x : qy + r >= y) {
+                stack[top++] = m + 1;
+                stack[top++] = right;
+                stack[top++] = 1 - axis;
+            }
+        }
+    }
+
+    private void sort(int left, int right, int axis) {
+        if (right - left <= mNodeSize) return;
+        final int m = (left + right) >> 1;
+        select(m, left, right, axis);
+        sort(left, m - 1, 1 - axis);
+        sort(m + 1, right, 1 - axis);
+    }
+
+    /**
+     * Floyd-Rivest selection: the k-th point along the axis ends at k, smaller ones before it.
+     */
+    private void select(int k, int left, int right, int axis) {
+        while (right > left) {
+            if (right - left > 600) {
+                final int n = right - left + 1;
+                final int m = k - left + 1;
+                final double z = Math.log(n);
+                final double s = 0.5 * Math.exp(2 * z / 3);
+                final double sd = 0.5 * Math.sqrt(z * s * (n - s) / n) * (m - n / 2.0 < 0 ? -1 : 1);
+                final int newLeft = Math.max(left, (int) Math.floor(k - m * s / n + sd));
+                final int newRight = Math.min(right, (int) Math.floor(k + (n - m) * s / n + sd));
+                select(k, newLeft, newRight, axis);
+            }
+
+            final double t = mCoords[2 * k + axis];
+            int i = left;
+            int j = right;
+
+            swap(left, k);
+            if (mCoords[2 * right + axis] > t) swap(left, right);
+
+            while (i < j) {
+                swap(i, j);
+                i++;
+                j--;
+                while (mCoords[2 * i + axis] < t) i++;
+                while (mCoords[2 * j + axis] > t) j--;
+            }
+
+            if (mCoords[2 * left + axis] == t) {
+                swap(left, j);
+            } else {
+                j++;
+                swap(j, right);
+            }
+
+            if (j <= k) left = j + 1;
+            if (k <= j) right = j - 1;
+        }
+    }
+
+    private void swap(int i, int j) {
+        final int id = mIds[i];
+        mIds[i] = mIds[j];
+        mIds[j] = id;
+        final double x = mCoords[2 * i];
+        final double y = mCoords[2 * i + 1];
+        mCoords[2 * i] = mCoords[2 * j];
+        mCoords[2 * i + 1] = mCoords[2 * j + 1];
+        mCoords[2 * j] = x;
+        mCoords[2 * j + 1] = y;
+    }
+
+    private static int[] grow(int[] stack) {
+        final int[] grown = new int[stack.length * 2];
+        System.arraycopy(stack, 0, grown, 0, stack.length);
+        return grown;
+    }
+
+    private static double squareDistance(double ax, double ay, double bx, double by) {
+        final double dx = ax - bx;
+        final double dy = ay - by;
+        return dx * dx + dy * dy;
+    }
+}
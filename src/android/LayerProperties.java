@@ -0,0 +1,332 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.support.annotation.Nullable;
+
+import com.mapbox.mapboxsdk.style.expressions.Expression;
+import com.mapbox.mapboxsdk.style.layers.PropertyFactory;
+import com.mapbox.mapboxsdk.style.layers.PropertyValue;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * Converts the layout and paint properties of the style spec to PropertyValues.
+ *
+ * All the properties of a layer are converted first, so they can be applied
+ * with a single Layer.setProperties call. The JSON type of a value tells a literal from
+ * an expression, and expressions are compiled once through the ExpressionCache.
+ *
+ * Each property of the spec is registered once with its value type and its PropertyFactory
+ * builders, so a lookup is a single map access and no reflection is involved.
+ */
+class LayerProperties {
+    private interface Reader {
+        PropertyValue<?> read(Object json) throws JSONException;
+    }
+
+    private interface Factory<T> {
+        PropertyValue<?> create(T value);
+    }
+
+    // Operators whose result can be an array
+    private static final HashSet<String> ARRAY_OPERATORS = new HashSet<>(Arrays.asList(
+            "array", "at", "case", "coalesce", "get", "interpolate", "interpolate-hcl", "interpolate-lab",
+            "let", "literal", "match", "step", "var"));
+
+    // Paint properties accepting feature data expressions: a new value is evaluated again without laying out the layer.
+    private static final HashSet<String> DATA_DRIVEN_PAINT_PROPERTIES = new HashSet<>(Arrays.asList(
+            "fill-opacity", "fill-color", "fill-outline-color", "fill-pattern",
+            "line-opacity", "line-color", "line-width", "line-gap-width", "line-offset", "line-blur", "line-pattern",
+            "icon-opacity", "icon-color", "icon-halo-color", "icon-halo-width", "icon-halo-blur",
+            "text-opacity", "text-color", "text-halo-color", "text-halo-width", "text-halo-blur",
+            "circle-radius", "circle-color", "circle-blur", "circle-opacity",
+            "circle-stroke-width", "circle-stroke-color", "circle-stroke-opacity",
+            "heatmap-radius", "heatmap-weight",
+            "fill-extrusion-color", "fill-extrusion-height", "fill-extrusion-base", "fill-extrusion-pattern"));
+
+    // Readers by property name, for all the layer types of the style spec.
+    private static final HashMap<String, Reader> READERS = new HashMap<>(256);
+
+    static {
+        // Layout, all layers
+        READERS.put("visibility", json -> PropertyFactory.visibility(json.toString()));
+
+        // Background paint
+        string("background-color", PropertyFactory::backgroundColor, PropertyFactory::backgroundColor);
+        string("background-pattern", PropertyFactory::backgroundPattern, PropertyFactory::backgroundPattern);
+        number("background-opacity", PropertyFactory::backgroundOpacity, PropertyFactory::backgroundOpacity);
+
+        // Fill paint
+        bool("fill-antialias", PropertyFactory::fillAntialias, PropertyFactory::fillAntialias);
+        number("fill-opacity", PropertyFactory::fillOpacity, PropertyFactory::fillOpacity);
+        string("fill-color", PropertyFactory::fillColor, PropertyFactory::fillColor);
+        string("fill-outline-color", PropertyFactory::fillOutlineColor, PropertyFactory::fillOutlineColor);
+        numberArray("fill-translate", PropertyFactory::fillTranslate, PropertyFactory::fillTranslate);
+        string("fill-translate-anchor", PropertyFactory::fillTranslateAnchor, PropertyFactory::fillTranslateAnchor);
+        string("fill-pattern", PropertyFactory::fillPattern, PropertyFactory::fillPattern);
+
+        // Line layout
+        string("line-cap", PropertyFactory::lineCap, PropertyFactory::lineCap);
+        string("line-join", PropertyFactory::lineJoin, PropertyFactory::lineJoin);
+        number("line-miter-limit", PropertyFactory::lineMiterLimit, PropertyFactory::lineMiterLimit);
+        number("line-round-limit", PropertyFactory::lineRoundLimit, PropertyFactory::lineRoundLimit);
+
+        // Line paint
+        number("line-opacity", PropertyFactory::lineOpacity, PropertyFactory::lineOpacity);
+        string("line-color", PropertyFactory::lineColor, PropertyFactory::lineColor);
+        numberArray("line-translate", PropertyFactory::lineTranslate, PropertyFactory::lineTranslate);
+        string("line-translate-anchor", PropertyFactory::lineTranslateAnchor, PropertyFactory::lineTranslateAnchor);
+        number("line-width", PropertyFactory::lineWidth, PropertyFactory::lineWidth);
+        number("line-gap-width", PropertyFactory::lineGapWidth, PropertyFactory::lineGapWidth);
+        number("line-offset", PropertyFactory::lineOffset, PropertyFactory::lineOffset);
+        number("line-blur", PropertyFactory::lineBlur, PropertyFactory::lineBlur);
+        numberArray("line-dasharray", PropertyFactory::lineDasharray, PropertyFactory::lineDasharray);
+        string("line-pattern", PropertyFactory::linePattern, PropertyFactory::linePattern);
+        string("line-gradient", PropertyFactory::lineGradient, PropertyFactory::lineGradient);
+
+        // Symbol layout
+        string("symbol-placement", PropertyFactory::symbolPlacement, PropertyFactory::symbolPlacement);
+        number("symbol-spacing", PropertyFactory::symbolSpacing, PropertyFactory::symbolSpacing);
+        bool("symbol-avoid-edges", PropertyFactory::symbolAvoidEdges, PropertyFactory::symbolAvoidEdges);
+        string("symbol-z-order", PropertyFactory::symbolZOrder, PropertyFactory::symbolZOrder);
+        bool("icon-allow-overlap", PropertyFactory::iconAllowOverlap, PropertyFactory::iconAllowOverlap);
+        bool("icon-ignore-placement", PropertyFactory::iconIgnorePlacement, PropertyFactory::iconIgnorePlacement);
+        bool("icon-optional", PropertyFactory::iconOptional, PropertyFactory::iconOptional);
+        string("icon-rotation-alignment", PropertyFactory::iconRotationAlignment, PropertyFactory::iconRotationAlignment);
+        number("icon-size", PropertyFactory::iconSize, PropertyFactory::iconSize);
+        string("icon-text-fit", PropertyFactory::iconTextFit, PropertyFactory::iconTextFit);
+        numberArray("icon-text-fit-padding", PropertyFactory::iconTextFitPadding, PropertyFactory::iconTextFitPadding);
+        string("icon-image", PropertyFactory::iconImage, PropertyFactory::iconImage);
+        number("icon-rotate", PropertyFactory::iconRotate, PropertyFactory::iconRotate);
+        number("icon-padding", PropertyFactory::iconPadding, PropertyFactory::iconPadding);
+        bool("icon-keep-upright", PropertyFactory::iconKeepUpright, PropertyFactory::iconKeepUpright);
+        numberArray("icon-offset", PropertyFactory::iconOffset, PropertyFactory::iconOffset);
+        string("icon-anchor", PropertyFactory::iconAnchor, PropertyFactory::iconAnchor);
+        string("icon-pitch-alignment", PropertyFactory::iconPitchAlignment, PropertyFactory::iconPitchAlignment);
+        string("text-pitch-alignment", PropertyFactory::textPitchAlignment, PropertyFactory::textPitchAlignment);
+        string("text-rotation-alignment", PropertyFactory::textRotationAlignment, PropertyFactory::textRotationAlignment);
+        string("text-field", PropertyFactory::textField, PropertyFactory::textField);
+        stringArray("text-font", PropertyFactory::textFont, PropertyFactory::textFont);
+        number("text-size", PropertyFactory::textSize, PropertyFactory::textSize);
+        number("text-max-width", PropertyFactory::textMaxWidth, PropertyFactory::textMaxWidth);
+        number("text-line-height", PropertyFactory::textLineHeight, PropertyFactory::textLineHeight);
+        number("text-letter-spacing", PropertyFactory::textLetterSpacing, PropertyFactory::textLetterSpacing);
+        string("text-justify", PropertyFactory::textJustify, PropertyFactory::textJustify);
+        number("text-radial-offset", PropertyFactory::textRadialOffset, PropertyFactory::textRadialOffset);
+        stringArray("text-variable-anchor", PropertyFactory::textVariableAnchor, PropertyFactory::textVariableAnchor);
+        string("text-anchor", PropertyFactory::textAnchor, PropertyFactory::textAnchor);
+        number("text-max-angle", PropertyFactory::textMaxAngle, PropertyFactory::textMaxAngle);
+        number("text-rotate", PropertyFactory::textRotate, PropertyFactory::textRotate);
+        number("text-padding", PropertyFactory::textPadding, PropertyFactory::textPadding);
+        bool("text-keep-upright", PropertyFactory::textKeepUpright, PropertyFactory::textKeepUpright);
+        string("text-transform", PropertyFactory::textTransform, PropertyFactory::textTransform);
+        numberArray("text-offset", PropertyFactory::textOffset, PropertyFactory::textOffset);
+        bool("text-allow-overlap", PropertyFactory::textAllowOverlap, PropertyFactory::textAllowOverlap);
+        bool("text-ignore-placement", PropertyFactory::textIgnorePlacement, PropertyFactory::textIgnorePlacement);
+        bool("text-optional", PropertyFactory::textOptional, PropertyFactory::textOptional);
+
+        // Symbol paint
+        number("icon-opacity", PropertyFactory::iconOpacity, PropertyFactory::iconOpacity);
+        string("icon-color", PropertyFactory::iconColor, PropertyFactory::iconColor);
+        string("icon-halo-color", PropertyFactory::iconHaloColor, PropertyFactory::iconHaloColor);
+        number("icon-halo-width", PropertyFactory::iconHaloWidth, PropertyFactory::iconHaloWidth);
+        number("icon-halo-blur", PropertyFactory::iconHaloBlur, PropertyFactory::iconHaloBlur);
+        numberArray("icon-translate", PropertyFactory::iconTranslate, PropertyFactory::iconTranslate);
+        string("icon-translate-anchor", PropertyFactory::iconTranslateAnchor, PropertyFactory::iconTranslateAnchor);
+        number("text-opacity", PropertyFactory::textOpacity, PropertyFactory::textOpacity);
+        string("text-color", PropertyFactory::textColor, PropertyFactory::textColor);
+        string("text-halo-color", PropertyFactory::textHaloColor, PropertyFactory::textHaloColor);
+        number("text-halo-width", PropertyFactory::textHaloWidth, PropertyFactory::textHaloWidth);
+        number("text-halo-blur", PropertyFactory::textHaloBlur, PropertyFactory::textHaloBlur);
+        numberArray("text-translate", PropertyFactory::textTranslate, PropertyFactory::textTranslate);
+        string("text-translate-anchor", PropertyFactory::textTranslateAnchor, PropertyFactory::textTranslateAnchor);
+
+        // Circle paint
+        number("circle-radius", PropertyFactory::circleRadius, PropertyFactory::circleRadius);
+        string("circle-color", PropertyFactory::circleColor, PropertyFactory::circleColor);
+        number("circle-blur", PropertyFactory::circleBlur, PropertyFactory::circleBlur);
+        number("circle-opacity", PropertyFactory::circleOpacity, PropertyFactory::circleOpacity);
+        numberArray("circle-translate", PropertyFactory::circleTranslate, PropertyFactory::circleTranslate);
+        string("circle-translate-anchor", PropertyFactory::circleTranslateAnchor, PropertyFactory::circleTranslateAnchor);
+        string("circle-pitch-scale", PropertyFactory::circlePitchScale, PropertyFactory::circlePitchScale);
+        string("circle-pitch-alignment", PropertyFactory::circlePitchAlignment, PropertyFactory::circlePitchAlignment);
+        number("circle-stroke-width", PropertyFactory::circleStrokeWidth, PropertyFactory::circleStrokeWidth);
+        string("circle-stroke-color", PropertyFactory::circleStrokeColor, PropertyFactory::circleStrokeColor);
+        number("circle-stroke-opacity", PropertyFactory::circleStrokeOpacity, PropertyFactory::circleStrokeOpacity);
+
+        // Heatmap paint
+        number("heatmap-radius", PropertyFactory::heatmapRadius, PropertyFactory::heatmapRadius);
+        number("heatmap-weight", PropertyFactory::heatmapWeight, PropertyFactory::heatmapWeight);
+        number("heatmap-intensity", PropertyFactory::heatmapIntensity, PropertyFactory::heatmapIntensity);
+        string("heatmap-color", PropertyFactory::heatmapColor, PropertyFactory::heatmapColor);
+        number("heatmap-opacity", PropertyFactory::heatmapOpacity, PropertyFactory::heatmapOpacity);
+
+        // Fill extrusion paint
+        number("fill-extrusion-opacity", PropertyFactory::fillExtrusionOpacity, PropertyFactory::fillExtrusionOpacity);
+        string("fill-extrusion-color", PropertyFactory::fillExtrusionColor, PropertyFactory::fillExtrusionColor);
+        numberArray("fill-extrusion-translate", PropertyFactory::fillExtrusionTranslate, PropertyFactory::fillExtrusionTranslate);
+        string("fill-extrusion-translate-anchor", PropertyFactory::fillExtrusionTranslateAnchor, PropertyFactory::fillExtrusionTranslateAnchor);
+        string("fill-extrusion-pattern", PropertyFactory::fillExtrusionPattern, PropertyFactory::fillExtrusionPattern);
+        number("fill-extrusion-height", PropertyFactory::fillExtrusionHeight, PropertyFactory::fillExtrusionHeight);
+        number("fill-extrusion-base", PropertyFactory::fillExtrusionBase, PropertyFactory::fillExtrusionBase);
+        bool("fill-extrusion-vertical-gradient", PropertyFactory::fillExtrusionVerticalGradient, PropertyFactory::fillExtrusionVerticalGradient);
+
+        // Raster paint
+        number("raster-opacity", PropertyFactory::rasterOpacity, PropertyFactory::rasterOpacity);
+        number("raster-hue-rotate", PropertyFactory::rasterHueRotate, PropertyFactory::rasterHueRotate);
+        number("raster-brightness-min", PropertyFactory::rasterBrightnessMin, PropertyFactory::rasterBrightnessMin);
+        number("raster-brightness-max", PropertyFactory::rasterBrightnessMax, PropertyFactory::rasterBrightnessMax);
+        number("raster-saturation", PropertyFactory::rasterSaturation, PropertyFactory::rasterSaturation);
+        number("raster-contrast", PropertyFactory::rasterContrast, PropertyFactory::rasterContrast);
+        string("raster-resampling", PropertyFactory::rasterResampling, PropertyFactory::rasterResampling);
+        number("raster-fade-duration", PropertyFactory::rasterFadeDuration, PropertyFactory::rasterFadeDuration);
+
+        // Hillshade paint
+        number("hillshade-illumination-direction", PropertyFactory::hillshadeIlluminationDirection, PropertyFactory::hillshadeIlluminationDirection);
+        string("hillshade-illumination-anchor", PropertyFactory::hillshadeIlluminationAnchor, PropertyFactory::hillshadeIlluminationAnchor);
+        number("hillshade-exaggeration", PropertyFactory::hillshadeExaggeration, PropertyFactory::hillshadeExaggeration);
+        string("hillshade-shadow-color", PropertyFactory::hillshadeShadowColor, PropertyFactory::hillshadeShadowColor);
+        string("hillshade-highlight-color", PropertyFactory::hillshadeHighlightColor, PropertyFactory::hillshadeHighlightColor);
+        string("hillshade-accent-color", PropertyFactory::hillshadeAccentColor, PropertyFactory::hillshadeAccentColor);
+    }
+
+    private static void number(String name, Factory<Float> literal, Factory<Expression> expression) {
+        READERS.put(name, json -> isExpression(json) ? expression.create(toExpression(json)) : literal.create(toFloat(json)));
+    }
+
+    /**
+     * Strings, enums and colors
+     */
+    private static void string(String name, Factory<String> literal, Factory<Expression> expression) {
+        READERS.put(name, json -> isExpression(json) ? expression.create(toExpression(json)) : literal.create(json.toString()));
+    }
+
+    private static void bool(String name, Factory<Boolean> literal, Factory<Expression> expression) {
+        READERS.put(name, json -> isExpression(json) ? expression.create(toExpression(json)) : literal.create(toBoolean(json)));
+    }
+
+    private static void numberArray(String name, Factory<Float[]> literal, Factory<Expression> expression) {
+        READERS.put(name, json -> isArrayExpression(json) ? expression.create(toExpression(json)) : literal.create(toFloatArray(json)));
+    }
+
+    private static void stringArray(String name, Factory<String[]> literal, Factory<Expression> expression) {
+        READERS.put(name, json -> isArrayExpression(json) ? expression.create(toExpression(json)) : literal.create(toStringArray(json)));
+    }
+
+    /**
+     * @param properties {[name]: value}, a value is a literal or an expression
+     * @return the supported properties, the others are ignored
+     */
+    static PropertyValue<?>[] read(JSONObject properties) throws JSONException {
+        final ArrayList<PropertyValue<?>> values = new ArrayList<>(properties.length());
+        final Iterator<String> names = properties.keys();
+        while (names.hasNext()) {
+            final String name = names.next();
+            final PropertyValue<?> value = read(name, properties.get(name));
+            if (value != null) values.add(value);
+        }
+        return values.toArray(new PropertyValue<?>[0]);
+    }
+
+    /**
+     * Merge the layout and paint objects of a layer, one of them may be null.
+     */
+    static JSONObject merge(@Nullable JSONObject layout, @Nullable JSONObject paint) throws JSONException {
+        final JSONObject properties = new JSONObject();
+        for (JSONObject source : new JSONObject[]{layout, paint}) {
+            if (source == null) continue;
+            final Iterator<String> names = source.keys();
+            while (names.hasNext()) {
+                final String name = names.next();
+                properties.put(name, source.get(name));
+            }
+        }
+        return properties;
+    }
+
+    @Nullable
+    private static PropertyValue<?> read(String name, Object json) throws JSONException {
+        final Reader reader = READERS.get(name);
+        return reader == null ? null : reader.read(json);
+    }
+
+    static boolean isDataDrivenPaint(String name) {
+        return DATA_DRIVEN_PAINT_PROPERTIES.contains(name);
+    }
+
+    /**
+     * An expression is an array starting with its operator. Expressions sent as JSON text are
+     * still accepted, scalar strings never start with a bracket.
+     */
+    static boolean isExpression(Object json) {
+        if (json instanceof JSONArray) {
+            final JSONArray array = (JSONArray) json;
+            return array.length() > 0 && array.opt(0) instanceof String;
+        }
+        return json instanceof String && ((String) json).startsWith("[");
+    }
+
+    /**
+     * For the array properties a literal is also an array: it is an expression only when it starts
+     * with an operator that can return an array. Other expressions must use "literal".
+     */
+    private static boolean isArrayExpression(Object json) {
+        if (json instanceof String) {
+            if (!((String) json).startsWith("[")) return false;
+            try {
+                json = new JSONArray((String) json);
+            } catch (JSONException e) {
+                return false;
+            }
+        }
+        if (!isExpression(json)) return false;
+        return ARRAY_OPERATORS.contains(((JSONArray) json).optString(0));
+    }
+
+    static Expression toExpression(Object json) throws JSONException {
+        return ExpressionCache.get(json.toString());
+    }
+
+    private static Float toFloat(Object json) throws JSONException {
+        if (json instanceof Number) return ((Number) json).floatValue();
+        try {
+            return Float.valueOf(json.toString());
+        } catch (NumberFormatException e) {
+            throw new JSONException("expected a number, got " + json);
+        }
+    }
+
+    private static Boolean toBoolean(Object json) {
+        if (json instanceof Boolean) return (Boolean) json;
+        return Boolean.valueOf(json.toString());
+    }
+
+    private static JSONArray toArray(Object json) throws JSONException {
+        return json instanceof JSONArray ? (JSONArray) json : new JSONArray(json.toString());
+    }
+
+    private static Float[] toFloatArray(Object json) throws JSONException {
+        final JSONArray array = toArray(json);
+        final Float[] values = new Float[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (float) array.getDouble(i);
+        }
+        return values;
+    }
+
+    private static String[] toStringArray(Object json) throws JSONException {
+        final JSONArray array = toArray(json);
+        final String[] values = new String[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.getString(i);
+        }
+        return values;
+    }
+}
@@ -1,29 +1,20 @@
 package com.dagatsoin.plugins.mapbox;
 
-import android.animation.TimeInterpolator;
-import android.animation.ValueAnimator;
 import android.app.Activity;
-import android.content.Context;
-import android.content.res.AssetManager;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
 import android.graphics.PointF;
-import android.graphics.drawable.BitmapDrawable;
+import android.graphics.RectF;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.util.Base64;
+import android.util.SparseArray;
+import android.view.Choreographer;
 import android.view.MotionEvent;
-import android.view.animation.BounceInterpolator;
+import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.ScrollView;
 
-import com.caverock.androidsvg.SVG;
-import com.caverock.androidsvg.SVGParseException;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonSyntaxException;
 import com.mapbox.android.gestures.MoveGestureDetector;
 import com.mapbox.android.gestures.RotateGestureDetector;
 import com.mapbox.android.gestures.StandardScaleGestureDetector;
@@ -36,32 +27,43 @@ import com.mapbox.mapboxsdk.geometry.LatLngBounds;
 import com.mapbox.mapboxsdk.maps.MapView;
 import com.mapbox.mapboxsdk.maps.MapboxMap;
 import com.mapbox.mapboxsdk.maps.MapboxMapOptions;
+import com.mapbox.mapboxsdk.maps.Projection;
 import com.mapbox.mapboxsdk.maps.Style;
+import com.mapbox.mapboxsdk.maps.UiSettings;
 import com.mapbox.mapboxsdk.style.expressions.Expression;
+import com.mapbox.mapboxsdk.style.layers.BackgroundLayer;
 import com.mapbox.mapboxsdk.style.layers.CircleLayer;
+import com.mapbox.mapboxsdk.style.layers.FillExtrusionLayer;
+import com.mapbox.mapboxsdk.style.layers.FillLayer;
+import com.mapbox.mapboxsdk.style.layers.HeatmapLayer;
+import com.mapbox.mapboxsdk.style.layers.HillshadeLayer;
 import com.mapbox.mapboxsdk.style.layers.Layer;
+import com.mapbox.mapboxsdk.style.layers.LineLayer;
 import com.mapbox.mapboxsdk.style.layers.PropertyFactory;
+import com.mapbox.mapboxsdk.style.layers.PropertyValue;
+import com.mapbox.mapboxsdk.style.layers.RasterLayer;
 import com.mapbox.mapboxsdk.style.layers.SymbolLayer;
 import com.mapbox.mapboxsdk.style.sources.CannotAddSourceException;
 import com.mapbox.mapboxsdk.style.sources.GeoJsonOptions;
 import com.mapbox.mapboxsdk.style.sources.GeoJsonSource;
+import com.mapbox.mapboxsdk.style.sources.Source;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 class MapController implements MapboxMap.OnMapClickListener {
     @Nullable private String mSelectableFeaturePropType;
-    @Nullable private String mSelectedFeatureLayerId;
-    @Nullable private String mSelectedFeatureSourceId;
     private Style style;
 
     private MapView mMapView;
@@ -71,12 +73,67 @@ class MapController implements MapboxMap.OnMapClickListener {
     boolean isReady = false;
     Runnable mapReady;
     private final FeatureCollection mSelectedFeatureCollection =  FeatureCollection.fromFeatures(new ArrayList<>());
-    private boolean mHasSelectedFeature;
+    private final FeatureSelection mSelection = new FeatureSelection();
+    // Deprecated selection layer: a symbol layer rendering a copy of the tapped feature from its own source.
+    @Nullable private String mSelectedFeatureLayerId;
+    @Nullable private String mSelectedFeatureSourceId;
+    @Nullable private Feature mLegacySelectedFeature;
+
+    // Click hit-testing: layers queried on tap, all the rendered layers if null, and hit box half size in dp.
+    @Nullable private String[] mInteractiveLayerIds;
+    private float mClickRadius = 0;
+    // Click callbacks of the JS side, served by the same query as the selection.
+    private final ArrayList<Runnable> mMapClickCallbacks = new ArrayList<>();
+
+    // Feature stores of the GeoJSON sources added through the plugin, by source id.
+    private final HashMap<String, FeatureStore> mFeatureStores = new HashMap<>();
+    private boolean mIsFeatureStoreFlushScheduled = false;
+    private final Choreographer.FrameCallback mFlushFeatureStores = frameTimeNanos -> flushFeatureStores();
+
+    // Cluster trees of the clustered sources, by source id. Guarded by itself, queried off the UI thread.
+    private final HashMap<String, ClusterIndex> mClusterIndexes = new HashMap<>();
+    // R-trees of the sources added with a spatial index, by source id. Guarded by itself, queried off the UI thread.
+    private final HashMap<String, SpatialIndex> mSpatialIndexes = new HashMap<>();
+
+    // Camera and rendering event subscriptions, kept for their delivery counters.
+    private final ArrayList<EventStream> mEventStreams = new ArrayList<>();
+    private final CameraSnapshot mCameraSnapshot = new CameraSnapshot();
+
+    // Point sets projected again after each camera change, by watch id.
+    private final SparseArray<EventStream> mProjectionWatches = new SparseArray<>();
+    private final MapView.OnCameraDidChangeListener mProjectionWatcher = (boolean isAnimated) -> {
+        for (int i = 0; i < mProjectionWatches.size(); i++) {
+            mProjectionWatches.valueAt(i).onEvent();
+        }
+    };
+
+    // Removal of each listener added for the JS side, run when the map is recycled.
+    private final ArrayList<Runnable> mListenerRemovals = new ArrayList<>();
+
+    // Layers and sources of the style as loaded, kept when the map is recycled.
+    private final HashSet<String> mStyleLayerIds = new HashSet<>();
+    private final HashSet<String> mStyleSourceIds = new HashSet<>();
+    // Images added through the plugin, removed when the map is recycled.
+    private final HashSet<String> mAddedImageIds = new HashSet<>();
+    // Whether a layer, source or image of the style itself has been changed. The style is then reloaded on recycle.
+    private boolean mIsStyleModified = false;
+    // Stopped in the MapViewPool
+    private boolean mIsRecycled = false;
+    // Incremented when the map is recycled or destroyed, read by the loader threads
+    private volatile int mGeneration = 0;
 
     MapView getMapView() {
         return mMapView;
     }
 
+    /**
+     * Work started off the UI thread keeps the generation of the map it was started for,
+     * and drops its result if the map has been recycled or destroyed meanwhile.
+     */
+    int getGeneration() {
+        return mGeneration;
+    }
+
     String getSelecteFeatureCollection() {
         return mSelectedFeatureCollection.toJson();
     }
@@ -84,8 +141,6 @@ class MapController implements MapboxMap.OnMapClickListener {
     MapController(
             final JSONObject options,
             Activity activity,
-            @Nullable String selectedFeatureLayerId,
-            @Nullable String selectedFeatureSourceId,
             @Nullable String selectableFeaturePropType,
             @Nullable final ScrollView scrollView
     ) {
@@ -94,6 +149,10 @@ class MapController implements MapboxMap.OnMapClickListener {
         try {
             initOptions = createMapboxMapOptions(options);
             mStyleUrl = getStyle(options.getString("style"));
+            readLegacySelectionOptions(options);
+            setInteractiveLayers(
+                    options.has("interactiveLayerIds") ? options.getJSONArray("interactiveLayerIds") : null,
+                    (float) options.optDouble("clickRadius", 0));
         } catch (JSONException e) {
             e.printStackTrace();
             return;
@@ -106,22 +165,7 @@ class MapController implements MapboxMap.OnMapClickListener {
                         FrameLayout.LayoutParams.MATCH_PARENT,
                         FrameLayout.LayoutParams.MATCH_PARENT
                 ));
-
-        // Prevent scroll to intercept the touch when pane the map
-        if (scrollView != null) {
-            mMapView.setOnTouchListener((v, event) -> {
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_MOVE:
-                        scrollView.requestDisallowInterceptTouchEvent(true);
-                        break;
-                    case MotionEvent.ACTION_UP:
-                    case MotionEvent.ACTION_CANCEL:
-                        scrollView.requestDisallowInterceptTouchEvent(false);
-                        break;
-                }
-                return mMapView.onTouchEvent(event);
-            });
-        }
+        setScrollView(scrollView);
 
         // Important. As we do not use the activity creation as stated in the Mapbox doc,
         // we need to call manually the different life cycle.
@@ -132,26 +176,174 @@ class MapController implements MapboxMap.OnMapClickListener {
 
         mMapView.getMapAsync(mapView -> {
             mMapboxMap = mapView;
-            mSelectedFeatureSourceId = selectedFeatureSourceId;
-            mSelectedFeatureLayerId = selectedFeatureLayerId;
             mSelectableFeaturePropType= selectableFeaturePropType;
             mMapboxMap.addOnMapClickListener(MapController.this);
 
-            mapView.setStyle(new Style.Builder().fromUrl(mStyleUrl), _style -> {
-                style = _style;
-                isReady = true;
-                mapReady.run();
-            });
+            mapView.setStyle(new Style.Builder().fromUrl(mStyleUrl), this::onStyleLoaded);
         });
 
     }
 
+    private void onStyleLoaded(Style loadedStyle) {
+        style = loadedStyle;
+        mStyleLayerIds.clear();
+        for (Layer layer : style.getLayers()) mStyleLayerIds.add(layer.getId());
+        mStyleSourceIds.clear();
+        for (Source source : style.getSources()) mStyleSourceIds.add(source.getId());
+        mIsStyleModified = false;
+        isReady = true;
+        if (mapReady != null) mapReady.run();
+    }
+
+    /**
+     * Prevent scroll to intercept the touch when pane the map
+     */
+    private void setScrollView(@Nullable final ScrollView scrollView) {
+        if (scrollView == null) {
+            mMapView.setOnTouchListener(null);
+            return;
+        }
+        mMapView.setOnTouchListener((v, event) -> {
+            switch (event.getAction()) {
+                case MotionEvent.ACTION_MOVE:
+                    scrollView.requestDisallowInterceptTouchEvent(true);
+                    break;
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    scrollView.requestDisallowInterceptTouchEvent(false);
+                    break;
+            }
+            return mMapView.onTouchEvent(event);
+        });
+    }
+
+    /**
+     * A recycled map can only be reused by a SHOW with the same key: the style and the options
+     * which can not be changed once the map is created.
+     */
+    static String readPoolKey(JSONObject options) throws JSONException {
+        return getStyle(options.getString("style"))
+                + "|" + (!options.isNull("hideAttribution") && options.getBoolean("hideAttribution"))
+                + "|" + (!options.isNull("hideLogo") && options.getBoolean("hideLogo"));
+    }
+
+    /**
+     * Bring the map back to its style as loaded, so another SHOW can display it again.
+     * The sources, layers, images, listeners and selection of the JS side are dropped, while the
+     * native map, the loaded style and the tiles in memory are kept. The map stops rendering
+     * until it is reused. A style whose own layers, sources or images have been changed is reloaded.
+     */
+    void recycle() {
+        mGeneration++;
+        mapReady = null;
+        for (Runnable removal : mListenerRemovals) removal.run();
+        mListenerRemovals.clear();
+        while (mProjectionWatches.size() > 0) unwatchProjection(mProjectionWatches.keyAt(0));
+        for (EventStream eventStream : mEventStreams) eventStream.close();
+        mEventStreams.clear();
+        mMapClickCallbacks.clear();
+        Objects.requireNonNull(mSelectedFeatureCollection.features()).clear();
+        mSelection.reset();
+        mLegacySelectedFeature = null;
+
+        if (mIsFeatureStoreFlushScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mFlushFeatureStores);
+            mIsFeatureStoreFlushScheduled = false;
+        }
+        mFeatureStores.clear();
+        synchronized (mClusterIndexes) {
+            mClusterIndexes.clear();
+        }
+        synchronized (mSpatialIndexes) {
+            mSpatialIndexes.clear();
+        }
+
+        if (style != null) {
+            if (mIsStyleModified) {
+                isReady = false;
+                mMapboxMap.setStyle(new Style.Builder().fromUrl(mStyleUrl), this::onStyleLoaded);
+            } else {
+                // Layers first, a source can not be removed while in use
+                for (Layer layer : style.getLayers()) {
+                    if (!mStyleLayerIds.contains(layer.getId())) style.removeLayer(layer);
+                }
+                for (Source source : style.getSources()) {
+                    if (!mStyleSourceIds.contains(source.getId())) style.removeSource(source);
+                }
+                for (String imageId : mAddedImageIds) style.removeImage(imageId);
+            }
+        }
+        mAddedImageIds.clear();
+
+        mMapView.setOnTouchListener(null);
+        mMapView.onPause();
+        mMapView.onStop();
+        mIsRecycled = true;
+    }
+
+    /**
+     * Display a recycled map again with the options of a new SHOW, which must have the same pool key.
+     * mapReady is called once the style is loaded, immediately if it is still warm.
+     */
+    void reuse(JSONObject options, @Nullable String selectableFeaturePropType, @Nullable ScrollView scrollView) throws JSONException {
+        mSelectableFeaturePropType = selectableFeaturePropType;
+        readLegacySelectionOptions(options);
+        setInteractiveLayers(
+                options.has("interactiveLayerIds") ? options.getJSONArray("interactiveLayerIds") : null,
+                (float) options.optDouble("clickRadius", 0));
+        setScrollView(scrollView);
+
+        final UiSettings uiSettings = mMapboxMap.getUiSettings();
+        uiSettings.setCompassEnabled(options.isNull("hideCompass") || !options.getBoolean("hideCompass"));
+        uiSettings.setRotateGesturesEnabled(options.isNull("disableRotation") || !options.getBoolean("disableRotation"));
+        uiSettings.setScrollGesturesEnabled(options.isNull("disableScroll") || !options.getBoolean("disableScroll"));
+        uiSettings.setZoomGesturesEnabled(options.isNull("disableZoom") || !options.getBoolean("disableZoom"));
+        uiSettings.setTiltGesturesEnabled(options.isNull("disableTilt") || !options.getBoolean("disableTilt"));
+        mMapboxMap.moveCamera(CameraUpdateFactory.newCameraPosition(
+                MapController.getCameraPosition(options.isNull("cameraPosition") ? null : options.getJSONObject("cameraPosition"), null)));
+
+        // It may have been hidden before being recycled
+        mMapView.setVisibility(View.VISIBLE);
+        mMapView.onStart();
+        mMapView.onResume();
+        mIsRecycled = false;
+    }
+
+    /**
+     * Release the map for good.
+     */
+    void destroy() {
+        mGeneration++;
+        mapReady = null;
+        for (EventStream eventStream : mEventStreams) eventStream.close();
+        mEventStreams.clear();
+        if (!mIsRecycled) {
+            mMapView.onPause();
+            mMapView.onStop();
+        }
+        mMapView.onDestroy();
+    }
+
+    private void onStyleChange(String layerOrSourceId) {
+        if (mStyleLayerIds.contains(layerOrSourceId) || mStyleSourceIds.contains(layerOrSourceId)) {
+            mIsStyleModified = true;
+        }
+    }
+
+    /**
+     * @return the OfflineController of the map style if one has already been created
+     */
+    @Nullable
+    OfflineController peekOfflineController() {
+        return OfflineControllerPool.get(mStyleUrl);
+    }
+
     OfflineController getOfflineController() {
         @Nullable OfflineController offlineController = OfflineControllerPool.get(mStyleUrl);
         return offlineController != null ? offlineController : OfflineControllerPool.create(mActivity, mStyleUrl);
     }
 
-    void addFeatureCollection(String featureCollectionId, FeatureCollection featureCollection, boolean isClusterEnabled, Integer clusterMaxZoom, Integer clusterRadius ) {
+    void addFeatureCollection(String featureCollectionId, FeatureCollection featureCollection, boolean isClusterEnabled, Integer clusterMaxZoom, Integer clusterRadius, boolean isSpatialIndexEnabled) {
         final GeoJsonSource geoJsonSource = new GeoJsonSource(featureCollectionId, featureCollection, new GeoJsonOptions()
                 .withCluster(isClusterEnabled)
                 .withClusterMaxZoom(clusterMaxZoom)
@@ -159,19 +351,36 @@ class MapController implements MapboxMap.OnMapClickListener {
         );
         if (style.getSource(featureCollectionId) == null) {
             addGeoJsonSource(geoJsonSource);
+            if (isClusterEnabled) {
+                synchronized (mClusterIndexes) {
+                    mClusterIndexes.put(featureCollectionId, new ClusterIndex(clusterMaxZoom, clusterRadius));
+                }
+            }
+            if (isSpatialIndexEnabled) {
+                addSpatialIndex(featureCollectionId);
+            }
+            resetFeatureStore(featureCollectionId, featureCollection.features());
         }
     }
 
-    void addFeature(String featureId, Feature feature ) {
+    void addFeature(String featureId, Feature feature, boolean isSpatialIndexEnabled) {
         final GeoJsonSource geoJsonSource = new GeoJsonSource(featureId, feature);
         if (style.getSource(featureId) == null) {
             addGeoJsonSource(geoJsonSource);
+            if (isSpatialIndexEnabled) {
+                addSpatialIndex(featureId);
+            }
+            resetFeatureStore(featureId, Collections.singletonList(feature));
         }
     }
 
-    void addGeoJsonSource(String sourceId) {
+    void addGeoJsonSource(String sourceId, boolean isSpatialIndexEnabled) {
         if (style.getSource(sourceId) == null) {
             style.addSource(new GeoJsonSource(sourceId));
+            if (isSpatialIndexEnabled) {
+                addSpatialIndex(sourceId);
+            }
+            resetFeatureStore(sourceId, null);
         }
     }
 
@@ -183,20 +392,37 @@ class MapController implements MapboxMap.OnMapClickListener {
     }
 
     boolean removeSource(String sourceId) {
+        onStyleChange(sourceId);
         try {
             // Throw when source is still in use
-            return style.removeSource(sourceId);
+            final boolean isRemoved = style.removeSource(sourceId);
+            if (isRemoved) {
+                mFeatureStores.remove(sourceId);
+                synchronized (mClusterIndexes) {
+                    mClusterIndexes.remove(sourceId);
+                }
+                synchronized (mSpatialIndexes) {
+                    mSpatialIndexes.remove(sourceId);
+                }
+            }
+            return isRemoved;
         } catch (CannotAddSourceException e) {
             e.printStackTrace();
             return false;
         }
     }
 
+    /**
+     * Replace the data of a source.
+     * The feature list comes straight from the GeoJSON reader and is never mutated afterward,
+     * so it is handed to the source without the defensive copy needed for
+     * https://github.com/mapbox/mapbox-gl-native/issues/14565#issuecomment-496923239
+     */
     void setSourceGeoJsonData(String sourceId, FeatureCollection featureCollection) {
         final GeoJsonSource source = style.getSourceAs(sourceId);
         if (source != null) {
-            // https://github.com/mapbox/mapbox-gl-native/issues/14565#issuecomment-496923239
-            source.setGeoJson(FeatureCollection.fromFeatures(new ArrayList<>(Objects.requireNonNull(featureCollection.features()))));
+            source.setGeoJson(featureCollection);
+            resetFeatureStore(sourceId, featureCollection.features());
         }
     }
 
@@ -204,319 +430,269 @@ class MapController implements MapboxMap.OnMapClickListener {
         final GeoJsonSource source = style.getSourceAs(sourceId);
         if (source != null) {
             source.setGeoJson(feature);
+            resetFeatureStore(sourceId, Collections.singletonList(feature));
         }
     }
 
-    void addSymbolLayer(
-            String layerId,
-            String sourceId,
-            Integer minZoom,
-            Integer maxZoom,
-            @Nullable Expression filter,
-            @Nullable String beforeId
-    ) {
-        if (style.getLayer(layerId) != null) return;
-
-        final SymbolLayer symbolLayer = new SymbolLayer(layerId, sourceId);
-        symbolLayer.setMinZoom(minZoom);
-        symbolLayer.setMaxZoom(maxZoom);
-        if (filter != null) {
-            symbolLayer.setFilter(filter);
-        }
-
-
-        if (beforeId == null || beforeId.isEmpty()) {
-            style.addLayer(symbolLayer);
-        } else {
-            if (style.getLayer(layerId) != null) {
-                removeLayer(layerId);
-            }
-            style.addLayerBelow(symbolLayer, beforeId);
-        }
+    /**
+     * Insert or replace features of a source, by feature id.
+     * The source is updated once at the next frame, whatever the number of deltas received meanwhile.
+     * @return false if the source has not been added by the plugin.
+     */
+    boolean upsertFeatures(String sourceId, List<Feature> features) {
+        final FeatureStore store = mFeatureStores.get(sourceId);
+        if (store == null) return false;
+        store.upsert(features);
+        scheduleFeatureStoresFlush();
+        return true;
     }
 
-    void addCircleLayer(
-            String layerId,
-            String sourceId,
-            Integer minZoom,
-            Integer maxZoom,
-            @Nullable Expression filter,
-            @Nullable String beforeId
-    ) {
-        if (style.getLayer(layerId) != null) return;
-
-        CircleLayer circles = new CircleLayer(layerId, sourceId);
-
-        circles.setMinZoom(minZoom);
-        circles.setMaxZoom(maxZoom);
-
-        if (filter != null) {
-            circles.setFilter(filter);
-        }
-
-
-        if (beforeId == null || beforeId.isEmpty()) {
-            style.addLayer(circles);
-        } else {
-            if (style.getLayer(layerId) != null) {
-                removeLayer(layerId);
-            }
-            style.addLayerBelow(circles, beforeId);
+    /**
+     * Remove features of a source, by feature id.
+     * The source is updated once at the next frame, whatever the number of deltas received meanwhile.
+     * @return false if the source has not been added by the plugin.
+     */
+    boolean removeFeatures(String sourceId, List<String> featureIds) {
+        final FeatureStore store = mFeatureStores.get(sourceId);
+        if (store == null) return false;
+        store.remove(featureIds);
+        scheduleFeatureStoresFlush();
+        return true;
+    }
+
+    private void resetFeatureStore(String sourceId, @Nullable List<Feature> features) {
+        FeatureStore store = mFeatureStores.get(sourceId);
+        if (store == null) {
+            store = new FeatureStore();
+            mFeatureStores.put(sourceId, store);
         }
+        store.reset(features != null ? features : Collections.emptyList());
+        updateSourceIndexes(sourceId, features != null ? features : Collections.emptyList());
     }
 
-    boolean removeLayer(String layerId) {
-        return style.removeLayer(layerId);
-    }
-
-    void addImage(String imageId, JSONObject jsonImage) {
-        try {
-            final Bitmap bitmap = createImage(jsonImage);
-            style.addImage(imageId, bitmap);
-        } catch (JSONException | IOException | SVGParseException e) {
-            e.printStackTrace();
+    private void updateSourceIndexes(String sourceId, List<Feature> features) {
+        final ClusterIndex clusterIndex;
+        synchronized (mClusterIndexes) {
+            clusterIndex = mClusterIndexes.get(sourceId);
         }
-    }
-
-    void removeImage(String imageId) {
-        style.removeImage(imageId);
-    }
-
-
-    void setLayoutPropertyIconImage(String layerId, String imageId) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            layer.setProperties(PropertyFactory.iconImage(imageId));
+        if (clusterIndex != null) {
+            clusterIndex.update(features);
         }
-    }
 
-    void setLayoutPropertyOffset(String layerId, Float[] offset) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            layer.setProperties(PropertyFactory.iconOffset(offset));
+        final SpatialIndex spatialIndex;
+        synchronized (mSpatialIndexes) {
+            spatialIndex = mSpatialIndexes.get(sourceId);
         }
-    }
-
-    void setLayoutPropertySize(String layerId, String value) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            try {
-                // Could be an array expression
-                layer.setProperties(PropertyFactory.iconSize(Expression.Converter.convert(value)));
-            } catch (JsonSyntaxException|NullPointerException e) {
-                // Or just a float
-                layer.setProperties(PropertyFactory.iconSize(Float.valueOf(value)));
-            }
+        if (spatialIndex != null) {
+            spatialIndex.update(features);
         }
     }
 
-    void setLayoutPropertyIconOverlap(String layerId, boolean isOverlap) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            layer.setProperties(PropertyFactory.iconAllowOverlap(isOverlap));
+    private void addSpatialIndex(String sourceId) {
+        synchronized (mSpatialIndexes) {
+            mSpatialIndexes.put(sourceId, new SpatialIndex());
         }
     }
 
-    void setLayoutPropertyTextField(String layerId, String fieldId) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            layer.setProperties(PropertyFactory.textField(fieldId));
+    /**
+     * @return null if the source is unknown or not clustered
+     */
+    @Nullable
+    ClusterIndex getClusterIndex(String sourceId) {
+        synchronized (mClusterIndexes) {
+            return mClusterIndexes.get(sourceId);
         }
     }
 
-    void setLayoutPropertyTextSize(String layerId, String size) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            try {
-                // Try to parse expression
-                layer.setProperties(PropertyFactory.textSize(Expression.Converter.convert(size)));
-            } catch (JsonSyntaxException|NullPointerException e) {
-                // It is a float
-                layer.setProperties(PropertyFactory.textSize(Float.valueOf(size)));
-            }
+    /**
+     * @return null if the source is unknown or has no spatial index
+     */
+    @Nullable
+    SpatialIndex getSpatialIndex(String sourceId) {
+        synchronized (mSpatialIndexes) {
+            return mSpatialIndexes.get(sourceId);
         }
     }
 
-    void setLayoutPropertyTextFont(String layerId, String font) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            try {
-                // Try to parse expression
-                layer.setProperties(PropertyFactory.textFont(Expression.Converter.convert(font)));
-            } catch (JsonSyntaxException|NullPointerException e) {
-                // It was an array of fonts
-                final String s = font.substring(1, font.length() -1 );
-                layer.setProperties(PropertyFactory.textFont(s.split(",")));
+    /**
+     * @return {sources, items, bytes} of the spatial indexes as last built
+     */
+    JSONObject getSpatialIndexStats() throws JSONException {
+        int items = 0;
+        long bytes = 0;
+        synchronized (mSpatialIndexes) {
+            for (SpatialIndex spatialIndex : mSpatialIndexes.values()) {
+                items += spatialIndex.getItemCount();
+                bytes += spatialIndex.getByteCount();
             }
+            return new JSONObject()
+                    .put("sources", mSpatialIndexes.size())
+                    .put("items", items)
+                    .put("bytes", bytes);
         }
     }
 
-    void setPaintPropertyCircleColor(String layerId, String value) {
-        final Layer layer = style.getLayer(layerId);
-
-        if (layer != null) {
-            try {
-                // Could be an array expression
-                layer.setProperties(PropertyFactory.circleColor(Expression.Converter.convert(value)));
-            } catch (JsonSyntaxException|NullPointerException e) {
-                // Or just a string
-                layer.setProperties(PropertyFactory.circleColor(value));
-            }
-        }
+    private void scheduleFeatureStoresFlush() {
+        if (mIsFeatureStoreFlushScheduled) return;
+        mIsFeatureStoreFlushScheduled = true;
+        Choreographer.getInstance().postFrameCallback(mFlushFeatureStores);
     }
 
-    void setPaintPropertyCircleRadius(String layerId, String value) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            try {
-                // Could be an array expression
-                layer.setProperties(PropertyFactory.circleRadius(Expression.Converter.convert(value)));
-            } catch (JsonSyntaxException|NullPointerException e) {
-                // Or just a float
-                layer.setProperties(PropertyFactory.circleRadius(Float.valueOf(value)));
+    private void flushFeatureStores() {
+        mIsFeatureStoreFlushScheduled = false;
+        for (Map.Entry<String, FeatureStore> entry : mFeatureStores.entrySet()) {
+            final FeatureStore store = entry.getValue();
+            if (!store.isDirty()) continue;
+            final GeoJsonSource source = style.getSourceAs(entry.getKey());
+            if (source != null) {
+                final FeatureCollection featureCollection = store.flush();
+                source.setGeoJson(featureCollection);
+                updateSourceIndexes(entry.getKey(), featureCollection.features());
             }
         }
     }
 
-    void setPaintPropertyTextColor(String layerId, String value) {
-        final Layer layer = style.getLayer(layerId);
-
-        if (layer != null) {
-            try {
-                // Could be an array expression
-                layer.setProperties(PropertyFactory.textColor(Expression.Converter.convert(value)));
-            } catch (JsonSyntaxException|NullPointerException e) {
-                // Or just a string
-                layer.setProperties(PropertyFactory.textColor(value));
-            }
+    /**
+     * Create a layer of any type of the style spec with all its properties, then add it.
+     * If the layer already exists, only its properties are updated.
+     * @param sourceId ignored for background layers
+     * @param sourceLayer the layer of a vector source, null for other sources
+     * @param filter ignored for raster, hillshade and background layers
+     */
+    void addLayer(
+            String type,
+            String layerId,
+            @Nullable String sourceId,
+            @Nullable String sourceLayer,
+            float minZoom,
+            float maxZoom,
+            @Nullable Expression filter,
+            PropertyValue<?>[] properties,
+            @Nullable String beforeId
+    ) throws JSONException {
+        final Layer existingLayer = style.getLayer(layerId);
+        if (existingLayer != null) {
+            onStyleChange(layerId);
+            if (properties.length > 0) existingLayer.setProperties(properties);
+            mSelection.apply(style, layerId);
+            return;
         }
-    }
 
-    void setPaintPropertyTextHaloBlur(String layerId, String value) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            try {
-                // Could be an array expression
-                layer.setProperties(PropertyFactory.textHaloBlur(Expression.Converter.convert(value)));
-            } catch (JsonSyntaxException|NullPointerException e) {
-                // Or just a float
-                layer.setProperties(PropertyFactory.textHaloBlur(Float.valueOf(value)));
-            }
+        final Layer layer;
+        switch (type) {
+            case "background":
+                layer = new BackgroundLayer(layerId);
+                break;
+            case "raster":
+                layer = new RasterLayer(layerId, sourceId);
+                break;
+            case "hillshade":
+                layer = new HillshadeLayer(layerId, sourceId);
+                break;
+            case "fill":
+                final FillLayer fill = new FillLayer(layerId, sourceId);
+                if (sourceLayer != null) fill.setSourceLayer(sourceLayer);
+                if (filter != null) fill.setFilter(filter);
+                layer = fill;
+                break;
+            case "line":
+                final LineLayer line = new LineLayer(layerId, sourceId);
+                if (sourceLayer != null) line.setSourceLayer(sourceLayer);
+                if (filter != null) line.setFilter(filter);
+                layer = line;
+                break;
+            case "symbol":
+                final SymbolLayer symbol = new SymbolLayer(layerId, sourceId);
+                if (sourceLayer != null) symbol.setSourceLayer(sourceLayer);
+                if (filter != null) symbol.setFilter(filter);
+                layer = symbol;
+                break;
+            case "circle":
+                final CircleLayer circle = new CircleLayer(layerId, sourceId);
+                if (sourceLayer != null) circle.setSourceLayer(sourceLayer);
+                if (filter != null) circle.setFilter(filter);
+                layer = circle;
+                break;
+            case "heatmap":
+                final HeatmapLayer heatmap = new HeatmapLayer(layerId, sourceId);
+                if (sourceLayer != null) heatmap.setSourceLayer(sourceLayer);
+                if (filter != null) heatmap.setFilter(filter);
+                layer = heatmap;
+                break;
+            case "fill-extrusion":
+                final FillExtrusionLayer fillExtrusion = new FillExtrusionLayer(layerId, sourceId);
+                if (sourceLayer != null) fillExtrusion.setSourceLayer(sourceLayer);
+                if (filter != null) fillExtrusion.setFilter(filter);
+                layer = fillExtrusion;
+                break;
+            default:
+                throw new JSONException("unknown layer type " + type);
         }
-    }
+        layer.setMinZoom(minZoom);
+        layer.setMaxZoom(maxZoom);
+        // Set before adding, the layer is created with its final look
+        if (properties.length > 0) layer.setProperties(properties);
 
-    void setPaintPropertyTextHaloColor(String layerId, String value) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            try {
-                // Could be an array expression
-                layer.setProperties(PropertyFactory.textHaloColor(Expression.Converter.convert(value)));
-            } catch (JsonSyntaxException|NullPointerException e) {
-                // Or just a string
-                layer.setProperties(PropertyFactory.textHaloColor(value));
-            }
+        if (beforeId == null || beforeId.isEmpty()) {
+            style.addLayer(layer);
+        } else {
+            style.addLayerBelow(layer, beforeId);
         }
+        mSelection.apply(style, layerId);
     }
 
-    void setPaintPropertyTextHaloWidth(String layerId, String value) {
-        final Layer layer = style.getLayer(layerId);
-        if (layer != null) {
-            try {
-                // Could be an array expression
-                layer.setProperties(PropertyFactory.textHaloWidth(Expression.Converter.convert(value)));
-            } catch (JsonSyntaxException |NullPointerException e) {
-                // Or just a float
-                layer.setProperties(PropertyFactory.textHaloWidth(Float.valueOf(value)));
-            }
-        }
+    boolean removeLayer(String layerId) {
+        onStyleChange(layerId);
+        return style.removeLayer(layerId);
     }
 
-    private final float retinaFactor = Resources.getSystem().getDisplayMetrics().density;
+    void addImage(String imageId, Bitmap bitmap) {
+        style.addImage(imageId, bitmap);
+        mAddedImageIds.add(imageId);
+    }
 
-    private int applyRetinaFactor(long d) {
-        return Math.round(d * retinaFactor);
+    void addImages(HashMap<String, Bitmap> images) {
+        style.addImages(images);
+        mAddedImageIds.addAll(images.keySet());
     }
 
-    private BitmapDrawable createSVG(SVG svg, int width, int height) {
-        if (width == 0)
-            width = applyRetinaFactor((int) Math.ceil(svg.getDocumentWidth()));
-        if (height == 0)
-            height = applyRetinaFactor((int) Math.ceil(svg.getDocumentHeight()));
-        Bitmap newBM = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas bmCanvas = new Canvas(newBM);
-        svg.renderToCanvas(bmCanvas);
-        return new BitmapDrawable(mActivity.getApplicationContext().getResources(), newBM);
+    void removeImage(String imageId) {
+        // The images of the style sprite can not be listed, only those added through the plugin are known
+        if (!mAddedImageIds.remove(imageId)) mIsStyleModified = true;
+        style.removeImage(imageId);
     }
 
+
     /**
-     * Creates icon for symbol from url or local file
-     *
-     * @param imageObject The properties.image part of a JSON feature
-     * @return an icon with a custom image
+     * Apply the properties of many layers, with one lookup and one setProperties call per layer.
+     * All the values are converted before any layer is changed, so an invalid value leaves the style untouched.
+     * @param layers {[layerId]: {[name]: value}}
+     * @return the ids of the layers not found in the style
      */
-    // Thanks @anothar
-    private Bitmap createImage(JSONObject imageObject) throws JSONException, IOException, SVGParseException {
-        InputStream stream = null;
-        BitmapDrawable bitmapDrawable;
-        Bitmap bitmap = null;
-        Context ctx = mActivity.getApplicationContext();
-        AssetManager am = ctx.getResources().getAssets();
-
-        try {
-            if (imageObject != null) {
-                if (imageObject.has("path")) {
-                    String fileLocation = imageObject.getString("path");
-
-                    if (fileLocation == null) {
-                        throw new Error("Need a file name");
-                    }
-
-                    final File iconFile = new File(mActivity.getFilesDir(), fileLocation);
-
-                    if (iconFile.exists()) {
-                        stream = new FileInputStream(iconFile);
-                    }
-                    else {
-                        try {
-                            stream = am.open(fileLocation);
-                        } catch (IOException e) {
-                            throw new IOException("File does not exists in assets folder or application folder: " + fileLocation);
-
-                        }
-                    }
-
-                    if (fileLocation.endsWith(".svg")) {
-                        bitmapDrawable = createSVG(SVG.getFromInputStream(stream), imageObject.has("width") ? applyRetinaFactor(imageObject.getInt("width")) : 0,
-                                imageObject.has("height") ? applyRetinaFactor(imageObject.getInt("height")) : 0);
-                    } else {
-                        bitmapDrawable = new BitmapDrawable(ctx.getResources(), stream);
-                    }
-                } else if (imageObject.has("data")) {
-                    byte[] decodedBytes = Base64.decode(imageObject.getString("data"), 0);
-                    bitmapDrawable = new BitmapDrawable(ctx.getResources(), BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length));
-
-                } else if (imageObject.has("svg")) {
-                    bitmapDrawable = createSVG(SVG.getFromString(imageObject.getString("svg")), imageObject.has("width") ? applyRetinaFactor(imageObject.getInt("width")) : 0,
-                            imageObject.has("height") ? applyRetinaFactor(imageObject.getInt("height")) : 0);
-                } else {
-                    throw new JSONException("Not found image data");
-                }
-                if (imageObject.has("width") && imageObject.has("height")) {
-                    bitmap = new BitmapDrawable(ctx.getResources(),
-                            Bitmap.createScaledBitmap(bitmapDrawable.getBitmap(),
-                                    applyRetinaFactor(imageObject.getInt("width")),
-                                    applyRetinaFactor(imageObject.getInt("height")),
-                                    true
-                            )).getBitmap();
-                } else {
-                    bitmap = bitmapDrawable.getBitmap();
-                }
+    ArrayList<String> setLayerProperties(JSONObject layers) throws JSONException {
+        final ArrayList<String> missingLayerIds = new ArrayList<>();
+        final ArrayList<Layer> foundLayers = new ArrayList<>(layers.length());
+        final ArrayList<PropertyValue<?>[]> layerProperties = new ArrayList<>(layers.length());
+        final Iterator<String> layerIds = layers.keys();
+        while (layerIds.hasNext()) {
+            final String layerId = layerIds.next();
+            final Layer layer = style.getLayer(layerId);
+            if (layer == null) {
+                missingLayerIds.add(layerId);
+                continue;
             }
-        } finally {
-            if (stream != null)
-                stream.close();
+            foundLayers.add(layer);
+            layerProperties.add(LayerProperties.read(layers.getJSONObject(layerId)));
+        }
+
+        for (int i = 0; i < foundLayers.size(); i++) {
+            final Layer layer = foundLayers.get(i);
+            final PropertyValue<?>[] properties = layerProperties.get(i);
+            onStyleChange(layer.getId());
+            if (properties.length > 0) layer.setProperties(properties);
+            mSelection.apply(style, layer.getId());
         }
-        return bitmap;
+        return missingLayerIds;
     }
 
     public LatLng getCenter() {
@@ -582,7 +758,24 @@ class MapController implements MapboxMap.OnMapClickListener {
 
     void addMapClickCallback(Runnable callback) {
         if (!isReady) return;
-        mMapboxMap.addOnMapClickListener(new MapClickListener(callback));
+        mMapClickCallbacks.add(callback);
+    }
+
+    /**
+     * Restrict the click hit-testing to some layers.
+     * @param layerIds the layers to query on tap, all the rendered layers if null
+     * @param clickRadius half size in dp of the box queried around the tap, 0 to query the tapped pixel only
+     */
+    void setInteractiveLayers(@Nullable JSONArray layerIds, float clickRadius) throws JSONException {
+        if (layerIds == null) {
+            mInteractiveLayerIds = null;
+        } else {
+            mInteractiveLayerIds = new String[layerIds.length()];
+            for (int i = 0; i < layerIds.length(); i++) {
+                mInteractiveLayerIds[i] = layerIds.getString(i);
+            }
+        }
+        mClickRadius = Math.max(0, clickRadius);
     }
 
     public double getZoom() {
@@ -611,21 +804,6 @@ class MapController implements MapboxMap.OnMapClickListener {
         return mMapboxMap.getProjection().getVisibleRegion().latLngBounds;
     }
 
-    private static class JSONLatLngBounds {
-        final JSONArray sw = new JSONArray();
-        final JSONArray ne = new JSONArray();
-        JSONLatLngBounds(LatLngBounds latLngBounds) throws JSONException {
-            sw.put(latLngBounds.getSouthWest().getLongitude());
-            sw.put(latLngBounds.getSouthWest().getLatitude());
-            ne.put(latLngBounds.getNorthEast().getLongitude());
-            ne.put(latLngBounds.getNorthEast().getLatitude());
-        }
-    }
-
-    JSONLatLngBounds getJSONBounds(LatLngBounds latLngBounds) throws JSONException {
-        return new JSONLatLngBounds(latLngBounds);
-    }
-
     PointF convertCoordinates(LatLng coords) {
         return mMapboxMap.getProjection().toScreenLocation(coords);
     }
@@ -634,6 +812,38 @@ class MapController implements MapboxMap.OnMapClickListener {
         return mMapboxMap.getProjection().fromScreenLocation(point);
     }
 
+    Projection getProjection() {
+        return mMapboxMap.getProjection();
+    }
+
+    /**
+     * Notify the stream after each camera change. A stream already registered with this id is closed.
+     */
+    void watchProjection(int watchId, EventStream eventStream) {
+        unwatchProjection(watchId);
+        if (mProjectionWatches.size() == 0) {
+            mMapView.addOnCameraDidChangeListener(mProjectionWatcher);
+        }
+        mProjectionWatches.put(watchId, eventStream);
+        mEventStreams.add(eventStream);
+    }
+
+    /**
+     * @return false if no projection is watched with this id
+     */
+    boolean unwatchProjection(int watchId) {
+        final EventStream eventStream = mProjectionWatches.get(watchId);
+        if (eventStream == null) return false;
+
+        mProjectionWatches.remove(watchId);
+        mEventStreams.remove(eventStream);
+        eventStream.close();
+        if (mProjectionWatches.size() == 0) {
+            mMapView.removeOnCameraDidChangeListener(mProjectionWatcher);
+        }
+        return true;
+    }
+
     private MapboxMapOptions createMapboxMapOptions(JSONObject options) throws JSONException {
         MapboxMapOptions opts = new MapboxMapOptions();
         opts.attributionEnabled(options.isNull("hideAttribution") || !options.getBoolean("hideAttribution"));
@@ -703,286 +913,290 @@ class MapController implements MapboxMap.OnMapClickListener {
         }
     }
 
-    JSONObject getJSONCameraGeoPosition() throws JSONException {
-        CameraPosition position = mMapboxMap.getCameraPosition();
+    /**
+     * @return the camera position as JSON text: {zoom, lat, long, alt, tilt, bearing}
+     */
+    String writeCameraPosition() {
+        mCameraSnapshot.fillCamera(mMapboxMap);
+        return mCameraSnapshot.writeCamera();
+    }
 
-        try {
-            return new JSONObject()
-                    .put("zoom", position.zoom)
-                    .put("long", position.target != null ? position.target.getLongitude() : 0)
-                    .put("alt", position.target != null ? position.target.getAltitude() : 0)
-                    .put("tilt", position.tilt)
-                    .put("bearing", position.bearing);
-        } catch (JSONException e) {
-            e.printStackTrace();
-            throw new JSONException(e.getMessage());
-        }
+    /**
+     * @return the event as JSON text: {type, latLngBounds: {sw, ne}}
+     */
+    private String writeMapEvent(MapEventType type) {
+        mCameraSnapshot.fillBounds(mMapboxMap);
+        return mCameraSnapshot.writeEvent(type.getType());
     }
 
-    void addOnWillStartLoadingMapListener(RunnableWithArg<JSONObject> callback) {
-        mMapView.addOnWillStartLoadingMapListener(() -> {
-            try {
-                callback.run(this.getJSONCameraGeoPosition());
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        });
+    List<EventStream> getEventStreams() {
+        return mEventStreams;
     }
 
-    void addOnWillStartRenderingMapListener(RunnableWithArg<JSONObject> callback) {
-        mMapView.addOnWillStartRenderingMapListener(() -> {
-            try {
-                callback.run(this.getJSONCameraGeoPosition());
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        });
+    void addOnWillStartLoadingMapListener(RunnableWithArg<String> callback) {
+        final MapView.OnWillStartLoadingMapListener listener = () -> callback.run(writeCameraPosition());
+        mMapView.addOnWillStartLoadingMapListener(listener);
+        mListenerRemovals.add(() -> mMapView.removeOnWillStartLoadingMapListener(listener));
     }
 
-    void addOnCameraWillChangeListener(RunnableWithArg<JSONObject> callback) {
-        mMapView.addOnCameraWillChangeListener((boolean isAnimated) -> {
-            try {
-                callback.run(this.getJSONCameraGeoPosition());
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        });
+    void addOnWillStartRenderingMapListener(RunnableWithArg<String> callback) {
+        final MapView.OnWillStartRenderingMapListener listener = () -> callback.run(writeCameraPosition());
+        mMapView.addOnWillStartRenderingMapListener(listener);
+        mListenerRemovals.add(() -> mMapView.removeOnWillStartRenderingMapListener(listener));
     }
 
-    void addOnCameraDidChangeListener(RunnableWithArg<JSONObject> callback) {
-        mMapView.addOnCameraDidChangeListener((boolean isAnimated) -> {
-            try {
-                callback.run(this.getJSONCameraGeoPosition());
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        });
+    void addOnCameraWillChangeListener(RunnableWithArg<String> callback) {
+        final MapView.OnCameraWillChangeListener listener = (boolean isAnimated) -> callback.run(writeCameraPosition());
+        mMapView.addOnCameraWillChangeListener(listener);
+        mListenerRemovals.add(() -> mMapView.removeOnCameraWillChangeListener(listener));
     }
 
-    void addOnDidFinishLoadingStyleListener(RunnableWithArg<JSONObject> callback) {
-        mMapView.addOnDidFinishLoadingStyleListener(() -> {
-            try {
-                callback.run(this.getJSONCameraGeoPosition());
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        });
+    void addOnCameraDidChangeListener(EventStream eventStream) {
+        mEventStreams.add(eventStream);
+        final MapView.OnCameraDidChangeListener listener = (boolean isAnimated) -> eventStream.onEvent();
+        mMapView.addOnCameraDidChangeListener(listener);
+        mListenerRemovals.add(() -> mMapView.removeOnCameraDidChangeListener(listener));
     }
 
-    void addOnSourceChangedListener(RunnableWithArg<JSONObject> callback) {
-        mMapView.addOnSourceChangedListener((String id) -> {
-            try {
-                callback.run(this.getJSONCameraGeoPosition());
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        });
+    void addOnDidFinishLoadingStyleListener(RunnableWithArg<String> callback) {
+        final MapView.OnDidFinishLoadingStyleListener listener = () -> callback.run(writeCameraPosition());
+        mMapView.addOnDidFinishLoadingStyleListener(listener);
+        mListenerRemovals.add(() -> mMapView.removeOnDidFinishLoadingStyleListener(listener));
     }
 
-    void addOnWillStartRenderingFrameListener(RunnableWithArg<JSONObject> callback) {
-        mMapView.addOnWillStartRenderingFrameListener(() -> {
-            try {
-                callback.run(this.getJSONCameraGeoPosition());
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        });
+    void addOnSourceChangedListener(RunnableWithArg<String> callback) {
+        final MapView.OnSourceChangedListener listener = (String id) -> callback.run(writeCameraPosition());
+        mMapView.addOnSourceChangedListener(listener);
+        mListenerRemovals.add(() -> mMapView.removeOnSourceChangedListener(listener));
     }
 
-    void addOnDidFinishRenderingFrameListener(RunnableWithArg<JSONObject> callback) {
-        mMapView.addOnDidFinishRenderingFrameListener((boolean fully) -> {
-            try {
-                callback.run(this.getJSONCameraGeoPosition());
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        });
+    void addOnWillStartRenderingFrameListener(EventStream eventStream) {
+        mEventStreams.add(eventStream);
+        final MapView.OnWillStartRenderingFrameListener listener = () -> eventStream.onEvent();
+        mMapView.addOnWillStartRenderingFrameListener(listener);
+        mListenerRemovals.add(() -> mMapView.removeOnWillStartRenderingFrameListener(listener));
     }
 
-    void addOnDidFinishLoadingMapListener(RunnableWithArg<JSONObject> callback) {
-        mMapView.addOnDidFinishLoadingMapListener(() -> {
-            try {
-                callback.run(this.getJSONCameraGeoPosition());
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        });
+    void addOnDidFinishRenderingFrameListener(EventStream eventStream) {
+        mEventStreams.add(eventStream);
+        final MapView.OnDidFinishRenderingFrameListener listener = (boolean fully) -> eventStream.onEvent();
+        mMapView.addOnDidFinishRenderingFrameListener(listener);
+        mListenerRemovals.add(() -> mMapView.removeOnDidFinishRenderingFrameListener(listener));
+    }
+
+    void addOnDidFinishLoadingMapListener(RunnableWithArg<String> callback) {
+        final MapView.OnDidFinishLoadingMapListener listener = () -> callback.run(writeCameraPosition());
+        mMapView.addOnDidFinishLoadingMapListener(listener);
+        mListenerRemovals.add(() -> mMapView.removeOnDidFinishLoadingMapListener(listener));
     }
 
     void addOnDidFinishRenderingMapListener(RunnableWithArg<Boolean> callback) {
-        mMapView.addOnDidFinishRenderingMapListener(callback::run);
+        final MapView.OnDidFinishRenderingMapListener listener = callback::run;
+        mMapView.addOnDidFinishRenderingMapListener(listener);
+        mListenerRemovals.add(() -> mMapView.removeOnDidFinishRenderingMapListener(listener));
     }
 
-    void addOnMoveListener(RunnableWithArg<MapEventPayload> callback) {
-        mMapboxMap.addOnMoveListener(new MapboxMap.OnMoveListener() {
+    void addOnMoveListener(RunnableWithArg<String> callback) {
+        final MapboxMap.OnMoveListener listener = new MapboxMap.OnMoveListener() {
             @Override
             public void onMoveBegin(@NonNull MoveGestureDetector detector) {
-                try {
-                    callback.run(new MapEventPayload(MapEventType.OnMoveStart, getBounds()));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
+                callback.run(writeMapEvent(MapEventType.OnMoveStart));
             }
 
             @Override
             public void onMove(@NonNull MoveGestureDetector detector) {
-                try {
-                    callback.run(new MapEventPayload(MapEventType.OnMove, getBounds()));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
+                callback.run(writeMapEvent(MapEventType.OnMove));
             }
 
             @Override
             public void onMoveEnd(@NonNull MoveGestureDetector detector) {
-                try {
-                    callback.run(new MapEventPayload(MapEventType.OnMoveEnd, getBounds()));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
+                callback.run(writeMapEvent(MapEventType.OnMoveEnd));
             }
-        });
+        };
+        mMapboxMap.addOnMoveListener(listener);
+        mListenerRemovals.add(() -> mMapboxMap.removeOnMoveListener(listener));
     }
-    void addOnFlingListener(RunnableWithArg<MapEventPayload> callback) {
-        mMapboxMap.addOnFlingListener(() -> {
-            try {
-                callback.run(new MapEventPayload(MapEventType.OnFling, getBounds()));
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        });
+    void addOnFlingListener(RunnableWithArg<String> callback) {
+        final MapboxMap.OnFlingListener listener = () -> callback.run(writeMapEvent(MapEventType.OnFling));
+        mMapboxMap.addOnFlingListener(listener);
+        mListenerRemovals.add(() -> mMapboxMap.removeOnFlingListener(listener));
     }
-    void addOnRotateListener(RunnableWithArg<MapEventPayload> callback) {
-        mMapboxMap.addOnRotateListener(new MapboxMap.OnRotateListener() {
+    void addOnRotateListener(RunnableWithArg<String> callback) {
+        final MapboxMap.OnRotateListener listener = new MapboxMap.OnRotateListener() {
             @Override
             public void onRotateBegin(@NonNull RotateGestureDetector detector) {
-                try {
-                    callback.run(new MapEventPayload(MapEventType.OnRotateStart, getBounds()));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
+                callback.run(writeMapEvent(MapEventType.OnRotateStart));
             }
 
             @Override
             public void onRotate(@NonNull RotateGestureDetector detector) {
-                try {
-                    callback.run(new MapEventPayload(MapEventType.OnRotate, getBounds()));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
+                callback.run(writeMapEvent(MapEventType.OnRotate));
             }
 
             @Override
             public void onRotateEnd(@NonNull RotateGestureDetector detector) {
-                try {
-                    callback.run(new MapEventPayload(MapEventType.OnRotateEnd, getBounds()));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
+                callback.run(writeMapEvent(MapEventType.OnRotateEnd));
             }
-        });
+        };
+        mMapboxMap.addOnRotateListener(listener);
+        mListenerRemovals.add(() -> mMapboxMap.removeOnRotateListener(listener));
     }
-    void addOnScaleListener(RunnableWithArg<MapEventPayload> callback) {
-        mMapboxMap.addOnScaleListener(new MapboxMap.OnScaleListener() {
+    void addOnScaleListener(RunnableWithArg<String> callback) {
+        final MapboxMap.OnScaleListener listener = new MapboxMap.OnScaleListener() {
             @Override
             public void onScaleBegin(@NonNull StandardScaleGestureDetector detector) {
-                try {
-                    callback.run(new MapEventPayload(MapEventType.OnScaleStart, getBounds()));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
+                callback.run(writeMapEvent(MapEventType.OnScaleStart));
             }
 
             @Override
             public void onScale(@NonNull StandardScaleGestureDetector detector) {
-                try {
-                    callback.run(new MapEventPayload(MapEventType.OnScale, getBounds()));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
+                callback.run(writeMapEvent(MapEventType.OnScale));
             }
 
             @Override
             public void onScaleEnd(@NonNull StandardScaleGestureDetector detector) {
-                try {
-                    callback.run(new MapEventPayload(MapEventType.OnScaleEnd, getBounds()));
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
+                callback.run(writeMapEvent(MapEventType.OnScaleEnd));
             }
-        });
+        };
+        mMapboxMap.addOnScaleListener(listener);
+        mListenerRemovals.add(() -> mMapboxMap.removeOnScaleListener(listener));
     }
 
+    /**
+     * The single click listener of the map. The tap is hit-tested once, against the interactive layers,
+     * then the result is shared by the selection and the click callbacks.
+     */
     @Override
     public boolean onMapClick(@NonNull LatLng point) {
-        if (style != null && mSelectedFeatureLayerId != null) {
-
-            final PointF pixel = convertCoordinates(point);
-            List<Feature> features = mMapboxMap.queryRenderedFeatures(pixel);
-            Feature feature = null;
-            for (int i = 0; i < features.size(); i++ ) {
-                final JsonObject properties = features.get(i).properties();
-                if (properties != null && properties.has("type") && properties.get("type").getAsString().equals(mSelectableFeaturePropType)) {
-                    feature = features.get(i);
-                    break;
-                }
-            }
-            List<Feature> selectedFeature = mMapboxMap.queryRenderedFeatures(pixel, mSelectedFeatureLayerId);
+        final boolean isSelectable = style != null && mSelectableFeaturePropType != null;
+        if (!isSelectable && mMapClickCallbacks.isEmpty()) return false;
 
-            if (selectedFeature.size() > 0 && mHasSelectedFeature) {
-                return false;
-            }
+        final List<Feature> features = queryClickedFeatures(convertCoordinates(point));
 
-            if (feature == null) {
-                if (mHasSelectedFeature) {
-                    deselectFeature();
-                }
-                return false;
-            }
+        if (isSelectable) {
+            updateSelection(features);
+        }
 
-            if (mHasSelectedFeature) {
-                deselectFeature();
+        if (!mMapClickCallbacks.isEmpty()) {
+            Objects.requireNonNull(mSelectedFeatureCollection.features()).clear();
+            Objects.requireNonNull(mSelectedFeatureCollection.features()).addAll(features);
+            for (Runnable callback : mMapClickCallbacks) {
+                callback.run();
             }
-
-            selectFeature(feature);
+            return true;
         }
         return false;
     }
 
-    private final TimeInterpolator interpolator = new BounceInterpolator();
+    private List<Feature> queryClickedFeatures(PointF pixel) {
+        if (mClickRadius == 0) {
+            return mInteractiveLayerIds != null
+                    ? mMapboxMap.queryRenderedFeatures(pixel, mInteractiveLayerIds)
+                    : mMapboxMap.queryRenderedFeatures(pixel);
+        }
+        final float radius = mClickRadius * mActivity.getResources().getDisplayMetrics().density;
+        final RectF box = new RectF(pixel.x - radius, pixel.y - radius, pixel.x + radius, pixel.y + radius);
+        return mInteractiveLayerIds != null
+                ? mMapboxMap.queryRenderedFeatures(box, mInteractiveLayerIds)
+                : mMapboxMap.queryRenderedFeatures(box);
+    }
 
-    private void selectFeature(final Feature feature) {
-        if (mSelectedFeatureLayerId == null || mSelectedFeatureSourceId == null) return;
+    /**
+     * Select the first clicked feature of the selectable type, deselect when the tap hits nothing selectable.
+     * Tapping a selected feature again keeps the selection. Features without id can not be selected.
+     */
+    private void updateSelection(List<Feature> features) {
+        Feature selected = null;
+        for (Feature clicked : features) {
+            final String id = clicked.id();
+            if (id == null) continue;
+            if (mSelection.isSelected(id)) return;
+            final JsonObject properties = clicked.properties();
+            if (selected == null && properties != null && properties.has("type") && properties.get("type").getAsString().equals(mSelectableFeaturePropType)) {
+                selected = clicked;
+            }
+        }
 
-        final SymbolLayer selectedFeatureLayer = (SymbolLayer) style.getLayer(mSelectedFeatureLayerId);
+        try {
+            if (selected != null) {
+                if (mSelection.select(Collections.singletonList(selected.id()), false)) {
+                    mSelection.apply(style);
+                }
+                updateLegacySelection(selected);
+            } else {
+                deselectFeatures(null);
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
 
-        if (selectedFeatureLayer == null) return;
+    /**
+     * @param isAdditive add the features to the selection, otherwise replace it
+     */
+    void selectFeatures(List<String> ids, boolean isAdditive) throws JSONException {
+        if (mSelection.select(ids, isAdditive)) {
+            mSelection.apply(style);
+            updateLegacySelection(null);
+        }
+    }
 
-        GeoJsonSource source = style.getSourceAs(mSelectedFeatureSourceId);
-        if (source != null) {
-            source.setGeoJson(feature);
+    /**
+     * @param ids null to deselect all the features
+     */
+    void deselectFeatures(@Nullable List<String> ids) throws JSONException {
+        if (ids == null ? mSelection.clear() : mSelection.deselect(ids)) {
+            mSelection.apply(style);
+            updateLegacySelection(null);
         }
-        ValueAnimator featureAnimator = new ValueAnimator();
-        featureAnimator.setObjectValues(0f, 1f);
-        featureAnimator.setDuration(800);
-        featureAnimator.setInterpolator(interpolator);
-        featureAnimator.addUpdateListener(animator -> {
-            final float factor = (float)(animator.getAnimatedValue());
-            selectedFeatureLayer.setProperties(PropertyFactory.iconSize((float) (1 + .25 * factor)));
-        });
-        featureAnimator.start();
-        mHasSelectedFeature = true;
     }
 
-    void deselectFeature() {
-        if (mSelectedFeatureSourceId == null) return;
+    private void readLegacySelectionOptions(JSONObject options) throws JSONException {
+        mSelectedFeatureLayerId = options.isNull("selectedFeatureLayerId") ? null : options.getString("selectedFeatureLayerId");
+        mSelectedFeatureSourceId = options.isNull("selectedFeatureSourceId") ? null : options.getString("selectedFeatureSourceId");
+    }
+
+    /**
+     * Compatibility with the deprecated selectedFeatureLayerId and selectedFeatureSourceId options:
+     * the tapped feature is copied to the source of the selection layer, whose icons are enlarged.
+     * The copy is removed once the feature is deselected.
+     * @param tapped the feature selected by a tap, null after any other selection change
+     */
+    private void updateLegacySelection(@Nullable Feature tapped) {
+        if (mSelectedFeatureSourceId == null || style == null) return;
+        if (tapped != null) {
+            mLegacySelectedFeature = tapped;
+        } else if (mLegacySelectedFeature != null && !mSelection.isSelected(Objects.requireNonNull(mLegacySelectedFeature.id()))) {
+            mLegacySelectedFeature = null;
+        } else {
+            return;
+        }
 
         final GeoJsonSource source = style.getSourceAs(mSelectedFeatureSourceId);
-        if (source != null) {
-            source.setGeoJson(FeatureCollection.fromFeatures(
-                    new Feature[]{}));
+        if (source == null) return;
+        onStyleChange(mSelectedFeatureSourceId);
+        source.setGeoJson(mLegacySelectedFeature != null
+                ? FeatureCollection.fromFeature(mLegacySelectedFeature)
+                : FeatureCollection.fromFeatures(new Feature[]{}));
+
+        final Layer layer = mSelectedFeatureLayerId != null ? style.getLayer(mSelectedFeatureLayerId) : null;
+        if (mLegacySelectedFeature != null && layer instanceof SymbolLayer) {
+            onStyleChange(mSelectedFeatureLayerId);
+            // A single feature is laid out again
+            layer.setProperties(PropertyFactory.iconSize(1.25f));
         }
-        mHasSelectedFeature = false;
+    }
+
+    Set<String> getSelectedFeatureIds() {
+        return mSelection.getIds();
+    }
+
+    /**
+     * @param highlight {[property]: {selected, unselected}}, null to stop highlighting the selection in the layer
+     */
+    void setSelectionStyle(String layerId, @Nullable JSONObject highlight) throws JSONException {
+        onStyleChange(layerId);
+        mSelection.setStyle(style, layerId, highlight);
     }
 
     public enum MapEventType {
@@ -1007,38 +1221,4 @@ class MapController implements MapboxMap.OnMapClickListener {
             return eventType;
         }
     }
-
-    public class MapEventPayload {
-        final public MapEventType type;
-        final public JSONLatLngBounds latLngBounds;
-
-        public MapEventPayload(MapEventType _mapEventType, LatLngBounds _latLngBounds) throws JSONException {
-            type = _mapEventType;
-            latLngBounds = getJSONBounds(_latLngBounds);
-        }
-
-        public JSONObject toJSON() throws JSONException {
-            JSONObject payload = new JSONObject();
-            payload.put("type", this.type.eventType);
-            payload.put("latLngBounds", this.latLngBounds);
-            return payload;
-        }
-    }
-
-    private class MapClickListener implements MapboxMap.OnMapClickListener {
-        private final Runnable callback;
-
-        MapClickListener(Runnable cb) {
-            callback = cb;
-        }
-
-        @Override
-        public boolean onMapClick(@NonNull LatLng point) {
-            List<Feature> features = mMapboxMap.queryRenderedFeatures(convertCoordinates(point));
-            Objects.requireNonNull(mSelectedFeatureCollection.features()).clear();
-            Objects.requireNonNull(mSelectedFeatureCollection.features()).addAll(features);
-            callback.run();
-            return true;
-        }
-    }
-}
\ No newline at end of file
+}
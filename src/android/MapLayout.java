@@ -26,10 +26,14 @@ import org.json.JSONObject;
  * a decoupling and easily switch to GoogleMap or whatever in the futur.
  */
 public class MapLayout {
+    final String mapId;
     private CDVMapbox mPlugRef;
     private FrameLayout mLayersGroup;
-    private JSONObject mMapDivLayoutJSON;
+    // Map div rect in the WebView content, in pixels. Parsed once by setContainer.
+    private float mMapLeft, mMapTop, mMapWidth, mMapHeight;
     private MapController mMapCtrl;
+    // Recycled maps are reused by the maps shown with the same key
+    private String mPoolKey;
 
     private static CordovaWebView mCdvWebView;
     private static float mRetinaFactor;
@@ -44,49 +48,50 @@ public class MapLayout {
     }
 
     /**
-     * Create a map without any layout set
+     * Create a map without any layout set, or reuse a recycled map with the same style
+     * @param mapId id of the map in the commands
      * @param args original cordova arguments of the the show command
      * @param plugRef a reference to CDVMapbox instance
      * @param activity the main parent activity
-     * @param callbackContext command callback context
+     * @throws JSONException when the options are invalid
      */
-    public MapLayout(final CordovaArgs args, CDVMapbox plugRef, Activity activity, CallbackContext callbackContext) {
+    public MapLayout(String mapId, final CordovaArgs args, CDVMapbox plugRef, Activity activity) throws JSONException {
+        this.mapId = mapId;
         mPlugRef = plugRef;
         mCdvWebView = mPlugRef.webView;
         Context _context = mCdvWebView.getView().getContext();
         mRetinaFactor = Resources.getSystem().getDisplayMetrics().density;
 
-        final JSONObject options;
-        final JSONArray HTMLs;
-        @Nullable final String selectedFeatureLayerId;
-        @Nullable final String selectedFeatureSourceId;
-        @Nullable final String selectableFeaturePropType;
-        try {
-            options = args.getJSONObject(0);
-            HTMLs = options.isNull("HTMLs") ? new JSONArray() : options.getJSONArray("HTMLs");
-            if(options.isNull("rect")) throw new JSONException("Map constructor need a rect in the JSONObject options argument.");
-            selectedFeatureLayerId  = options.has("selectedFeatureLayerId") ? options.getString("selectedFeatureLayerId") : null;
-            selectedFeatureSourceId  = options.has("selectedFeatureSourceId") ? options.getString("selectedFeatureSourceId") : null;
-            selectableFeaturePropType  = options.has("selectableFeaturePropType") ? options.getString("selectableFeaturePropType") : null;
-        } catch (JSONException e) {
-            callbackContext.error(e.getMessage());
-            e.printStackTrace();
-            return;
-        }
+        final JSONObject options = args.getJSONObject(0);
+        final JSONArray HTMLs = options.isNull("HTMLs") ? new JSONArray() : options.getJSONArray("HTMLs");
+        if(options.isNull("rect")) throw new JSONException("Map constructor need a rect in the JSONObject options argument.");
+        @Nullable final String selectableFeaturePropType  = options.has("selectableFeaturePropType") ? options.getString("selectableFeaturePropType") : null;
+        mPoolKey = MapController.readPoolKey(options);
 
         // Draw the blocking touch zones to allow click on overlay DOM elements
+        mPlugRef.pluginLayout.clearHTMLElement(mapId);
         updateMapOverlay(HTMLs);
 
-        // Create a controller (which instantiate the MGLMapbox view)
+        // Reuse a recycled map, its style is already loaded.
+        // Otherwise create a controller (which instantiate the MGLMapbox view)
         // todo find an optimized way to pass the scroll view ?
-        mMapCtrl = new MapController(
-                options,
-                activity,
-                selectedFeatureLayerId,
-                selectedFeatureSourceId,
-                selectableFeaturePropType,
-                mPlugRef.pluginLayout.getScrollView()
-        );
+        @Nullable final MapController recycledMapCtrl = MapViewPool.acquire(mPoolKey);
+        if (recycledMapCtrl != null) {
+            try {
+                recycledMapCtrl.reuse(options, selectableFeaturePropType, mPlugRef.pluginLayout.getScrollView());
+            } catch (JSONException e) {
+                recycledMapCtrl.destroy();
+                throw e;
+            }
+            mMapCtrl = recycledMapCtrl;
+        } else {
+            mMapCtrl = new MapController(
+                    options,
+                    activity,
+                    selectableFeaturePropType,
+                    mPlugRef.pluginLayout.getScrollView()
+            );
+        }
 
         // The view container. Contains map and touch wrapper views.
         mLayersGroup = mMapCtrl.getMapView();
@@ -110,7 +115,7 @@ public class MapLayout {
                 divH = applyRetinaFactor(elemSize.getLong("height"));
                 divLeft = applyRetinaFactor(elemSize.getLong("left"));
                 divTop = applyRetinaFactor(elemSize.getLong("top"));
-                mPlugRef.pluginLayout.setHTMLElement(elemId, divLeft, divTop, divLeft + divW, divTop + divH);
+                mPlugRef.pluginLayout.setHTMLElement(mapId, elemId, divLeft, divTop, divLeft + divW, divTop + divH);
             } catch (Exception e){
                 e.printStackTrace();
             }
@@ -118,8 +123,16 @@ public class MapLayout {
     }
 
     public void onScroll(int x, int y){
+        setMapDrawingRect(x, y);
+    }
+
+    private void setMapDrawingRect(int scrollX, int scrollY) {
         mPlugRef.pluginLayout.setMapDrawingRect(
-                toRect(mMapDivLayoutJSON, x, y)
+                mapId,
+                mMapLeft - scrollX,
+                mMapTop - scrollY,
+                mMapLeft + mMapWidth - scrollX,
+                mMapTop + mMapHeight - scrollY
         );
     }
 
@@ -128,11 +141,9 @@ public class MapLayout {
             return;
         }
 
-        mPlugRef.pluginLayout.setMapDrawingRect(
-                toRect(mMapDivLayoutJSON, mCdvWebView.getView().getScrollX(), mCdvWebView.getView().getScrollY())
-        );
+        setMapDrawingRect(mCdvWebView.getView().getScrollX(), mCdvWebView.getView().getScrollY());
 
-        mPlugRef.pluginLayout.updateViewPosition();
+        mPlugRef.pluginLayout.updateViewPosition(mapId);
 
         mLayersGroup.requestLayout(); //todo watch this line if nothing is resized
 
@@ -155,12 +166,19 @@ public class MapLayout {
             }
 
             // update the map size
-            mMapDivLayoutJSON = options.getJSONObject("rect");
-
-            // update the map overlay DOM elements touch boxes
-            JSONArray HTMLs = options.isNull("HTMLs") ? new JSONArray() : options.getJSONArray("HTMLs");
-            mPlugRef.pluginLayout.clearHTMLElement();
-            updateMapOverlay(HTMLs);
+            final JSONObject rect = options.getJSONObject("rect");
+            mMapLeft = applyRetinaFactor(rect.getLong("left"));
+            mMapTop = applyRetinaFactor(rect.getLong("top"));
+            mMapWidth = applyRetinaFactor(rect.getLong("width"));
+            mMapHeight = applyRetinaFactor(rect.getLong("height"));
+
+            // replace the map overlay DOM elements touch boxes, when sent.
+            // Otherwise they are kept as is and updated with UPSERT_HTML_RECTS and REMOVE_HTML_RECTS.
+            if (options.has("HTMLs")) {
+                JSONArray HTMLs = options.isNull("HTMLs") ? new JSONArray() : options.getJSONArray("HTMLs");
+                mPlugRef.pluginLayout.clearHTMLElement(mapId);
+                updateMapOverlay(HTMLs);
+            }
 
             // Finally, update the map view layout to take account of the new map dimension.
             updateMapViewLayout();
@@ -171,33 +189,42 @@ public class MapLayout {
         }
     }
 
-    private float applyRetinaFactor(long d) {
-        return d * mRetinaFactor;
+    /**
+     * Add or move overlay DOM elements touch boxes.
+     * @param ids DOM ids
+     * @param rects [left, top, width, height] of each element, in CSS pixels
+     */
+    void upsertHTMLRects(JSONArray ids, JSONArray rects) throws JSONException {
+        if (rects.length() != ids.length() * 4) {
+            throw new JSONException("UPSERT_HTML_RECTS needs 4 values per id, got " + rects.length() + " for " + ids.length() + " ids");
+        }
+        for (int i = 0; i < ids.length(); i++) {
+            final float left = applyRetinaFactor(rects.getDouble(i * 4));
+            final float top = applyRetinaFactor(rects.getDouble(i * 4 + 1));
+            final float width = applyRetinaFactor(rects.getDouble(i * 4 + 2));
+            final float height = applyRetinaFactor(rects.getDouble(i * 4 + 3));
+            mPlugRef.pluginLayout.setHTMLElement(mapId, ids.getString(i), left, top, left + width, top + height);
+        }
     }
 
+    /**
+     * @param ids DOM ids of the overlay elements which are gone
+     */
+    void removeHTMLRects(JSONArray ids) throws JSONException {
+        for (int i = 0; i < ids.length(); i++) {
+            mPlugRef.pluginLayout.removeHTMLElement(mapId, ids.getString(i));
+        }
+    }
 
-    private RectF toRect(JSONObject rect, float... scroll) {
-        float scrollX = scroll.length > 0 ? scroll[0] : 0;
-        float scrollY = scroll.length > 1 ? scroll[1] : 0;
-
-        try{
-            float left = applyRetinaFactor(rect.getLong("left"));
-            float width = applyRetinaFactor(rect.getLong("width"));
-            float top = applyRetinaFactor(rect.getLong("top"));
-            float height = applyRetinaFactor(rect.getLong("height"));
-
-            return new RectF(
-                left - scrollX,
-                top - scrollY,
-                left + width - scrollX,
-                top + height - scrollY);
+    private float applyRetinaFactor(long d) {
+        return d * mRetinaFactor;
+    }
 
-        } catch (JSONException e) {
-            e.printStackTrace();
-            return null;
-        }
+    private float applyRetinaFactor(double d) {
+        return (float) (d * mRetinaFactor);
     }
 
+
     //todo take in account all type of layer
     private FrameLayout.LayoutParams _toLayoutParams(RectF rect) {
         int screenW = Math.round(mCdvWebView.getView().getWidth());
@@ -226,4 +253,13 @@ public class MapLayout {
         mMapCtrl.getMapView().onResume();
         mMapCtrl.getMapView().onStart();
     }
+
+    /**
+     * Remove the map from the layout and give it to the pool, to be displayed again by a next SHOW.
+     */
+    void destroy() {
+        mMarkerCallbackContext = null;
+        mPlugRef.pluginLayout.detachViewGroup(mapId);
+        MapViewPool.release(mPoolKey, mMapCtrl);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,82 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+
+/**
+ * Maps released by DESTROY, kept with their native map, style and tiles in memory,
+ * to be displayed again by a next SHOW with the same pool key instead of creating a new MapView.
+ *
+ * The pool is small: each pooled map keeps its native resources. The oldest map is destroyed
+ * when a new one does not fit. Must be used from the UI thread.
+ */
+class MapViewPool {
+    private static final int MAX_SIZE = 2;
+
+    private static final ArrayList<Entry> sEntries = new ArrayList<>();
+    private static long sHits = 0;
+    private static long sMisses = 0;
+
+    /**
+     * @return a recycled map created with the same pool key, null if none. It is removed from the pool.
+     */
+    @Nullable
+    static MapController acquire(String poolKey) {
+        // Most recently released first, its tiles are the most likely to be still relevant
+        for (int i = sEntries.size() - 1; i >= 0; i--) {
+            if (sEntries.get(i).poolKey.equals(poolKey)) {
+                sHits++;
+                return sEntries.remove(i).mapCtrl;
+            }
+        }
+        sMisses++;
+        return null;
+    }
+
+    /**
+     * Recycle a map detached from the layout and keep it. A map whose style is not loaded yet is destroyed.
+     */
+    static void release(String poolKey, MapController mapCtrl) {
+        if (!mapCtrl.isReady) {
+            mapCtrl.destroy();
+            return;
+        }
+        mapCtrl.recycle();
+        sEntries.add(new Entry(poolKey, mapCtrl));
+        if (sEntries.size() > MAX_SIZE) {
+            sEntries.remove(0).mapCtrl.destroy();
+        }
+    }
+
+    /**
+     * @return {size, maxSize, hits, misses}, a hit is a SHOW served by a recycled map
+     */
+    static JSONObject getStats() throws JSONException {
+        return new JSONObject()
+                .put("size", sEntries.size())
+                .put("maxSize", MAX_SIZE)
+                .put("hits", sHits)
+                .put("misses", sMisses);
+    }
+
+    static void onDestroy() {
+        for (Entry entry : sEntries) {
+            entry.mapCtrl.destroy();
+        }
+        sEntries.clear();
+    }
+
+    private static class Entry {
+        final String poolKey;
+        final MapController mapCtrl;
+
+        Entry(String poolKey, MapController mapCtrl) {
+            this.poolKey = poolKey;
+            this.mapCtrl = mapCtrl;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.dagatsoin.plugins.mapbox;
+
+/**
+ * Static packed Hilbert R-tree of boxes, in the layout of flatbush.
+ *
+ * The items are sorted by the Hilbert value of their center, then packed bottom-up in
+ * nodes of nodeSize entries. All the boxes live in one double array and the item or child
+ * index of each entry in one int array: a few bytes per item, no node objects.
+ *
+ * Add all the items then call finish. Immutable once finished, queries are thread safe.
+ */
+class PackedRTree {
+    interface Visitor {
+        void visit(int item, double minX, double minY, double maxX, double maxY);
+    }
+
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    final int numItems;
+    private final int mNodeSize;
+    private final int[] mLevelBounds;
+    private final double[] mBoxes;
+    private final int[] mIndices;
+    private int mPos = 0;
+    private double mMinX = Double.POSITIVE_INFINITY;
+    private double mMinY = Double.POSITIVE_INFINITY;
+    private double mMaxX = Double.NEGATIVE_INFINITY;
+    private double mMaxY = Double.NEGATIVE_INFINITY;
+
+    /**
+     * @param numItems at least 1
+     */
+    PackedRTree(int numItems, int nodeSize) {
+        this.numItems = numItems;
+        mNodeSize = Math.max(2, nodeSize);
+
+        // Number of nodes of each level, from the leaves to the root
+        int n = numItems;
+        int numNodes = n;
+        int levels = 1;
+        do {
+            n = (n + mNodeSize - 1) / mNodeSize;
+            numNodes += n;
+            levels++;
+        } while (n != 1);
+
+        mLevelBounds = new int[levels];
+        n = numItems;
+        numNodes = n;
+        mLevelBounds[0] = n * 4;
+        for (int i = 1; i < levels; i++) {
+            n = (n + mNodeSize - 1) / mNodeSize;
+            numNodes += n;
+            mLevelBounds[i] = numNodes * 4;
+        }
+
+        mBoxes = new double[numNodes * 4];
+        mIndices = new int[numNodes];
+    }
+
+    /**
+     * @return the item index, in the order of the calls
+     */
+    int add(double minX, double minY, double maxX, double maxY) {
+        final int index = mPos >> 2;
+        mIndices[index] = index;
+        mBoxes[mPos++] = minX;
+        mBoxes[mPos++] = minY;
+        mBoxes[mPos++] = maxX;
+        mBoxes[mPos++] = maxY;
+
+        if (minX < mMinX) mMinX = minX;
+        if (minY < mMinY) mMinY = minY;
+        if (maxX > mMaxX) mMaxX = maxX;
+        if (maxY > mMaxY) mMaxY = maxY;
+        return index;
+    }
+
+    void finish() {
+        if (mPos >> 2 != numItems) {
+            throw new IllegalStateException("Added " + (mPos >> 2) + " items instead of " + numItems);
+        }
+
+        final double width = mMaxX - mMinX > 0 ? mMaxX - mMinX : 1;
+        final double height = mMaxY - mMinY > 0 ? mMaxY - mMinY : 1;
+        final long[] hilbertValues = new long[numItems];
+        for (int i = 0, pos = 0; i < numItems; i++) {
+            final double minX = mBoxes[pos++];
+            final double minY = mBoxes[pos++];
+            final double maxX = mBoxes[pos++];
+            final double maxY = mBoxes[pos++];
+            final int x = (int) Math.floor(HILBERT_MAX * ((minX + maxX) / 2 - mMinX) / width);
+            final int y = (int) Math.floor(HILBERT_MAX * ((minY + maxY) / 2 - mMinY) / height);
+            hilbertValues[i] = hilbert(x, y);
+        }
+        sort(hilbertValues, 0, numItems - 1);
+
+        // Pack the entries of each level into the nodes of the next one
+        for (int i = 0, pos = 0; i < mLevelBounds.length - 1; i++) {
+            final int end = mLevelBounds[i];
+            while (pos < end) {
+                final int nodeIndex = pos;
+                double nodeMinX = Double.POSITIVE_INFINITY;
+                double nodeMinY = Double.POSITIVE_INFINITY;
+                double nodeMaxX = Double.NEGATIVE_INFINITY;
+                double nodeMaxY = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < mNodeSize && pos < end; j++) {
+                    nodeMinX = Math.min(nodeMinX, mBoxes[pos++]);
+                    nodeMinY = Math.min(nodeMinY, mBoxes[pos++]);
+                    nodeMaxX = Math.max(nodeMaxX, mBoxes[pos++]);
+                    nodeMaxY = Math.max(nodeMaxY, mBoxes[pos++]);
+                }
+                mIndices[mPos >> 2] = nodeIndex;
+                mBoxes[mPos++] = nodeMinX;
+                mBoxes[mPos++] = nodeMinY;
+                mBoxes[mPos++] = nodeMaxX;
+                mBoxes[mPos++] = nodeMaxY;
+            }
+        }
+    }
+
+    /**
+     * Visit the items whose box intersects the given one, bounds included.
+     */
+    void search(double minX, double minY, double maxX, double maxY, Visitor visitor) {
+        int[] queue = new int[64];
+        int queueSize = 0;
+        int nodeIndex = mBoxes.length - 4;
+
+        while (true) {
+            // Entries of the node, up to the end of its level
+            final int end = Math.min(nodeIndex + mNodeSize * 4, upperBound(nodeIndex));
+            for (int pos = nodeIndex; pos < end; pos += 4) {
+                if (maxX < mBoxes[pos] || maxY < mBoxes[pos + 1] || minX > mBoxes[pos + 2] || minY > mBoxes[pos + 3]) continue;
+
+                final int index = mIndices[pos >> 2];
+                if (nodeIndex >= numItems * 4) {
+                    if (queueSize == queue.length) {
+                        final int[] grown = new int[queue.length * 2];
+                        System.arraycopy(queue, 0, grown, 0, queue.length);
+                        queue = grown;
+                    }
+                    queue[queueSize++] = index;
+                } else {
+                    visitor.visit(index, mBoxes[pos], mBoxes[pos + 1], mBoxes[pos + 2], mBoxes[pos + 3]);
+                }
+            }
+            if (queueSize == 0) break;
+            nodeIndex = queue[--queueSize];
+        }
+    }
+
+    /**
+     * @return the size of the arrays of the tree
+     */
+    long getByteCount() {
+        return mBoxes.length * 8L + mIndices.length * 4L + mLevelBounds.length * 4L;
+    }
+
+    private int upperBound(int value) {
+        int i = 0;
+        int j = mLevelBounds.length - 1;
+        while (i < j) {
+            final int m = (i + j) >> 1;
+            if (mLevelBounds[m] > value) {
+                j = m;
+            } else {
+                i = m + 1;
+            }
+        }
+        return mLevelBounds[i];
+    }
+
+    /**
+     * Quicksort of the items by Hilbert value, which stops at the node granularity.
+     */
+    private void sort(long[] values, int left, int right) {
+        if (left / mNodeSize >= right / mNodeSize) return;
+
+        final long pivot = values[(left + right) >> 1];
+        int i = left - 1;
+        int j = right + 1;
+        while (true) {
+            do i++; while (values[i] < pivot);
+            do j--; while (values[j] > pivot);
+            if (i >= j) break;
+            swap(values, i, j);
+        }
+        sort(values, left, j);
+        sort(values, j + 1, right);
+    }
+
+    private void swap(long[] values, int i, int j) {
+        final long value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+
+        final int k = 4 * i;
+        final int m = 4 * j;
+        for (int n = 0; n < 4; n++) {
+            final double box = mBoxes[k + n];
+            mBoxes[k + n] = mBoxes[m + n];
+            mBoxes[m + n] = box;
+        }
+
+        final int index = mIndices[i];
+        mIndices[i] = mIndices[j];
+        mIndices[j] = index;
+    }
+
+    /**
+     * Position of (x, y) along a Hilbert curve of 2^16 by 2^16 cells.
+     * From "Fast Hilbert curve generation, sorting, and range queries" by rawrunprotected.
+     */
+    private static long hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >> 1);
+        int B = (a >> 1) ^ a;
+        int C = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+        int D = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >> 2)) ^ (b & (b >> 2)));
+        B = ((a & (b >> 2)) ^ (b & ((a ^ b) >> 2)));
+        C ^= ((a & (c >> 2)) ^ (b & (d >> 2)));
+        D ^= ((b & (c >> 2)) ^ ((a ^ b) & (d >> 2)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >> 4)) ^ (b & (b >> 4)));
+        B = ((a & (b >> 4)) ^ (b & ((a ^ b) >> 4)));
+        C ^= ((a & (c >> 4)) ^ (b & (d >> 4)));
+        D ^= ((b & (c >> 4)) ^ ((a ^ b) & (d >> 4)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= ((a & (c >> 8)) ^ (b & (d >> 8)));
+        D ^= ((b & (c >> 8)) ^ ((a ^ b) & (d >> 8)));
+
+        a = C ^ (C >> 1);
+        b = D ^ (D >> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return ((i1 << 1) | i0) & 0xFFFFFFFFL;
+    }
+}
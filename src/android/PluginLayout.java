@@ -1,12 +1,5 @@
 package com.dagatsoin.plugins.mapbox;
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Set;
-
-import android.support.annotation.Nullable;
 import android.view.View;
 
 import android.app.Activity;
@@ -23,22 +16,22 @@ import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.ScrollView;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
 public class PluginLayout extends FrameLayout  {
     private final View _webView;
     private boolean _isSet = false;
     private final ViewGroup _root;
-    private RectF _mapRect = new RectF();
     private final FrontLayerLayout _frontLayer;
     private final ScrollView _scrollView;
     private final FrameLayout _scrollFrameLayout;
     private final View _backgroundView;
-    private final TouchableWrapper _touchableWrapper;
-    @Nullable private ViewGroup _viewGroup;
+    // The displayed maps by map id, in the drawing order: the last one is on top.
+    private final LinkedHashMap<String, MapHost> _maps = new LinkedHashMap<>();
     private boolean _isScrolling = false;
-    private ViewGroup.LayoutParams _orgLayoutParams = null;
     private boolean _isDebug = false;
     private boolean _isClickable = true;
-    private final Map<String, RectF> _HTMLNodes;
     private final Activity _activity;
 
     public ScrollView getScrollView(){return _scrollView;}
@@ -66,32 +59,36 @@ public class PluginLayout extends FrameLayout  {
 
         _scrollView.setHorizontalScrollBarEnabled(false);
         _scrollView.setVerticalScrollBarEnabled(false);
+    }
 
-        this._touchableWrapper = new TouchableWrapper(_context);
-
-        _HTMLNodes = new HashMap<>();
+    /**
+     * @return the host of the map, created on first use
+     */
+    private MapHost getMapHost(String mapId) {
+        MapHost host = _maps.get(mapId);
+        if (host == null) {
+            host = new MapHost(_webView.getContext());
+            _maps.put(mapId, host);
+        }
+        return host;
     }
 
-    public void setHTMLElement(String domId, float left, float top, float right, float bottom) {
-        RectF rect;
-        if (this._HTMLNodes.containsKey(domId)) {
-            rect = this._HTMLNodes.get(domId);
-        } else {
-            rect = new RectF();
+    public void setHTMLElement(String mapId, String domId, float left, float top, float right, float bottom) {
+        getMapHost(mapId).HTMLNodes.put(domId, left, top, right, bottom);
+        if (_isDebug) {
+            this.inValidate();
         }
-        assert rect != null;
-        rect.left = left;
-        rect.top = top;
-        rect.right = right;
-        rect.bottom = bottom;
-        this._HTMLNodes.put(domId, rect);
+    }
+
+    public void removeHTMLElement(String mapId, String domId) {
+        getMapHost(mapId).HTMLNodes.remove(domId);
         if (_isDebug) {
             this.inValidate();
         }
     }
 
-    public void clearHTMLElement() {
-        this._HTMLNodes.clear();
+    public void clearHTMLElement(String mapId) {
+        getMapHost(mapId).HTMLNodes.clear();
         if (_isDebug) {
             this.inValidate();
         }
@@ -104,40 +101,43 @@ public class PluginLayout extends FrameLayout  {
         }
     }
 
-    public void updateViewPosition() {
-        if (_viewGroup == null) {
+    public void updateViewPosition(String mapId) {
+        final MapHost host = _maps.get(mapId);
+        if (host == null) {
             return;
         }
-        ViewGroup.LayoutParams lParams = _viewGroup.getLayoutParams();
+        final ViewGroup viewGroup = host.viewGroup;
+        final RectF mapRect = host.rect;
+        ViewGroup.LayoutParams lParams = viewGroup.getLayoutParams();
         int scrollY = _webView.getScrollY();
         int scrollX = _webView.getScrollX();
 
         if (lParams instanceof AbsoluteLayout.LayoutParams) {
             AbsoluteLayout.LayoutParams params = (AbsoluteLayout.LayoutParams) lParams;
-            params.width = (int) _mapRect.width();
-            params.height = (int) _mapRect.height();
-            params.x = (int) _mapRect.left - scrollX;
-            params.y = (int) _mapRect.top + scrollY;
-            _viewGroup.setLayoutParams(params);
+            params.width = (int) mapRect.width();
+            params.height = (int) mapRect.height();
+            params.x = (int) mapRect.left - scrollX;
+            params.y = (int) mapRect.top + scrollY;
+            viewGroup.setLayoutParams(params);
         } else if (lParams instanceof LinearLayout.LayoutParams) {
             LinearLayout.LayoutParams params = (LinearLayout.LayoutParams) lParams;
-            params.width = (int) _mapRect.width();
-            params.height = (int) _mapRect.height();
-            params.topMargin = (int) _mapRect.top + scrollY;
-            params.leftMargin = (int) _mapRect.left - scrollX;;
-            _viewGroup.setLayoutParams(params);
+            params.width = (int) mapRect.width();
+            params.height = (int) mapRect.height();
+            params.topMargin = (int) mapRect.top + scrollY;
+            params.leftMargin = (int) mapRect.left - scrollX;;
+            viewGroup.setLayoutParams(params);
         } else if (lParams instanceof FrameLayout.LayoutParams) {
             FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) lParams;
-            params.width = (int) _mapRect.width();
-            params.height = (int) _mapRect.height();
-            params.topMargin = (int) _mapRect.top + scrollY;
-            params.leftMargin = (int) _mapRect.left - scrollX;;
+            params.width = (int) mapRect.width();
+            params.height = (int) mapRect.height();
+            params.topMargin = (int) mapRect.top + scrollY;
+            params.leftMargin = (int) mapRect.left - scrollX;;
             params.gravity = Gravity.TOP;
-            _viewGroup.setLayoutParams(params);
+            viewGroup.setLayoutParams(params);
         }
         if (android.os.Build.VERSION.SDK_INT < 11) {
             // Force redraw
-            _viewGroup.requestLayout(); //todo watch this line if nothing is resized
+            viewGroup.requestLayout(); //todo watch this line if nothing is resized
         }
         _frontLayer.invalidate();
     }
@@ -148,39 +148,43 @@ public class PluginLayout extends FrameLayout  {
     }
 
     /**
-     * Add a map rectangle to the drawing zone
+     * Set the map rectangle of the drawing zone, in screen coordinates.
      */
-    public void setMapDrawingRect(RectF mapRect) {
-        _setDrawingZone(mapRect);
-    }
-
-    private void _setDrawingZone(RectF mapRect){
-        _mapRect = mapRect;
+    public void setMapDrawingRect(String mapId, float left, float top, float right, float bottom) {
+        getMapHost(mapId).rect.set(left, top, right, bottom);
 
         if (_isDebug) {
             this.inValidate();
         }
     }
 
-    public void detachViewGroup() {
-        if (!_isSet) {
+    /**
+     * Remove a map from the layout. The map view is detached from its container, so it can be displayed again.
+     * The plugin layer is removed with the last map.
+     */
+    public void detachViewGroup(String mapId) {
+        final MapHost host = _maps.remove(mapId);
+        if (host != null) {
+            _scrollFrameLayout.removeView(host.viewGroup);
+            host.viewGroup.removeAllViews();
+        }
+        // Forget the hosts of the maps which failed to show
+        final Iterator<MapHost> hosts = _maps.values().iterator();
+        while (hosts.hasNext()) {
+            if (hosts.next().viewGroup.getParent() == null) hosts.remove();
+        }
+        if (!_isSet || !_maps.isEmpty()) {
+            inValidate();
             return;
         }
         _root.removeView(this);
         this.removeView(_frontLayer);
         _frontLayer.removeView(_webView);
 
-        _scrollFrameLayout.removeView(_viewGroup);
-        _viewGroup.removeView(this._touchableWrapper);
-
         this.removeView(_scrollView);
         _scrollView.removeView(_scrollFrameLayout);
-        if (_orgLayoutParams != null) {
-            _viewGroup.setLayoutParams(_orgLayoutParams);
-        }
 
         _root.addView(_webView);
-        _viewGroup = null;
         _activity.getWindow().getDecorView().requestFocus();
         _webView.setBackgroundColor(Color.WHITE);
         _isSet = false;
@@ -191,49 +195,39 @@ public class PluginLayout extends FrameLayout  {
      * Get all the current sub views of this view controller and pass it under the Plugin Layer.
      * Then, all user touch will be first intercepted by the plugin layer
      * which will decide whether or not it is a map action.
-     * @param viewToEmbed the ViewGroup embedding the
+     * The hierarchy is built with the first map, the next ones are added on top of the previous maps.
+     * @param mapId the map to add
+     * @param viewToEmbed the map view
      */
-    public void buildViewHierarchy(View viewToEmbed) {
-        _webView.setBackgroundColor(Color.TRANSPARENT);
-        _scrollView.setHorizontalScrollBarEnabled(false);
-        _scrollView.setVerticalScrollBarEnabled(false);
-
-        _viewGroup = new FrameLayout(_webView.getContext());
-        _viewGroup.setLayoutParams(
-                new FrameLayout.LayoutParams(
-                        FrameLayout.LayoutParams.MATCH_PARENT,
-                        FrameLayout.LayoutParams.WRAP_CONTENT
-                )
-        );
-
-        _scrollView.scrollTo(_webView.getScrollX(), _webView.getScrollY());
-        if (_isSet) {
+    public void buildViewHierarchy(String mapId, View viewToEmbed) {
+        final MapHost host = getMapHost(mapId);
+        if (host.viewGroup.getParent() != null) {
             return;
         }
+        host.viewGroup.addView(viewToEmbed);
+        host.viewGroup.addView(new TouchableWrapper(_webView.getContext()));
+        _scrollView.scrollTo(_webView.getScrollX(), _webView.getScrollY());
 
-        _viewGroup.addView(viewToEmbed);
-
-        ViewGroup.LayoutParams lParams = viewToEmbed.getLayoutParams();
-        _orgLayoutParams = null;
-        if (lParams != null) {
-            _orgLayoutParams = new ViewGroup.LayoutParams(lParams);
-        }
-        _root.removeView(_webView);
-        _scrollView.addView(_scrollFrameLayout);
-        this.addView(_scrollView);
+        if (!_isSet) {
+            _webView.setBackgroundColor(Color.TRANSPARENT);
+            _scrollView.setHorizontalScrollBarEnabled(false);
+            _scrollView.setVerticalScrollBarEnabled(false);
 
-        _viewGroup.addView(this._touchableWrapper);
-        _scrollFrameLayout.addView(_viewGroup);
+            _root.removeView(_webView);
+            _scrollView.addView(_scrollFrameLayout);
+            this.addView(_scrollView);
 
-        _frontLayer.addView(_webView);
-        this.addView(_frontLayer);
-        _root.addView(this);
-        _activity.getWindow().getDecorView().requestFocus();
+            _frontLayer.addView(_webView);
+            this.addView(_frontLayer);
+            _root.addView(this);
+            _activity.getWindow().getDecorView().requestFocus();
 
-        _scrollView.setHorizontalScrollBarEnabled(true);
-        _scrollView.setVerticalScrollBarEnabled(true);
+            _scrollView.setHorizontalScrollBarEnabled(true);
+            _scrollView.setVerticalScrollBarEnabled(true);
 
-        _isSet = true;
+            _isSet = true;
+        }
+        _scrollFrameLayout.addView(host.viewGroup);
     }
 
     public void scrollTo(int x, int y){
@@ -258,7 +252,7 @@ public class PluginLayout extends FrameLayout  {
 
         @Override
         public boolean onInterceptTouchEvent(MotionEvent event) {
-            if (!_isClickable || _viewGroup == null || _viewGroup.getVisibility() != View.VISIBLE) {
+            if (!_isClickable || _maps.isEmpty()) {
                 _webView.requestFocus(View.FOCUS_DOWN);
                 return false;
             }
@@ -266,34 +260,20 @@ public class PluginLayout extends FrameLayout  {
             int y = (int)event.getY();
             int scrollX = _webView.getScrollX();
             int scrollY = _webView.getScrollY();
-            boolean contains = _mapRect.contains(x, y);
+            // The touched map is the top most one
+            MapHost touchedHost = null;
+            for (MapHost host : _maps.values()) {
+                if (host.isVisible() && host.rect.contains(x, y)) touchedHost = host;
+            }
+            boolean contains = touchedHost != null;
             int action = event.getAction();
             _isScrolling = ((!contains) && (action == MotionEvent.ACTION_DOWN)) || _isScrolling;
             _isScrolling = action != MotionEvent.ACTION_UP && _isScrolling;
             contains = !_isScrolling && contains;
 
             if (contains) {
-                // Is the touch point on any HTML elements?
-                Set<Entry<String, RectF>> elements = PluginLayout.this._HTMLNodes.entrySet();
-                Iterator<Entry<String, RectF>> iterator = elements.iterator();
-                Entry <String, RectF> entry;
-                RectF rect;
-
-                while(iterator.hasNext() && contains) {
-                    entry = iterator.next();
-                    rect = entry.getValue();
-                    rect.left -= scrollX;
-                    rect.right -= scrollX;
-                    rect.top -= scrollY;
-                    rect.bottom -= scrollY;
-                    if (entry.getValue().contains(x, y)) {
-                        contains = false;
-                    }
-                    rect.left += scrollX;
-                    rect.right += scrollX;
-                    rect.top += scrollY;
-                    rect.bottom += scrollY;
-                }
+                // Is the touch point on any HTML elements? The rects are in content coordinates.
+                contains = !touchedHost.HTMLNodes.contains(x + scrollX, y + scrollY);
             }
 
             if (!contains) {
@@ -304,7 +284,7 @@ public class PluginLayout extends FrameLayout  {
         }
         @Override
         protected void onDraw(Canvas canvas) {
-            if (_mapRect == null || !_isDebug) {
+            if (!_isDebug) {
                 return;
             }
             int width = canvas.getWidth();
@@ -319,32 +299,52 @@ public class PluginLayout extends FrameLayout  {
                 return;
             }
 
-            canvas.drawRect(_mapRect.left, _mapRect.top, _mapRect.right, _mapRect.bottom, paint);
+            for (MapHost host : _maps.values()) {
+                canvas.drawRect(host.rect.left, host.rect.top, host.rect.right, host.rect.bottom, paint);
+            }
 
             paint.setColor(Color.argb(100, 255, 0, 0));
 
-            Set<Entry<String, RectF>> elements = PluginLayout.this._HTMLNodes.entrySet();
-            Iterator<Entry<String, RectF>> iterator = elements.iterator();
-            Entry <String, RectF> entry;
-            RectF rect;
-            while(iterator.hasNext()) {
-                entry = iterator.next();
-                rect = entry.getValue();
-                //inflate the rectangle to see it behind dom element
-                rect = new RectF(rect.left-5, rect.top-5, rect.right+5, rect.bottom+5);
-                rect.left -= scrollX;
-                rect.right -= scrollX;
-                rect.top -= scrollY;
-                rect.bottom -= scrollY;
-                canvas.drawRect(rect, paint);
-                rect.left += scrollX;
-                rect.right += scrollX;
-                rect.top += scrollY;
-                rect.bottom += scrollY;
+            for (MapHost host : _maps.values()) {
+                for (RectF rect : host.HTMLNodes.getRects()) {
+                    //inflate the rectangle to see it behind dom element
+                    canvas.drawRect(rect.left - 5 - scrollX, rect.top - 5 - scrollY, rect.right + 5 - scrollX, rect.bottom + 5 - scrollY, paint);
+                }
             }
         }
     }
 
+    /**
+     * The container of a map in the scroll view, with its drawing zone and the overlay DOM elements above it.
+     */
+    private static class MapHost {
+        final FrameLayout viewGroup;
+        // Map rectangle of the drawing zone, in screen coordinates
+        final RectF rect = new RectF();
+        // Touch boxes of the DOM elements above the map, in content coordinates
+        final RectIndex HTMLNodes = new RectIndex();
+
+        MapHost(Context context) {
+            viewGroup = new FrameLayout(context);
+            viewGroup.setLayoutParams(
+                    new FrameLayout.LayoutParams(
+                            FrameLayout.LayoutParams.MATCH_PARENT,
+                            FrameLayout.LayoutParams.WRAP_CONTENT
+                    )
+            );
+        }
+
+        /**
+         * A hidden map lets the touches go to the WebView
+         */
+        boolean isVisible() {
+            return viewGroup.getParent() != null
+                    && viewGroup.getVisibility() == View.VISIBLE
+                    && viewGroup.getChildCount() > 0
+                    && viewGroup.getChildAt(0).getVisibility() == View.VISIBLE;
+        }
+    }
+
     private class TouchableWrapper extends FrameLayout {
 
         public TouchableWrapper(Context _context) {
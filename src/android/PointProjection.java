@@ -0,0 +1,94 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.graphics.PointF;
+
+import com.mapbox.mapboxsdk.geometry.LatLng;
+import com.mapbox.mapboxsdk.maps.Projection;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * A set of points converted in bulk between geographic and screen coordinates.
+ *
+ * Overlays positioned by the WebView need the screen position of many points each
+ * time the camera moves. All the points are converted in a single UI thread task,
+ * against the same Projection, and written as one flat JSON array.
+ *
+ * Not thread safe, must be used from the UI thread.
+ */
+class PointProjection {
+    private final boolean mIsUnproject;
+    private final double[] mValues;
+    private final LatLng mLatLng = new LatLng();
+    private final PointF mPoint = new PointF();
+    private final StringBuilder mBuffer;
+
+    /**
+     * @param isUnproject convert screen points to coordinates instead of coordinates to screen points
+     * @param values [lng, lat, lng, lat...] to project, [x, y, x, y...] to unproject
+     */
+    PointProjection(boolean isUnproject, double[] values) {
+        mIsUnproject = isUnproject;
+        mValues = values;
+        mBuffer = new StringBuilder(2 + values.length * 12);
+    }
+
+    /**
+     * @param array flat array of pairs
+     */
+    static double[] readValues(String action, JSONArray array) throws JSONException {
+        if (array.length() % 2 != 0) {
+            throw new JSONException(action + " needs an even number of values, got " + array.length());
+        }
+        final double[] values = new double[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.getDouble(i);
+        }
+        return values;
+    }
+
+    /**
+     * @return [x, y, x, y...] when projecting, [lng, lat, lng, lat...] when unprojecting
+     */
+    String write(Projection projection) {
+        mBuffer.setLength(0);
+        mBuffer.append('[');
+        for (int i = 0; i < mValues.length; i += 2) {
+            if (i > 0) mBuffer.append(',');
+            if (mIsUnproject) {
+                mPoint.set((float) mValues[i], (float) mValues[i + 1]);
+                final LatLng latLng = projection.fromScreenLocation(mPoint);
+                appendNumber(latLng.getLongitude());
+                mBuffer.append(',');
+                appendNumber(latLng.getLatitude());
+            } else {
+                mLatLng.setLongitude(mValues[i]);
+                mLatLng.setLatitude(mValues[i + 1]);
+                final PointF point = projection.toScreenLocation(mLatLng);
+                appendNumber(point.x);
+                mBuffer.append(',');
+                appendNumber(point.y);
+            }
+        }
+        mBuffer.append(']');
+        return mBuffer.toString();
+    }
+
+    private void appendNumber(double value) {
+        // JSON has no NaN nor Infinity
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            mBuffer.append("null");
+        } else {
+            mBuffer.append(value);
+        }
+    }
+
+    private void appendNumber(float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            mBuffer.append("null");
+        } else {
+            mBuffer.append(value);
+        }
+    }
+}
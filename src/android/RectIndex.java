@@ -0,0 +1,153 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.graphics.RectF;
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Uniform grid index of the HTML elements drawn over the map, in WebView content coordinates.
+ *
+ * The touch interception tests every event against the HTML elements. With the grid a touch
+ * is only tested against the rects of its cell, and the lookup neither allocates nor
+ * modifies the rects. Rects covering too many cells are kept aside and always tested.
+ *
+ * Not thread safe, must be used from the UI thread.
+ */
+class RectIndex {
+    private static final float CELL_SIZE = 128;
+    private static final int MAX_CELLS_PER_RECT = 64;
+
+    private static class Entry {
+        final RectF rect = new RectF();
+        int minCol, minRow, maxCol, maxRow;
+        boolean isLarge;
+        // Position of the rect in mRects
+        int rectIndex;
+    }
+
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+    private final LongSparseArray<ArrayList<Entry>> mCells = new LongSparseArray<>();
+    private final ArrayList<Entry> mLargeEntries = new ArrayList<>();
+    private final ArrayList<RectF> mRects = new ArrayList<>();
+    // Entry of each rect of mRects, at the same position
+    private final ArrayList<Entry> mRectEntries = new ArrayList<>();
+
+    void put(String id, float left, float top, float right, float bottom) {
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            entry = new Entry();
+            mEntries.put(id, entry);
+            entry.rectIndex = mRects.size();
+            mRects.add(entry.rect);
+            mRectEntries.add(entry);
+        } else {
+            unlink(entry);
+        }
+        entry.rect.left = left;
+        entry.rect.top = top;
+        entry.rect.right = right;
+        entry.rect.bottom = bottom;
+        link(entry);
+    }
+
+    void remove(String id) {
+        final Entry entry = mEntries.remove(id);
+        if (entry == null) return;
+        unlink(entry);
+        // RectF.equals compares the bounds, so the rect is removed by position: the last rect takes its place
+        final int last = mRects.size() - 1;
+        final Entry moved = mRectEntries.get(last);
+        moved.rectIndex = entry.rectIndex;
+        mRects.set(entry.rectIndex, moved.rect);
+        mRectEntries.set(entry.rectIndex, moved);
+        mRects.remove(last);
+        mRectEntries.remove(last);
+    }
+
+    void clear() {
+        mEntries.clear();
+        mCells.clear();
+        mLargeEntries.clear();
+        mRects.clear();
+        mRectEntries.clear();
+    }
+
+    /**
+     * @return the indexed rects, do not modify them
+     */
+    Collection<RectF> getRects() {
+        return mRects;
+    }
+
+    /**
+     * @return true if a rect contains the point, same bounds rule as RectF.contains
+     */
+    boolean contains(float x, float y) {
+        for (int i = 0; i < mLargeEntries.size(); i++) {
+            if (contains(mLargeEntries.get(i).rect, x, y)) return true;
+        }
+        final ArrayList<Entry> cell = mCells.get(key(cellOf(x), cellOf(y)));
+        if (cell == null) return false;
+        for (int i = 0; i < cell.size(); i++) {
+            if (contains(cell.get(i).rect, x, y)) return true;
+        }
+        return false;
+    }
+
+    private void link(Entry entry) {
+        final RectF rect = entry.rect;
+        entry.minCol = cellOf(rect.left);
+        entry.minRow = cellOf(rect.top);
+        entry.maxCol = cellOf(rect.right);
+        entry.maxRow = cellOf(rect.bottom);
+        final long cellCount = (long) (entry.maxCol - entry.minCol + 1) * (entry.maxRow - entry.minRow + 1);
+        entry.isLarge = cellCount > MAX_CELLS_PER_RECT;
+        if (entry.isLarge) {
+            mLargeEntries.add(entry);
+            return;
+        }
+        for (int col = entry.minCol; col <= entry.maxCol; col++) {
+            for (int row = entry.minRow; row <= entry.maxRow; row++) {
+                final long key = key(col, row);
+                ArrayList<Entry> cell = mCells.get(key);
+                if (cell == null) {
+                    cell = new ArrayList<>(4);
+                    mCells.put(key, cell);
+                }
+                cell.add(entry);
+            }
+        }
+    }
+
+    private void unlink(Entry entry) {
+        if (entry.isLarge) {
+            mLargeEntries.remove(entry);
+            return;
+        }
+        for (int col = entry.minCol; col <= entry.maxCol; col++) {
+            for (int row = entry.minRow; row <= entry.maxRow; row++) {
+                final long key = key(col, row);
+                final ArrayList<Entry> cell = mCells.get(key);
+                if (cell == null) continue;
+                cell.remove(entry);
+                if (cell.isEmpty()) mCells.remove(key);
+            }
+        }
+    }
+
+    private static boolean contains(RectF rect, float x, float y) {
+        return rect.left < rect.right && rect.top < rect.bottom
+                && x >= rect.left && x < rect.right && y >= rect.top && y < rect.bottom;
+    }
+
+    private static int cellOf(float coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    private static long key(int col, int row) {
+        return ((long) col << 32) | (row & 0xffffffffL);
+    }
+}
@@ -0,0 +1,286 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.support.annotation.Nullable;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.Geometry;
+import com.mapbox.geojson.GeometryCollection;
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.MultiLineString;
+import com.mapbox.geojson.MultiPoint;
+import com.mapbox.geojson.MultiPolygon;
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The packed R-tree of the feature bounding boxes of a GeoJSON source, kept in sync with the source data.
+ *
+ * Like the cluster index, updates of the source are built on a background thread shared by all
+ * the sources, coalesced to at most one queued build per source which indexes the latest data,
+ * and queries wait for the latest build. Any geometry type is indexed, features
+ * without geometry are skipped. The tree only holds the boxes and the positions of the features
+ * in the source data, which it shares with the feature store.
+ */
+class SpatialIndex {
+    private static final int NODE_SIZE = 16;
+    private static final double EARTH_RADIUS = 6371008.8;
+
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "MapboxSpatialIndex");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A page of the features matching a query.
+     */
+    static class Page {
+        // Number of matching features, whatever the limit and offset
+        final int total;
+        final List<Feature> features;
+
+        Page(int total, List<Feature> features) {
+            this.total = total;
+            this.features = features;
+        }
+    }
+
+    private volatile Future<Snapshot> mIndex;
+    // Latest data not yet taken by a build, non null while a build is queued.
+    private final AtomicReference<List<Feature>> mPendingFeatures = new AtomicReference<>();
+    // Size of the last build, for the metrics
+    private volatile int mItemCount = 0;
+    private volatile long mByteCount = 0;
+
+    /**
+     * @param features the new data of the source, must not be mutated afterward
+     */
+    void update(final List<Feature> features) {
+        // The queued build has not started yet, it will take these features
+        if (mPendingFeatures.getAndSet(features) != null) return;
+        mIndex = sExecutor.submit(() -> {
+            final Snapshot snapshot = new Snapshot(mPendingFeatures.getAndSet(null));
+            mItemCount = snapshot.getItemCount();
+            mByteCount = snapshot.getByteCount();
+            return snapshot;
+        });
+    }
+
+    /**
+     * Wait for the latest update to be indexed.
+     */
+    Snapshot get() throws InterruptedException, ExecutionException {
+        return mIndex.get();
+    }
+
+    int getItemCount() {
+        return mItemCount;
+    }
+
+    long getByteCount() {
+        return mByteCount;
+    }
+
+    /**
+     * The index of one version of the source data. Immutable, queries are thread safe.
+     */
+    static class Snapshot {
+        private final List<Feature> mFeatures;
+        @Nullable private final PackedRTree mTree;
+        // Position in the source data of the feature of each item of the tree
+        private final int[] mFeatureIndices;
+
+        private Snapshot(List<Feature> features) {
+            mFeatures = features;
+            final int size = features.size();
+            final double[] boxes = new double[size * 4];
+            final int[] featureIndices = new int[size];
+            final double[] box = new double[4];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                final Geometry geometry = features.get(i).geometry();
+                if (geometry == null) continue;
+                box[0] = box[1] = Double.POSITIVE_INFINITY;
+                box[2] = box[3] = Double.NEGATIVE_INFINITY;
+                extend(box, geometry);
+                if (box[0] > box[2]) continue;
+                System.arraycopy(box, 0, boxes, count * 4, 4);
+                featureIndices[count++] = i;
+            }
+
+            mFeatureIndices = Arrays.copyOf(featureIndices, count);
+            if (count == 0) {
+                mTree = null;
+                return;
+            }
+            mTree = new PackedRTree(count, NODE_SIZE);
+            for (int i = 0; i < count; i++) {
+                mTree.add(boxes[4 * i], boxes[4 * i + 1], boxes[4 * i + 2], boxes[4 * i + 3]);
+            }
+            mTree.finish();
+        }
+
+        /**
+         * The features whose bounding box intersects the bounds, in the order of the source data.
+         * West greater than east means the bounds cross the antimeridian.
+         */
+        Page queryBounds(double west, double south, double east, double north, int limit, int offset) {
+            final Hits hits = new Hits(mFeatureIndices.length);
+            if (mTree != null) {
+                if (west <= east) {
+                    mTree.search(west, south, east, north, hits);
+                } else {
+                    mTree.search(west, south, 180, north, hits);
+                    mTree.search(-180, south, east, north, hits);
+                }
+            }
+            // Item indices follow the source data order
+            final int[] items = Arrays.copyOf(hits.items, hits.size);
+            Arrays.sort(items);
+            return toPage(items, limit, offset);
+        }
+
+        /**
+         * The features whose bounding box is at most radius meters away from the center, the closest first.
+         */
+        Page queryRadius(double lng, double lat, double radius, int limit, int offset) {
+            final Hits hits = new Hits(mFeatureIndices.length);
+            hits.lng = lng;
+            hits.lat = lat;
+            hits.radius = radius;
+            if (mTree != null) {
+                final double dLat = Math.toDegrees(radius / EARTH_RADIUS);
+                final double cos = Math.cos(Math.toRadians(lat));
+                final double dLng = cos > 0 ? dLat / cos : 360;
+                final double south = lat - dLat;
+                final double north = lat + dLat;
+                if (dLng >= 180) {
+                    mTree.search(-180, south, 180, north, hits);
+                } else {
+                    mTree.search(Math.max(-180, lng - dLng), south, Math.min(180, lng + dLng), north, hits);
+                    // Wrap around the antimeridian
+                    if (lng - dLng < -180) mTree.search(lng - dLng + 360, south, 180, north, hits);
+                    if (lng + dLng > 180) mTree.search(-180, south, lng + dLng - 360, north, hits);
+                }
+            }
+
+            final Integer[] order = new Integer[hits.size];
+            for (int i = 0; i < hits.size; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Double.compare(hits.distances[a], hits.distances[b]));
+            final int[] items = new int[hits.size];
+            for (int i = 0; i < hits.size; i++) items[i] = hits.items[order[i]];
+            return toPage(items, limit, offset);
+        }
+
+        int getItemCount() {
+            return mFeatureIndices.length;
+        }
+
+        /**
+         * @return the size of the tree and of the item to feature mapping
+         */
+        long getByteCount() {
+            return (mTree != null ? mTree.getByteCount() : 0) + mFeatureIndices.length * 4L;
+        }
+
+        private Page toPage(int[] items, int limit, int offset) {
+            final int from = Math.min(Math.max(0, offset), items.length);
+            final int to = Math.min(items.length, from + Math.max(0, limit));
+            final ArrayList<Feature> features = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                features.add(mFeatures.get(mFeatureIndices[items[i]]));
+            }
+            return new Page(items.length, features);
+        }
+    }
+
+    /**
+     * Collects the items visited by the searches, once each: a box crossing the antimeridian
+     * may be visited by two searches. With a radius, only the items close enough are kept.
+     */
+    private static class Hits implements PackedRTree.Visitor {
+        final BitSet seen;
+        int[] items = new int[64];
+        double[] distances = new double[64];
+        int size = 0;
+        double lng, lat;
+        double radius = Double.NaN;
+
+        Hits(int itemCount) {
+            seen = new BitSet(itemCount);
+        }
+
+        @Override
+        public void visit(int item, double minX, double minY, double maxX, double maxY) {
+            if (seen.get(item)) return;
+            seen.set(item);
+
+            double distance = 0;
+            if (!Double.isNaN(radius)) {
+                distance = distanceToBox(lng, lat, minX, minY, maxX, maxY);
+                if (distance > radius) return;
+            }
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            items[size] = item;
+            distances[size++] = distance;
+        }
+    }
+
+    /**
+     * Great-circle distance in meters from the point to the closest point of the box.
+     */
+    private static double distanceToBox(double lng, double lat, double minX, double minY, double maxX, double maxY) {
+        final double closestLng = Math.max(minX, Math.min(maxX, lng));
+        final double closestLat = Math.max(minY, Math.min(maxY, lat));
+        final double sinLat = Math.sin(Math.toRadians(closestLat - lat) / 2);
+        final double sinLng = Math.sin(Math.toRadians(closestLng - lng) / 2);
+        final double a = sinLat * sinLat + Math.cos(Math.toRadians(lat)) * Math.cos(Math.toRadians(closestLat)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static void extend(double[] box, Geometry geometry) {
+        if (geometry instanceof Point) {
+            extend(box, (Point) geometry);
+        } else if (geometry instanceof MultiPoint) {
+            extendLine(box, ((MultiPoint) geometry).coordinates());
+        } else if (geometry instanceof LineString) {
+            extendLine(box, ((LineString) geometry).coordinates());
+        } else if (geometry instanceof MultiLineString) {
+            for (List<Point> line : ((MultiLineString) geometry).coordinates()) extendLine(box, line);
+        } else if (geometry instanceof Polygon) {
+            // The outer ring bounds the polygon
+            final List<List<Point>> rings = ((Polygon) geometry).coordinates();
+            if (!rings.isEmpty()) extendLine(box, rings.get(0));
+        } else if (geometry instanceof MultiPolygon) {
+            for (List<List<Point>> rings : ((MultiPolygon) geometry).coordinates()) {
+                if (!rings.isEmpty()) extendLine(box, rings.get(0));
+            }
+        } else if (geometry instanceof GeometryCollection) {
+            for (Geometry member : ((GeometryCollection) geometry).geometries()) extend(box, member);
+        }
+    }
+
+    private static void extendLine(double[] box, List<Point> points) {
+        for (Point point : points) extend(box, point);
+    }
+
+    private static void extend(double[] box, Point point) {
+        box[0] = Math.min(box[0], point.longitude());
+        box[1] = Math.min(box[1], point.latitude());
+        box[2] = Math.max(box[2], point.longitude());
+        box[3] = Math.max(box[3], point.latitude());
+    }
+}
@@ -0,0 +1,225 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.support.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A set of style images packed into atlas pages and persisted in the cache directory.
+ *
+ * The images are packed in shelves, tallest first, into pages of at most 2048 px.
+ * Each page is saved as a PNG, next to a JSON index holding the rect of each image and
+ * a signature of the sources. While the sources do not change, the next sessions read
+ * one PNG per page instead of decoding and rasterizing every image.
+ *
+ * Mapbox GL already packs the style images into its own texture atlas and only references
+ * images by id, so the images are cut out of the pages and added in a single addImages call.
+ */
+class SpriteAtlas {
+    private static final int MAX_PAGE_SIZE = 2048;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static class Slot {
+        final String imageId;
+        final Bitmap bitmap;
+        int page, x, y;
+
+        Slot(String imageId, Bitmap bitmap) {
+            this.imageId = imageId;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final File mDirectory;
+    private final String mFileName;
+    private final String mSignature;
+
+    /**
+     * @param signature changes when any source image changes
+     */
+    SpriteAtlas(File directory, String atlasId, String signature) {
+        mDirectory = directory;
+        mFileName = BitmapCache.hash(atlasId);
+        mSignature = signature;
+    }
+
+    /**
+     * @return the images by id, null if no persisted atlas matches the signature
+     */
+    @Nullable
+    HashMap<String, Bitmap> load(int densityDpi) {
+        final File indexFile = getIndexFile();
+        if (!indexFile.exists()) return null;
+
+        final ArrayList<Bitmap> pages = new ArrayList<>();
+        final HashMap<String, Bitmap> images = new HashMap<>();
+        try {
+            final JSONObject index = new JSONObject(readText(indexFile));
+            if (!mSignature.equals(index.optString("signature"))) return null;
+
+            final int pageCount = index.getInt("pages");
+            for (int i = 0; i < pageCount; i++) {
+                final Bitmap page = BitmapFactory.decodeFile(getPageFile(i).getPath());
+                if (page == null) return null;
+                pages.add(page);
+            }
+
+            final JSONObject rects = index.getJSONObject("images");
+            final Iterator<String> imageIds = rects.keys();
+            while (imageIds.hasNext()) {
+                final String imageId = imageIds.next();
+                final JSONArray rect = rects.getJSONArray(imageId);
+                final Bitmap image = Bitmap.createBitmap(pages.get(rect.getInt(0)), rect.getInt(1), rect.getInt(2), rect.getInt(3), rect.getInt(4));
+                image.setDensity(densityDpi);
+                images.put(imageId, image);
+            }
+            return images;
+        } catch (JSONException | IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            // createBitmap returns the page itself when the image covers it entirely
+            for (Bitmap page : pages) {
+                if (!images.containsValue(page)) page.recycle();
+            }
+        }
+    }
+
+    /**
+     * Pack and write the pages, then the index. A failure is only logged: the images stay usable.
+     * @return the number of pages
+     */
+    int save(Map<String, Bitmap> images) {
+        final ArrayList<Slot> slots = new ArrayList<>(images.size());
+        for (Map.Entry<String, Bitmap> entry : images.entrySet()) {
+            slots.add(new Slot(entry.getKey(), entry.getValue()));
+        }
+        final ArrayList<int[]> pageSizes = pack(slots);
+
+        try {
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                throw new IOException("Can not create " + mDirectory);
+            }
+            for (int i = 0; i < pageSizes.size(); i++) {
+                final Bitmap page = Bitmap.createBitmap(pageSizes.get(i)[0], pageSizes.get(i)[1], Bitmap.Config.ARGB_8888);
+                final Canvas canvas = new Canvas(page);
+                for (Slot slot : slots) {
+                    if (slot.page == i) canvas.drawBitmap(slot.bitmap, slot.x, slot.y, null);
+                }
+                try (FileOutputStream out = new FileOutputStream(getPageFile(i))) {
+                    page.compress(Bitmap.CompressFormat.PNG, 100, out);
+                } finally {
+                    page.recycle();
+                }
+            }
+
+            final JSONObject rects = new JSONObject();
+            for (Slot slot : slots) {
+                rects.put(slot.imageId, new JSONArray()
+                        .put(slot.page)
+                        .put(slot.x)
+                        .put(slot.y)
+                        .put(slot.bitmap.getWidth())
+                        .put(slot.bitmap.getHeight()));
+            }
+            final JSONObject index = new JSONObject()
+                    .put("signature", mSignature)
+                    .put("pages", pageSizes.size())
+                    .put("images", rects);
+            // The index is written last: an interrupted save is never read back
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(getIndexFile()), UTF_8)) {
+                writer.write(index.toString());
+            }
+        } catch (JSONException | IOException e) {
+            e.printStackTrace();
+            getIndexFile().delete();
+        }
+        return pageSizes.size();
+    }
+
+    /**
+     * Shelf packing: the slots are sorted by height and placed left to right in rows.
+     * A page is about as wide as the square root of the total area.
+     * @return the [width, height] of each page
+     */
+    private static ArrayList<int[]> pack(ArrayList<Slot> slots) {
+        Collections.sort(slots, (a, b) -> b.bitmap.getHeight() != a.bitmap.getHeight()
+                ? b.bitmap.getHeight() - a.bitmap.getHeight()
+                : b.bitmap.getWidth() - a.bitmap.getWidth());
+
+        long area = 0;
+        int widest = 1;
+        for (Slot slot : slots) {
+            area += (long) slot.bitmap.getWidth() * slot.bitmap.getHeight();
+            widest = Math.max(widest, slot.bitmap.getWidth());
+        }
+        final int pageWidth = Math.max(widest, Math.min(MAX_PAGE_SIZE, (int) Math.ceil(Math.sqrt(area))));
+
+        final ArrayList<int[]> pageSizes = new ArrayList<>();
+        int page = 0, x = 0, y = 0, shelfHeight = 0, usedWidth = 0;
+        for (Slot slot : slots) {
+            final int width = slot.bitmap.getWidth();
+            final int height = slot.bitmap.getHeight();
+            if (x + width > pageWidth) {
+                y += shelfHeight;
+                x = 0;
+                shelfHeight = 0;
+            }
+            if (y + height > MAX_PAGE_SIZE && y > 0) {
+                pageSizes.add(new int[]{usedWidth, y + shelfHeight});
+                page++;
+                x = y = shelfHeight = usedWidth = 0;
+            }
+            slot.page = page;
+            slot.x = x;
+            slot.y = y;
+            x += width;
+            shelfHeight = Math.max(shelfHeight, height);
+            usedWidth = Math.max(usedWidth, x);
+        }
+        if (!slots.isEmpty()) {
+            pageSizes.add(new int[]{usedWidth, y + shelfHeight});
+        }
+        return pageSizes;
+    }
+
+    private File getIndexFile() {
+        return new File(mDirectory, mFileName + ".json");
+    }
+
+    private File getPageFile(int page) {
+        return new File(mDirectory, mFileName + "-" + page + ".png");
+    }
+
+    private static String readText(File file) throws IOException {
+        final StringBuilder text = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+            final char[] buffer = new char[8192];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, count);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,321 @@
+package com.dagatsoin.plugins.mapbox;
+
+import com.google.gson.JsonObject;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hierarchical point clustering, a port of supercluster.
+ *
+ * The points are projected to the unit square, then clustered greedily from the max zoom
+ * down to zoom 0: each level is a KD-tree of the clusters of the level below, and each
+ * cluster keeps the id of its parent. A cluster id is (index << 5) + (zoom + 1), the index being
+ * the position of its first point in the level below. This is the scheme of the renderer, so with
+ * the options of the source the ids normally match the cluster_id of the rendered features.
+ *
+ * Only the Point features are clustered. Immutable once built, queries are thread safe.
+ */
+class Supercluster {
+    private static final int MIN_ZOOM = 0;
+    private static final int EXTENT = 512;
+    private static final int NODE_SIZE = 64;
+
+    private static class Level {
+        final int size;
+        final double[] x;
+        final double[] y;
+        final int[] numPoints;
+        // Leaf index for a point, cluster id for a cluster
+        final int[] id;
+        // Id of the cluster containing the entry at the zoom above, -1 if none
+        final int[] parentId;
+        final KdIndex tree;
+
+        Level(int size, double[] x, double[] y, int[] numPoints, int[] id) {
+            this.size = size;
+            this.x = x;
+            this.y = y;
+            this.numPoints = numPoints;
+            this.id = id;
+            this.parentId = new int[size];
+            Arrays.fill(parentId, -1);
+            this.tree = new KdIndex(x, y, size, NODE_SIZE);
+        }
+
+        boolean isCluster(int i) {
+            return numPoints[i] > 1;
+        }
+    }
+
+    /**
+     * Sums the neighbors absorbed by a new cluster.
+     */
+    private static class Accumulator implements KdIndex.Visitor {
+        Level level;
+        boolean[] visited;
+        int clusterId;
+        int numPoints;
+        double wx, wy;
+
+        @Override
+        public void visit(int i) {
+            if (visited[i]) return;
+            visited[i] = true;
+            level.parentId[i] = clusterId;
+            wx += level.x[i] * level.numPoints[i];
+            wy += level.y[i] * level.numPoints[i];
+            numPoints += level.numPoints[i];
+        }
+    }
+
+    final int maxZoom;
+    final int radius;
+    // Levels by zoom, from MIN_ZOOM to maxZoom + 1 which holds the points.
+    private final Level[] mLevels;
+    private final List<Feature> mLeaves;
+
+    /**
+     * @param maxZoom zoom above which the points are not clustered
+     * @param radius cluster radius in pixels of a 512 px tile
+     */
+    static Supercluster build(List<Feature> features, int maxZoom, int radius) {
+        final ArrayList<Feature> leaves = new ArrayList<>(features.size());
+        for (Feature feature : features) {
+            if (feature.geometry() instanceof Point) leaves.add(feature);
+        }
+        final int size = leaves.size();
+        final double[] x = new double[size];
+        final double[] y = new double[size];
+        final int[] numPoints = new int[size];
+        final int[] id = new int[size];
+        for (int i = 0; i < size; i++) {
+            final Point point = (Point) leaves.get(i).geometry();
+            x[i] = lngX(point.longitude());
+            y[i] = latY(point.latitude());
+            numPoints[i] = 1;
+            id[i] = i;
+        }
+
+        final Level[] levels = new Level[maxZoom + 2];
+        levels[maxZoom + 1] = new Level(size, x, y, numPoints, id);
+        for (int zoom = maxZoom; zoom >= MIN_ZOOM; zoom--) {
+            levels[zoom] = cluster(levels[zoom + 1], zoom, radius);
+        }
+        return new Supercluster(levels, leaves, maxZoom, radius);
+    }
+
+    private Supercluster(Level[] levels, List<Feature> leaves, int maxZoom, int radius) {
+        mLevels = levels;
+        mLeaves = leaves;
+        this.maxZoom = maxZoom;
+        this.radius = radius;
+    }
+
+    /**
+     * Reuse the cluster tree when the points did not move, only their features changed.
+     * @return null if the positions of the points differ and the tree must be rebuilt
+     */
+    Supercluster withFeatures(List<Feature> features) {
+        final Level points = mLevels[maxZoom + 1];
+        final ArrayList<Feature> leaves = new ArrayList<>(points.size);
+        int i = 0;
+        for (Feature feature : features) {
+            if (!(feature.geometry() instanceof Point)) continue;
+            if (i == points.size) return null;
+            final Point point = (Point) feature.geometry();
+            if (lngX(point.longitude()) != points.x[i] || latY(point.latitude()) != points.y[i]) return null;
+            leaves.add(feature);
+            i++;
+        }
+        if (i != points.size) return null;
+        return new Supercluster(mLevels, leaves, maxZoom, radius);
+    }
+
+    /**
+     * @return the clusters and the unclustered points in the bounds at the given zoom
+     */
+    List<Feature> getClusters(double west, double south, double east, double north, double zoom) {
+        double minLng = ((west + 180) % 360 + 360) % 360 - 180;
+        final double minLat = Math.max(-90, Math.min(90, south));
+        double maxLng = east == 180 ? 180 : ((east + 180) % 360 + 360) % 360 - 180;
+        final double maxLat = Math.max(-90, Math.min(90, north));
+
+        if (east - west >= 360) {
+            minLng = -180;
+            maxLng = 180;
+        } else if (minLng > maxLng) {
+            // Crossing the antimeridian
+            final List<Feature> clusters = getClusters(minLng, minLat, 180, maxLat, zoom);
+            clusters.addAll(getClusters(-180, minLat, maxLng, maxLat, zoom));
+            return clusters;
+        }
+
+        final Level level = mLevels[limitZoom(zoom)];
+        final ArrayList<Feature> clusters = new ArrayList<>();
+        level.tree.range(lngX(minLng), latY(maxLat), lngX(maxLng), latY(minLat), i -> clusters.add(toFeature(level, i)));
+        return clusters;
+    }
+
+    /**
+     * @return the points of the cluster, at most limit of them after skipping offset of them
+     * @throws IllegalArgumentException if the cluster does not exist
+     */
+    List<Feature> getLeaves(int clusterId, int limit, int offset) {
+        final ArrayList<Feature> leaves = new ArrayList<>(Math.min(limit, 256));
+        appendLeaves(leaves, clusterId, limit, offset, 0);
+        return leaves;
+    }
+
+    /**
+     * @return the zoom at which the cluster splits into several children
+     * @throws IllegalArgumentException if the cluster does not exist
+     */
+    int getClusterExpansionZoom(int clusterId) {
+        int expansionZoom = getOriginZoom(clusterId) - 1;
+        while (expansionZoom <= maxZoom) {
+            final Level level = getOriginLevel(clusterId);
+            final ArrayList<Integer> children = new ArrayList<>();
+            visitChildren(clusterId, level, children::add);
+            if (children.isEmpty()) throw new IllegalArgumentException("No cluster with the id " + clusterId);
+            expansionZoom++;
+            if (children.size() != 1 || !level.isCluster(children.get(0))) break;
+            clusterId = level.id[children.get(0)];
+        }
+        return expansionZoom;
+    }
+
+    private int appendLeaves(List<Feature> leaves, int clusterId, int limit, int offset, int skipped) {
+        final Level level = getOriginLevel(clusterId);
+        final ArrayList<Integer> children = new ArrayList<>();
+        visitChildren(clusterId, level, children::add);
+        if (children.isEmpty()) throw new IllegalArgumentException("No cluster with the id " + clusterId);
+
+        for (int i : children) {
+            if (level.isCluster(i)) {
+                if (skipped + level.numPoints[i] <= offset) {
+                    // Skip the whole cluster
+                    skipped += level.numPoints[i];
+                } else {
+                    skipped = appendLeaves(leaves, level.id[i], limit, offset, skipped);
+                }
+            } else if (skipped < offset) {
+                skipped++;
+            } else {
+                leaves.add(mLeaves.get(level.id[i]));
+            }
+            if (leaves.size() == limit) break;
+        }
+        return skipped;
+    }
+
+    private void visitChildren(int clusterId, Level level, KdIndex.Visitor visitor) {
+        final int originId = clusterId >> 5;
+        final double r = radius / (EXTENT * Math.pow(2, getOriginZoom(clusterId) - 1));
+        level.tree.within(level.x[originId], level.y[originId], r, i -> {
+            if (level.parentId[i] == clusterId) visitor.visit(i);
+        });
+    }
+
+    private Level getOriginLevel(int clusterId) {
+        final int originZoom = getOriginZoom(clusterId);
+        final int originId = clusterId >> 5;
+        if (clusterId < 0 || originZoom <= MIN_ZOOM || originZoom > maxZoom + 1 || originId >= mLevels[originZoom].size)
+            throw new IllegalArgumentException("No cluster with the id " + clusterId);
+        return mLevels[originZoom];
+    }
+
+    private static int getOriginZoom(int clusterId) {
+        return clusterId % 32;
+    }
+
+    private int limitZoom(double zoom) {
+        return Math.max(MIN_ZOOM, Math.min((int) Math.floor(zoom), maxZoom + 1));
+    }
+
+    private Feature toFeature(Level level, int i) {
+        if (!level.isCluster(i)) return mLeaves.get(level.id[i]);
+
+        final int count = level.numPoints[i];
+        final JsonObject properties = new JsonObject();
+        properties.addProperty("cluster", true);
+        properties.addProperty("cluster_id", level.id[i]);
+        properties.addProperty("point_count", count);
+        properties.addProperty("point_count_abbreviated", abbreviate(count));
+        return Feature.fromGeometry(
+                Point.fromLngLat(xLng(level.x[i]), yLat(level.y[i])),
+                properties,
+                String.valueOf(level.id[i]));
+    }
+
+    private static Level cluster(Level previous, int zoom, int radius) {
+        final double r = radius / (EXTENT * Math.pow(2, zoom));
+        final int capacity = previous.size;
+        final double[] x = new double[capacity];
+        final double[] y = new double[capacity];
+        final int[] numPoints = new int[capacity];
+        final int[] id = new int[capacity];
+        int size = 0;
+
+        final Accumulator accumulator = new Accumulator();
+        accumulator.level = previous;
+        accumulator.visited = new boolean[capacity];
+
+        for (int i = 0; i < previous.size; i++) {
+            if (accumulator.visited[i]) continue;
+            accumulator.visited[i] = true;
+            accumulator.clusterId = (i << 5) + (zoom + 1);
+            accumulator.numPoints = previous.numPoints[i];
+            accumulator.wx = previous.x[i] * previous.numPoints[i];
+            accumulator.wy = previous.y[i] * previous.numPoints[i];
+            previous.tree.within(previous.x[i], previous.y[i], r, accumulator);
+
+            if (accumulator.numPoints == previous.numPoints[i]) {
+                // No neighbor, the entry goes up as is
+                x[size] = previous.x[i];
+                y[size] = previous.y[i];
+                numPoints[size] = previous.numPoints[i];
+                id[size] = previous.id[i];
+            } else {
+                previous.parentId[i] = accumulator.clusterId;
+                x[size] = accumulator.wx / accumulator.numPoints;
+                y[size] = accumulator.wy / accumulator.numPoints;
+                numPoints[size] = accumulator.numPoints;
+                id[size] = accumulator.clusterId;
+            }
+            size++;
+        }
+        return new Level(size, Arrays.copyOf(x, size), Arrays.copyOf(y, size), Arrays.copyOf(numPoints, size), Arrays.copyOf(id, size));
+    }
+
+    private static String abbreviate(int count) {
+        if (count >= 10000) return Math.round(count / 1000.0) + "k";
+        if (count >= 1000) {
+            final long tenths = Math.round(count / 100.0);
+            return tenths % 10 == 0 ? (tenths / 10) + "k" : (tenths / 10) + "." + (tenths % 10) + "k";
+        }
+        return String.valueOf(count);
+    }
+
+    private static double lngX(double lng) {
+        return lng / 360 + 0.5;
+    }
+
+    private static double latY(double lat) {
+        final double sin = Math.sin(lat * Math.PI / 180);
+        final double y = 0.5 - 0.25 * Math.log((1 + sin) / (1 - sin)) / Math.PI;
+        return y < 0 ? 0 : y > 1 ? 1 : y;
+    }
+
+    private static double xLng(double x) {
+        return (x - 0.5) * 360;
+    }
+
+    private static double yLat(double y) {
+        final double y2 = (180 - y * 360) * Math.PI / 180;
+        return 360 * Math.atan(Math.exp(y2)) / Math.PI - 90;
+    }
+}
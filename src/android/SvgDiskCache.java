@@ -0,0 +1,140 @@
+package com.dagatsoin.plugins.mapbox;
+
+import android.graphics.Bitmap;
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rasterized SVG icons kept on disk across launches.
+ *
+ * Each entry is a file holding a small header and the raw ARGB_8888 pixels, read back through
+ * a memory mapped buffer: no SVG parsing, no rendering and no image decoding.
+ * Keys are made of a hash of the SVG content, the pixel size and the display density,
+ * so an edited SVG gets a new entry. Once the files exceed the size cap, the least recently
+ * used ones are deleted. A hit refreshes the modification date which serves as access date.
+ *
+ * Thread safe: entries are written to a temporary file then renamed.
+ */
+class SvgDiskCache {
+    private static final int MAGIC = 0x53564731; // "SVG1"
+    private static final int HEADER_SIZE = 12;
+    private static final long MAX_BYTES = 16 * 1024 * 1024;
+
+    private final File mDirectory;
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+    private final AtomicInteger mEvictionCount = new AtomicInteger();
+    private final AtomicInteger mTempCount = new AtomicInteger();
+
+    SvgDiskCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * @param contentHash hash of the SVG source
+     * @param width pixel width, 0 for the document width
+     * @param height pixel height, 0 for the document height
+     */
+    static String keyOf(String contentHash, int width, int height, float density) {
+        return contentHash + "-" + width + "x" + height + "-" + Float.floatToIntBits(density);
+    }
+
+    @Nullable
+    Bitmap get(String key) {
+        final File file = new File(mDirectory, key);
+        if (!file.exists()) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Corrupted SVG cache entry " + key);
+            }
+            final int width = buffer.getInt();
+            final int height = buffer.getInt();
+            final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            if (buffer.remaining() < bitmap.getByteCount()) {
+                bitmap.recycle();
+                throw new IOException("Truncated SVG cache entry " + key);
+            }
+            bitmap.copyPixelsFromBuffer(buffer);
+            file.setLastModified(System.currentTimeMillis());
+            mHitCount.incrementAndGet();
+            return bitmap;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            file.delete();
+            mMissCount.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Write the bitmap, then trim the cache. Failures are only logged.
+     */
+    void put(String key, Bitmap bitmap) {
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) return;
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) return;
+
+        final File temp = new File(mDirectory, key + ".tmp" + mTempCount.incrementAndGet());
+        try {
+            final ByteBuffer pixels = ByteBuffer.allocate(HEADER_SIZE + bitmap.getByteCount());
+            pixels.putInt(MAGIC).putInt(bitmap.getWidth()).putInt(bitmap.getHeight());
+            bitmap.copyPixelsToBuffer(pixels);
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                out.write(pixels.array(), 0, pixels.position());
+            }
+            if (!temp.renameTo(new File(mDirectory, key))) {
+                throw new IOException("Can not write SVG cache entry " + key);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            temp.delete();
+            return;
+        }
+        trim();
+    }
+
+    /**
+     * @return {hits, misses, evictions}
+     */
+    JSONObject getStats() throws JSONException {
+        return new JSONObject()
+                .put("hits", mHitCount.get())
+                .put("misses", mMissCount.get())
+                .put("evictions", mEvictionCount.get());
+    }
+
+    private synchronized void trim() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) return;
+
+        long size = 0;
+        for (File file : files) size += file.length();
+        if (size <= MAX_BYTES) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (size <= MAX_BYTES) break;
+            if (file.getName().contains(".tmp")) continue;
+            final long length = file.length();
+            if (file.delete()) {
+                size -= length;
+                mEvictionCount.incrementAndGet();
+            }
+        }
+    }
+}
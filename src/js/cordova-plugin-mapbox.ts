@@ -25,22 +25,128 @@ export type MapEventPayload = {
 type PickOne<T> = { [P in keyof T]: Record<P, T[P]> & Partial<Record<Exclude<keyof T, P>, undefined>> }[keyof T]
 
 export type LayoutProperties = {
-  'icon-image': string
-  'icon-offset': [number, number]
+  'visibility': 'visible' | 'none'
+  'line-cap': string | Expression
+  'line-join': string | Expression
+  'line-miter-limit': number | Expression
+  'line-round-limit': number | Expression
+  'symbol-placement': string | Expression
+  'symbol-spacing': number | Expression
+  'symbol-avoid-edges': boolean | Expression
+  'symbol-z-order': string | Expression
+  'icon-allow-overlap': boolean | Expression
+  'icon-ignore-placement': boolean | Expression
+  'icon-optional': boolean | Expression
+  'icon-rotation-alignment': string | Expression
   'icon-size': number | Expression
-  'icon-allow-overlap': boolean
+  'icon-text-fit': string | Expression
+  'icon-text-fit-padding': [number, number, number, number] | Expression
+  'icon-image': string | Expression
+  'icon-rotate': number | Expression
+  'icon-padding': number | Expression
+  'icon-keep-upright': boolean | Expression
+  'icon-offset': [number, number] | Expression
+  'icon-anchor': string | Expression
+  'icon-pitch-alignment': string | Expression
+  'text-pitch-alignment': string | Expression
+  'text-rotation-alignment': string | Expression
+  'text-field': string | Expression
+  'text-font': string[] | Expression
   'text-size': number | Expression
-  'text-field': string
-  'text-font': string[]
+  'text-max-width': number | Expression
+  'text-line-height': number | Expression
+  'text-letter-spacing': number | Expression
+  'text-justify': string | Expression
+  'text-radial-offset': number | Expression
+  'text-variable-anchor': string[] | Expression
+  'text-anchor': string | Expression
+  'text-max-angle': number | Expression
+  'text-rotate': number | Expression
+  'text-padding': number | Expression
+  'text-keep-upright': boolean | Expression
+  'text-transform': string | Expression
+  'text-offset': [number, number] | Expression
+  'text-allow-overlap': boolean | Expression
+  'text-ignore-placement': boolean | Expression
+  'text-optional': boolean | Expression
 }
 
 export type LayoutProperty = PickOne<LayoutProperties>
 
 export type PaintProperties = {
+  'background-color': string | Expression
+  'background-pattern': string | Expression
+  'background-opacity': number | Expression
+  'fill-antialias': boolean | Expression
+  'fill-opacity': number | Expression
+  'fill-color': string | Expression
+  'fill-outline-color': string | Expression
+  'fill-translate': [number, number] | Expression
+  'fill-translate-anchor': string | Expression
+  'fill-pattern': string | Expression
+  'line-opacity': number | Expression
+  'line-color': string | Expression
+  'line-translate': [number, number] | Expression
+  'line-translate-anchor': string | Expression
+  'line-width': number | Expression
+  'line-gap-width': number | Expression
+  'line-offset': number | Expression
+  'line-blur': number | Expression
+  'line-dasharray': number[] | Expression
+  'line-pattern': string | Expression
+  'line-gradient': string | Expression
+  'icon-opacity': number | Expression
+  'icon-color': string | Expression
+  'icon-halo-color': string | Expression
+  'icon-halo-width': number | Expression
+  'icon-halo-blur': number | Expression
+  'icon-translate': [number, number] | Expression
+  'icon-translate-anchor': string | Expression
+  'text-opacity': number | Expression
   'text-color': string | Expression
-  'text-halo-blur': number | Expression
   'text-halo-color': string | Expression
   'text-halo-width': number | Expression
+  'text-halo-blur': number | Expression
+  'text-translate': [number, number] | Expression
+  'text-translate-anchor': string | Expression
+  'circle-radius': number | Expression
+  'circle-color': string | Expression
+  'circle-blur': number | Expression
+  'circle-opacity': number | Expression
+  'circle-translate': [number, number] | Expression
+  'circle-translate-anchor': string | Expression
+  'circle-pitch-scale': string | Expression
+  'circle-pitch-alignment': string | Expression
+  'circle-stroke-width': number | Expression
+  'circle-stroke-color': string | Expression
+  'circle-stroke-opacity': number | Expression
+  'heatmap-radius': number | Expression
+  'heatmap-weight': number | Expression
+  'heatmap-intensity': number | Expression
+  'heatmap-color': string | Expression
+  'heatmap-opacity': number | Expression
+  'fill-extrusion-opacity': number | Expression
+  'fill-extrusion-color': string | Expression
+  'fill-extrusion-translate': [number, number] | Expression
+  'fill-extrusion-translate-anchor': string | Expression
+  'fill-extrusion-pattern': string | Expression
+  'fill-extrusion-height': number | Expression
+  'fill-extrusion-base': number | Expression
+  'fill-extrusion-vertical-gradient': boolean | Expression
+  'raster-opacity': number | Expression
+  'raster-hue-rotate': number | Expression
+  'raster-brightness-min': number | Expression
+  'raster-brightness-max': number | Expression
+  'raster-saturation': number | Expression
+  'raster-contrast': number | Expression
+  'raster-resampling': string | Expression
+  'raster-fade-duration': number | Expression
+  'hillshade-illumination-direction': number | Expression
+  'hillshade-illumination-anchor': string | Expression
+  'hillshade-exaggeration': number | Expression
+  'hillshade-shadow-color': string | Expression
+  'hillshade-highlight-color': string | Expression
+  'hillshade-accent-color': string | Expression
 }
 
 export type MapEventListener = (payload: MapEventPayload) => void
@@ -51,15 +157,15 @@ export type Bounds = {
 }
 
 export type LayerType =
-  //  | "fill"
-  //  | "line"
-  'symbol'
-//  | "circle"
-//  | "heatmap"
-//  | "fill-extrusion"
-//  | "raster"
-//  | "hillshade"
-//  | "background"
+  | 'background'
+  | 'fill'
+  | 'line'
+  | 'symbol'
+  | 'circle'
+  | 'heatmap'
+  | 'fill-extrusion'
+  | 'raster'
+  | 'hillshade'
 
 export type Expression = Array<string | boolean | number | Expression>
 
@@ -76,7 +182,9 @@ export type DownloadState = {
 
 export type Layer = {
   id: string
-  source: string
+  /** Not used by background layers */
+  source?: string
+  /** Layer of a vector source */
   sourcelayer?: string
   type?: LayerType
   minzoom?: number
@@ -116,6 +224,8 @@ export type Source<T extends GeoJSON.GeometryObject, P> = {
   cluster?: boolean
   clusterMaxZoom?: number
   clusterRadius?: number
+  /** Keep an R-tree of the feature bounding boxes, for [[querySourceFeatures]] */
+  spatialIndex?: boolean
 }
 
 export type LngLat = [number, number]
@@ -140,16 +250,30 @@ export type ImageProperties = {
   height: number
   width: number
   path: string
+  /** The image has no transparency: it is decoded with half the memory. */
+  opaque?: boolean
 }
 
 export type MapOptions = {
+  /** Id of the map, to display several maps at once. The default map when omitted, see [[getMap]] */
+  id?: string
   domContainer: HTMLElement
   style: string
   additionalDomElements?: HTMLElement[]
   cameraPosition?: any
+  /**
+   * @deprecated use [[setSelectionStyle]]. Symbol layer rendering a copy of the feature selected by a tap,
+   * with its icons enlarged. The copy is written in [[selectedFeatureSourceId]]
+   */
   selectedFeatureLayerId?: string
+  /** @deprecated use [[setSelectionStyle]]. GeoJSON source of [[selectedFeatureLayerId]] */
   selectedFeatureSourceId?: string
+  /** Value of the type property of the features selected on tap. They must have an id */
   selectableFeaturePropType?: string
+  /** Layers hit-tested on tap, for the selection and the click callbacks. All the rendered layers by default */
+  interactiveLayerIds?: string[]
+  /** Half size in dp of the box hit-tested around a tap, 0 by default for the tapped pixel only */
+  clickRadius?: number
   hideAttribution?: boolean
   hideLogo?: boolean
   hideCompass?: boolean
@@ -178,6 +302,160 @@ export type OfflineRegionParams = {
   regionName?: string
 }
 
+export type BatchCommand = {
+  action: string
+  args?: any[]
+}
+
+export type BatchResult = {
+  ok: boolean
+  result: any
+}
+
+export type ListenerOptions = {
+  coalesce?: 'frame' | number
+}
+
+export type CommandMetrics = {
+  count: number
+  meanMs: number
+  maxMs: number
+}
+
+export type EventMetrics = {
+  action: string
+  coalesce: 'frame' | number | null
+  events: number
+  delivered: number
+  dropped: number
+}
+
+export type RuntimeMetrics = {
+  gcCount: number
+  gcTimeMs: number
+  heapUsedBytes: number
+}
+
+export type ImageCacheMetrics = {
+  hits: number
+  misses: number
+  evictions: number
+  bytes: number
+  maxBytes: number
+}
+
+export type SvgCacheMetrics = {
+  hits: number
+  misses: number
+  evictions: number
+}
+
+export type ExpressionCacheMetrics = {
+  hits: number
+  misses: number
+  evictions: number
+  size: number
+  /** hits / (hits + misses), 0 before the first lookup */
+  hitRate: number
+}
+
+export type SpatialIndexMetrics = {
+  /** Number of sources with a spatial index */
+  sources: number
+  /** Number of indexed features */
+  items: number
+  /** Size of the trees, the features are shared with the source data */
+  bytes: number
+}
+
+export type MapViewPoolMetrics = {
+  /** Number of destroyed maps kept to be shown again */
+  size: number
+  maxSize: number
+  /** Number of maps shown with a recycled map view */
+  hits: number
+  /** Number of maps shown with a new map view */
+  misses: number
+}
+
+export type Metrics = {
+  commands: { [action: string]: CommandMetrics }
+  /** Ids of the displayed maps */
+  maps: string[]
+  /** Event subscriptions of all the maps */
+  events: EventMetrics[]
+  images: ImageCacheMetrics
+  svgCache: SvgCacheMetrics
+  expressions: ExpressionCacheMetrics
+  /** Summed over the maps, null if no map is created */
+  spatialIndexes: SpatialIndexMetrics | null
+  mapViewPool: MapViewPoolMetrics
+  runtime: RuntimeMetrics
+}
+
+export type ProjectionOptions = ListenerOptions & {
+  watchId?: number
+}
+
+export type SpriteAtlasResult = {
+  /** Number of atlas pages written, -1 when read back from the cache */
+  pages: number
+  images: number
+  fromCache: boolean
+}
+
+export type LayerProperties = Partial<LayoutProperties & PaintProperties>
+
+export type SetLayerPropertiesResult = {
+  /** Ids of the layers not found in the style, their properties are ignored */
+  missingLayerIds: string[]
+}
+
+export type ClusterLeavesOptions = {
+  /** Maximum number of points, 10 by default */
+  limit?: number
+  /** Number of points to skip, for paging */
+  offset?: number
+}
+
+export type SourceFeaturesQuery = {
+  /** Features whose bounding box intersects the bounds, in the order of the source data */
+  bounds?: Bounds
+  /** With radius, features whose bounding box is at most radius meters away, the closest first */
+  center?: LngLat
+  radius?: number
+  /** Maximum number of features, 100 by default */
+  limit?: number
+  /** Number of features to skip, for paging */
+  offset?: number
+  /** Only return the feature ids */
+  idsOnly?: boolean
+}
+
+export type SourceFeaturesQueryResult = {
+  /** Number of matching features, whatever the limit and offset */
+  total: number
+  /** Set unless idsOnly */
+  features?: GeoJSON.FeatureCollection
+  /** Set with idsOnly, null for the features without id */
+  ids?: (string | null)[]
+}
+
+export type SelectionStyle = {
+  /**
+   * Values of a data-driven paint property for the selected and the other features, such as
+   * circle-radius or icon-opacity. Layout properties are rejected: they would lay out the layer again.
+   * A zoom interpolate or step must be the top-level expression of a value. When both values are
+   * zoom curves, they must have the same interpolation and stops.
+   */
+  [property: string]: { selected: any; unselected: any }
+}
+
+export type SelectFeaturesOptions = {
+  /** Add the features to the selection instead of replacing it */
+  additive?: boolean
+}
+
 export interface Mapbox {
   /**
    * Display the map. Create it if needed.
@@ -235,6 +513,8 @@ export interface Mapbox {
    * Set the HTML container of the Map. It will resize
    * the map to fit in the container and update the clickable
    * HTML elements overlaying the map.
+   * Only the elements which appeared, moved or disappeared since the
+   * last update are sent.
    * @param params 
    * @param successCallback called on success
    * @param errorCallback called in case of error
@@ -312,13 +592,15 @@ export interface Mapbox {
     id?: number
   ): void
   /**
-   * Deselect the current feature of the map.
-   * @param successCallback called on success
+   * Deselect features of the map.
+   * @param successCallback called on success with the ids still selected
    * @param errorCallback called in case of error
+   * @param ids the features to deselect, all of them by default
    */
   deselect(
-    callback?: () => void,
+    callback?: (selectedIds: string[]) => void,
     errorCallback?: (e: string) => void,
+    ids?: string[],
   ): void
   /**
    * Add an image to the map style. For instance, a marker image.
@@ -409,6 +691,9 @@ export interface Mapbox {
   ): void
   /**
    * Set the data of a source. Use this when you want to animate data.
+   * The data is parsed off the UI thread. If a newer update of the same source
+   * arrives before this one is applied, this one is dropped and the error callback
+   * receives `{error: 'CANCELLED'}`.
    * @param sourceId 
    * @param geoJson 
    * @param successCallback called on success
@@ -418,7 +703,7 @@ export interface Mapbox {
     sourceId: string,
     geoJson: SourceData<any, any>,
     successCallback?: () => void,
-    errorCallback?: (e: string) => void,
+    errorCallback?: (e: string | { error: 'CANCELLED' }) => void,
   ): void
   /**
    * Smoothly jump to a position on the map.
@@ -609,8 +894,10 @@ export interface Mapbox {
    * This event is triggered whenever the displayed map region finished changing without an animation.
    * @param listener 
    * @param id 
+   * @param options set coalesce to 'frame' or to a minimal interval in ms to receive at most
+   * one event per vsync or per interval. Only the latest camera position is sent.
    */
-  addOnCameraDidChangeListener(listener: () => void, id?: number): void
+  addOnCameraDidChangeListener(listener: (cameraPosition: CameraPosition) => void, id?: number, options?: ListenerOptions): void
   /**
    * Triggered when a style has finished loading.
    * @param listener 
@@ -627,14 +914,18 @@ export interface Mapbox {
    * This event is triggered when the map will start rendering a frame. 
    * @param listener 
    * @param id 
+   * @param options set coalesce to 'frame' or to a minimal interval in ms to receive at most
+   * one event per vsync or per interval. Only the latest camera position is sent.
    */
-  addOnWillStartRenderingFrameListener(listener: () => void, id?: number): void
+  addOnWillStartRenderingFrameListener(listener: (cameraPosition: CameraPosition) => void, id?: number, options?: ListenerOptions): void
   /**
    * This event is triggered when the map finished rendering a frame.
    * @param listener 
    * @param id 
+   * @param options set coalesce to 'frame' or to a minimal interval in ms to receive at most
+   * one event per vsync or per interval. Only the latest camera position is sent.
    */
-  addOnDidFinishRenderingFrameListener(listener: () => void, id?: number): void
+  addOnDidFinishRenderingFrameListener(listener: (cameraPosition: CameraPosition) => void, id?: number, options?: ListenerOptions): void
   /**
    * This is triggered when the map has successfully loaded a new map style. 
    * @param listener 
@@ -647,12 +938,293 @@ export interface Mapbox {
    * @param id 
    */
   addOnDidFinishRenderingMapListener(listener: (fullyRendered: boolean) => void, id?: number): void
+  /**
+   * Insert or replace features of a source added with [[addSource]], by feature id.
+   * Only the changed features cross the bridge. The native side keeps the
+   * source data and uploads it once per frame, whatever the number of calls.
+   * @param sourceId
+   * @param features the features to insert or replace. Features without id are appended.
+   * @param successCallback called on success
+   * @param errorCallback called in case of error
+   */
+  upsertFeatures(
+    sourceId: string,
+    features: GeoJSON.Feature<GeoJSON.GeometryObject>[],
+    successCallback?: () => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * Remove features of a source added with [[addSource]], by feature id.
+   * @param sourceId
+   * @param featureIds
+   * @param successCallback called on success
+   * @param errorCallback called in case of error
+   */
+  removeFeatures(
+    sourceId: string,
+    featureIds: Array<string | number>,
+    successCallback?: () => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * Send several commands in a single bridge call.
+   * The commands run in order in the same UI thread task, so a style update
+   * made of several commands is never rendered half applied.
+   * A command answering later, like [[addSource]], [[setGeoJson]] or [[addImage]], holds back
+   * the next ones until it answered: they run in a later UI thread task, after its result is applied.
+   * The listener commands (ADD_ON_*, ADD_MAP_CLICK_CALLBACK), SHOW, DOWNLOAD_REGION
+   * and nested EXECUTE_BATCH can not be batched.
+   * @param commands list of {action, args}, action is a command name such as "SET_LAYOUT_PROPERTY", args are the native arguments of that command
+   * @param successCallback called once all the commands answered, with one {ok, result} per command, in order
+   * @param errorCallback called if the batch itself is malformed, or with {error: 'TIMEOUT', index} if a command did not answer within 30s
+   */
+  executeBatch(
+    commands: BatchCommand[],
+    successCallback?: (results: BatchResult[]) => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * Read the native performance counters.
+   * commands gives, for each command called at least once, the time between
+   * its reception by the plugin and its answer, including the work handed over to another thread
+   * such as GeoJSON parsing or image decoding. For the listener commands, it ends when the listener is registered.
+   * events gives the delivery counters of each camera and frame listener.
+   * images gives the counters of the decoded image cache used by [[addImage]].
+   * svgCache gives the counters of the rasterized SVG cache kept on disk across launches.
+   * expressions gives the counters of the compiled style expression cache.
+   * spatialIndexes gives the size of the R-trees of the sources added with spatialIndex: true.
+   * runtime gives the garbage collections since the start of the app (-1 before Android 6)
+   * and the used heap: read it before and after a scripted pan to compare the GC pressure.
+   * @param resultCallback called with the metrics
+   * @param errorCallback called in case of error
+   * @param reset clear the counters once read
+   */
+  getMetrics(
+    resultCallback?: (metrics: Metrics) => void,
+    errorCallback?: (e: string) => void,
+    reset?: boolean,
+  ): void
+  /**
+   * Convert many [[Coords]] to screen points in a single call.
+   * All the points are converted against the same camera.
+   * With a watchId, the points are converted again after each camera change and the
+   * result callback is called each time, until [[unwatchProjection]].
+   * The updates are sent at most once per frame unless coalesce says otherwise.
+   * @param coordinates flat array of [lng, lat, lng, lat...]
+   * @param resultCallback takes the flat array of [x, y, x, y...] as argument
+   * @param errorCallback called in case of error
+   * @param options
+   */
+  projectMany(
+    coordinates: number[],
+    resultCallback?: (points: number[]) => void,
+    errorCallback?: (e: string) => void,
+    options?: ProjectionOptions,
+  ): void
+  /**
+   * Convert many [[ScreenCoords]] to coordinates in a single call.
+   * Works like [[projectMany]].
+   * @param points flat array of [x, y, x, y...]
+   * @param resultCallback takes the flat array of [lng, lat, lng, lat...] as argument
+   * @param errorCallback called in case of error
+   * @param options
+   */
+  unprojectMany(
+    points: number[],
+    resultCallback?: (coordinates: number[]) => void,
+    errorCallback?: (e: string) => void,
+    options?: ProjectionOptions,
+  ): void
+  /**
+   * Stop the updates of a point set registered with a watchId.
+   * @param watchId
+   * @param successCallback
+   * @param errorCallback called if no point set is watched with this id
+   */
+  unwatchProjection(
+    watchId: number,
+    successCallback?: () => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * Add a set of images to the map style, like a whole icon set.
+   * The images are decoded in parallel and added in a single pass.
+   * If some images can not be decoded, the others are still added and the error
+   * callback receives {error: 'IMAGES_NOT_DECODED', ids}.
+   * @param images image properties by image id
+   * @param successCallback called on success
+   * @param errorCallback called in case of error
+   */
+  addImages(
+    images: { [imageId: string]: ImageProperties },
+    successCallback?: () => void,
+    errorCallback?: (e: string | { error: string, ids: string[] }) => void,
+  ): void
+  /**
+   * Add a set of images to the map style through a sprite atlas kept on the device.
+   * The first call decodes the images, packs them into atlas pages and saves them.
+   * Next calls with the same atlas id and the same images, even in a later session,
+   * read the saved pages instead of decoding each image again.
+   * The atlas is rebuilt when an image, its size or its file changes.
+   * @param atlasId name of the saved atlas
+   * @param images image properties by image id
+   * @param successCallback called with the [[SpriteAtlasResult]]
+   * @param errorCallback called in case of error
+   */
+  addSpriteAtlas(
+    atlasId: string,
+    images: { [imageId: string]: ImageProperties },
+    successCallback?: (result: SpriteAtlasResult) => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * Set the layout and paint properties of many layers at once, like for a theme switch.
+   * Each layer is looked up once and gets all its properties in a single update.
+   * @param layers properties by layer id
+   * @param successCallback called with the [[SetLayerPropertiesResult]]
+   * @param errorCallback called in case of error
+   */
+  setLayerProperties(
+    layers: { [layerId: string]: LayerProperties },
+    successCallback?: (result: SetLayerPropertiesResult) => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * Get the points of a cluster of a clustered GeoJSON source.
+   * The clusters are indexed natively, the query does not depend on what is rendered.
+   * The error callback receives {error: 'UNKNOWN_CLUSTER_ID'} if the cluster does not exist.
+   * @param sourceId a source added with cluster: true
+   * @param clusterId the cluster_id property of a cluster feature
+   * @param resultCallback takes the FeatureCollection of the points as argument
+   * @param errorCallback called in case of error
+   * @param options paging of the points
+   */
+  getClusterLeaves(
+    sourceId: string,
+    clusterId: number,
+    resultCallback?: (leaves: GeoJSON.FeatureCollection<GeoJSON.Point>) => void,
+    errorCallback?: (e: string) => void,
+    options?: ClusterLeavesOptions,
+  ): void
+  /**
+   * Get the zoom at which a cluster splits into several clusters or points.
+   * The error callback receives {error: 'UNKNOWN_CLUSTER_ID'} if the cluster does not exist.
+   * @param sourceId a source added with cluster: true
+   * @param clusterId the cluster_id property of a cluster feature
+   * @param resultCallback takes the zoom as argument
+   * @param errorCallback called in case of error
+   */
+  getClusterExpansionZoom(
+    sourceId: string,
+    clusterId: number,
+    resultCallback?: (zoom: number) => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * Get the clusters and the unclustered points of a clustered GeoJSON source in some bounds.
+   * Cluster features have the cluster, cluster_id, point_count and point_count_abbreviated properties.
+   * @param sourceId a source added with cluster: true
+   * @param bounds area to query, it can cross the antimeridian
+   * @param zoom the zoom level of the clusters
+   * @param resultCallback takes the FeatureCollection of the clusters and points as argument
+   * @param errorCallback called in case of error
+   */
+  getClustersInBounds(
+    sourceId: string,
+    bounds: Bounds,
+    zoom: number,
+    resultCallback?: (clusters: GeoJSON.FeatureCollection<GeoJSON.Point>) => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * Search the features of a GeoJSON source in some bounds or around a point, without the
+   * data going through the bridge. The R-tree is rebuilt off the UI thread after each update
+   * of the source, the query waits for the latest build.
+   * @param sourceId a source added with spatialIndex: true
+   * @param query bounds, or center and radius, and paging
+   * @param resultCallback takes the page of features or ids and the total count as argument
+   * @param errorCallback called in case of error
+   */
+  querySourceFeatures(
+    sourceId: string,
+    query: SourceFeaturesQuery,
+    resultCallback?: (result: SourceFeaturesQueryResult) => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * Change the layers hit-tested on tap and the size of the hit box.
+   * A tap runs a single query, shared by the selection and the click callbacks.
+   * @param layerIds the interactive layers, null for all the rendered layers
+   * @param clickRadius half size in dp of the box around the tap, 0 for the tapped pixel only
+   * @param successCallback called on success
+   * @param errorCallback called in case of error
+   */
+  setInteractiveLayers(
+    layerIds: string[] | null,
+    clickRadius?: number,
+    successCallback?: () => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * Select features by id. The sources are not modified: the layers with a selection style
+   * switch the values of their properties for the selected features.
+   * @param ids the feature ids
+   * @param resultCallback takes the ids of all the selected features as argument
+   * @param errorCallback called in case of error
+   * @param options replace or extend the selection
+   */
+  selectFeatures(
+    ids: string[],
+    resultCallback?: (selectedIds: string[]) => void,
+    errorCallback?: (e: string) => void,
+    options?: SelectFeaturesOptions,
+  ): void
+  /**
+   * Set how a layer highlights the selected features, for instance a bigger circle-radius.
+   * The properties are set to expressions matching the feature ids against the selection,
+   * which are updated on each selection change.
+   * @param layerId the layer, it can be added later
+   * @param style the values of each property, null to stop highlighting: the unselected values are kept
+   * @param successCallback called on success
+   * @param errorCallback called in case of error
+   */
+  setSelectionStyle(
+    layerId: string,
+    style: SelectionStyle | null,
+    successCallback?: () => void,
+    errorCallback?: (e: string) => void,
+  ): void
+  /**
+   * The API of another map, to display several maps at once. For instance a small overview map next to the main map.
+   * Its calls address this map only, it is shown, resized and destroyed on its own.
+   * The functions of this module address the default map.
+   * @param mapId id of the map, [[MapOptions.id]] of its [[show]] call is optional
+   */
+  getMap(mapId: string): Mapbox
 }
 
 const { cordova } = window
 
 const MAPBOX = 'Mapbox'
 
+const DEFAULT_MAP_ID = 'default'
+
+// Id of the map addressed by the calls of a map instance, undefined for the default map
+let targetMapId: string | undefined
+
+/**
+ * Send a command to the addressed map, as ACTION@mapId for the maps other than the default one.
+ */
+function exec(
+  successCallback: ((...args: any[]) => void) | null | undefined,
+  errorCallback: ((e: any) => void) | null | undefined,
+  action: Command,
+  args: any[],
+  mapId = targetMapId,
+) {
+  cordova.exec(successCallback, errorCallback, MAPBOX, mapId === undefined ? action : `${action}@${mapId}`, args)
+}
+
 enum Command {
   ADD_IMAGE = 'ADD_IMAGE',
   ADD_LAYER = 'ADD_LAYER',
@@ -701,6 +1273,25 @@ enum Command {
   SET_PITCH = 'SET_PITCH',
   SET_ZOOM = 'SET_ZOOM',
   SHOW = 'SHOW',
+  UPSERT_FEATURES = 'UPSERT_FEATURES',
+  REMOVE_FEATURES = 'REMOVE_FEATURES',
+  EXECUTE_BATCH = 'EXECUTE_BATCH',
+  GET_METRICS = 'GET_METRICS',
+  PROJECT_MANY = 'PROJECT_MANY',
+  UNPROJECT_MANY = 'UNPROJECT_MANY',
+  UNWATCH_PROJECTION = 'UNWATCH_PROJECTION',
+  UPSERT_HTML_RECTS = 'UPSERT_HTML_RECTS',
+  REMOVE_HTML_RECTS = 'REMOVE_HTML_RECTS',
+  ADD_IMAGES = 'ADD_IMAGES',
+  ADD_SPRITE_ATLAS = 'ADD_SPRITE_ATLAS',
+  SET_LAYER_PROPERTIES = 'SET_LAYER_PROPERTIES',
+  GET_CLUSTER_EXPANSION_ZOOM = 'GET_CLUSTER_EXPANSION_ZOOM',
+  GET_CLUSTER_LEAVES = 'GET_CLUSTER_LEAVES',
+  GET_CLUSTERS_IN_BOUNDS = 'GET_CLUSTERS_IN_BOUNDS',
+  QUERY_SOURCE_FEATURES = 'QUERY_SOURCE_FEATURES',
+  SET_INTERACTIVE_LAYERS = 'SET_INTERACTIVE_LAYERS',
+  SELECT_FEATURES = 'SELECT_FEATURES',
+  SET_SELECTION_STYLE = 'SET_SELECTION_STYLE',
   DESELECT = 'DESELECT',
   ZOOM_TO = 'ZOOM_TO'
 }
@@ -738,6 +1329,56 @@ function toOverlayElement(el: HTMLElement) {
   }
 }
 
+// Overlay touch boxes as known by the native side, by map id then DOM id: [left, top, width, height]
+const sentHTMLRects: { [mapId: string]: { [id: string]: number[] } } = {}
+
+function rememberHTMLRects(mapId: string, elements: ReturnType<typeof toOverlayElement>[]) {
+  const rects: { [id: string]: number[] } = {}
+  for (let i = 0; i < elements.length; i++) {
+    const { size } = elements[i]
+    rects[elements[i].id] = [size.left, size.top, size.width, size.height]
+  }
+  sentHTMLRects[mapId] = rects
+}
+
+/**
+ * Send only the overlay elements which appeared, moved or disappeared since the last update.
+ */
+function syncHTMLRects(
+  elements: ReturnType<typeof toOverlayElement>[],
+  errorCallback?: (e: string) => void,
+) {
+  const mapId = targetMapId ?? DEFAULT_MAP_ID
+  const previous = sentHTMLRects[mapId] || {}
+  rememberHTMLRects(mapId, elements)
+  const current = sentHTMLRects[mapId]
+
+  const ids = []
+  const rects = []
+  for (const id in current) {
+    const rect = current[id]
+    const old = previous[id]
+    if (
+      !old
+      || old[0] !== rect[0]
+      || old[1] !== rect[1]
+      || old[2] !== rect[2]
+      || old[3] !== rect[3]
+    ) {
+      ids.push(id)
+      rects.push(rect[0], rect[1], rect[2], rect[3])
+    }
+  }
+  const removedIds = Object.keys(previous).filter((id) => !current[id])
+
+  if (removedIds.length) {
+    exec(null, errorCallback, Command.REMOVE_HTML_RECTS, [removedIds])
+  }
+  if (ids.length) {
+    exec(null, errorCallback, Command.UPSERT_HTML_RECTS, [ids, rects])
+  }
+}
+
 function setRandomId() {
   return `pmb${Math.floor(Math.random() * Date.now())}`
 }
@@ -824,8 +1465,10 @@ export const show: Mapbox['show'] = function(
   successCallback,
   errorCallback,
 ): void {
+  const mapId = options.id ?? targetMapId
   const nativeOptions = {
     ...options,
+    id: mapId,
     HTMLs: getContainerChildrenOverlayElements(options.domContainer),
     rect: getDivRect(options.domContainer),
   }
@@ -835,7 +1478,8 @@ export const show: Mapbox['show'] = function(
     nativeOptions.HTMLs.push(...flatElements(options.additionalDomElements))
     delete nativeOptions.additionalDomElements
   }
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.SHOW, [nativeOptions])
+  rememberHTMLRects(mapId ?? DEFAULT_MAP_ID, nativeOptions.HTMLs)
+  exec(successCallback, errorCallback, Command.SHOW, [nativeOptions], mapId)
 }
 
 export const setDebug: Mapbox['setDebug'] = function(
@@ -844,7 +1488,7 @@ export const setDebug: Mapbox['setDebug'] = function(
   errorCallback,
 ): void {
   // Convert value to int
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_DEBUG, [
+  exec(successCallback, errorCallback, Command.SET_DEBUG, [
     Number(debug),
   ])
 }
@@ -854,7 +1498,7 @@ export const setClickable: Mapbox['setClickable'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_CLICKABLE, [
+  exec(successCallback, errorCallback, Command.SET_CLICKABLE, [
     clickable,
   ])
 }
@@ -863,14 +1507,15 @@ export const hide: Mapbox['hide'] = function(
   successCallback?: () => void,
   errorCallback?: (e: string) => void,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.HIDE, [])
+  exec(successCallback, errorCallback, Command.HIDE, [])
 }
 
 export const destroy: Mapbox['destroy'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.DESTROY, [])
+  delete sentHTMLRects[targetMapId ?? DEFAULT_MAP_ID]
+  exec(successCallback, errorCallback, Command.DESTROY, [])
 }
 
 export const setContainer: Mapbox['setContainer'] = function(
@@ -878,17 +1523,15 @@ export const setContainer: Mapbox['setContainer'] = function(
   successCallback,
   errorCallback,
 ): void {
-  const container = {
-    HTMLs: getContainerChildrenOverlayElements(params.domContainer),
-    rect: getDivRect(params.domContainer),
-  }
+  const HTMLs = getContainerChildrenOverlayElements(params.domContainer)
 
   if (params.additionalDomElements) {
-    container.HTMLs.push(...flatElements(params.additionalDomElements))
+    HTMLs.push(...flatElements(params.additionalDomElements))
   }
 
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_CONTAINER, [
-    container,
+  syncHTMLRects(HTMLs, errorCallback)
+  exec(successCallback, errorCallback, Command.SET_CONTAINER, [
+    { rect: getDivRect(params.domContainer) },
   ])
 }
 
@@ -897,7 +1540,7 @@ export const downloadRegion: Mapbox['downloadRegion'] = function(
   statusCallback,
   errorCallback,
 ): void {
-  cordova.exec(statusCallback, errorCallback, MAPBOX, Command.DOWNLOAD_REGION, [
+  exec(statusCallback, errorCallback, Command.DOWNLOAD_REGION, [
     options,
   ])
 }
@@ -913,10 +1556,9 @@ export const getOfflineRegionList: Mapbox['getOfflineRegionList'] = function(
   const errorCallback = styleUrl === null ? arguments[1] : arguments[2]
   const id = styleUrl === null ? arguments[2] || 0 : arguments[3] || 0
 
-  cordova.exec(
+  exec(
     successCallback,
     errorCallback,
-    MAPBOX,
     Command.GET_OFFLINE_REGION_LIST,
     [_styleUrl],
   )
@@ -932,10 +1574,9 @@ export const deleteOfflineRegion: Mapbox['deleteOfflineRegion'] = function(
   const successCallback = options === null ? arguments[0] : arguments[1]
   const errorCallback = options === null ? arguments[1] : arguments[2]
 
-  cordova.exec(
+  exec(
     successCallback,
     errorCallback,
-    MAPBOX,
     Command.DELETE_OFFLINE_REGION,
     [_options],
   )
@@ -950,7 +1591,7 @@ export const pauseDownload: Mapbox['pauseDownload'] = function(
   const successCallback = options === null ? arguments[0] : arguments[1]
   const errorCallback = options === null ? arguments[1] : arguments[2]
 
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.PAUSE_DOWNLOAD, [
+  exec(successCallback, errorCallback, Command.PAUSE_DOWNLOAD, [
     _options,
   ])
 }
@@ -965,7 +1606,7 @@ export const resumeDownload: Mapbox['resumeDownload'] = function(
   const successCallback = options === null ? arguments[0] : arguments[1]
   const errorCallback = options === null ? arguments[1] : arguments[2]
 
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.RESUME_DOWNLOAD, [
+  exec(successCallback, errorCallback, Command.RESUME_DOWNLOAD, [
     _options,
   ])
 }
@@ -974,15 +1615,18 @@ export const addMapClickCallback: Mapbox['addMapClickCallback'] = function(
   callback,
   errorCallback,
 ): void {
-  cordova.exec(callback, errorCallback, MAPBOX, Command.ADD_MAP_CLICK_CALLBACK, [
+  exec(callback, errorCallback, Command.ADD_MAP_CLICK_CALLBACK, [
   ])
 }
 
 export const deselect: Mapbox['deselect'] = function(
-  callback?: () => void,
-  errorCallback?: (_e: string) => void,
+  callback,
+  errorCallback,
+  ids,
 ): void {
-  cordova.exec(callback, errorCallback, MAPBOX, Command.DESELECT, [])
+  exec(callback, errorCallback, Command.DESELECT, [
+    ids,
+  ])
 }
 
 export const addImage: Mapbox['addImage'] = function(
@@ -991,7 +1635,7 @@ export const addImage: Mapbox['addImage'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.ADD_IMAGE, [
+  exec(successCallback, errorCallback, Command.ADD_IMAGE, [
     imageId,
     image,
   ])
@@ -1002,7 +1646,7 @@ export const removeImage: Mapbox['removeImage'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.REMOVE_IMAGE, [
+  exec(successCallback, errorCallback, Command.REMOVE_IMAGE, [
     imageId,
   ])
 }
@@ -1013,7 +1657,7 @@ export const addLayer: Mapbox['addLayer'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.ADD_LAYER, [
+  exec(successCallback, errorCallback, Command.ADD_LAYER, [
     layerObject,
     beforeId,
   ])
@@ -1025,10 +1669,9 @@ export const setLayoutProperty: Mapbox['setLayoutProperty'] = function(
   successCallback,
   errorCallback?,
 ): void {
-  cordova.exec(
+  exec(
     successCallback,
     errorCallback,
-    MAPBOX,
     Command.SET_LAYOUT_PROPERTY,
     [layerId, property]
   )
@@ -1039,7 +1682,7 @@ export const removeLayer: Mapbox['removeLayer'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.REMOVE_LAYER, [
+  exec(successCallback, errorCallback, Command.REMOVE_LAYER, [
     layerId,
   ])
 }
@@ -1050,7 +1693,7 @@ export const addSource: Mapbox['addSource'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.ADD_SOURCE, [
+  exec(successCallback, errorCallback, Command.ADD_SOURCE, [
     sourceId,
     source,
   ])
@@ -1061,7 +1704,7 @@ export const removeSource: Mapbox['removeSource'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.REMOVE_SOURCE, [
+  exec(successCallback, errorCallback, Command.REMOVE_SOURCE, [
     sourceId,
   ])
 }
@@ -1072,7 +1715,7 @@ export const setGeoJson: Mapbox['setGeoJson'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_GEO_JSON, [
+  exec(successCallback, errorCallback, Command.SET_GEO_JSON, [
     sourceId,
     geoJson,
   ])
@@ -1083,7 +1726,7 @@ export const flyTo: Mapbox['flyTo'] =  function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.FLY_TO, [
+  exec(successCallback, errorCallback, Command.FLY_TO, [
     options,
   ])
 }
@@ -1093,7 +1736,7 @@ export const setCenter: Mapbox['setCenter'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_CENTER, [
+  exec(successCallback, errorCallback, Command.SET_CENTER, [
     center,
   ])
 }
@@ -1102,7 +1745,7 @@ export const getCenter: Mapbox['getCenter'] = function(
   resultCallback,
   errorCallback,
 ): void {
-  cordova.exec(resultCallback, errorCallback, MAPBOX, Command.GET_CENTER, [])
+  exec(resultCallback, errorCallback, Command.GET_CENTER, [])
 }
 
 export const scrollMap: Mapbox['scrollMap'] = function(
@@ -1110,7 +1753,7 @@ export const scrollMap: Mapbox['scrollMap'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.SCROLL_MAP, [
+  exec(successCallback, errorCallback, Command.SCROLL_MAP, [
     delta,
   ])
 }
@@ -1120,7 +1763,7 @@ export const setPitch: Mapbox['setPitch'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_PITCH, [
+  exec(successCallback, errorCallback, Command.SET_PITCH, [
     pitch,
   ])
 }
@@ -1129,7 +1772,7 @@ export const getPitch: Mapbox['getPitch'] = function(
   resultCallback,
   errorCallback,
 ): void {
-  cordova.exec((value: string) => resultCallback(Number(value)), errorCallback, MAPBOX, Command.GET_PITCH, [])
+  exec((value: string) => resultCallback(Number(value)), errorCallback, Command.GET_PITCH, [])
 }
 
 export const setZoom: Mapbox['setZoom'] = function(
@@ -1137,14 +1780,14 @@ export const setZoom: Mapbox['setZoom'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_ZOOM, [zoom])
+  exec(successCallback, errorCallback, Command.SET_ZOOM, [zoom])
 }
 
 export const getZoom: Mapbox['getZoom'] = function(
   resultCallback,
   errorCallback,
 ): void {
-  cordova.exec((value: string) => resultCallback(Number(value)), errorCallback, MAPBOX, Command.GET_ZOOM, [])
+  exec((value: string) => resultCallback(Number(value)), errorCallback, Command.GET_ZOOM, [])
 }
 
 export const zoomTo: Mapbox['zoomTo'] = function(
@@ -1152,24 +1795,23 @@ export const zoomTo: Mapbox['zoomTo'] = function(
   successCallback,
   errorCallback,
 ): void {
-  cordova.exec(successCallback, errorCallback, MAPBOX, Command.ZOOM_TO, [zoom])
+  exec(successCallback, errorCallback, Command.ZOOM_TO, [zoom])
 }
 
 export const getBounds: Mapbox['getBounds'] = function(
   resultCallback,
   errorCallback,
 ): void {
-  cordova.exec(resultCallback, errorCallback, MAPBOX, Command.GET_BOUNDS, [])
+  exec(resultCallback, errorCallback, Command.GET_BOUNDS, [])
 }
 
 export const getCameraPosition: Mapbox['getCameraPosition'] = function(
   resultCallback,
   errorCallback,
 ): void {
-  cordova.exec(
+  exec(
     resultCallback,
     errorCallback,
-    MAPBOX,
     Command.GET_CAMERA_POSITION,
     [],
   )
@@ -1180,10 +1822,9 @@ export const convertCoordinates: Mapbox['convertCoordinates'] = function(
   resultCallback,
   errorCallback,
 ): void {
-  cordova.exec(
+  exec(
     resultCallback,
     errorCallback,
-    MAPBOX,
     Command.CONVERT_COORDINATES,
     [coords],
   )
@@ -1194,35 +1835,34 @@ export const convertPoint: Mapbox['convertPoint'] = function(
   resultCallback,
   errorCallback,
 ): void {
-  cordova.exec(resultCallback, errorCallback, MAPBOX, Command.CONVERT_POINT, [
+  exec(resultCallback, errorCallback, Command.CONVERT_POINT, [
     point,
   ])
 }
 
 export const addOnFlingListener: Mapbox['addOnFlingListener'] = function (listener, id = 0) {
-  cordova.exec(listener, null, MAPBOX, Command.ADD_ON_FLING_LISTENER, [])
+  exec(listener, null, Command.ADD_ON_FLING_LISTENER, [])
 }
 
 export const addOnMoveListener: Mapbox['addOnMoveListener'] = function (listener, id = 0) {
-  cordova.exec(listener, null, MAPBOX, Command.ADD_ON_MOVE_LISTENER, [])
+  exec(listener, null, Command.ADD_ON_MOVE_LISTENER, [])
 }
 
 export const addOnRotateListener: Mapbox['addOnRotateListener'] = function (listener, id = 0) {
-  cordova.exec(listener, null, MAPBOX, Command.ADD_ON_ROTATE_LISTENER, [])
+  exec(listener, null, Command.ADD_ON_ROTATE_LISTENER, [])
 }
 
 export const addOnScaleListener: Mapbox['addOnScaleListener'] = function (listener, id = 0) {
-  cordova.exec(listener, null, MAPBOX, Command.ADD_ON_SCALE_LISTENER, [])
+  exec(listener, null, Command.ADD_ON_SCALE_LISTENER, [])
 }
 
 /**
  * This event is triggered when the map is about to start loading a new map style.
  */
 export const addOnWillStartLoadingMapListener: Mapbox['addOnWillStartLoadingMapListener'] = function(listener, id = 0) {
-  cordova.exec(
+  exec(
     listener,
     null,
-    MAPBOX,
     Command.ADD_ON_WILL_START_LOADING_MAP_LISTENER,
     [],
   )
@@ -1232,10 +1872,9 @@ export const addOnWillStartLoadingMapListener: Mapbox['addOnWillStartLoadingMapL
  * This event is triggered when the map will start rendering the map.
  */
 export const addOnWillStartRenderingMapListener: Mapbox['addOnWillStartRenderingMapListener'] = function(listener, id = 0) {
-  cordova.exec(
+  exec(
     listener,
     null,
-    MAPBOX,
     Command.ADD_ON_WILL_START_RENDERING_MAP_LISTENER,
     [],
   )
@@ -1245,10 +1884,9 @@ export const addOnWillStartRenderingMapListener: Mapbox['addOnWillStartRendering
  * This event is triggered whenever the displayed map region is about to change without animation.
  */
 export const addOnCameraWillChangeListener: Mapbox['addOnCameraWillChangeListener'] = function(listener, id = 0) {
-  cordova.exec(
+  exec(
     listener,
     null,
-    MAPBOX,
     Command.ADD_ON_CAMERA_WILL_CHANGE_LISTENER,
     [],
   )
@@ -1257,13 +1895,12 @@ export const addOnCameraWillChangeListener: Mapbox['addOnCameraWillChangeListene
 /**
  * This event is triggered whenever the displayed map region finished changing without an animation.
  */
-export const addOnCameraDidChangeListener: Mapbox['addOnCameraDidChangeListener'] = function(listener, id = 0) {
-  cordova.exec(
+export const addOnCameraDidChangeListener: Mapbox['addOnCameraDidChangeListener'] = function(listener, id = 0, options = {}) {
+  exec(
     listener,
     null,
-    MAPBOX,
     Command.ADD_ON_CAMERA_DID_CHANGE_LISTENER,
-    [],
+    [options],
   )
 }
 
@@ -1271,10 +1908,9 @@ export const addOnCameraDidChangeListener: Mapbox['addOnCameraDidChangeListener'
  * Triggered when a style has finished loading.
  */
 export const addOnDidFinishLoadingStyleListener: Mapbox['addOnDidFinishLoadingStyleListener'] = function(listener, id = 0) {
-  cordova.exec(
+  exec(
     listener,
     null,
-    MAPBOX,
     Command.ADD_ON_DID_FINISH_LOADING_STYLE_LISTENER,
     [],
   )
@@ -1284,10 +1920,9 @@ export const addOnDidFinishLoadingStyleListener: Mapbox['addOnDidFinishLoadingSt
  * Triggered when a source changes.
  */
 export const addOnSourceChangedListener: Mapbox['addOnSourceChangedListener'] = function(listener, id = 0) {
-  cordova.exec(
+  exec(
     listener,
     null,
-    MAPBOX,
     Command.ADD_ON_SOURCE_CHANGED_LISTENER,
     [],
   )
@@ -1296,26 +1931,24 @@ export const addOnSourceChangedListener: Mapbox['addOnSourceChangedListener'] =
 /**
  * This event is triggered when the map will start rendering a frame.
  */
-export const addOnWillStartRenderingFrameListener: Mapbox['addOnWillStartRenderingFrameListener'] = function(listener, id = 0) {
-  cordova.exec(
+export const addOnWillStartRenderingFrameListener: Mapbox['addOnWillStartRenderingFrameListener'] = function(listener, id = 0, options = {}) {
+  exec(
     listener,
     null,
-    MAPBOX,
     Command.ADD_ON_WILL_START_RENDERING_FRAME_LISTENER,
-    [],
+    [options],
   )
 }
 
 /**
  * This event is triggered when the map finished rendering a frame.
  */
-export const addOnDidFinishRenderingFrameListener: Mapbox['addOnDidFinishRenderingFrameListener'] = function(listener, id = 0) {
-  cordova.exec(
+export const addOnDidFinishRenderingFrameListener: Mapbox['addOnDidFinishRenderingFrameListener'] = function(listener, id = 0, options = {}) {
+  exec(
     listener,
     null,
-    MAPBOX,
     Command.ADD_ON_DID_FINISH_RENDERING_FRAME_LISTENER,
-    [],
+    [options],
   )
 }
 
@@ -1323,10 +1956,9 @@ export const addOnDidFinishRenderingFrameListener: Mapbox['addOnDidFinishRenderi
  * This is triggered when the map has successfully loaded a new map style.
  */
 export const addOnDidFinishLoadingMapListener: Mapbox['addOnDidFinishLoadingMapListener'] = function(listener, id = 0) {
-  cordova.exec(
+  exec(
     listener,
     null,
-    MAPBOX,
     Command.ADD_ON_DID_FINISH_LOADING_MAP_LISTENER,
     [],
   )
@@ -1336,11 +1968,304 @@ export const addOnDidFinishLoadingMapListener: Mapbox['addOnDidFinishLoadingMapL
  * This event is triggered when the map is fully rendered.
  */
 export function addOnDidFinishRenderingMapListener(listener: (fully: boolean) => void, id = 0) {
-  cordova.exec(
+  exec(
     listener,
     null,
-    MAPBOX,
     Command.ADD_ON_DID_FINISH_RENDERING_MAP_LISTENER,
     [],
   )
-}
\ No newline at end of file
+}
+
+export const upsertFeatures: Mapbox['upsertFeatures'] = function(
+  sourceId,
+  features,
+  successCallback,
+  errorCallback,
+): void {
+  exec(successCallback, errorCallback, Command.UPSERT_FEATURES, [
+    sourceId,
+    features,
+  ])
+}
+
+export const removeFeatures: Mapbox['removeFeatures'] = function(
+  sourceId,
+  featureIds,
+  successCallback,
+  errorCallback,
+): void {
+  exec(successCallback, errorCallback, Command.REMOVE_FEATURES, [
+    sourceId,
+    featureIds,
+  ])
+}
+
+export const executeBatch: Mapbox['executeBatch'] = function(
+  commands,
+  successCallback,
+  errorCallback,
+): void {
+  // The commands address the map of the batch
+  const mapCommands = targetMapId === undefined
+    ? commands
+    : commands.map((command) => ({ ...command, action: `${command.action}@${targetMapId}` }))
+  exec(successCallback, errorCallback, Command.EXECUTE_BATCH, [
+    mapCommands,
+  ])
+}
+
+export const getMetrics: Mapbox['getMetrics'] = function(
+  resultCallback,
+  errorCallback,
+  reset = false,
+): void {
+  exec(resultCallback, errorCallback, Command.GET_METRICS, [reset])
+}
+
+export const projectMany: Mapbox['projectMany'] = function(
+  coordinates,
+  resultCallback,
+  errorCallback,
+  options = {},
+): void {
+  exec(resultCallback, errorCallback, Command.PROJECT_MANY, [
+    coordinates,
+    options,
+  ])
+}
+
+export const unprojectMany: Mapbox['unprojectMany'] = function(
+  points,
+  resultCallback,
+  errorCallback,
+  options = {},
+): void {
+  exec(resultCallback, errorCallback, Command.UNPROJECT_MANY, [
+    points,
+    options,
+  ])
+}
+
+export const unwatchProjection: Mapbox['unwatchProjection'] = function(
+  watchId,
+  successCallback,
+  errorCallback,
+): void {
+  exec(successCallback, errorCallback, Command.UNWATCH_PROJECTION, [
+    watchId,
+  ])
+}
+
+export const addImages: Mapbox['addImages'] = function(
+  images,
+  successCallback,
+  errorCallback,
+): void {
+  exec(successCallback, errorCallback, Command.ADD_IMAGES, [
+    images,
+  ])
+}
+
+export const addSpriteAtlas: Mapbox['addSpriteAtlas'] = function(
+  atlasId,
+  images,
+  successCallback,
+  errorCallback,
+): void {
+  exec(successCallback, errorCallback, Command.ADD_SPRITE_ATLAS, [
+    atlasId,
+    images,
+  ])
+}
+
+export const setLayerProperties: Mapbox['setLayerProperties'] = function(
+  layers,
+  successCallback,
+  errorCallback,
+): void {
+  exec(successCallback, errorCallback, Command.SET_LAYER_PROPERTIES, [
+    layers,
+  ])
+}
+
+export const getClusterLeaves: Mapbox['getClusterLeaves'] = function(
+  sourceId,
+  clusterId,
+  resultCallback,
+  errorCallback,
+  options = {},
+): void {
+  exec(resultCallback, errorCallback, Command.GET_CLUSTER_LEAVES, [
+    sourceId,
+    clusterId,
+    options.limit,
+    options.offset,
+  ])
+}
+
+export const getClusterExpansionZoom: Mapbox['getClusterExpansionZoom'] = function(
+  sourceId,
+  clusterId,
+  resultCallback,
+  errorCallback,
+): void {
+  exec(resultCallback, errorCallback, Command.GET_CLUSTER_EXPANSION_ZOOM, [
+    sourceId,
+    clusterId,
+  ])
+}
+
+export const getClustersInBounds: Mapbox['getClustersInBounds'] = function(
+  sourceId,
+  bounds,
+  zoom,
+  resultCallback,
+  errorCallback,
+): void {
+  exec(resultCallback, errorCallback, Command.GET_CLUSTERS_IN_BOUNDS, [
+    sourceId,
+    bounds,
+    zoom,
+  ])
+}
+
+export const querySourceFeatures: Mapbox['querySourceFeatures'] = function(
+  sourceId,
+  query,
+  resultCallback,
+  errorCallback,
+): void {
+  exec(resultCallback, errorCallback, Command.QUERY_SOURCE_FEATURES, [
+    sourceId,
+    query,
+  ])
+}
+
+export const setInteractiveLayers: Mapbox['setInteractiveLayers'] = function(
+  layerIds,
+  clickRadius,
+  successCallback,
+  errorCallback,
+): void {
+  exec(successCallback, errorCallback, Command.SET_INTERACTIVE_LAYERS, [
+    layerIds,
+    clickRadius,
+  ])
+}
+
+export const selectFeatures: Mapbox['selectFeatures'] = function(
+  ids,
+  resultCallback,
+  errorCallback,
+  options = {},
+): void {
+  exec(resultCallback, errorCallback, Command.SELECT_FEATURES, [
+    ids,
+    options.additive,
+  ])
+}
+
+export const setSelectionStyle: Mapbox['setSelectionStyle'] = function(
+  layerId,
+  style,
+  successCallback,
+  errorCallback,
+): void {
+  exec(successCallback, errorCallback, Command.SET_SELECTION_STYLE, [
+    layerId,
+    style,
+  ])
+}
+
+// Map instances by map id
+const maps: { [mapId: string]: Mapbox } = {}
+
+export const getMap: Mapbox['getMap'] = function(mapId) {
+  if (!maps[mapId]) {
+    const map = {} as Mapbox
+    Object.keys(api).forEach((name) => {
+      // Address the map during the call, the commands are sent synchronously
+      (map as any)[name] = function() {
+        const previousMapId = targetMapId
+        targetMapId = mapId
+        try {
+          return (api as any)[name].apply(null, arguments)
+        } finally {
+          targetMapId = previousMapId
+        }
+      }
+    })
+    maps[mapId] = map
+  }
+  return maps[mapId]
+}
+
+// The API of the default map, wrapped by the map instances
+const api: Mapbox = {
+  show,
+  setDebug,
+  setClickable,
+  hide,
+  destroy,
+  setContainer,
+  downloadRegion,
+  getOfflineRegionList,
+  deleteOfflineRegion,
+  pauseDownload,
+  resumeDownload,
+  addMapClickCallback,
+  deselect,
+  addImage,
+  removeImage,
+  addLayer,
+  setLayoutProperty,
+  removeLayer,
+  addSource,
+  removeSource,
+  setGeoJson,
+  flyTo,
+  setCenter,
+  getCenter,
+  scrollMap,
+  setPitch,
+  getPitch,
+  setZoom,
+  getZoom,
+  zoomTo,
+  getBounds,
+  getCameraPosition,
+  convertCoordinates,
+  convertPoint,
+  addOnFlingListener,
+  addOnMoveListener,
+  addOnRotateListener,
+  addOnScaleListener,
+  addOnWillStartLoadingMapListener,
+  addOnWillStartRenderingMapListener,
+  addOnCameraWillChangeListener,
+  addOnCameraDidChangeListener,
+  addOnDidFinishLoadingStyleListener,
+  addOnSourceChangedListener,
+  addOnWillStartRenderingFrameListener,
+  addOnDidFinishRenderingFrameListener,
+  addOnDidFinishLoadingMapListener,
+  addOnDidFinishRenderingMapListener,
+  upsertFeatures,
+  removeFeatures,
+  executeBatch,
+  getMetrics,
+  projectMany,
+  unprojectMany,
+  unwatchProjection,
+  addImages,
+  addSpriteAtlas,
+  setLayerProperties,
+  getClusterLeaves,
+  getClusterExpansionZoom,
+  getClustersInBounds,
+  querySourceFeatures,
+  setInteractiveLayers,
+  selectFeatures,
+  setSelectionStyle,
+  getMap,
+}
@@ -23,27 +23,133 @@ declare type PickOne<T> = {
     [P in keyof T]: Record<P, T[P]> & Partial<Record<Exclude<keyof T, P>, undefined>>;
 }[keyof T];
 export declare type LayoutProperties = {
-    'icon-image': string;
-    'icon-offset': [number, number];
+    'visibility': 'visible' | 'none';
+    'line-cap': string | Expression;
+    'line-join': string | Expression;
+    'line-miter-limit': number | Expression;
+    'line-round-limit': number | Expression;
+    'symbol-placement': string | Expression;
+    'symbol-spacing': number | Expression;
+    'symbol-avoid-edges': boolean | Expression;
+    'symbol-z-order': string | Expression;
+    'icon-allow-overlap': boolean | Expression;
+    'icon-ignore-placement': boolean | Expression;
+    'icon-optional': boolean | Expression;
+    'icon-rotation-alignment': string | Expression;
     'icon-size': number | Expression;
-    'icon-allow-overlap': boolean;
+    'icon-text-fit': string | Expression;
+    'icon-text-fit-padding': [number, number, number, number] | Expression;
+    'icon-image': string | Expression;
+    'icon-rotate': number | Expression;
+    'icon-padding': number | Expression;
+    'icon-keep-upright': boolean | Expression;
+    'icon-offset': [number, number] | Expression;
+    'icon-anchor': string | Expression;
+    'icon-pitch-alignment': string | Expression;
+    'text-pitch-alignment': string | Expression;
+    'text-rotation-alignment': string | Expression;
+    'text-field': string | Expression;
+    'text-font': string[] | Expression;
     'text-size': number | Expression;
-    'text-field': string;
-    'text-font': string[];
+    'text-max-width': number | Expression;
+    'text-line-height': number | Expression;
+    'text-letter-spacing': number | Expression;
+    'text-justify': string | Expression;
+    'text-radial-offset': number | Expression;
+    'text-variable-anchor': string[] | Expression;
+    'text-anchor': string | Expression;
+    'text-max-angle': number | Expression;
+    'text-rotate': number | Expression;
+    'text-padding': number | Expression;
+    'text-keep-upright': boolean | Expression;
+    'text-transform': string | Expression;
+    'text-offset': [number, number] | Expression;
+    'text-allow-overlap': boolean | Expression;
+    'text-ignore-placement': boolean | Expression;
+    'text-optional': boolean | Expression;
 };
 export declare type LayoutProperty = PickOne<LayoutProperties>;
 export declare type PaintProperties = {
+    'background-color': string | Expression;
+    'background-pattern': string | Expression;
+    'background-opacity': number | Expression;
+    'fill-antialias': boolean | Expression;
+    'fill-opacity': number | Expression;
+    'fill-color': string | Expression;
+    'fill-outline-color': string | Expression;
+    'fill-translate': [number, number] | Expression;
+    'fill-translate-anchor': string | Expression;
+    'fill-pattern': string | Expression;
+    'line-opacity': number | Expression;
+    'line-color': string | Expression;
+    'line-translate': [number, number] | Expression;
+    'line-translate-anchor': string | Expression;
+    'line-width': number | Expression;
+    'line-gap-width': number | Expression;
+    'line-offset': number | Expression;
+    'line-blur': number | Expression;
+    'line-dasharray': number[] | Expression;
+    'line-pattern': string | Expression;
+    'line-gradient': string | Expression;
+    'icon-opacity': number | Expression;
+    'icon-color': string | Expression;
+    'icon-halo-color': string | Expression;
+    'icon-halo-width': number | Expression;
+    'icon-halo-blur': number | Expression;
+    'icon-translate': [number, number] | Expression;
+    'icon-translate-anchor': string | Expression;
+    'text-opacity': number | Expression;
     'text-color': string | Expression;
-    'text-halo-blur': number | Expression;
     'text-halo-color': string | Expression;
     'text-halo-width': number | Expression;
+    'text-halo-blur': number | Expression;
+    'text-translate': [number, number] | Expression;
+    'text-translate-anchor': string | Expression;
+    'circle-radius': number | Expression;
+    'circle-color': string | Expression;
+    'circle-blur': number | Expression;
+    'circle-opacity': number | Expression;
+    'circle-translate': [number, number] | Expression;
+    'circle-translate-anchor': string | Expression;
+    'circle-pitch-scale': string | Expression;
+    'circle-pitch-alignment': string | Expression;
+    'circle-stroke-width': number | Expression;
+    'circle-stroke-color': string | Expression;
+    'circle-stroke-opacity': number | Expression;
+    'heatmap-radius': number | Expression;
+    'heatmap-weight': number | Expression;
+    'heatmap-intensity': number | Expression;
+    'heatmap-color': string | Expression;
+    'heatmap-opacity': number | Expression;
+    'fill-extrusion-opacity': number | Expression;
+    'fill-extrusion-color': string | Expression;
+    'fill-extrusion-translate': [number, number] | Expression;
+    'fill-extrusion-translate-anchor': string | Expression;
+    'fill-extrusion-pattern': string | Expression;
+    'fill-extrusion-height': number | Expression;
+    'fill-extrusion-base': number | Expression;
+    'fill-extrusion-vertical-gradient': boolean | Expression;
+    'raster-opacity': number | Expression;
+    'raster-hue-rotate': number | Expression;
+    'raster-brightness-min': number | Expression;
+    'raster-brightness-max': number | Expression;
+    'raster-saturation': number | Expression;
+    'raster-contrast': number | Expression;
+    'raster-resampling': string | Expression;
+    'raster-fade-duration': number | Expression;
+    'hillshade-illumination-direction': number | Expression;
+    'hillshade-illumination-anchor': string | Expression;
+    'hillshade-exaggeration': number | Expression;
+    'hillshade-shadow-color': string | Expression;
+    'hillshade-highlight-color': string | Expression;
+    'hillshade-accent-color': string | Expression;
 };
 export declare type MapEventListener = (payload: MapEventPayload) => void;
 export declare type Bounds = {
     sw: [number, number];
     ne: [number, number];
 };
-export declare type LayerType = 'symbol';
+export declare type LayerType = 'background' | 'fill' | 'line' | 'symbol' | 'circle' | 'heatmap' | 'fill-extrusion' | 'raster' | 'hillshade';
 export declare type Expression = Array<string | boolean | number | Expression>;
 export declare type DownloadState = {
     regionName: string;
@@ -57,7 +163,9 @@ export declare type DownloadState = {
 };
 export declare type Layer = {
     id: string;
-    source: string;
+    /** Not used by background layers */
+    source?: string;
+    /** Layer of a vector source */
     sourcelayer?: string;
     type?: LayerType;
     minzoom?: number;
@@ -86,6 +194,8 @@ export declare type Source<T extends GeoJSON.GeometryObject, P> = {
     cluster?: boolean;
     clusterMaxZoom?: number;
     clusterRadius?: number;
+    /** Keep an R-tree of the feature bounding boxes, for [[querySourceFeatures]] */
+    spatialIndex?: boolean;
 };
 export declare type LngLat = [number, number];
 export declare type Coords = {
@@ -106,15 +216,29 @@ export declare type ImageProperties = {
     height: number;
     width: number;
     path: string;
+    /** The image has no transparency: it is decoded with half the memory. */
+    opaque?: boolean;
 };
 export declare type MapOptions = {
+    /** Id of the map, to display several maps at once. The default map when omitted, see [[getMap]] */
+    id?: string;
     domContainer: HTMLElement;
     style: string;
     additionalDomElements?: HTMLElement[];
     cameraPosition?: any;
+    /**
+     * @deprecated use [[setSelectionStyle]]. Symbol layer rendering a copy of the feature selected by a tap,
+     * with its icons enlarged. The copy is written in [[selectedFeatureSourceId]]
+     */
     selectedFeatureLayerId?: string;
+    /** @deprecated use [[setSelectionStyle]]. GeoJSON source of [[selectedFeatureLayerId]] */
     selectedFeatureSourceId?: string;
+    /** Value of the type property of the features selected on tap. They must have an id */
     selectableFeaturePropType?: string;
+    /** Layers hit-tested on tap, for the selection and the click callbacks. All the rendered layers by default */
+    interactiveLayerIds?: string[];
+    /** Half size in dp of the box hit-tested around a tap, 0 by default for the tapped pixel only */
+    clickRadius?: number;
     hideAttribution?: boolean;
     hideLogo?: boolean;
     hideCompass?: boolean;
@@ -139,6 +263,144 @@ export declare type OfflineRegionParams = {
     styleUrl?: string;
     regionName?: string;
 };
+export declare type BatchCommand = {
+    action: string;
+    args?: any[];
+};
+export declare type BatchResult = {
+    ok: boolean;
+    result: any;
+};
+export declare type ListenerOptions = {
+    coalesce?: 'frame' | number;
+};
+export declare type CommandMetrics = {
+    count: number;
+    meanMs: number;
+    maxMs: number;
+};
+export declare type EventMetrics = {
+    action: string;
+    coalesce: 'frame' | number | null;
+    events: number;
+    delivered: number;
+    dropped: number;
+};
+export declare type RuntimeMetrics = {
+    gcCount: number;
+    gcTimeMs: number;
+    heapUsedBytes: number;
+};
+export declare type ImageCacheMetrics = {
+    hits: number;
+    misses: number;
+    evictions: number;
+    bytes: number;
+    maxBytes: number;
+};
+export declare type SvgCacheMetrics = {
+    hits: number;
+    misses: number;
+    evictions: number;
+};
+export declare type ExpressionCacheMetrics = {
+    hits: number;
+    misses: number;
+    evictions: number;
+    size: number;
+    /** hits / (hits + misses), 0 before the first lookup */
+    hitRate: number;
+};
+export declare type SpatialIndexMetrics = {
+    /** Number of sources with a spatial index */
+    sources: number;
+    /** Number of indexed features */
+    items: number;
+    /** Size of the trees, the features are shared with the source data */
+    bytes: number;
+};
+export declare type MapViewPoolMetrics = {
+    /** Number of destroyed maps kept to be shown again */
+    size: number;
+    maxSize: number;
+    /** Number of maps shown with a recycled map view */
+    hits: number;
+    /** Number of maps shown with a new map view */
+    misses: number;
+};
+export declare type Metrics = {
+    commands: {
+        [action: string]: CommandMetrics;
+    };
+    /** Ids of the displayed maps */
+    maps: string[];
+    /** Event subscriptions of all the maps */
+    events: EventMetrics[];
+    images: ImageCacheMetrics;
+    svgCache: SvgCacheMetrics;
+    expressions: ExpressionCacheMetrics;
+    /** Summed over the maps, null if no map is created */
+    spatialIndexes: SpatialIndexMetrics | null;
+    mapViewPool: MapViewPoolMetrics;
+    runtime: RuntimeMetrics;
+};
+export declare type ProjectionOptions = ListenerOptions & {
+    watchId?: number;
+};
+export declare type SpriteAtlasResult = {
+    /** Number of atlas pages written, -1 when read back from the cache */
+    pages: number;
+    images: number;
+    fromCache: boolean;
+};
+export declare type LayerProperties = Partial<LayoutProperties & PaintProperties>;
+export declare type SetLayerPropertiesResult = {
+    /** Ids of the layers not found in the style, their properties are ignored */
+    missingLayerIds: string[];
+};
+export declare type ClusterLeavesOptions = {
+    /** Maximum number of points, 10 by default */
+    limit?: number;
+    /** Number of points to skip, for paging */
+    offset?: number;
+};
+export declare type SourceFeaturesQuery = {
+    /** Features whose bounding box intersects the bounds, in the order of the source data */
+    bounds?: Bounds;
+    /** With radius, features whose bounding box is at most radius meters away, the closest first */
+    center?: LngLat;
+    radius?: number;
+    /** Maximum number of features, 100 by default */
+    limit?: number;
+    /** Number of features to skip, for paging */
+    offset?: number;
+    /** Only return the feature ids */
+    idsOnly?: boolean;
+};
+export declare type SourceFeaturesQueryResult = {
+    /** Number of matching features, whatever the limit and offset */
+    total: number;
+    /** Set unless idsOnly */
+    features?: GeoJSON.FeatureCollection;
+    /** Set with idsOnly, null for the features without id */
+    ids?: (string | null)[];
+};
+export declare type SelectionStyle = {
+    /**
+     * Values of a data-driven paint property for the selected and the other features, such as
+     * circle-radius or icon-opacity. Layout properties are rejected: they would lay out the layer again.
+     * A zoom interpolate or step must be the top-level expression of a value. When both values are
+     * zoom curves, they must have the same interpolation and stops.
+     */
+    [property: string]: {
+        selected: any;
+        unselected: any;
+    };
+};
+export declare type SelectFeaturesOptions = {
+    /** Add the features to the selection instead of replacing it */
+    additive?: boolean;
+};
 export interface Mapbox {
     /**
      * Display the map. Create it if needed.
@@ -178,6 +440,8 @@ export interface Mapbox {
      * Set the HTML container of the Map. It will resize
      * the map to fit in the container and update the clickable
      * HTML elements overlaying the map.
+     * Only the elements which appeared, moved or disappeared since the
+     * last update are sent.
      * @param params
      * @param successCallback called on success
      * @param errorCallback called in case of error
@@ -227,11 +491,12 @@ export interface Mapbox {
      */
     addMapClickCallback(callback?: (featureCollection: GeoJSON.FeatureCollection<GeoJSON.GeometryObject>) => void, errorCallback?: (e: string) => void, id?: number): void;
     /**
-     * Deselect the current feature of the map.
-     * @param successCallback called on success
+     * Deselect features of the map.
+     * @param successCallback called on success with the ids still selected
      * @param errorCallback called in case of error
+     * @param ids the features to deselect, all of them by default
      */
-    deselect(callback?: () => void, errorCallback?: (e: string) => void): void;
+    deselect(callback?: (selectedIds: string[]) => void, errorCallback?: (e: string) => void, ids?: string[]): void;
     /**
      * Add an image to the map style. For instance, a marker image.
      * You must add the image before referencing it in a resource.
@@ -289,12 +554,17 @@ export interface Mapbox {
     removeSource(sourceId: string, successCallback?: () => void, errorCallback?: (e: string) => void): void;
     /**
      * Set the data of a source. Use this when you want to animate data.
+     * The data is parsed off the UI thread. If a newer update of the same source
+     * arrives before this one is applied, this one is dropped and the error callback
+     * receives `{error: 'CANCELLED'}`.
      * @param sourceId
      * @param geoJson
      * @param successCallback called on success
      * @param errorCallback called in case of error
      */
-    setGeoJson(sourceId: string, geoJson: SourceData<any, any>, successCallback?: () => void, errorCallback?: (e: string) => void): void;
+    setGeoJson(sourceId: string, geoJson: SourceData<any, any>, successCallback?: () => void, errorCallback?: (e: string | {
+        error: 'CANCELLED';
+    }) => void): void;
     /**
      * Smoothly jump to a position on the map.
      * @param cameraPosition
@@ -439,8 +709,10 @@ export interface Mapbox {
      * This event is triggered whenever the displayed map region finished changing without an animation.
      * @param listener
      * @param id
+     * @param options set coalesce to 'frame' or to a minimal interval in ms to receive at most
+     * one event per vsync or per interval. Only the latest camera position is sent.
      */
-    addOnCameraDidChangeListener(listener: () => void, id?: number): void;
+    addOnCameraDidChangeListener(listener: (cameraPosition: CameraPosition) => void, id?: number, options?: ListenerOptions): void;
     /**
      * Triggered when a style has finished loading.
      * @param listener
@@ -457,14 +729,18 @@ export interface Mapbox {
      * This event is triggered when the map will start rendering a frame.
      * @param listener
      * @param id
+     * @param options set coalesce to 'frame' or to a minimal interval in ms to receive at most
+     * one event per vsync or per interval. Only the latest camera position is sent.
      */
-    addOnWillStartRenderingFrameListener(listener: () => void, id?: number): void;
+    addOnWillStartRenderingFrameListener(listener: (cameraPosition: CameraPosition) => void, id?: number, options?: ListenerOptions): void;
     /**
      * This event is triggered when the map finished rendering a frame.
      * @param listener
      * @param id
+     * @param options set coalesce to 'frame' or to a minimal interval in ms to receive at most
+     * one event per vsync or per interval. Only the latest camera position is sent.
      */
-    addOnDidFinishRenderingFrameListener(listener: () => void, id?: number): void;
+    addOnDidFinishRenderingFrameListener(listener: (cameraPosition: CameraPosition) => void, id?: number, options?: ListenerOptions): void;
     /**
      * This is triggered when the map has successfully loaded a new map style.
      * @param listener
@@ -477,6 +753,196 @@ export interface Mapbox {
      * @param id
      */
     addOnDidFinishRenderingMapListener(listener: (fullyRendered: boolean) => void, id?: number): void;
+    /**
+     * Insert or replace features of a source added with [[addSource]], by feature id.
+     * Only the changed features cross the bridge. The native side keeps the
+     * source data and uploads it once per frame, whatever the number of calls.
+     * @param sourceId
+     * @param features the features to insert or replace. Features without id are appended.
+     * @param successCallback called on success
+     * @param errorCallback called in case of error
+     */
+    upsertFeatures(sourceId: string, features: GeoJSON.Feature<GeoJSON.GeometryObject>[], successCallback?: () => void, errorCallback?: (e: string) => void): void;
+    /**
+     * Remove features of a source added with [[addSource]], by feature id.
+     * @param sourceId
+     * @param featureIds
+     * @param successCallback called on success
+     * @param errorCallback called in case of error
+     */
+    removeFeatures(sourceId: string, featureIds: Array<string | number>, successCallback?: () => void, errorCallback?: (e: string) => void): void;
+    /**
+     * Send several commands in a single bridge call.
+     * The commands run in order in the same UI thread task, so a style update
+     * made of several commands is never rendered half applied.
+     * A command answering later, like [[addSource]], [[setGeoJson]] or [[addImage]], holds back
+     * the next ones until it answered: they run in a later UI thread task, after its result is applied.
+     * The listener commands (ADD_ON_*, ADD_MAP_CLICK_CALLBACK), SHOW, DOWNLOAD_REGION
+     * and nested EXECUTE_BATCH can not be batched.
+     * @param commands list of {action, args}, action is a command name such as "SET_LAYOUT_PROPERTY", args are the native arguments of that command
+     * @param successCallback called once all the commands answered, with one {ok, result} per command, in order
+     * @param errorCallback called if the batch itself is malformed, or with {error: 'TIMEOUT', index} if a command did not answer within 30s
+     */
+    executeBatch(commands: BatchCommand[], successCallback?: (results: BatchResult[]) => void, errorCallback?: (e: string) => void): void;
+    /**
+     * Read the native performance counters.
+     * commands gives, for each command called at least once, the time between
+     * its reception by the plugin and its answer, including the work handed over to another thread
+     * such as GeoJSON parsing or image decoding. For the listener commands, it ends when the listener is registered.
+     * events gives the delivery counters of each camera and frame listener.
+     * images gives the counters of the decoded image cache used by [[addImage]].
+     * svgCache gives the counters of the rasterized SVG cache kept on disk across launches.
+     * expressions gives the counters of the compiled style expression cache.
+     * spatialIndexes gives the size of the R-trees of the sources added with spatialIndex: true.
+     * runtime gives the garbage collections since the start of the app (-1 before Android 6)
+     * and the used heap: read it before and after a scripted pan to compare the GC pressure.
+     * @param resultCallback called with the metrics
+     * @param errorCallback called in case of error
+     * @param reset clear the counters once read
+     */
+    getMetrics(resultCallback?: (metrics: Metrics) => void, errorCallback?: (e: string) => void, reset?: boolean): void;
+    /**
+     * Convert many [[Coords]] to screen points in a single call.
+     * All the points are converted against the same camera.
+     * With a watchId, the points are converted again after each camera change and the
+     * result callback is called each time, until [[unwatchProjection]].
+     * The updates are sent at most once per frame unless coalesce says otherwise.
+     * @param coordinates flat array of [lng, lat, lng, lat...]
+     * @param resultCallback takes the flat array of [x, y, x, y...] as argument
+     * @param errorCallback called in case of error
+     * @param options
+     */
+    projectMany(coordinates: number[], resultCallback?: (points: number[]) => void, errorCallback?: (e: string) => void, options?: ProjectionOptions): void;
+    /**
+     * Convert many [[ScreenCoords]] to coordinates in a single call.
+     * Works like [[projectMany]].
+     * @param points flat array of [x, y, x, y...]
+     * @param resultCallback takes the flat array of [lng, lat, lng, lat...] as argument
+     * @param errorCallback called in case of error
+     * @param options
+     */
+    unprojectMany(points: number[], resultCallback?: (coordinates: number[]) => void, errorCallback?: (e: string) => void, options?: ProjectionOptions): void;
+    /**
+     * Stop the updates of a point set registered with a watchId.
+     * @param watchId
+     * @param successCallback
+     * @param errorCallback called if no point set is watched with this id
+     */
+    unwatchProjection(watchId: number, successCallback?: () => void, errorCallback?: (e: string) => void): void;
+    /**
+     * Add a set of images to the map style, like a whole icon set.
+     * The images are decoded in parallel and added in a single pass.
+     * If some images can not be decoded, the others are still added and the error
+     * callback receives {error: 'IMAGES_NOT_DECODED', ids}.
+     * @param images image properties by image id
+     * @param successCallback called on success
+     * @param errorCallback called in case of error
+     */
+    addImages(images: {
+        [imageId: string]: ImageProperties;
+    }, successCallback?: () => void, errorCallback?: (e: string | {
+        error: string;
+        ids: string[];
+    }) => void): void;
+    /**
+     * Add a set of images to the map style through a sprite atlas kept on the device.
+     * The first call decodes the images, packs them into atlas pages and saves them.
+     * Next calls with the same atlas id and the same images, even in a later session,
+     * read the saved pages instead of decoding each image again.
+     * The atlas is rebuilt when an image, its size or its file changes.
+     * @param atlasId name of the saved atlas
+     * @param images image properties by image id
+     * @param successCallback called with the [[SpriteAtlasResult]]
+     * @param errorCallback called in case of error
+     */
+    addSpriteAtlas(atlasId: string, images: {
+        [imageId: string]: ImageProperties;
+    }, successCallback?: (result: SpriteAtlasResult) => void, errorCallback?: (e: string) => void): void;
+    /**
+     * Set the layout and paint properties of many layers at once, like for a theme switch.
+     * Each layer is looked up once and gets all its properties in a single update.
+     * @param layers properties by layer id
+     * @param successCallback called with the [[SetLayerPropertiesResult]]
+     * @param errorCallback called in case of error
+     */
+    setLayerProperties(layers: {
+        [layerId: string]: LayerProperties;
+    }, successCallback?: (result: SetLayerPropertiesResult) => void, errorCallback?: (e: string) => void): void;
+    /**
+     * Get the points of a cluster of a clustered GeoJSON source.
+     * The clusters are indexed natively, the query does not depend on what is rendered.
+     * The error callback receives {error: 'UNKNOWN_CLUSTER_ID'} if the cluster does not exist.
+     * @param sourceId a source added with cluster: true
+     * @param clusterId the cluster_id property of a cluster feature
+     * @param resultCallback takes the FeatureCollection of the points as argument
+     * @param errorCallback called in case of error
+     * @param options paging of the points
+     */
+    getClusterLeaves(sourceId: string, clusterId: number, resultCallback?: (leaves: GeoJSON.FeatureCollection<GeoJSON.Point>) => void, errorCallback?: (e: string) => void, options?: ClusterLeavesOptions): void;
+    /**
+     * Get the zoom at which a cluster splits into several clusters or points.
+     * The error callback receives {error: 'UNKNOWN_CLUSTER_ID'} if the cluster does not exist.
+     * @param sourceId a source added with cluster: true
+     * @param clusterId the cluster_id property of a cluster feature
+     * @param resultCallback takes the zoom as argument
+     * @param errorCallback called in case of error
+     */
+    getClusterExpansionZoom(sourceId: string, clusterId: number, resultCallback?: (zoom: number) => void, errorCallback?: (e: string) => void): void;
+    /**
+     * Get the clusters and the unclustered points of a clustered GeoJSON source in some bounds.
+     * Cluster features have the cluster, cluster_id, point_count and point_count_abbreviated properties.
+     * @param sourceId a source added with cluster: true
+     * @param bounds area to query, it can cross the antimeridian
+     * @param zoom the zoom level of the clusters
+     * @param resultCallback takes the FeatureCollection of the clusters and points as argument
+     * @param errorCallback called in case of error
+     */
+    getClustersInBounds(sourceId: string, bounds: Bounds, zoom: number, resultCallback?: (clusters: GeoJSON.FeatureCollection<GeoJSON.Point>) => void, errorCallback?: (e: string) => void): void;
+    /**
+     * Search the features of a GeoJSON source in some bounds or around a point, without the
+     * data going through the bridge. The R-tree is rebuilt off the UI thread after each update
+     * of the source, the query waits for the latest build.
+     * @param sourceId a source added with spatialIndex: true
+     * @param query bounds, or center and radius, and paging
+     * @param resultCallback takes the page of features or ids and the total count as argument
+     * @param errorCallback called in case of error
+     */
+    querySourceFeatures(sourceId: string, query: SourceFeaturesQuery, resultCallback?: (result: SourceFeaturesQueryResult) => void, errorCallback?: (e: string) => void): void;
+    /**
+     * Change the layers hit-tested on tap and the size of the hit box.
+     * A tap runs a single query, shared by the selection and the click callbacks.
+     * @param layerIds the interactive layers, null for all the rendered layers
+     * @param clickRadius half size in dp of the box around the tap, 0 for the tapped pixel only
+     * @param successCallback called on success
+     * @param errorCallback called in case of error
+     */
+    setInteractiveLayers(layerIds: string[] | null, clickRadius?: number, successCallback?: () => void, errorCallback?: (e: string) => void): void;
+    /**
+     * Select features by id. The sources are not modified: the layers with a selection style
+     * switch the values of their properties for the selected features.
+     * @param ids the feature ids
+     * @param resultCallback takes the ids of all the selected features as argument
+     * @param errorCallback called in case of error
+     * @param options replace or extend the selection
+     */
+    selectFeatures(ids: string[], resultCallback?: (selectedIds: string[]) => void, errorCallback?: (e: string) => void, options?: SelectFeaturesOptions): void;
+    /**
+     * Set how a layer highlights the selected features, for instance a bigger circle-radius.
+     * The properties are set to expressions matching the feature ids against the selection,
+     * which are updated on each selection change.
+     * @param layerId the layer, it can be added later
+     * @param style the values of each property, null to stop highlighting: the unselected values are kept
+     * @param successCallback called on success
+     * @param errorCallback called in case of error
+     */
+    setSelectionStyle(layerId: string, style: SelectionStyle | null, successCallback?: () => void, errorCallback?: (e: string) => void): void;
+    /**
+     * The API of another map, to display several maps at once. For instance a small overview map next to the main map.
+     * Its calls address this map only, it is shown, resized and destroyed on its own.
+     * The functions of this module address the default map.
+     * @param mapId id of the map, [[MapOptions.id]] of its [[show]] call is optional
+     */
+    getMap(mapId: string): Mapbox;
 }
 export declare const show: Mapbox['show'];
 export declare const setDebug: Mapbox['setDebug'];
@@ -556,4 +1022,22 @@ export declare const addOnDidFinishLoadingMapListener: Mapbox['addOnDidFinishLoa
  * This event is triggered when the map is fully rendered.
  */
 export declare function addOnDidFinishRenderingMapListener(listener: (fully: boolean) => void, id?: number): void;
+export declare const upsertFeatures: Mapbox['upsertFeatures'];
+export declare const removeFeatures: Mapbox['removeFeatures'];
+export declare const executeBatch: Mapbox['executeBatch'];
+export declare const getMetrics: Mapbox['getMetrics'];
+export declare const projectMany: Mapbox['projectMany'];
+export declare const unprojectMany: Mapbox['unprojectMany'];
+export declare const unwatchProjection: Mapbox['unwatchProjection'];
+export declare const addImages: Mapbox['addImages'];
+export declare const addSpriteAtlas: Mapbox['addSpriteAtlas'];
+export declare const setLayerProperties: Mapbox['setLayerProperties'];
+export declare const getClusterLeaves: Mapbox['getClusterLeaves'];
+export declare const getClusterExpansionZoom: Mapbox['getClusterExpansionZoom'];
+export declare const getClustersInBounds: Mapbox['getClustersInBounds'];
+export declare const querySourceFeatures: Mapbox['querySourceFeatures'];
+export declare const setInteractiveLayers: Mapbox['setInteractiveLayers'];
+export declare const selectFeatures: Mapbox['selectFeatures'];
+export declare const setSelectionStyle: Mapbox['setSelectionStyle'];
+export declare const getMap: Mapbox['getMap'];
 export {};
@@ -16,7 +16,7 @@ var __assign = (this && this.__assign) || function () {
     return __assign.apply(this, arguments);
 };
 exports.__esModule = true;
-exports.addOnDidFinishRenderingMapListener = exports.addOnDidFinishLoadingMapListener = exports.addOnDidFinishRenderingFrameListener = exports.addOnWillStartRenderingFrameListener = exports.addOnSourceChangedListener = exports.addOnDidFinishLoadingStyleListener = exports.addOnCameraDidChangeListener = exports.addOnCameraWillChangeListener = exports.addOnWillStartRenderingMapListener = exports.addOnWillStartLoadingMapListener = exports.addOnScaleListener = exports.addOnRotateListener = exports.addOnMoveListener = exports.addOnFlingListener = exports.convertPoint = exports.convertCoordinates = exports.getCameraPosition = exports.getBounds = exports.zoomTo = exports.getZoom = exports.setZoom = exports.getPitch = exports.setPitch = exports.scrollMap = exports.getCenter = exports.setCenter = exports.flyTo = exports.setGeoJson = exports.removeSource = exports.addSource = exports.removeLayer = exports.setLayoutProperty = exports.addLayer = exports.removeImage = exports.addImage = exports.deselect = exports.addMapClickCallback = exports.resumeDownload = exports.pauseDownload = exports.deleteOfflineRegion = exports.getOfflineRegionList = exports.downloadRegion = exports.setContainer = exports.destroy = exports.hide = exports.setClickable = exports.setDebug = exports.show = exports.MapEventType = void 0;
+exports.getMap = exports.setSelectionStyle = exports.selectFeatures = exports.setInteractiveLayers = exports.querySourceFeatures = exports.getClustersInBounds = exports.getClusterExpansionZoom = exports.getClusterLeaves = exports.setLayerProperties = exports.addSpriteAtlas = exports.addImages = exports.unwatchProjection = exports.unprojectMany = exports.projectMany = exports.getMetrics = exports.executeBatch = exports.removeFeatures = exports.upsertFeatures = exports.addOnDidFinishRenderingMapListener = exports.addOnDidFinishLoadingMapListener = exports.addOnDidFinishRenderingFrameListener = exports.addOnWillStartRenderingFrameListener = exports.addOnSourceChangedListener = exports.addOnDidFinishLoadingStyleListener = exports.addOnCameraDidChangeListener = exports.addOnCameraWillChangeListener = exports.addOnWillStartRenderingMapListener = exports.addOnWillStartLoadingMapListener = exports.addOnScaleListener = exports.addOnRotateListener = exports.addOnMoveListener = exports.addOnFlingListener = exports.convertPoint = exports.convertCoordinates = exports.getCameraPosition = exports.getBounds = exports.zoomTo = exports.getZoom = exports.setZoom = exports.getPitch = exports.setPitch = exports.scrollMap = exports.getCenter = exports.setCenter = exports.flyTo = exports.setGeoJson = exports.removeSource = exports.addSource = exports.removeLayer = exports.setLayoutProperty = exports.addLayer = exports.removeImage = exports.addImage = exports.deselect = exports.addMapClickCallback = exports.resumeDownload = exports.pauseDownload = exports.deleteOfflineRegion = exports.getOfflineRegionList = exports.downloadRegion = exports.setContainer = exports.destroy = exports.hide = exports.setClickable = exports.setDebug = exports.show = exports.MapEventType = void 0;
 var MapEventType;
 (function (MapEventType) {
     MapEventType["OnMoveStart"] = "OnMoveStart";
@@ -32,6 +32,16 @@ var MapEventType;
 })(MapEventType = exports.MapEventType || (exports.MapEventType = {}));
 var cordova = window.cordova;
 var MAPBOX = 'Mapbox';
+var DEFAULT_MAP_ID = 'default';
+// Id of the map addressed by the calls of a map instance, undefined for the default map
+var targetMapId;
+/**
+ * Send a command to the addressed map, as ACTION@mapId for the maps other than the default one.
+ */
+function exec(successCallback, errorCallback, action, args, mapId) {
+    if (mapId === void 0) { mapId = targetMapId; }
+    cordova.exec(successCallback, errorCallback, MAPBOX, mapId === undefined ? action : action + "@" + mapId, args);
+}
 var Command;
 (function (Command) {
     Command["ADD_IMAGE"] = "ADD_IMAGE";
@@ -81,6 +91,25 @@ var Command;
     Command["SET_PITCH"] = "SET_PITCH";
     Command["SET_ZOOM"] = "SET_ZOOM";
     Command["SHOW"] = "SHOW";
+    Command["UPSERT_FEATURES"] = "UPSERT_FEATURES";
+    Command["REMOVE_FEATURES"] = "REMOVE_FEATURES";
+    Command["EXECUTE_BATCH"] = "EXECUTE_BATCH";
+    Command["GET_METRICS"] = "GET_METRICS";
+    Command["PROJECT_MANY"] = "PROJECT_MANY";
+    Command["UNPROJECT_MANY"] = "UNPROJECT_MANY";
+    Command["UNWATCH_PROJECTION"] = "UNWATCH_PROJECTION";
+    Command["UPSERT_HTML_RECTS"] = "UPSERT_HTML_RECTS";
+    Command["REMOVE_HTML_RECTS"] = "REMOVE_HTML_RECTS";
+    Command["ADD_IMAGES"] = "ADD_IMAGES";
+    Command["ADD_SPRITE_ATLAS"] = "ADD_SPRITE_ATLAS";
+    Command["SET_LAYER_PROPERTIES"] = "SET_LAYER_PROPERTIES";
+    Command["GET_CLUSTER_EXPANSION_ZOOM"] = "GET_CLUSTER_EXPANSION_ZOOM";
+    Command["GET_CLUSTER_LEAVES"] = "GET_CLUSTER_LEAVES";
+    Command["GET_CLUSTERS_IN_BOUNDS"] = "GET_CLUSTERS_IN_BOUNDS";
+    Command["QUERY_SOURCE_FEATURES"] = "QUERY_SOURCE_FEATURES";
+    Command["SET_INTERACTIVE_LAYERS"] = "SET_INTERACTIVE_LAYERS";
+    Command["SELECT_FEATURES"] = "SELECT_FEATURES";
+    Command["SET_SELECTION_STYLE"] = "SET_SELECTION_STYLE";
     Command["DESELECT"] = "DESELECT";
     Command["ZOOM_TO"] = "ZOOM_TO";
 })(Command || (Command = {}));
@@ -111,6 +140,46 @@ function toOverlayElement(el) {
         size: getDivRect(el)
     };
 }
+// Overlay touch boxes as known by the native side, by map id then DOM id: [left, top, width, height]
+var sentHTMLRects = {};
+function rememberHTMLRects(mapId, elements) {
+    var rects = {};
+    for (var i = 0; i < elements.length; i++) {
+        var size = elements[i].size;
+        rects[elements[i].id] = [size.left, size.top, size.width, size.height];
+    }
+    sentHTMLRects[mapId] = rects;
+}
+/**
+ * Send only the overlay elements which appeared, moved or disappeared since the last update.
+ */
+function syncHTMLRects(elements, errorCallback) {
+    var mapId = targetMapId !== null && targetMapId !== void 0 ? targetMapId : DEFAULT_MAP_ID;
+    var previous = sentHTMLRects[mapId] || {};
+    rememberHTMLRects(mapId, elements);
+    var current = sentHTMLRects[mapId];
+    var ids = [];
+    var rects = [];
+    for (var id in current) {
+        var rect = current[id];
+        var old = previous[id];
+        if (!old
+            || old[0] !== rect[0]
+            || old[1] !== rect[1]
+            || old[2] !== rect[2]
+            || old[3] !== rect[3]) {
+            ids.push(id);
+            rects.push(rect[0], rect[1], rect[2], rect[3]);
+        }
+    }
+    var removedIds = Object.keys(previous).filter(function (id) { return !current[id]; });
+    if (removedIds.length) {
+        exec(null, errorCallback, Command.REMOVE_HTML_RECTS, [removedIds]);
+    }
+    if (ids.length) {
+        exec(null, errorCallback, Command.UPSERT_HTML_RECTS, [ids, rects]);
+    }
+}
 function setRandomId() {
     return "pmb" + Math.floor(Math.random() * Date.now());
 }
@@ -178,53 +247,53 @@ function getPageRect() {
     };
 }
 var show = function (options, successCallback, errorCallback) {
-    var _a;
-    var nativeOptions = __assign(__assign({}, options), { HTMLs: getContainerChildrenOverlayElements(options.domContainer), rect: getDivRect(options.domContainer) });
+    var _a, _b;
+    var mapId = (_a = options.id) !== null && _a !== void 0 ? _a : targetMapId;
+    var nativeOptions = __assign(__assign({}, options), { id: mapId, HTMLs: getContainerChildrenOverlayElements(options.domContainer), rect: getDivRect(options.domContainer) });
     delete nativeOptions.domContainer; // Prevent circular reference error
     if (nativeOptions.additionalDomElements) {
-        (_a = nativeOptions.HTMLs).push.apply(_a, flatElements(options.additionalDomElements));
+        (_b = nativeOptions.HTMLs).push.apply(_b, flatElements(options.additionalDomElements));
         delete nativeOptions.additionalDomElements;
     }
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.SHOW, [nativeOptions]);
+    rememberHTMLRects(mapId !== null && mapId !== void 0 ? mapId : DEFAULT_MAP_ID, nativeOptions.HTMLs);
+    exec(successCallback, errorCallback, Command.SHOW, [nativeOptions], mapId);
 };
 exports.show = show;
 var setDebug = function (debug, successCallback, errorCallback) {
     // Convert value to int
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_DEBUG, [
+    exec(successCallback, errorCallback, Command.SET_DEBUG, [
         Number(debug),
     ]);
 };
 exports.setDebug = setDebug;
 var setClickable = function (clickable, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_CLICKABLE, [
+    exec(successCallback, errorCallback, Command.SET_CLICKABLE, [
         clickable,
     ]);
 };
 exports.setClickable = setClickable;
 var hide = function (successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.HIDE, []);
+    exec(successCallback, errorCallback, Command.HIDE, []);
 };
 exports.hide = hide;
 var destroy = function (successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.DESTROY, []);
+    delete sentHTMLRects[targetMapId !== null && targetMapId !== void 0 ? targetMapId : DEFAULT_MAP_ID];
+    exec(successCallback, errorCallback, Command.DESTROY, []);
 };
 exports.destroy = destroy;
 var setContainer = function (params, successCallback, errorCallback) {
-    var _a;
-    var container = {
-        HTMLs: getContainerChildrenOverlayElements(params.domContainer),
-        rect: getDivRect(params.domContainer)
-    };
+    var HTMLs = getContainerChildrenOverlayElements(params.domContainer);
     if (params.additionalDomElements) {
-        (_a = container.HTMLs).push.apply(_a, flatElements(params.additionalDomElements));
+        HTMLs.push.apply(HTMLs, flatElements(params.additionalDomElements));
     }
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_CONTAINER, [
-        container,
+    syncHTMLRects(HTMLs, errorCallback);
+    exec(successCallback, errorCallback, Command.SET_CONTAINER, [
+        { rect: getDivRect(params.domContainer) },
     ]);
 };
 exports.setContainer = setContainer;
 var downloadRegion = function (options, statusCallback, errorCallback) {
-    cordova.exec(statusCallback, errorCallback, MAPBOX, Command.DOWNLOAD_REGION, [
+    exec(statusCallback, errorCallback, Command.DOWNLOAD_REGION, [
         options,
     ]);
 };
@@ -234,21 +303,21 @@ var getOfflineRegionList = function (styleUrl, _successCallback, _errorCallback)
     var successCallback = styleUrl === null ? arguments[0] : arguments[1];
     var errorCallback = styleUrl === null ? arguments[1] : arguments[2];
     var id = styleUrl === null ? arguments[2] || 0 : arguments[3] || 0;
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.GET_OFFLINE_REGION_LIST, [_styleUrl]);
+    exec(successCallback, errorCallback, Command.GET_OFFLINE_REGION_LIST, [_styleUrl]);
 };
 exports.getOfflineRegionList = getOfflineRegionList;
 var deleteOfflineRegion = function (options, _successCallback, _errorCallback) {
     var _options = typeof arguments[0] === 'object' ? arguments[0] : null;
     var successCallback = options === null ? arguments[0] : arguments[1];
     var errorCallback = options === null ? arguments[1] : arguments[2];
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.DELETE_OFFLINE_REGION, [_options]);
+    exec(successCallback, errorCallback, Command.DELETE_OFFLINE_REGION, [_options]);
 };
 exports.deleteOfflineRegion = deleteOfflineRegion;
 var pauseDownload = function (options, _successCallback, _errorCallback) {
     var _options = typeof arguments[0] === 'object' ? arguments[0] : null;
     var successCallback = options === null ? arguments[0] : arguments[1];
     var errorCallback = options === null ? arguments[1] : arguments[2];
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.PAUSE_DOWNLOAD, [
+    exec(successCallback, errorCallback, Command.PAUSE_DOWNLOAD, [
         _options,
     ]);
 };
@@ -257,149 +326,151 @@ var resumeDownload = function (options, _successCallback, _errorCallback) {
     var _options = typeof arguments[0] === 'object' ? arguments[0] : null;
     var successCallback = options === null ? arguments[0] : arguments[1];
     var errorCallback = options === null ? arguments[1] : arguments[2];
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.RESUME_DOWNLOAD, [
+    exec(successCallback, errorCallback, Command.RESUME_DOWNLOAD, [
         _options,
     ]);
 };
 exports.resumeDownload = resumeDownload;
 var addMapClickCallback = function (callback, errorCallback) {
-    cordova.exec(callback, errorCallback, MAPBOX, Command.ADD_MAP_CLICK_CALLBACK, []);
+    exec(callback, errorCallback, Command.ADD_MAP_CLICK_CALLBACK, []);
 };
 exports.addMapClickCallback = addMapClickCallback;
-var deselect = function (callback, errorCallback) {
-    cordova.exec(callback, errorCallback, MAPBOX, Command.DESELECT, []);
+var deselect = function (callback, errorCallback, ids) {
+    exec(callback, errorCallback, Command.DESELECT, [
+        ids,
+    ]);
 };
 exports.deselect = deselect;
 var addImage = function (imageId, image, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.ADD_IMAGE, [
+    exec(successCallback, errorCallback, Command.ADD_IMAGE, [
         imageId,
         image,
     ]);
 };
 exports.addImage = addImage;
 var removeImage = function (imageId, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.REMOVE_IMAGE, [
+    exec(successCallback, errorCallback, Command.REMOVE_IMAGE, [
         imageId,
     ]);
 };
 exports.removeImage = removeImage;
 var addLayer = function (layerObject, beforeId, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.ADD_LAYER, [
+    exec(successCallback, errorCallback, Command.ADD_LAYER, [
         layerObject,
         beforeId,
     ]);
 };
 exports.addLayer = addLayer;
 var setLayoutProperty = function (layerId, property, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_LAYOUT_PROPERTY, [layerId, property]);
+    exec(successCallback, errorCallback, Command.SET_LAYOUT_PROPERTY, [layerId, property]);
 };
 exports.setLayoutProperty = setLayoutProperty;
 var removeLayer = function (layerId, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.REMOVE_LAYER, [
+    exec(successCallback, errorCallback, Command.REMOVE_LAYER, [
         layerId,
     ]);
 };
 exports.removeLayer = removeLayer;
 var addSource = function (sourceId, source, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.ADD_SOURCE, [
+    exec(successCallback, errorCallback, Command.ADD_SOURCE, [
         sourceId,
         source,
     ]);
 };
 exports.addSource = addSource;
 var removeSource = function (sourceId, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.REMOVE_SOURCE, [
+    exec(successCallback, errorCallback, Command.REMOVE_SOURCE, [
         sourceId,
     ]);
 };
 exports.removeSource = removeSource;
 var setGeoJson = function (sourceId, geoJson, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_GEO_JSON, [
+    exec(successCallback, errorCallback, Command.SET_GEO_JSON, [
         sourceId,
         geoJson,
     ]);
 };
 exports.setGeoJson = setGeoJson;
 var flyTo = function (options, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.FLY_TO, [
+    exec(successCallback, errorCallback, Command.FLY_TO, [
         options,
     ]);
 };
 exports.flyTo = flyTo;
 var setCenter = function (center, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_CENTER, [
+    exec(successCallback, errorCallback, Command.SET_CENTER, [
         center,
     ]);
 };
 exports.setCenter = setCenter;
 var getCenter = function (resultCallback, errorCallback) {
-    cordova.exec(resultCallback, errorCallback, MAPBOX, Command.GET_CENTER, []);
+    exec(resultCallback, errorCallback, Command.GET_CENTER, []);
 };
 exports.getCenter = getCenter;
 var scrollMap = function (delta, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.SCROLL_MAP, [
+    exec(successCallback, errorCallback, Command.SCROLL_MAP, [
         delta,
     ]);
 };
 exports.scrollMap = scrollMap;
 var setPitch = function (pitch, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_PITCH, [
+    exec(successCallback, errorCallback, Command.SET_PITCH, [
         pitch,
     ]);
 };
 exports.setPitch = setPitch;
 var getPitch = function (resultCallback, errorCallback) {
-    cordova.exec(function (value) { return resultCallback(Number(value)); }, errorCallback, MAPBOX, Command.GET_PITCH, []);
+    exec(function (value) { return resultCallback(Number(value)); }, errorCallback, Command.GET_PITCH, []);
 };
 exports.getPitch = getPitch;
 var setZoom = function (zoom, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.SET_ZOOM, [zoom]);
+    exec(successCallback, errorCallback, Command.SET_ZOOM, [zoom]);
 };
 exports.setZoom = setZoom;
 var getZoom = function (resultCallback, errorCallback) {
-    cordova.exec(function (value) { return resultCallback(Number(value)); }, errorCallback, MAPBOX, Command.GET_ZOOM, []);
+    exec(function (value) { return resultCallback(Number(value)); }, errorCallback, Command.GET_ZOOM, []);
 };
 exports.getZoom = getZoom;
 var zoomTo = function (zoom, successCallback, errorCallback) {
-    cordova.exec(successCallback, errorCallback, MAPBOX, Command.ZOOM_TO, [zoom]);
+    exec(successCallback, errorCallback, Command.ZOOM_TO, [zoom]);
 };
 exports.zoomTo = zoomTo;
 var getBounds = function (resultCallback, errorCallback) {
-    cordova.exec(resultCallback, errorCallback, MAPBOX, Command.GET_BOUNDS, []);
+    exec(resultCallback, errorCallback, Command.GET_BOUNDS, []);
 };
 exports.getBounds = getBounds;
 var getCameraPosition = function (resultCallback, errorCallback) {
-    cordova.exec(resultCallback, errorCallback, MAPBOX, Command.GET_CAMERA_POSITION, []);
+    exec(resultCallback, errorCallback, Command.GET_CAMERA_POSITION, []);
 };
 exports.getCameraPosition = getCameraPosition;
 var convertCoordinates = function (coords, resultCallback, errorCallback) {
-    cordova.exec(resultCallback, errorCallback, MAPBOX, Command.CONVERT_COORDINATES, [coords]);
+    exec(resultCallback, errorCallback, Command.CONVERT_COORDINATES, [coords]);
 };
 exports.convertCoordinates = convertCoordinates;
 var convertPoint = function (point, resultCallback, errorCallback) {
-    cordova.exec(resultCallback, errorCallback, MAPBOX, Command.CONVERT_POINT, [
+    exec(resultCallback, errorCallback, Command.CONVERT_POINT, [
         point,
     ]);
 };
 exports.convertPoint = convertPoint;
 var addOnFlingListener = function (listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_FLING_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_FLING_LISTENER, []);
 };
 exports.addOnFlingListener = addOnFlingListener;
 var addOnMoveListener = function (listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_MOVE_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_MOVE_LISTENER, []);
 };
 exports.addOnMoveListener = addOnMoveListener;
 var addOnRotateListener = function (listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_ROTATE_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_ROTATE_LISTENER, []);
 };
 exports.addOnRotateListener = addOnRotateListener;
 var addOnScaleListener = function (listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_SCALE_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_SCALE_LISTENER, []);
 };
 exports.addOnScaleListener = addOnScaleListener;
 /**
@@ -407,7 +478,7 @@ exports.addOnScaleListener = addOnScaleListener;
  */
 var addOnWillStartLoadingMapListener = function (listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_WILL_START_LOADING_MAP_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_WILL_START_LOADING_MAP_LISTENER, []);
 };
 exports.addOnWillStartLoadingMapListener = addOnWillStartLoadingMapListener;
 /**
@@ -415,7 +486,7 @@ exports.addOnWillStartLoadingMapListener = addOnWillStartLoadingMapListener;
  */
 var addOnWillStartRenderingMapListener = function (listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_WILL_START_RENDERING_MAP_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_WILL_START_RENDERING_MAP_LISTENER, []);
 };
 exports.addOnWillStartRenderingMapListener = addOnWillStartRenderingMapListener;
 /**
@@ -423,15 +494,16 @@ exports.addOnWillStartRenderingMapListener = addOnWillStartRenderingMapListener;
  */
 var addOnCameraWillChangeListener = function (listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_CAMERA_WILL_CHANGE_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_CAMERA_WILL_CHANGE_LISTENER, []);
 };
 exports.addOnCameraWillChangeListener = addOnCameraWillChangeListener;
 /**
  * This event is triggered whenever the displayed map region finished changing without an animation.
  */
-var addOnCameraDidChangeListener = function (listener, id) {
+var addOnCameraDidChangeListener = function (listener, id, options) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_CAMERA_DID_CHANGE_LISTENER, []);
+    if (options === void 0) { options = {}; }
+    exec(listener, null, Command.ADD_ON_CAMERA_DID_CHANGE_LISTENER, [options]);
 };
 exports.addOnCameraDidChangeListener = addOnCameraDidChangeListener;
 /**
@@ -439,7 +511,7 @@ exports.addOnCameraDidChangeListener = addOnCameraDidChangeListener;
  */
 var addOnDidFinishLoadingStyleListener = function (listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_DID_FINISH_LOADING_STYLE_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_DID_FINISH_LOADING_STYLE_LISTENER, []);
 };
 exports.addOnDidFinishLoadingStyleListener = addOnDidFinishLoadingStyleListener;
 /**
@@ -447,23 +519,25 @@ exports.addOnDidFinishLoadingStyleListener = addOnDidFinishLoadingStyleListener;
  */
 var addOnSourceChangedListener = function (listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_SOURCE_CHANGED_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_SOURCE_CHANGED_LISTENER, []);
 };
 exports.addOnSourceChangedListener = addOnSourceChangedListener;
 /**
  * This event is triggered when the map will start rendering a frame.
  */
-var addOnWillStartRenderingFrameListener = function (listener, id) {
+var addOnWillStartRenderingFrameListener = function (listener, id, options) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_WILL_START_RENDERING_FRAME_LISTENER, []);
+    if (options === void 0) { options = {}; }
+    exec(listener, null, Command.ADD_ON_WILL_START_RENDERING_FRAME_LISTENER, [options]);
 };
 exports.addOnWillStartRenderingFrameListener = addOnWillStartRenderingFrameListener;
 /**
  * This event is triggered when the map finished rendering a frame.
  */
-var addOnDidFinishRenderingFrameListener = function (listener, id) {
+var addOnDidFinishRenderingFrameListener = function (listener, id, options) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_DID_FINISH_RENDERING_FRAME_LISTENER, []);
+    if (options === void 0) { options = {}; }
+    exec(listener, null, Command.ADD_ON_DID_FINISH_RENDERING_FRAME_LISTENER, [options]);
 };
 exports.addOnDidFinishRenderingFrameListener = addOnDidFinishRenderingFrameListener;
 /**
@@ -471,7 +545,7 @@ exports.addOnDidFinishRenderingFrameListener = addOnDidFinishRenderingFrameListe
  */
 var addOnDidFinishLoadingMapListener = function (listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_DID_FINISH_LOADING_MAP_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_DID_FINISH_LOADING_MAP_LISTENER, []);
 };
 exports.addOnDidFinishLoadingMapListener = addOnDidFinishLoadingMapListener;
 /**
@@ -479,6 +553,222 @@ exports.addOnDidFinishLoadingMapListener = addOnDidFinishLoadingMapListener;
  */
 function addOnDidFinishRenderingMapListener(listener, id) {
     if (id === void 0) { id = 0; }
-    cordova.exec(listener, null, MAPBOX, Command.ADD_ON_DID_FINISH_RENDERING_MAP_LISTENER, []);
+    exec(listener, null, Command.ADD_ON_DID_FINISH_RENDERING_MAP_LISTENER, []);
 }
 exports.addOnDidFinishRenderingMapListener = addOnDidFinishRenderingMapListener;
+var upsertFeatures = function (sourceId, features, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, Command.UPSERT_FEATURES, [
+        sourceId,
+        features,
+    ]);
+};
+exports.upsertFeatures = upsertFeatures;
+var removeFeatures = function (sourceId, featureIds, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, Command.REMOVE_FEATURES, [
+        sourceId,
+        featureIds,
+    ]);
+};
+exports.removeFeatures = removeFeatures;
+var executeBatch = function (commands, successCallback, errorCallback) {
+    // The commands address the map of the batch
+    var mapCommands = targetMapId === undefined
+        ? commands
+        : commands.map(function (command) { return (__assign(__assign({}, command), { action: command.action + "@" + targetMapId })); });
+    exec(successCallback, errorCallback, Command.EXECUTE_BATCH, [
+        mapCommands,
+    ]);
+};
+exports.executeBatch = executeBatch;
+var getMetrics = function (resultCallback, errorCallback, reset) {
+    if (reset === void 0) { reset = false; }
+    exec(resultCallback, errorCallback, Command.GET_METRICS, [reset]);
+};
+exports.getMetrics = getMetrics;
+var projectMany = function (coordinates, resultCallback, errorCallback, options) {
+    if (options === void 0) { options = {}; }
+    exec(resultCallback, errorCallback, Command.PROJECT_MANY, [
+        coordinates,
+        options,
+    ]);
+};
+exports.projectMany = projectMany;
+var unprojectMany = function (points, resultCallback, errorCallback, options) {
+    if (options === void 0) { options = {}; }
+    exec(resultCallback, errorCallback, Command.UNPROJECT_MANY, [
+        points,
+        options,
+    ]);
+};
+exports.unprojectMany = unprojectMany;
+var unwatchProjection = function (watchId, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, Command.UNWATCH_PROJECTION, [
+        watchId,
+    ]);
+};
+exports.unwatchProjection = unwatchProjection;
+var addImages = function (images, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, Command.ADD_IMAGES, [
+        images,
+    ]);
+};
+exports.addImages = addImages;
+var addSpriteAtlas = function (atlasId, images, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, Command.ADD_SPRITE_ATLAS, [
+        atlasId,
+        images,
+    ]);
+};
+exports.addSpriteAtlas = addSpriteAtlas;
+var setLayerProperties = function (layers, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, Command.SET_LAYER_PROPERTIES, [
+        layers,
+    ]);
+};
+exports.setLayerProperties = setLayerProperties;
+var getClusterLeaves = function (sourceId, clusterId, resultCallback, errorCallback, options) {
+    if (options === void 0) { options = {}; }
+    exec(resultCallback, errorCallback, Command.GET_CLUSTER_LEAVES, [
+        sourceId,
+        clusterId,
+        options.limit,
+        options.offset,
+    ]);
+};
+exports.getClusterLeaves = getClusterLeaves;
+var getClusterExpansionZoom = function (sourceId, clusterId, resultCallback, errorCallback) {
+    exec(resultCallback, errorCallback, Command.GET_CLUSTER_EXPANSION_ZOOM, [
+        sourceId,
+        clusterId,
+    ]);
+};
+exports.getClusterExpansionZoom = getClusterExpansionZoom;
+var getClustersInBounds = function (sourceId, bounds, zoom, resultCallback, errorCallback) {
+    exec(resultCallback, errorCallback, Command.GET_CLUSTERS_IN_BOUNDS, [
+        sourceId,
+        bounds,
+        zoom,
+    ]);
+};
+exports.getClustersInBounds = getClustersInBounds;
+var querySourceFeatures = function (sourceId, query, resultCallback, errorCallback) {
+    exec(resultCallback, errorCallback, Command.QUERY_SOURCE_FEATURES, [
+        sourceId,
+        query,
+    ]);
+};
+exports.querySourceFeatures = querySourceFeatures;
+var setInteractiveLayers = function (layerIds, clickRadius, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, Command.SET_INTERACTIVE_LAYERS, [
+        layerIds,
+        clickRadius,
+    ]);
+};
+exports.setInteractiveLayers = setInteractiveLayers;
+var selectFeatures = function (ids, resultCallback, errorCallback, options) {
+    if (options === void 0) { options = {}; }
+    exec(resultCallback, errorCallback, Command.SELECT_FEATURES, [
+        ids,
+        options.additive,
+    ]);
+};
+exports.selectFeatures = selectFeatures;
+var setSelectionStyle = function (layerId, style, successCallback, errorCallback) {
+    exec(successCallback, errorCallback, Command.SET_SELECTION_STYLE, [
+        layerId,
+        style,
+    ]);
+};
+exports.setSelectionStyle = setSelectionStyle;
+// Map instances by map id
+var maps = {};
+var getMap = function (mapId) {
+    if (!maps[mapId]) {
+        var map_1 = {};
+        Object.keys(api).forEach(function (name) {
+            // Address the map during the call, the commands are sent synchronously
+            map_1[name] = function () {
+                var previousMapId = targetMapId;
+                targetMapId = mapId;
+                try {
+                    return api[name].apply(null, arguments);
+                }
+                finally {
+                    targetMapId = previousMapId;
+                }
+            };
+        });
+        maps[mapId] = map_1;
+    }
+    return maps[mapId];
+};
+exports.getMap = getMap;
+// The API of the default map, wrapped by the map instances
+var api = {
+    show: show,
+    setDebug: setDebug,
+    setClickable: setClickable,
+    hide: hide,
+    destroy: destroy,
+    setContainer: setContainer,
+    downloadRegion: downloadRegion,
+    getOfflineRegionList: getOfflineRegionList,
+    deleteOfflineRegion: deleteOfflineRegion,
+    pauseDownload: pauseDownload,
+    resumeDownload: resumeDownload,
+    addMapClickCallback: addMapClickCallback,
+    deselect: deselect,
+    addImage: addImage,
+    removeImage: removeImage,
+    addLayer: addLayer,
+    setLayoutProperty: setLayoutProperty,
+    removeLayer: removeLayer,
+    addSource: addSource,
+    removeSource: removeSource,
+    setGeoJson: setGeoJson,
+    flyTo: flyTo,
+    setCenter: setCenter,
+    getCenter: getCenter,
+    scrollMap: scrollMap,
+    setPitch: setPitch,
+    getPitch: getPitch,
+    setZoom: setZoom,
+    getZoom: getZoom,
+    zoomTo: zoomTo,
+    getBounds: getBounds,
+    getCameraPosition: getCameraPosition,
+    convertCoordinates: convertCoordinates,
+    convertPoint: convertPoint,
+    addOnFlingListener: addOnFlingListener,
+    addOnMoveListener: addOnMoveListener,
+    addOnRotateListener: addOnRotateListener,
+    addOnScaleListener: addOnScaleListener,
+    addOnWillStartLoadingMapListener: addOnWillStartLoadingMapListener,
+    addOnWillStartRenderingMapListener: addOnWillStartRenderingMapListener,
+    addOnCameraWillChangeListener: addOnCameraWillChangeListener,
+    addOnCameraDidChangeListener: addOnCameraDidChangeListener,
+    addOnDidFinishLoadingStyleListener: addOnDidFinishLoadingStyleListener,
+    addOnSourceChangedListener: addOnSourceChangedListener,
+    addOnWillStartRenderingFrameListener: addOnWillStartRenderingFrameListener,
+    addOnDidFinishRenderingFrameListener: addOnDidFinishRenderingFrameListener,
+    addOnDidFinishLoadingMapListener: addOnDidFinishLoadingMapListener,
+    addOnDidFinishRenderingMapListener: addOnDidFinishRenderingMapListener,
+    upsertFeatures: upsertFeatures,
+    removeFeatures: removeFeatures,
+    executeBatch: executeBatch,
+    getMetrics: getMetrics,
+    projectMany: projectMany,
+    unprojectMany: unprojectMany,
+    unwatchProjection: unwatchProjection,
+    addImages: addImages,
+    addSpriteAtlas: addSpriteAtlas,
+    setLayerProperties: setLayerProperties,
+    getClusterLeaves: getClusterLeaves,
+    getClusterExpansionZoom: getClusterExpansionZoom,
+    getClustersInBounds: getClustersInBounds,
+    querySourceFeatures: querySourceFeatures,
+    setInteractiveLayers: setInteractiveLayers,
+    selectFeatures: selectFeatures,
+    setSelectionStyle: setSelectionStyle,
+    getMap: getMap
+};